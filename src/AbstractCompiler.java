@@ -0,0 +1,200 @@
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * The common part of the compilers of parse trees (as built by TreeGenerate) to one of the execution back-ends.
+ * This class walks the statements of a program and resolves the variables and the types of expressions, and leaves
+ * it to its descendants to generate the code for every kind of statement.
+ * Operators of the same precedence are evaluated from left to right, i.e. "a - b + c" is "(a - b) + c", even though
+ * the grammar nests the rest of an expression on the right.
+ */
+public abstract class AbstractCompiler {
+
+    /*Error messages that the compilers will use*/
+    protected final String INV_SHAPE = ": unexpected \"{0}\" in the parse tree";
+    protected final String VAR_NAME_NOT_EXISTS = ": could not find \"{0}\". This variable has not been initialised yet.";
+    protected final String INV_OPERATION = ": invalid operation. It is not possible to perform operation";
+    protected final String INV_TYPE = "invalid type assignment. Expected: \"{0}\", but got \"{1}\" instead!";
+    protected final String INV_PROCEDURE = ": unknown procedure \"{0}\"";
+
+    /*The variables that are assigned without a declaration, by their identifier*/
+    private final HashMap<String, Variable> implicit = new HashMap<>();
+
+    /*The number variables that only ever hold integral values (as found by NumberInference), which are compiled to
+    * long arithmetic. Empty if every number is compiled to double arithmetic*/
+    protected Set<Variable> integral = Collections.emptySet();
+
+    /*Code generation for every kind of statement. The nodes are the ones of the non-terminals with the same name*/
+    protected abstract void assignment(ParseNode node) throws CompilationException;
+    protected abstract void ifStatement(ParseNode node) throws CompilationException;
+    protected abstract void whileStatement(ParseNode node) throws CompilationException;
+    protected abstract void untilStatement(ParseNode node) throws CompilationException;
+    protected abstract void forStatement(ParseNode node) throws CompilationException;
+    protected abstract void procedureStatement(ParseNode node) throws CompilationException;
+
+    /**
+     * Compiles every statement of a statement list, in order
+     * @param list The StatementList node
+     */
+    protected void statementList(ParseNode list) throws CompilationException {
+        while (true) {
+            statement(list.child(0));
+            if (list.children.size() < 3)
+                break;
+            list = list.child(2); // the rest of the list, after the semicolon
+        }
+    }
+
+    /**
+     * Compiles a statement. The optimisation passes may leave a statement empty, or replace it with a statement list
+     * @param statement The Statement node
+     */
+    protected void statement(ParseNode statement) throws CompilationException {
+        if (statement.children.isEmpty())
+            return;
+
+        ParseNode node = statement.child(0);
+        switch (node.name) {
+            case "StatementList": statementList(node); break;
+            case "AssignmentStatement": assignment(node); break;
+            case "IfStatement": ifStatement(node); break;
+            case "WhileStatement": whileStatement(node); break;
+            case "ProcedureStatement": procedureStatement(node); break;
+            case "UntilStatement": untilStatement(node); break;
+            case "ForStatement": forStatement(node); break;
+            default: throw shapeError(node);
+        }
+    }
+
+    /**
+     * Splits an expression (or a term) to the chain of its operands and the operators between them, which all have
+     * the same precedence
+     * @param node The Expression or Term node
+     * @param operands The list to add the Term (or Factor) nodes of the operands to
+     * @param operators The list to add the terminal nodes of the operators to
+     */
+    protected void chain(ParseNode node, ArrayList<ParseNode> operands, ArrayList<ParseNode> operators)
+            throws CompilationException {
+        for (ParseNode link = node; ; link = link.child(2)) {
+            if (link.children.isEmpty())
+                throw shapeError(link);
+            operands.add(link.child(0));
+            if (link.children.size() < 3)
+                break;
+            operators.add(link.child(1));
+        }
+    }
+
+    /**
+     * @param node The ArgumentList node of a procedure statement, or its right parenthesis if it has no arguments
+     * @return The identifier nodes of the arguments, in order
+     */
+    protected ArrayList<ParseNode> arguments(ParseNode node) {
+        ArrayList<ParseNode> arguments = new ArrayList<>();
+        if (!node.is("ArgumentList"))
+            return arguments; // the right parenthesis of a call with no arguments
+        for (ParseNode list = node; list != null; list = list.children.size() > 1 ? list.child(2) : null)
+            arguments.add(list.child(0));
+        return arguments;
+    }
+
+    /**
+     * @return The type of the value of an expression, term or factor, which is the type of its first operand
+     */
+    protected Variable.Type typeOf(ParseNode node) throws CompilationException {
+        if (node.children.isEmpty())
+            throw shapeError(node);
+
+        ParseNode first = node.child(0);
+        if (node.is("Factor")) {
+            if (first.is(Token.leftParenthesis))
+                return typeOf(node.child(1));
+            if (first.is(Token.numberConstant))
+                return Variable.Type.NUMBER;
+            return variable(first).type;
+        }
+        return typeOf(first);
+    }
+
+    /**
+     * @param node An Expression, Term or Factor node, or the terminal node of an operand of a condition
+     * @return true if the value of the node is compiled to long arithmetic
+     */
+    protected boolean isIntegral(ParseNode node) {
+
+        return !integral.isEmpty() && NumberInference.integral(node, integral);
+    }
+
+    /**
+     * @return true if a variable is compiled to long arithmetic
+     */
+    protected boolean isIntegral(Variable v) {
+
+        return integral.contains(v);
+    }
+
+    /**
+     * @return The type of the right hand side of a condition
+     */
+    protected Variable.Type typeOfOperand(ParseNode node) throws CompilationException {
+        if (node.is(Token.identifier))
+            return variable(node).type;
+        return node.is(Token.numberConstant) ? Variable.Type.NUMBER : Variable.Type.STRING;
+    }
+
+    /**
+     * @return The variable that is assigned by the target of an assignment
+     */
+    protected Variable assigned(ParseNode target, Variable.Type type) throws CompilationException {
+        Variable v = target.variable;
+        if (v == null) {
+            // the Syntax Analyser only declares variables that are assigned a constant or another variable
+            v = implicit.get(target.token.getText());
+            if (v == null) {
+                v = new Variable(target.token.detach(), type);
+                implicit.put(v.identifier, v);
+            }
+        }
+        if (v.type != type)
+            throw new CompilationException(MessageFormat.format(INV_TYPE, v.type.name, type.name),
+                    target.token.lineNumber);
+        return v;
+    }
+
+    /**
+     * @return The variable that an identifier refers to
+     */
+    protected Variable variable(ParseNode identifier) throws CompilationException {
+        if (!identifier.is(Token.identifier))
+            throw shapeError(identifier);
+        if (identifier.variable != null)
+            return identifier.variable;
+
+        Variable v = implicit.get(identifier.token.getText());
+        if (v == null)
+            throw new CompilationException(MessageFormat.format(VAR_NAME_NOT_EXISTS, identifier.token.getText()),
+                    identifier.token.lineNumber);
+        return v;
+    }
+
+    /**
+     * @return true if the procedure of a procedure statement is "get", false if it is "put"
+     * @throws CompilationException If it is any other procedure
+     */
+    protected boolean isGet(ParseNode node) throws CompilationException {
+        Token name = node.child(1).token;
+        if (name.getText().equals("get"))
+            return true;
+        if (name.getText().equals("put"))
+            return false;
+        throw new CompilationException(MessageFormat.format(INV_PROCEDURE, name.getText()), name.lineNumber);
+    }
+
+    protected CompilationException shapeError(ParseNode node) {
+
+        return new CompilationException(MessageFormat.format(INV_SHAPE, node.toString()), node.lineNumber());
+    }
+}
@@ -15,6 +15,35 @@ import java.util.List;
 @SuppressWarnings("Duplicates")
 public abstract class AbstractGenerate
 {
+    /** The line of the trace of the last terminal. */
+    private final StringBuilder terminal = new StringBuilder();
+    /** The starts of the lines of the program that is analysed, or null if its tokens have no offsets. */
+    private LineTable lines;
+
+    /**
+     * Sets the starts of the lines of the program that is analysed next, from which the column and the line of an
+     * error are taken.
+     *
+     * @param lines The starts of the lines, or null if the tokens of the program have no offsets.
+     */
+    void setLines( LineTable lines ) {
+        this.lines = lines;
+    }
+
+    /**
+     * Makes the exception of an error at a token, with its column and the text of its line if they are known.
+     *
+     * @param token The token of the error
+     * @param explanatoryMessage The message that explains the error
+     * @param cause The error that this one is reported for, or null
+     * @return The exception
+     */
+    CompilationException error( Token token, String explanatoryMessage, CompilationException cause ) {
+        if( lines == null || token.start < 0 )
+            return new CompilationException( explanatoryMessage, token.lineNumber, cause );
+        return new CompilationException( explanatoryMessage, token.lineNumber, lines.column( token.start ),
+                lines.excerpt( token.start ), cause );
+    }
 
     /**
     *
@@ -23,14 +52,17 @@ public abstract class AbstractGenerate
     **/
 
     public void insertTerminal( Token token ) {
-        String tt = Token.getName( token.symbol );
-        
+        // built in place, so that the text of the token is read where it is rather than made a String of its own
+        StringBuilder tt = terminal;
+        tt.setLength( 0 );
+        tt.append( "rggTOKEN " ).append( Token.getName( token.symbol ) );
+
         if( (token.symbol == Token.identifier) || (token.symbol == Token.numberConstant) || (token.symbol == Token.stringConstant) )
-            tt += " '" + token.text + "'";
+            tt.append( " '" ).append( token.text ).append( "'" );
 
-        tt += " on line " + token.lineNumber;
+        tt.append( " on line " ).append( token.lineNumber );
 
-        System.out.println( "rggTOKEN " + tt );
+        System.out.append( tt ).println();  // through the stream, which encodes it as it does the rest of the trace
     } // end of method insertTerminal
 
     /**
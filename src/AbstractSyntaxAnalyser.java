@@ -14,12 +14,14 @@ import java.io.* ;
 
 public abstract class AbstractSyntaxAnalyser
 {
-	/** The lexical analyser to process input using. */
-	LexicalAnalyser lex ;
+	/** The lexical analyser to process input using, or another source of the tokens of the input. */
+	TokenSource lex ;
 	/** A cache of the token to be processed next. */
 	Token nextToken ;
 	/** A code generator, descendant of AbstractGenerate. */
 	Generate myGenerate = null;
+	/** Whether parse reports the columns of errors, and the lines that they are on. */
+	boolean columns = false;
 
 	/** Begin processing the first (top level) token.*/
 	public abstract void _statementPart_() throws IOException, CompilationException;
@@ -33,21 +35,56 @@ public abstract class AbstractSyntaxAnalyser
 	  @throws IOException in the event that the PrintStream object can no longer read.
 	*/
 	public void parse( PrintStream ps ) throws IOException
+	{
+		parse( ps, new Generate() );
+	} // end of method parse
+
+	/** Parses the given PrintStream with this instance's LexicalAnalyser, reporting to a code generator that is
+		reused for every file (i.e. by a batch compiler).
+
+	  @param ps The PrintStream object to read tokens from.
+	  @param generate The code generator, which is reset before the analysis.
+	  @throws IOException in the event that the PrintStream object can no longer read.
+	*/
+	public void parse( PrintStream ps, Generate generate ) throws IOException
 	{
 		ps.println( lex.getFilename() );
-		myGenerate = new Generate();
+		generate.reset();
 		try {
-			nextToken = lex.getNextToken() ;
-			_statementPart_() ;
-			acceptTerminal(Token.eofSymbol) ;
-			myGenerate.reportSuccess() ;
+			analyse( generate );
 			ps.println( "OK\n" );
 		}
 		catch( CompilationException ex )
 		{
 			ps.println( "Compilation Exception" );
-			ps.println( ex.toTraceString() );
+			ps.println( ex.toTraceString( columns ) );
 			ps.println( "STOP\n" );
 		}
 	} // end of method parse
+
+	/** Makes parse report the column of an error as well as its line, and show the line, where the tokens of the
+		input have offsets (i.e. those of a LexicalAnalyser of a file or a text).
+
+	  @param columns Whether to report the columns of errors.
+	*/
+	public void setColumns( boolean columns )
+	{
+		this.columns = columns;
+	} // end of method setColumns
+
+	/** Analyses the whole input with this instance's LexicalAnalyser, reporting to the given code generator.
+
+	  @param generate The code generator to report the analysis to.
+	  @throws IOException in the event that the input can no longer be read.
+	  @throws CompilationException if the input is not a valid program.
+	*/
+	public void analyse( Generate generate ) throws IOException, CompilationException
+	{
+		myGenerate = generate;
+		generate.setLines( lex.getLines() ) ;
+		nextToken = lex.getNextToken() ;
+		_statementPart_() ;
+		acceptTerminal(Token.eofSymbol) ;
+		myGenerate.reportSuccess() ;
+	} // end of method analyse
 } // end of class AbstractSyntaxAnalyser
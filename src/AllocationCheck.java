@@ -0,0 +1,206 @@
+import java.io.*;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Checks that the compiler does not allocate more than it did: the bytes that the current thread allocates for every
+ * token that the LexicalAnalyser lexes, for every statement that the SyntaxAnalyser analyses and for every file that
+ * is compiled as `make run` compiles it (with the trace, to a stream that discards it) are measured on generated
+ * programs, and compared with the budgets of a file that is checked in with the sources. A measure that is over its
+ * budget is reported, and the check exits with 1, so that `make check` fails on a change that allocates more.
+ * With -update the budgets are written again, a quarter above the measures, after a change that has to allocate more
+ * (or that allocates less, so that the budgets keep it that way).
+ *
+ * Usage: java AllocationCheck [-update] [budgets file]   (allocation-budgets.properties if none is given)
+ */
+public class AllocationCheck {
+
+    /*The budgets that are checked if no file is given*/
+    private static final String BUDGETS = "allocation-budgets.properties";
+
+    /*The number of runs of every measure that warm up the JIT compiler, and of the runs that are measured*/
+    private static final int WARMUP_RUNS = 10;
+    private static final int MEASURED_RUNS = 5;
+
+    /*The lines of the program that is lexed and analysed, and the number of files that are compiled*/
+    private static final int PROGRAM_LINES = 20_000;
+    private static final int FILES = 200;
+
+    /*The names of the measures in the budgets file*/
+    private static final String[] KEYS = {"lex.bytesPerToken", "parse.bytesPerStatement", "compile.bytesPerFile"};
+
+    /*How much a budget that is written with -update is above its measure*/
+    private static final double HEADROOM = 1.25;
+
+    public static void main(String[] args) throws Exception {
+        boolean update = args.length > 0 && args[0].equals("-update");
+        String budgetsFile = args.length > (update ? 1 : 0) ? args[args.length - 1] : BUDGETS;
+        if (Benchmark.allocatedBytes() == 0) {
+            System.err.println("allocation check: this JVM does not measure the bytes that a thread allocates");
+            return;
+        }
+
+        double[] measures = {lex(), parse(), compile()};
+
+        if (update) {
+            try (PrintWriter writer = new PrintWriter(new FileWriter(budgetsFile))) {
+                writer.println("# The bytes that AllocationCheck allows, a quarter above those that it measured");
+                writer.println("# (java AllocationCheck -update writes them again)");
+                for (int i = 0; i < KEYS.length; i++)
+                    writer.println(KEYS[i] + "=" + format(Math.ceil(measures[i] * HEADROOM)));
+            }
+            System.out.println("allocation check: budgets written to " + budgetsFile);
+            return;
+        }
+
+        Properties budgets = new Properties();
+        try (Reader reader = new FileReader(budgetsFile)) {
+            budgets.load(reader);
+        } catch (FileNotFoundException e) {
+            System.err.println("allocation check: no budgets in " + budgetsFile + " (java AllocationCheck -update)");
+            System.exit(1);
+        }
+        boolean over = false;
+        for (int i = 0; i < KEYS.length; i++) {
+            String budget = budgets.getProperty(KEYS[i]);
+            boolean fails = budget == null || measures[i] > Double.parseDouble(budget);
+            System.out.println(String.format("%-24s %12s bytes %12s budget%s", KEYS[i], format(measures[i]),
+                    budget == null ? "no" : budget, fails ? "   OVER BUDGET" : ""));
+            over |= fails;
+        }
+        if (over) {
+            System.err.println("allocation check: a measure is over its budget in " + budgetsFile);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return The bytes allocated for every token of a big program, which a single LexicalAnalyser lexes again
+     */
+    private static double lex() throws Exception {
+        final String program = Benchmark.loops(PROGRAM_LINES);
+        final LexicalAnalyser lex = new LexicalAnalyser("check", program);
+        final long[] tokens = new long[1];
+        return measure(() -> {
+            lex.reset("check", program);
+            while (lex.getNextToken().symbol != Token.eofSymbol)
+                tokens[0]++;
+            tokens[0]++; // the end of file
+        }, tokens);
+    }
+
+    /**
+     * @return The bytes allocated for every statement of a big program, which a single SyntaxAnalyser analyses again
+     * without printing its trace
+     */
+    private static double parse() throws Exception {
+        final String program = Benchmark.loops(PROGRAM_LINES);
+        final SyntaxAnalyser analyser = new SyntaxAnalyser("check", program);
+        final StatementCount generate = new StatementCount();
+        return measure(() -> {
+            analyser.reset("check", program);
+            generate.reset();
+            analyser.analyse(generate);
+        }, generate.statements);
+    }
+
+    /**
+     * @return The bytes allocated for every file of small programs, which are compiled as Compile compiles them: read
+     * from their files by a single SyntaxAnalyser, with the trace and the results printed to streams that discard them
+     */
+    private static double compile() throws Exception {
+        final String[] files = new String[FILES];
+        for (int i = 0; i < FILES; i++)
+            files[i] = Benchmark.sourceFile(Benchmark.smallProgram(i));
+        final SyntaxAnalyser analyser = new SyntaxAnalyser("check", "");
+        final Generate generate = new Generate();
+        final PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, true);
+        final long[] compiled = new long[1];
+
+        PrintStream out = System.out;
+        System.setOut(discard);
+        try {
+            return measure(() -> {
+                for (String file : files) {
+                    analyser.reset(file);
+                    generate.reset();
+                    analyser.parse(discard, generate);
+                    compiled[0]++;
+                }
+            }, compiled);
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * Measures the bytes that the runs allocate, after the runs that warm up
+     * @param run A single run
+     * @param units The number of units of work that the runs have done so far, which the runs count
+     * @return The bytes allocated for every unit of work of the measured runs
+     */
+    private static double measure(Benchmark.Run run, long[] units) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            run.run();
+
+        long done = units[0];
+        long allocated = Benchmark.allocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++)
+            run.run();
+        allocated = Benchmark.allocatedBytes() - allocated;
+        return (double) allocated / (units[0] - done);
+    }
+
+    private static String format(double bytes) {
+
+        return String.format(Locale.ROOT, "%.1f", bytes);
+    }
+
+    /**
+     * A code generator that prints nothing, and counts the statements that were analysed
+     */
+    private static final class StatementCount extends Generate {
+
+        final long[] statements = new long[1];
+
+        @Override
+        public void commenceNonterminal(String name) {
+            if (name.equals("Statement"))
+                statements[0]++;
+        }
+
+        @Override
+        public void insertTerminal(Token token) {
+        }
+
+        @Override
+        public void finishNonterminal(String name) {
+        }
+
+        @Override
+        public void addVariable(Variable v) {
+        }
+
+        @Override
+        public void removeVariable(Variable v) {
+        }
+
+        @Override
+        public void reportSuccess() {
+        }
+
+        @Override
+        public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+
+            throw error(token, explanatoryMessage, null);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A compiled program that is saved to a file, so that executing the same program again does not need to analyse and
+ * compile its source. The file holds the tokens of the program, the identifiers and types of its variables, and its
+ * Bytecode, all of them as fixed width big-endian numbers that refer to a single table of strings.
+ * The file is mapped to memory when it is loaded, and nothing is decoded before it is used: the code of the program
+ * is copied out of the mapping in bulk, and the tokens, variables and strings are read in place when they are asked
+ * for. Loading a program therefore costs about the same whatever its size.
+ *
+ * The file starts with a header: the magic number, the version of the format, the flags of the compilation, the size
+ * and modification time of the source, and the number of sections. Then come the offset and length of every section,
+ * and the sections:
+ *   STRINGS    count, the offset of every string and of the end of the last one, then the strings in UTF-8
+ *   TOKENS     count, then symbol, line number and text (a string) of every token
+ *   VARIABLES  count, then the identifier (a string) and the value of the Variable.Type of every variable
+ *   CODE       the instructions of the Bytecode
+ *   REGISTERS  the number of number and string registers, then the name (a string, or -1) of every register
+ *   CONSTANTS  count, the register and the bits of the double of every number constant, then count, the register
+ *              and the string of every string constant
+ *   LONGS      count and the integral registers, then count and the deoptimisation table
+ */
+public class Artifact {
+
+    /*The magic number of an artifact file ("SPA" and a 1), and the version of the format that this class reads*/
+    private static final int MAGIC = 0x53504101;
+    public static final int VERSION = 1;
+
+    /*The flags of the compilation of the program*/
+    public static final int OPTIMISED = 1, INTEGRAL = 2;
+
+    /*The extension of the artifact of a source file*/
+    public static final String EXTENSION = ".spa";
+
+    /*The sections, in the order of the file*/
+    private static final int STRINGS = 0, TOKENS = 1, VARIABLES = 2, CODE = 3, REGISTERS = 4, CONSTANTS = 5,
+            LONGS = 6, SECTIONS = 7;
+
+    private static final int HEADER = 32;
+
+    private final ByteBuffer buffer;
+    private final int[] offsets = new int[SECTIONS];
+    private final int[] lengths = new int[SECTIONS];
+
+    private Artifact(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC)
+            throw new IOException("not a program artifact");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("program artifact of version " + buffer.getInt(4) + " instead of " + VERSION);
+        if (buffer.getInt(28) != SECTIONS || buffer.limit() < HEADER + 8 * SECTIONS)
+            throw new IOException("program artifact with " + buffer.getInt(28) + " sections");
+        for (int i = 0; i < SECTIONS; i++) {
+            offsets[i] = buffer.getInt(HEADER + 8 * i);
+            lengths[i] = buffer.getInt(HEADER + 8 * i + 4);
+            if (offsets[i] < 0 || lengths[i] < 0 || (long) offsets[i] + lengths[i] > buffer.limit())
+                throw new IOException("program artifact is truncated");
+        }
+    }
+
+    /**
+     * Maps an artifact file to memory
+     * @param file The file
+     * @return The artifact
+     * @throws IOException If the file can not be read, or it is not an artifact of this version
+     */
+    public static Artifact map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("program artifact is too large");
+            return new Artifact(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @param source The source file of a program
+     * @return The file of the artifact of the program
+     */
+    public static Path pathFor(Path source) {
+
+        return source.resolveSibling(source.getFileName() + EXTENSION);
+    }
+
+    /**
+     * @param source The source file that this artifact was compiled from
+     * @param flags The flags that it should have been compiled with
+     * @return true if it was compiled with these flags, from the source as it is now
+     * @throws IOException If the attributes of the source can not be read
+     */
+    public boolean isFor(Path source, int flags) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return flags() == flags && buffer.getLong(12) == attributes.size()
+                && buffer.getLong(20) == attributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * @return The flags that the program was compiled with
+     */
+    public int flags() {
+
+        return buffer.getInt(8);
+    }
+
+    /**
+     * @return The number of strings in the table of strings
+     */
+    public int stringCount() {
+
+        return buffer.getInt(offsets[STRINGS]);
+    }
+
+    /**
+     * @param index The index of a string in the table of strings
+     * @return The string, which is decoded every time that it is asked for
+     */
+    public String string(int index) {
+        int table = offsets[STRINGS] + 4;
+        int start = buffer.getInt(table + 4 * index), end = buffer.getInt(table + 4 * index + 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(table + 4 * (stringCount() + 1) + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The number of tokens of the program
+     */
+    public int tokenCount() {
+
+        return buffer.getInt(offsets[TOKENS]);
+    }
+
+    /**
+     * @param index The index of a token of the program, in the order of the source
+     * @return The token
+     */
+    public Token token(int index) {
+        int at = offsets[TOKENS] + 4 + 12 * index;
+        return new Token(buffer.getInt(at), string(buffer.getInt(at + 8)), buffer.getInt(at + 4));
+    }
+
+    /**
+     * @return The number of variables that the Syntax Analyser declared
+     */
+    public int variableCount() {
+
+        return buffer.getInt(offsets[VARIABLES]);
+    }
+
+    /**
+     * @param index The index of a variable
+     * @return The variable, with its identifier and type
+     */
+    public Variable variable(int index) {
+        int at = offsets[VARIABLES] + 4 + 8 * index;
+        int type = buffer.getInt(at + 4);
+        for (Variable.Type t : Variable.Type.values())
+            if (t.value == type)
+                return new Variable(string(buffer.getInt(at)), t);
+        return new Variable(string(buffer.getInt(at)), Variable.Type.UNKNOWN);
+    }
+
+    /**
+     * @return The compiled program. Its code is copied out of the file in bulk, and only the names and constants of
+     * its registers are decoded
+     */
+    public Bytecode bytecode() {
+        int[] code = ints(offsets[CODE], lengths[CODE] / 4);
+
+        int at = offsets[REGISTERS];
+        String[] numberNames = new String[buffer.getInt(at)];
+        String[] stringNames = new String[buffer.getInt(at + 4)];
+        at = strings(at + 8, numberNames);
+        strings(at, stringNames);
+
+        at = offsets[CONSTANTS];
+        int[] numberConstantRegisters = ints(at + 4, buffer.getInt(at));
+        at += 4 + 4 * numberConstantRegisters.length;
+        double[] numberConstants = new double[numberConstantRegisters.length];
+        for (int i = 0; i < numberConstants.length; i++, at += 8)
+            numberConstants[i] = buffer.getDouble(at);
+        int[] stringConstantRegisters = ints(at + 4, buffer.getInt(at));
+        at += 4 + 4 * stringConstantRegisters.length;
+        String[] stringConstants = new String[stringConstantRegisters.length];
+        strings(at, stringConstants);
+
+        at = offsets[LONGS];
+        int[] integralRegisters = ints(at + 4, buffer.getInt(at));
+        at += 4 + 4 * integralRegisters.length;
+        int[] deoptimisation = ints(at + 4, buffer.getInt(at));
+
+        return new Bytecode(code, numberNames, stringNames, numberConstantRegisters, numberConstants,
+                stringConstantRegisters, stringConstants, integralRegisters, deoptimisation);
+    }
+
+    private int[] ints(int at, int count) {
+        int[] values = new int[count];
+        ByteBuffer view = buffer.duplicate();
+        view.position(at);
+        view.asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Decodes a list of indexes of strings, where -1 is null
+     * @return The offset after the list
+     */
+    private int strings(int at, String[] values) {
+        for (int i = 0; i < values.length; i++, at += 4) {
+            int index = buffer.getInt(at);
+            values[i] = index < 0 ? null : string(index);
+        }
+        return at;
+    }
+
+    /**
+     * Writes the artifact of a compiled program. It is written to a temporary file first, which then replaces the
+     * artifact, so that a program that maps the artifact at the same time never sees half of it
+     * @param file The file of the artifact
+     * @param source The source file of the program
+     * @param flags The flags of the compilation
+     * @param tokens The tokens of the program
+     * @param variables The variables of the program
+     * @param program The compiled program
+     * @throws IOException If the file can not be written
+     */
+    public static void write(Path file, Path source, int flags, List<Token> tokens, Collection<Variable> variables,
+                             Bytecode program) throws IOException {
+        StringTable table = new StringTable();
+        byte[][] sections = new byte[SECTIONS][];
+
+        SectionWriter out = new SectionWriter();
+        out.intValue(tokens.size());
+        for (Token token : tokens) {
+            out.intValue(token.symbol);
+            out.intValue(token.lineNumber);
+            out.intValue(table.string(token.getText()));
+        }
+        sections[TOKENS] = out.bytes();
+
+        out.intValue(variables.size());
+        for (Variable v : variables) {
+            out.intValue(table.string(v.identifier));
+            out.intValue(v.type.value);
+        }
+        sections[VARIABLES] = out.bytes();
+
+        for (int instruction : program.code)
+            out.intValue(instruction);
+        sections[CODE] = out.bytes();
+
+        out.intValue(program.numberNames.length);
+        out.intValue(program.stringNames.length);
+        for (String name : program.numberNames)
+            out.intValue(table.string(name));
+        for (String name : program.stringNames)
+            out.intValue(table.string(name));
+        sections[REGISTERS] = out.bytes();
+
+        out.ints(program.numberConstantRegisters);
+        for (double value : program.numberConstants)
+            out.longValue(Double.doubleToRawLongBits(value));
+        out.ints(program.stringConstantRegisters);
+        for (String value : program.stringConstants)
+            out.intValue(table.string(value));
+        sections[CONSTANTS] = out.bytes();
+
+        out.ints(program.integralRegisters);
+        out.ints(program.deoptimisation);
+        sections[LONGS] = out.bytes();
+
+        out.intValue(table.strings.size());
+        int offset = 0;
+        for (byte[] bytes : table.strings) {
+            out.intValue(offset);
+            offset += bytes.length;
+        }
+        out.intValue(offset);
+        for (byte[] bytes : table.strings)
+            out.data.write(bytes);
+        sections[STRINGS] = out.bytes();
+
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        out.intValue(MAGIC);
+        out.intValue(VERSION);
+        out.intValue(flags);
+        out.longValue(attributes.size());
+        out.longValue(attributes.lastModifiedTime().toMillis());
+        out.intValue(SECTIONS);
+        offset = HEADER + 8 * SECTIONS;
+        for (byte[] section : sections) {
+            out.intValue(offset);
+            out.intValue(section.length);
+            offset += section.length;
+        }
+        for (byte[] section : sections)
+            out.data.write(section);
+
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), "artifact", ".tmp");
+        try {
+            Files.write(temporary, out.bytes());
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @param root The root of the parse tree of a program, before it is optimised
+     * @return The tokens of the program, in the order of the source
+     */
+    public static List<Token> tokens(ParseNode root) {
+        ArrayList<Token> tokens = new ArrayList<>();
+        ArrayDeque<ParseNode> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            ParseNode node = nodes.pop();
+            if (node.isTerminal())
+                tokens.add(node.token);
+            for (int i = node.children.size() - 1; i >= 0; i--)
+                nodes.push(node.children.get(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * @param root The root of the parse tree of a program
+     * @return The variables that the identifiers of the program refer to, in the order of their first use
+     */
+    public static Collection<Variable> variables(ParseNode root) {
+        Set<Variable> variables = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayList<Variable> ordered = new ArrayList<>();
+        ArrayDeque<ParseNode> nodes = new ArrayDeque<>();
+        nodes.push(root);
+        while (!nodes.isEmpty()) {
+            ParseNode node = nodes.pop();
+            if (node.variable != null && variables.add(node.variable))
+                ordered.add(node.variable);
+            for (int i = node.children.size() - 1; i >= 0; i--)
+                nodes.push(node.children.get(i));
+        }
+        return ordered;
+    }
+
+    /**
+     * The table of strings of an artifact that is being written, where every string is only once
+     */
+    private static class StringTable {
+        final ArrayList<byte[]> strings = new ArrayList<>();
+        final HashMap<String, Integer> indexes = new HashMap<>();
+
+        /**
+         * @return The index of a string in the table, or -1 for null
+         */
+        int string(String value) {
+            if (value == null)
+                return -1;
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value.getBytes(StandardCharsets.UTF_8));
+                indexes.put(value, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * The bytes of a section that is being written
+     */
+    private static class SectionWriter {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(data);
+
+        void intValue(int value) throws IOException {
+
+            out.writeInt(value);
+        }
+
+        void longValue(long value) throws IOException {
+
+            out.writeLong(value);
+        }
+
+        /**
+         * Writes the length of an array and its values
+         */
+        void ints(int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int value : values)
+                out.writeInt(value);
+        }
+
+        /**
+         * @return The bytes of the section, which are then removed
+         */
+        byte[] bytes() throws IOException {
+            out.flush();
+            byte[] bytes = data.toByteArray();
+            data.reset();
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,671 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks of the compiler and of the execution back-ends. Every benchmark is run a few times to warm up, and then
+ * timed over a number of runs. The bytes that a run allocates are measured as well, where the JVM supports it.
+ *
+ * Usage: java Benchmark [name of benchmark ...]   (all of them if none is given)
+ */
+public class Benchmark {
+
+    /*The number of warm up and timed runs of every benchmark*/
+    private static final int WARMUP_RUNS = 5;
+    private static final int TIMED_RUNS = 10;
+
+    /**
+     * A single run of a benchmark
+     */
+    interface Run {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] names = args.length > 0 ? args : new String[] {"vm", "jvm", "fold", "loops", "integral", "strings", "io", "startup", "reparse", "sources", "pipeline", "parallel", "reuse", "expressions"};
+        for (String name : names) {
+            switch (name) {
+                case "vm": vm(); break;
+                case "jvm": jvm(); break;
+                case "fold": fold(); break;
+                case "loops": loops(); break;
+                case "integral": integral(); break;
+                case "strings": strings(); break;
+                case "io": io(); break;
+                case "startup": startup(); break;
+                case "reparse": reparse(); break;
+                case "sources": sources(); break;
+                case "pipeline": pipeline(); break;
+                case "parallel": parallel(); break;
+                case "reuse": reuse(); break;
+                case "expressions": expressions(); break;
+                default: System.err.println("unknown benchmark: " + name);
+            }
+        }
+    }
+
+    /*Loop-heavy programs, which read the number of iterations of their outer loop*/
+    private static final String COUNTER_LOOP = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  i := 0 ; sum := 0 ;\n" +
+            "  while i < n loop\n" +
+            "    sum := sum + i * 2 - 1 ;\n" +
+            "    i := i + 1\n" +
+            "  end loop ;\n" +
+            "  call put(sum)\n" +
+            "end\n";
+    private static final String NESTED_FOR = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  total := 0 ;\n" +
+            "  for( i := 0; i < n; i := i + 1 ) do\n" +
+            "    for( j := 0; j < 1000; j := j + 1 ) do\n" +
+            "      total := total + i * j / 7\n" +
+            "    end loop\n" +
+            "  end loop ;\n" +
+            "  call put(total)\n" +
+            "end\n";
+    private static final String CONSTANT_LOOP = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  scale := 4 ; offset := 2 * 3 + 4 ; debug := 0 ;\n" +
+            "  i := 0 ; sum := 0 ;\n" +
+            "  while i < n loop\n" +
+            "    sum := sum + i * (scale * 2 + offset) - offset / 5 * scale ;\n" +
+            "    if debug > 0 then call put(sum) end if ;\n" +
+            "    i := i + 1\n" +
+            "  end loop ;\n" +
+            "  call put(sum)\n" +
+            "end\n";
+    private static final String NESTED_INVARIANT = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  width := 0 ; width := n / 10 ; scale := 0 ; total := 0 ;\n" +
+            "  for( i := 0; i < n; i := i + 1 ) do\n" +
+            "    row := i * 1000 ;\n" +
+            "    for( j := 0; j < 1000; j := j + 1 ) do\n" +
+            "      scale := width * 3 + 1 ;\n" +
+            "      offset := j * 8 ;\n" +
+            "      total := total + row + offset + scale\n" +
+            "    end loop\n" +
+            "  end loop ;\n" +
+            "  call put(total)\n" +
+            "end\n";
+    private static final String INTEGRAL_COUNTER = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  i := 0 ; sum := 0 ; limit := 0 ;\n" +
+            "  do\n" +
+            "    sum := sum + i * 3 - 1 ;\n" +
+            "    i := i + 1 ;\n" +
+            "    limit := limit + 1\n" +
+            "  until limit >= 10000000 ;\n" +
+            "  call put(sum, n)\n" +
+            "end\n";
+    private static final String APPEND_LOOP = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  word := \"word\" ; text := \"\" ; i := 0 ;\n" +
+            "  while i < n loop\n" +
+            "    text := text + word ;\n" +
+            "    i := i + 1\n" +
+            "  end loop ;\n" +
+            "  call put(text)\n" +
+            "end\n";
+    private static final String ECHO_LOOP = "begin\n" +
+            "  n := 0 ; call get(n) ;\n" +
+            "  i := 0 ; x := 0 ;\n" +
+            "  while i < n loop\n" +
+            "    call get(x) ;\n" +
+            "    call put(x, i) ;\n" +
+            "    i := i + 1\n" +
+            "  end loop\n" +
+            "end\n";
+    private static final int LOOP_ITERATIONS = 10_000_000;
+    private static final int IO_NUMBERS = 1_000_000;
+
+    /**
+     * Execution of loop-heavy programs on the VirtualMachine
+     */
+    private static void vm() throws Exception {
+        runVM("vm/counter-loop", COUNTER_LOOP, LOOP_ITERATIONS, LOOP_ITERATIONS);
+        runVM("vm/nested-for", NESTED_FOR, LOOP_ITERATIONS / 1000, LOOP_ITERATIONS);
+    }
+
+    /**
+     * Execution of loop-heavy programs compiled to JVM classes
+     */
+    private static void jvm() throws Exception {
+        runJVM("jvm/counter-loop", COUNTER_LOOP, LOOP_ITERATIONS, LOOP_ITERATIONS);
+        runJVM("jvm/nested-for", NESTED_FOR, LOOP_ITERATIONS / 1000, LOOP_ITERATIONS);
+    }
+
+    /**
+     * Execution of a program with constant expressions and a dead branch in its loop on the VirtualMachine, with and
+     * without the ConstantFolder
+     */
+    private static void fold() throws Exception {
+        runVM("fold/off", CONSTANT_LOOP, LOOP_ITERATIONS, LOOP_ITERATIONS);
+        ParseNode root = Execute.parse(sourceFile(CONSTANT_LOOP), false);
+        System.out.println(ConstantFolder.fold(root));
+        runVM("fold/on", root, LOOP_ITERATIONS, LOOP_ITERATIONS);
+    }
+
+    /**
+     * Execution of nested loops with invariant assignments and multiplications of their counters, with and without
+     * the LoopOptimiser, on both back-ends
+     */
+    private static void loops() throws Exception {
+        runVM("loops/vm-off", NESTED_INVARIANT, LOOP_ITERATIONS / 1000, LOOP_ITERATIONS);
+        runVM("loops/vm-on", optimised(NESTED_INVARIANT), LOOP_ITERATIONS / 1000, LOOP_ITERATIONS);
+        runJVM("loops/jvm-off", NESTED_INVARIANT, LOOP_ITERATIONS / 1000, LOOP_ITERATIONS);
+        runJVM("loops/jvm-on", optimised(NESTED_INVARIANT), LOOP_ITERATIONS / 1000, LOOP_ITERATIONS);
+    }
+
+    /**
+     * Execution of counter-driven loops with doubles only, and with longs for the variables that NumberInference
+     * proves integral, on both back-ends. The counter of the second program is compared with a constant, so that its
+     * test is on longs as well. Both variants of a program run in the same dispatch loop of the VirtualMachine, whose
+     * profile favours the variant that is measured first
+     */
+    private static void integral() throws Exception {
+        ParseNode counter = Execute.parse(sourceFile(COUNTER_LOOP), false);
+        Set<Variable> integral = NumberInference.integral(counter);
+        runVM("integral/vm-double", counter, LOOP_ITERATIONS, LOOP_ITERATIONS);
+        runVM("integral/vm-long", counter, integral, LOOP_ITERATIONS, LOOP_ITERATIONS);
+        runJVM("integral/jvm-double", counter, LOOP_ITERATIONS, LOOP_ITERATIONS);
+        runJVM("integral/jvm-long", counter, integral, LOOP_ITERATIONS, LOOP_ITERATIONS);
+
+        ParseNode constant = Execute.parse(sourceFile(INTEGRAL_COUNTER), false);
+        integral = NumberInference.integral(constant);
+        runVM("integral/vm-double-bound", constant, 0, LOOP_ITERATIONS);
+        runVM("integral/vm-long-bound", constant, integral, 0, LOOP_ITERATIONS);
+        runJVM("integral/jvm-double-bound", constant, 0, LOOP_ITERATIONS);
+        runJVM("integral/jvm-long-bound", constant, integral, 0, LOOP_ITERATIONS);
+    }
+
+    /**
+     * Execution of loops that append to a string thousands of times, on both back-ends. The time of an append does
+     * not depend on the length of the string, as the string is a Rope until it is written
+     */
+    private static void strings() throws Exception {
+        for (int appends : new int[] {1_000, 10_000, 100_000}) {
+            runVM("strings/vm-" + appends, APPEND_LOOP, appends, appends);
+            runJVM("strings/jvm-" + appends, APPEND_LOOP, appends, appends);
+        }
+    }
+
+    /**
+     * Execution of a program that reads a million numbers and writes each of them back on a line of its own, on the
+     * VirtualMachine, with the input and output in memory and in files
+     */
+    private static void io() throws Exception {
+        StringBuilder input = new StringBuilder().append(IO_NUMBERS);
+        for (int i = 0; i < IO_NUMBERS; i++)
+            input.append(i % 8 == 0 ? '\n' : ' ').append(i * 37 % 100_003).append(i % 3 == 0 ? ".25" : "");
+        final String text = input.toString();
+        final VirtualMachine vm = new VirtualMachine(BytecodeCompiler.compile(
+                Execute.parse(sourceFile(ECHO_LOOP), false)));
+        measure("io/memory", IO_NUMBERS, "number", () -> vm.run(programIO(text)));
+
+        final Path in = Files.createTempFile("benchmark", ".in"), out = Files.createTempFile("benchmark", ".out");
+        in.toFile().deleteOnExit();
+        out.toFile().deleteOnExit();
+        Files.write(in, text.getBytes());
+        measure("io/files", IO_NUMBERS, "number", () -> {
+            try (ProgramIO io = ProgramIO.files(in, out)) {
+                vm.run(io);
+            }
+        });
+    }
+
+    /**
+     * The time from a program of a growing number of statements to its Bytecode, when it is analysed and compiled,
+     * and when its Artifact is loaded
+     */
+    private static void startup() throws Exception {
+        for (int statements : new int[] {100, 1_000, 5_000}) {
+            StringBuilder program = new StringBuilder("begin\n  x := 0 ; text := \"text\" ;\n");
+            for (int i = 0; i < statements; i++)
+                program.append("  x := x * 3 + ").append(i).append(" ;\n");
+            final String file = sourceFile(program.append("  call put(x, text)\nend\n").toString());
+            measure("startup/source-" + statements, 1, "program",
+                    () -> BytecodeCompiler.compile(Execute.parse(file, false)));
+
+            ParseNode root = Execute.parse(file, false);
+            final Path artifact = Artifact.pathFor(Paths.get(file));
+            artifact.toFile().deleteOnExit();
+            Artifact.write(artifact, Paths.get(file), 0, Artifact.tokens(root), Artifact.variables(root),
+                    BytecodeCompiler.compile(root));
+            measure("startup/artifact-" + statements, 1, "program", () -> Artifact.map(artifact).bytecode());
+        }
+    }
+
+    /*The number of small programs that every run of the sources benchmark compiles*/
+    private static final int SMALL_PROGRAMS = 1_000;
+
+    /**
+     * Many small programs compiled to Bytecode from the text that a service holds in memory: written to a temporary
+     * file that the compiler reads, against analysed from memory as a String, a char[], the bytes of a ByteBuffer and
+     * a Reader
+     */
+    private static void sources() throws Exception {
+        final String[] sources = new String[SMALL_PROGRAMS];
+        final char[][] chars = new char[SMALL_PROGRAMS][];
+        final ByteBuffer[] bytes = new ByteBuffer[SMALL_PROGRAMS];
+        for (int i = 0; i < SMALL_PROGRAMS; i++) {
+            sources[i] = smallProgram(i);
+            chars[i] = sources[i].toCharArray();
+            bytes[i] = ByteBuffer.wrap(sources[i].getBytes());
+        }
+
+        measure("sources/temp-file", SMALL_PROGRAMS, "program", () -> {
+            for (String source : sources) {
+                File file = File.createTempFile("benchmark", ".prog");
+                try {
+                    try (Writer writer = new FileWriter(file)) {
+                        writer.write(source);
+                    }
+                    BytecodeCompiler.compile(Execute.parse(file.getPath(), false));
+                }
+                finally {
+                    file.delete();
+                }
+            }
+        });
+        measure("sources/string", SMALL_PROGRAMS, "program", () -> {
+            for (String source : sources)
+                BytecodeCompiler.compile(Execute.parse("benchmark", source, false));
+        });
+        measure("sources/char-array", SMALL_PROGRAMS, "program", () -> {
+            for (char[] source : chars)
+                BytecodeCompiler.compile(tree(SyntaxAnalyser.of("benchmark", source)));
+        });
+        measure("sources/byte-buffer", SMALL_PROGRAMS, "program", () -> {
+            for (ByteBuffer source : bytes)
+                BytecodeCompiler.compile(tree(SyntaxAnalyser.of("benchmark", source)));
+        });
+        measure("sources/reader", SMALL_PROGRAMS, "program", () -> {
+            for (String source : sources)
+                BytecodeCompiler.compile(tree(new SyntaxAnalyser("benchmark", new StringReader(source))));
+        });
+    }
+
+    /**
+     * @return A small program, of a few statements and a for-loop
+     */
+    static String smallProgram(int i) {
+        return "begin\n  n := " + i + " ; total := 0 ; text := \"program " + i + "\" ;\n" +
+                "  for( k := 0; k < n; k := k + 1 ) do\n" +
+                "    if k > 10 then total := total + k * 2 else total := total - 1 end if\n" +
+                "  end loop ;\n" +
+                "  call put(text, total)\nend\n";
+    }
+
+    /**
+     * The analysis of many small programs (as Compile does) with a new Syntax Analyser, Lexical Analyser and code
+     * generator for every program, and with a single one of each that is reset for every program, from memory and
+     * from files
+     */
+    private static void reuse() throws Exception {
+        final String[] sources = new String[SMALL_PROGRAMS];
+        final String[] files = new String[SMALL_PROGRAMS];
+        long characters = 0;
+        for (int i = 0; i < SMALL_PROGRAMS; i++) {
+            sources[i] = smallProgram(i);
+            files[i] = sourceFile(sources[i]);
+            characters += sources[i].length();
+        }
+        System.out.println("reuse: " + SMALL_PROGRAMS + " programs of " + characters / SMALL_PROGRAMS + " characters");
+        measure("reuse/new-analysers", SMALL_PROGRAMS, "program", () -> {
+            for (String source : sources)
+                new SyntaxAnalyser("benchmark", source).analyse(new QuietGenerate());
+        });
+        final SyntaxAnalyser analyser = new SyntaxAnalyser("benchmark", "");
+        final QuietGenerate generate = new QuietGenerate();
+        measure("reuse/reset-analyser", SMALL_PROGRAMS, "program", () -> {
+            for (String source : sources) {
+                analyser.reset("benchmark", source);
+                generate.reset();
+                analyser.analyse(generate);
+            }
+        });
+        measure("reuse/new-analysers-files", SMALL_PROGRAMS, "program", () -> {
+            for (String file : files)
+                new SyntaxAnalyser(file).analyse(new QuietGenerate());
+        });
+        measure("reuse/reset-analyser-files", SMALL_PROGRAMS, "program", () -> {
+            for (String file : files) {
+                analyser.reset(file);
+                generate.reset();
+                analyser.analyse(generate);
+            }
+        });
+    }
+
+    /*The number of statements of the program of long expressions, and the number of operands of each expression*/
+    private static final int EXPRESSION_STATEMENTS = 250;
+    private static final int EXPRESSION_OPERANDS = 120;
+
+    /**
+     * The analysis of a program of long arithmetic expressions, with each mode of the expressions of the Syntax
+     * Analyser, without the trace, and the size of the trace of each of them
+     */
+    private static void expressions() throws Exception {
+        StringBuilder program = new StringBuilder("begin\n  a := 1 ; b := 2 ;\n");
+        // (the statement list nests, so the trace of a statement is indented by the statements before it)
+        Random random = new Random(7);
+        for (int i = 0; i < EXPRESSION_STATEMENTS; i++) {
+            program.append("  x := a");
+            for (int k = 1; k < EXPRESSION_OPERANDS; k++) {
+                program.append(" +-*/".charAt(1 + random.nextInt(4))).append(' ');
+                program.append(k % 7 == 0 ? "(b - " + k + ")" : k % 2 == 0 ? "a" : String.valueOf(k));
+            }
+            program.append(" ;\n");
+        }
+        final String source = program.append("  call put(x)\nend\n").toString();
+        final long operands = (long) EXPRESSION_STATEMENTS * EXPRESSION_OPERANDS;
+        System.out.println("expressions: " + EXPRESSION_STATEMENTS + " expressions of " + EXPRESSION_OPERANDS
+                + " operands");
+
+        final SyntaxAnalyser analyser = new SyntaxAnalyser("benchmark", "");
+        final QuietGenerate generate = new QuietGenerate();
+        for (final SyntaxAnalyser.ExpressionMode mode : SyntaxAnalyser.ExpressionMode.values()) {
+            analyser.setExpressionMode(mode);
+            String name = "expressions/" + mode.name().toLowerCase();
+            measure(name, operands, "operand", () -> {
+                analyser.reset("benchmark", source);
+                generate.reset();
+                analyser.analyse(generate);
+            });
+
+            final long[] trace = new long[1];
+            PrintStream stdout = System.out;
+            System.setOut(new PrintStream(new OutputStream() {
+
+                @Override
+                public void write(int b) {
+                    trace[0]++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    trace[0] += len;
+                }
+            }));
+            try {
+                analyser.reset("benchmark", source);
+                analyser.analyse(new Generate());
+            }
+            finally {
+                System.setOut(stdout);
+            }
+            System.out.println(String.format("%-35s %12d bytes of trace", name, trace[0]));
+        }
+    }
+
+    /**
+     * @return The parse tree of the program of a Syntax Analyser
+     */
+    private static ParseNode tree(SyntaxAnalyser analyser) throws Exception {
+        TreeGenerate tree = new TreeGenerate(false);
+        analyser.analyse(tree);
+        return tree.getRoot();
+    }
+
+    /*The number of lines of the program that is edited, and the number of edits of every run*/
+    private static final int EDITED_LINES = 10_000;
+    private static final int EDITS = 200;
+
+    /**
+     * @return A program of about the given number of lines, of for-loops with a few statements in their bodies
+     */
+    static String loops(int lines) {
+        StringBuilder program = new StringBuilder("begin\n  total := 0 ; count := 0 ;\n");
+        for (int loop = 0, line = 4; line < lines; loop++, line += 27) { // the lines of a loop
+            program.append("  for( i := 0; i < ").append(loop % 90 + 10).append("; i := i + 1 ) do\n");
+            for (int k = 0; k < 6; k++) {
+                program.append("    total := total + i * ").append(loop + k).append(" - 7 ;\n")
+                        .append("    if total > 100000 then total := total - 100000 else count := count + 1 end if ;\n")
+                        .append("    while count > 50 loop count := count - ").append(k + 1).append(" end loop ;\n")
+                        .append("    label := \"line ").append(loop).append('.').append(k).append("\" ;\n");
+            }
+            program.append("    count := count + 1\n  end loop ;\n");
+        }
+        return program.append("  call put(total, count)\nend\n").toString();
+    }
+
+    /*The number of lines of the program that the pipeline benchmark analyses*/
+    private static final int PIPELINED_LINES = 50_000;
+
+    /**
+     * The analysis of a big file, with the lexer on the same thread as the Syntax Analyser, and on a thread of its
+     * own that is ahead of it
+     */
+    private static void pipeline() throws Exception {
+        final String file = sourceFile(loops(PIPELINED_LINES));
+        LexicalAnalyser lex = new LexicalAnalyser(file);
+        long tokens = 0;
+        while (lex.getNextToken().symbol != Token.eofSymbol)
+            tokens++;
+        measure("pipeline/single-thread", tokens, "token", () -> Execute.parse(file, false, false));
+        measure("pipeline/pipelined", tokens, "token", () -> Execute.parse(file, false, true));
+    }
+
+    /*The number of lines of the program that the parallel benchmark lexes*/
+    private static final int PARALLEL_LINES = 400_000;
+
+    /**
+     * Lexing a big text with a single LexicalAnalyser, and in chunks in parallel, also where strings span lines so
+     * that chunks start in them. The tokens of the two are compared before they are timed.
+     */
+    private static void parallel() throws Exception {
+        final String text = loops(PARALLEL_LINES);
+        final String spanning = text.replace("label := \"line ", "label := \"line\n");
+        for (String source : new String[] {text, spanning}) {
+            LexicalAnalyser lex = new LexicalAnalyser("benchmark", source);
+            ParallelLexer chunks = new ParallelLexer("benchmark", source);
+            Token token, other;
+            do {
+                token = lex.getNextToken();
+                other = chunks.getNextToken();
+                if (token.symbol != other.symbol || !token.textEquals(other.text)
+                        || token.lineNumber != other.lineNumber)
+                    throw new AssertionError("the parallel lexer differs at " + token);
+            } while (token.symbol != Token.eofSymbol);
+        }
+        LexicalAnalyser lex = new LexicalAnalyser("benchmark", text);
+        long tokens = 0;
+        while (lex.getNextToken().symbol != Token.eofSymbol)
+            tokens++;
+        System.out.println("parallel: " + text.length() + " characters in " + new ParallelLexer("benchmark", text)
+                .getChunkCount() + " chunks, on " + ForkJoinPool.getCommonPoolParallelism() + " threads");
+        measure("parallel/sequential", tokens, "token", () -> drain(new LexicalAnalyser("benchmark", text)));
+        measure("parallel/parallel", tokens, "token", () -> drain(new ParallelLexer("benchmark", text)));
+        measure("parallel/spanning-strings", tokens, "token", () -> drain(new ParallelLexer("benchmark", spanning)));
+    }
+
+    private static void drain(TokenSource tokens) throws IOException {
+        while (tokens.getNextToken().symbol != Token.eofSymbol)
+            ;
+    }
+
+    /**
+     * Single character edits of a program of 10,000 lines, which the IncrementalAnalyser analyses again after every
+     * edit (and again after it is undone), against an analysis of the whole program. The trees are compared with
+     * those of a full analysis after every edit before they are timed.
+     */
+    private static void reparse() throws Exception {
+        final String source = loops(EDITED_LINES);
+        measure("reparse/full", 1, "program", () -> {
+            TreeGenerate tree = new TreeGenerate(false);
+            new SyntaxAnalyser("benchmark", source).analyse(tree);
+        });
+
+        // The offsets of the digits of numbers, of the letters of strings and of the spaces between tokens
+        List<Integer> digits = new ArrayList<>(), letters = new ArrayList<>(), spaces = new ArrayList<>();
+        boolean inString = false;
+        for (int i = 1; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '"')
+                inString = !inString;
+            else if (inString && Character.isLetter(c))
+                letters.add(i);
+            else if (!inString && Character.isDigit(c) && !Character.isLetter(source.charAt(i - 1)))
+                digits.add(i);
+            else if (!inString && c == ' ' && source.charAt(i - 1) != ' ')
+                spaces.add(i);
+        }
+        final IncrementalAnalyser document = new IncrementalAnalyser("benchmark", source);
+        document.analyse();
+        editBenchmark("reparse/edit-number", document, digits, c -> (char) ('0' + (c - '0' + 1) % 10));
+        editBenchmark("reparse/edit-string", document, letters, c -> c == 'z' ? 'a' : (char) (c + 1));
+        editBenchmark("reparse/insert-space", document, spaces, null);
+    }
+
+    /**
+     * The replacement of a character of an edit
+     */
+    interface Replacement {
+        char of(char c);
+    }
+
+    /**
+     * Times single character edits at random offsets: a character is replaced and put back, or (if there is no
+     * replacement) a space is inserted and removed again
+     */
+    private static void editBenchmark(String name, final IncrementalAnalyser document, List<Integer> offsets,
+                                      final Replacement replacement) throws Exception {
+        Random random = new Random(EDITS);
+        final int[] chosen = new int[EDITS];
+        for (int i = 0; i < EDITS; i++)
+            chosen[i] = offsets.get(random.nextInt(offsets.size()));
+        Run run = () -> {
+            for (int offset : chosen) {
+                if (replacement == null) {
+                    document.edit(offset, offset, " ");
+                    document.edit(offset, offset + 1, "");
+                }
+                else {
+                    char c = document.getText().charAt(offset);
+                    document.edit(offset, offset + 1, String.valueOf(replacement.of(c)));
+                    document.edit(offset, offset + 1, String.valueOf(c));
+                }
+            }
+        };
+
+        for (int i = 0; i < 10; i++) { // the edits give the same trees as a full analysis
+            int offset = chosen[i];
+            char c = document.getText().charAt(offset);
+            document.edit(offset, offset + 1, replacement == null ? " " + c : String.valueOf(replacement.of(c)));
+            TreeGenerate tree = new TreeGenerate(false);
+            new SyntaxAnalyser("benchmark", document.getText()).analyse(tree);
+            if (!document.getRoot().sameAs(tree.getRoot()))
+                throw new IllegalStateException(name + ": the tree differs from that of a full analysis");
+            document.edit(offset, offset + (replacement == null ? 2 : 1), String.valueOf(c));
+        }
+        measure(name, 2 * EDITS, "edit", run);
+    }
+
+    /**
+     * @return The parse tree of a program, after the ConstantFolder and the LoopOptimiser
+     */
+    private static ParseNode optimised(String source) throws Exception {
+        ParseNode root = Execute.parse(sourceFile(source), false);
+        ConstantFolder.fold(root);
+        LoopOptimiser.optimise(root);
+        return root;
+    }
+
+    private static void runVM(String name, String source, int input, long iterations) throws Exception {
+
+        runVM(name, Execute.parse(sourceFile(source), false), input, iterations);
+    }
+
+    private static void runVM(String name, ParseNode root, int input, long iterations) throws Exception {
+
+        runVM(name, root, Collections.emptySet(), input, iterations);
+    }
+
+    private static void runVM(String name, ParseNode root, Set<Variable> integral, int input, long iterations)
+            throws Exception {
+        final VirtualMachine vm = new VirtualMachine(BytecodeCompiler.compile(root, integral));
+        final String text = Integer.toString(input);
+        measure(name, iterations, "iteration", () -> vm.run(programIO(text)));
+    }
+
+    private static void runJVM(String name, String source, int input, long iterations) throws Exception {
+
+        runJVM(name, Execute.parse(sourceFile(source), false), input, iterations);
+    }
+
+    private static void runJVM(String name, ParseNode root, int input, long iterations) throws Exception {
+
+        runJVM(name, root, Collections.emptySet(), input, iterations);
+    }
+
+    private static void runJVM(String name, ParseNode root, Set<Variable> integral, int input, long iterations)
+            throws Exception {
+        final CompiledProgram program = new ProgramClassLoader().define("Benchmark_jvm",
+                JvmCompiler.compile(root, "Benchmark_jvm", integral));
+        final String text = Integer.toString(input);
+        measure(name, iterations, "iteration", () -> program.run(programIO(text)));
+    }
+
+    /**
+     * Times a benchmark and prints the results
+     * @param name The name of the benchmark
+     * @param units The number of units of work in every run (i.e. loop iterations)
+     * @param unit The name of a unit of work
+     * @param run A single run of the benchmark
+     */
+    static void measure(String name, long units, String unit, Run run) throws Exception {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            run.run();
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_RUNS; i++)
+            run.run();
+        long elapsed = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+
+        System.out.println(String.format("%-28s %12.2f ms/run %10.2f ns/%s %12d bytes/run", name,
+                elapsed / 1e6 / TIMED_RUNS, (double) elapsed / TIMED_RUNS / units, unit, allocated / TIMED_RUNS));
+    }
+
+    /**
+     * @return The bytes that the current thread has allocated so far, or 0 if the JVM does not measure them
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    /**
+     * @return The input and output of a program that reads the given text and whose output is discarded
+     */
+    static ProgramIO programIO(String input) {
+
+        return new ProgramIO(new ByteArrayInputStream(input.getBytes()), new ByteArrayOutputStream());
+    }
+
+    /**
+     * Writes the source of a program to a temporary file, which is deleted when the JVM exits
+     * @return The name of the file
+     */
+    static String sourceFile(String source) throws IOException {
+        File file = File.createTempFile("benchmark", ".prog");
+        file.deleteOnExit();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(source);
+        }
+        return file.getPath();
+    }
+}
@@ -0,0 +1,424 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds the units of a folder. Every file of the folder is a unit: a program that may declare procedures (and that
+ * may have no statements of its own), and call the procedures of other units. The tokens of a unit are scanned for
+ * the procedures that it declares and calls, and a unit depends on the units that declare the procedures that it
+ * calls. The units are analysed in the order of their dependencies, on a pool of threads: a unit as soon as the units
+ * that it depends on are built, with their interfaces (the procedures that they declare, see SyntaxAnalyser.setImports).
+ * Units that depend on each other, in a cycle, fail, as do the units that depend on them.
+ * The build keeps a summary of every unit in the folder .build of the folder: the hash of its source, the procedures
+ * that it declares and calls, the hashes of the interfaces of the units that it depends on, and its own interface,
+ * with its trace and its result. A unit whose source did not change, and whose dependencies have the same interfaces
+ * as when it was analysed, is not analysed again, so the time of a build depends on the units that changed (and on
+ * those that depend on a unit whose interface changed), rather than on all of them.
+ * The traces of the units are written to output.txt and their results to res.txt, in the order of their names.
+ *
+ * Usage: java Compile -build [folder]   (the folder is "Programs Folder" if none is given)
+ */
+public class BuildScheduler {
+
+    /*The folder in the folder of the units that keeps the state of the build*/
+    public static final String STATE = ".build";
+
+    private final Path folder;
+    private final Path state;
+    private final int threads;
+
+    /*The stream that the trace of the current thread goes to, and the analyser of each thread*/
+    private final ThreadLocal<OutputStream> trace = new ThreadLocal<>();
+    private final ThreadLocal<Compiler> compilers = ThreadLocal.withInitial(Compiler::new);
+
+    /**
+     * @param folder The folder of the units
+     * @param threads The number of threads to analyse the units on
+     */
+    public BuildScheduler(Path folder, int threads) {
+        this.folder = folder;
+        this.state = folder.resolve(STATE);
+        this.threads = threads;
+    }
+
+    /**
+     * The analyser, the code generator and the budget of a thread
+     */
+    private static final class Compiler {
+
+        SyntaxAnalyser analyser;
+        final Generate generate = new Generate();
+        final CompilationBudget budget = CompilationBudget.fromProperties();
+    }
+
+    /**
+     * A unit of the build, with its summary
+     */
+    private static final class Unit {
+
+        final String name;
+        final String fileName;
+        /*The text of the unit, if its source changed since the last build (and it has not been analysed yet)*/
+        CharSequence text;
+
+        /*The summary: the hash of the source, the procedures that the unit declares and calls, the units that it
+        * depends on with the hashes of their interfaces, and its interface*/
+        String source;
+        List<String> declares = new ArrayList<>();
+        List<String> calls = new ArrayList<>();
+        LinkedHashMap<String, String> depends = new LinkedHashMap<>();
+        List<Procedure> procedures = new ArrayList<>();
+
+        /*The units that the unit depends on in this build, and whether it was analysed in this build*/
+        final List<Unit> dependencies = new ArrayList<>();
+        boolean analysed;
+
+        Unit(String name, String fileName) {
+            this.name = name;
+            this.fileName = fileName;
+        }
+
+        /**
+         * @return The hash of the interface of the unit
+         */
+        String interfaceHash() {
+            StringBuilder lines = new StringBuilder();
+            for (Procedure procedure : procedures)
+                lines.append(procedure).append('\n');
+            return hash(lines.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Builds the units of the folder
+     */
+    public void build() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(state);
+        List<Unit> units = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(".") && !name.endsWith(".spa") && Files.isRegularFile(file))
+                    units.add(new Unit(name, folder.resolve(name).toString()));
+            }
+        }
+        units.sort(Comparator.comparing(unit -> unit.name));
+
+        // the procedures that the units declare and call, from their summaries if their sources did not change
+        Map<String, Unit> declaring = new HashMap<>();
+        for (Unit unit : units) {
+            byte[] bytes = Files.readAllBytes(Paths.get(unit.fileName));
+            String source = hash(bytes);
+            if (!load(unit) || !source.equals(unit.source)) {
+                unit.source = source;
+                unit.text = Charset.defaultCharset().decode(ByteBuffer.wrap(bytes));
+                scan(unit);
+            }
+            for (String procedure : unit.declares) {
+                Unit other = declaring.putIfAbsent(procedure, unit);
+                if (other != null && other != unit)
+                    System.err.println("procedure " + procedure + " is declared by " + other.name + " and "
+                            + unit.name + ": the calls of other units call that of " + other.name);
+            }
+        }
+        for (Unit unit : units) {
+            for (String procedure : unit.calls) {
+                Unit dependency = declaring.get(procedure);
+                if (dependency != null && dependency != unit && !unit.dependencies.contains(dependency)
+                        && !unit.declares.contains(procedure))
+                    unit.dependencies.add(dependency);
+            }
+        }
+
+        PrintStream stdout = System.out;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.setOut(new PrintStream(new OutputStream() { // the code generator prints the trace
+
+            @Override
+            public void write(int b) throws IOException {
+                trace.get().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                trace.get().write(b, off, len);
+            }
+        }));
+        try {
+            schedule(units, pool).get();
+        }
+        catch (ExecutionException e) {
+            throw new IOException("unable to build " + folder, e.getCause());
+        }
+        finally {
+            System.setOut(stdout);
+            pool.shutdownNow();
+        }
+
+        write(units);
+        int analysed = 0;
+        for (Unit unit : units)
+            analysed += unit.analysed ? 1 : 0;
+        stdout.println("analysed " + analysed + " of " + units.size() + " units in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms, on " + threads + " threads");
+    }
+
+    /**
+     * Builds every unit on the pool, once the units that it depends on are built. The units that are left when
+     * no unit can be built any more depend on each other, or on units that do, and they fail.
+     * @return A future that completes when all the units are built
+     */
+    private CompletableFuture<Void> schedule(List<Unit> units, ExecutorService pool) throws IOException {
+        Map<Unit, CompletableFuture<Void>> built = new HashMap<>();
+        List<Unit> left = new ArrayList<>(units);
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Iterator<Unit> i = left.iterator(); i.hasNext(); ) {
+                Unit unit = i.next();
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (Unit dependency : unit.dependencies)
+                    dependencies.add(built.get(dependency));
+                if (dependencies.contains(null))
+                    continue;
+                built.put(unit, CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                        .thenRunAsync(() -> build(unit), pool));
+                i.remove();
+                progress = true;
+            }
+        }
+        StringBuilder cycle = new StringBuilder();
+        for (Unit unit : left)
+            cycle.append(cycle.length() == 0 ? "" : ", ").append(unit.name);
+        for (Unit unit : left) {
+            fail(unit, "it depends on units that depend on each other: " + cycle);
+            built.put(unit, CompletableFuture.completedFuture(null));
+        }
+        return CompletableFuture.allOf(built.values().toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Builds a unit, on a thread of the pool: it is analysed with the interfaces of the units that it depends on,
+     * unless its source and those interfaces did not change since it was analysed
+     */
+    private void build(Unit unit) {
+        LinkedHashMap<String, String> depends = new LinkedHashMap<>();
+        List<Procedure> imports = new ArrayList<>();
+        for (Unit dependency : unit.dependencies) {
+            depends.put(dependency.name, dependency.interfaceHash());
+            imports.addAll(dependency.procedures);
+        }
+        if (unit.text == null && depends.equals(unit.depends) && Files.exists(path(unit, ".trace"))
+                && Files.exists(path(unit, ".res")))
+            return; // neither the unit nor the interfaces that it was analysed with changed
+
+        Compiler compiler = compilers.get();
+        ByteArrayOutputStream section = new ByteArrayOutputStream(), result = new ByteArrayOutputStream();
+        PrintStream header = new PrintStream(section);
+        header.println();
+        header.println("rggFILE " + unit.fileName);
+        header.flush();
+        trace.set(compiler.budget != null ? compiler.budget.count(section) : section);
+        PrintStream ps = new PrintStream(result);
+        try {
+            CharSequence text = unit.text != null ? unit.text
+                    : new String(Files.readAllBytes(Paths.get(unit.fileName)), Charset.defaultCharset());
+            if (compiler.analyser == null) {
+                compiler.analyser = new SyntaxAnalyser(unit.fileName, text);
+                compiler.analyser.setBudget(compiler.budget);
+            }
+            else
+                compiler.analyser.reset(unit.fileName, text);
+            compiler.analyser.setImports(imports);
+            compiler.analyser.parse(ps, compiler.generate);
+            unit.procedures = new ArrayList<>(compiler.analyser.getProcedures());
+        }
+        catch (IOException | RuntimeException | StackOverflowError e) {
+            compiler.analyser = null; // it is made again for the next unit
+            unit.procedures = new ArrayList<>();
+            ps.println(unit.fileName);
+            ps.println("Compiler Failure");
+            ps.println("\tunable to compile it: " + e);
+            ps.println("STOP\n");
+        }
+        finally {
+            trace.remove();
+        }
+        ps.flush();
+        unit.depends = depends;
+        unit.text = null;
+        unit.analysed = true;
+        try {
+            save(unit, section.toByteArray(), result.toByteArray());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Fails a unit without analysing it
+     * @param reason Why it fails
+     */
+    private void fail(Unit unit, String reason) throws IOException {
+        ByteArrayOutputStream section = new ByteArrayOutputStream(), result = new ByteArrayOutputStream();
+        PrintStream header = new PrintStream(section);
+        header.println();
+        header.println("rggFILE " + unit.fileName);
+        header.flush();
+        PrintStream ps = new PrintStream(result);
+        ps.println(unit.fileName);
+        ps.println("Build Failure");
+        ps.println("\t" + reason);
+        ps.println("STOP\n");
+        ps.flush();
+        unit.procedures = new ArrayList<>();
+        unit.depends = new LinkedHashMap<>();
+        unit.text = null;
+        save(unit, section.toByteArray(), result.toByteArray());
+    }
+
+    /**
+     * Finds the procedures that a unit declares and calls (other than get and put), from its tokens
+     */
+    private static void scan(Unit unit) throws IOException {
+        unit.declares = new ArrayList<>();
+        unit.calls = new ArrayList<>();
+        LexicalAnalyser lex = new LexicalAnalyser(unit.fileName, unit.text);
+        int previous = Token.eofSymbol;
+        for (Token token = lex.getNextToken(); token.symbol != Token.eofSymbol; token = lex.getNextToken()) {
+            if (token.symbol == Token.identifier && previous == Token.procedureSymbol)
+                unit.declares.add(token.getText());
+            else if (token.symbol == Token.identifier && previous == Token.callSymbol && !token.textEquals("get")
+                    && !token.textEquals("put") && !unit.calls.contains(token.getText()))
+                unit.calls.add(token.getText());
+            previous = token.symbol;
+        }
+    }
+
+    /**
+     * Reads the summary of a unit from the last build
+     * @return true if there is one
+     */
+    private boolean load(Unit unit) throws IOException {
+        Path summary = path(unit, ".spi");
+        if (!Files.exists(summary))
+            return false;
+        try {
+            for (String line : Files.readAllLines(summary, StandardCharsets.UTF_8)) {
+                String[] words = line.split(" ");
+                switch (words[0]) {
+                    case "source": unit.source = words[1]; break;
+                    case "declares": unit.declares.addAll(Arrays.asList(words).subList(1, words.length)); break;
+                    case "calls": unit.calls.addAll(Arrays.asList(words).subList(1, words.length)); break;
+                    case "depends": unit.depends.put(words[1], words[2]); break;
+                    case "procedure": unit.procedures.add(Procedure.parse(line)); break;
+                    default: throw new IllegalArgumentException(line);
+                }
+            }
+            return unit.source != null;
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            unit.declares.clear();
+            unit.calls.clear();
+            unit.depends.clear();
+            unit.procedures.clear();
+            return false; // it is analysed again, and the summary written again
+        }
+    }
+
+    /**
+     * Writes the trace, the result and then the summary of a unit
+     */
+    private void save(Unit unit, byte[] section, byte[] result) throws IOException {
+        List<String> summary = new ArrayList<>();
+        summary.add("source " + unit.source);
+        summary.add(String.join(" ", words("declares", unit.declares)));
+        summary.add(String.join(" ", words("calls", unit.calls)));
+        for (Map.Entry<String, String> dependency : unit.depends.entrySet())
+            summary.add("depends " + dependency.getKey() + " " + dependency.getValue());
+        for (Procedure procedure : unit.procedures)
+            summary.add(procedure.toString());
+        Files.write(path(unit, ".trace"), section);
+        Files.write(path(unit, ".res"), result);
+        Files.write(path(unit, ".spi"), summary, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the traces of the units to output.txt and their results to res.txt, and removes the state of the units
+     * that are not in the folder any more
+     */
+    private void write(List<Unit> units) throws IOException {
+        Set<String> names = new HashSet<>();
+        try (FileChannel output = open(Paths.get("output.txt")); FileChannel res = open(Paths.get("res.txt"))) {
+            output.write(StandardCharsets.UTF_8.encode("rggSTART" + System.lineSeparator()));
+            for (Unit unit : units) {
+                append(output, path(unit, ".trace"));
+                append(res, path(unit, ".res"));
+                names.add(unit.name);
+            }
+            output.write(StandardCharsets.UTF_8.encode(System.lineSeparator() + "rggFINISH" + System.lineSeparator()));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(state)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                if (dot > 0 && !names.contains(name.substring(0, dot)))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void append(FileChannel channel, Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long position = 0; position < size; )
+                position += in.transferTo(position, size - position, channel);
+        }
+    }
+
+    private Path path(Unit unit, String extension) {
+
+        return state.resolve(unit.name + extension);
+    }
+
+    private static List<String> words(String first, List<String> rest) {
+        List<String> words = new ArrayList<>();
+        words.add(first);
+        words.addAll(rest);
+        return words;
+    }
+
+    /**
+     * @return The SHA-256 hash of bytes, in hexadecimal
+     */
+    private static String hash(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return hex.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+}
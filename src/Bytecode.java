@@ -0,0 +1,116 @@
+/**
+ * A program compiled to the register-based instruction set of the VirtualMachine.
+ * Every instruction is encoded in "code" as its opcode, followed by its operands. An operand is either a number
+ * register, a string register, or the index of another instruction in "code" (the target of a jump).
+ * Constants live in registers of their own, which are set before the program starts, so that every instruction
+ * only reads and writes registers.
+ * The numbers that are known to be integral are kept in a third register file of longs, which has the same size as
+ * the one of doubles and uses the same register numbers. The operations on longs fail if their result is out of
+ * range (see Integral), and then the program goes on from the start of the same assignment in a second copy of
+ * the code, which only uses doubles. The deoptimisation table maps the assignments of the first copy to the second.
+ */
+public class Bytecode {
+
+    /*Opcodes*/
+    public static final int HALT = 0;     // stop the program
+    public static final int MOVE = 1;     // n[a] := n[b]
+    public static final int SMOVE = 2;    // s[a] := s[b]
+    public static final int ADD = 3;      // n[a] := n[b] + n[c]
+    public static final int SUB = 4;      // n[a] := n[b] - n[c]
+    public static final int MUL = 5;      // n[a] := n[b] * n[c]
+    public static final int DIV = 6;      // n[a] := n[b] / n[c]
+    public static final int CONCAT = 7;   // s[a] := s[b] + s[c]
+    public static final int SCMP = 8;     // n[a] := sign of the comparison of s[b] with s[c]
+    public static final int JUMP = 9;     // go to a
+    public static final int IFLT = 10;    // if n[a] < n[b] go to c
+    public static final int IFLE = 11;    // if n[a] <= n[b] go to c
+    public static final int IFEQ = 12;    // if n[a] = n[b] go to c
+    public static final int IFNE = 13;    // if n[a] /= n[b] go to c
+    public static final int IFGT = 14;    // if n[a] > n[b] go to c
+    public static final int IFGE = 15;    // if n[a] >= n[b] go to c
+    public static final int IFNLT = 16;   // if not n[a] < n[b] go to c
+    public static final int IFNLE = 17;   // if not n[a] <= n[b] go to c
+    public static final int IFNEQ = 18;   // if not n[a] = n[b] go to c
+    public static final int IFNNE = 19;   // if not n[a] /= n[b] go to c
+    public static final int IFNGT = 20;   // if not n[a] > n[b] go to c
+    public static final int IFNGE = 21;   // if not n[a] >= n[b] go to c
+    public static final int GET = 22;     // read a number into n[a]
+    public static final int SGET = 23;    // read a string into s[a]
+    public static final int PUT = 24;     // write n[a]
+    public static final int SPUT = 25;    // write s[a]
+    public static final int PUTLN = 26;   // end the output line
+    public static final int LMOVE = 27;   // l[a] := l[b]
+    public static final int LADD = 28;    // l[a] := l[b] + l[c]
+    public static final int LSUB = 29;    // l[a] := l[b] - l[c]
+    public static final int LMUL = 30;    // l[a] := l[b] * l[c]
+    public static final int L2D = 31;     // n[a] := l[b]
+    public static final int LPUT = 32;    // write l[a]
+    public static final int LIFLT = 33;   // if l[a] < l[b] go to c
+    public static final int LIFLE = 34;   // if l[a] <= l[b] go to c
+    public static final int LIFEQ = 35;   // if l[a] = l[b] go to c
+    public static final int LIFNE = 36;   // if l[a] /= l[b] go to c
+    public static final int LIFGT = 37;   // if l[a] > l[b] go to c
+    public static final int LIFGE = 38;   // if l[a] >= l[b] go to c
+
+    /*The mnemonic of every opcode and the kinds of its operands: 'n' number register, 's' string register,
+    * 'l' long register and 't' target instruction. The length of an instruction is 1 + the number of its operands*/
+    static final String[] MNEMONICS = {
+            "halt", "move", "smove", "add", "sub", "mul", "div", "concat", "scmp", "jump",
+            "iflt", "ifle", "ifeq", "ifne", "ifgt", "ifge",
+            "ifnlt", "ifnle", "ifneq", "ifnne", "ifngt", "ifnge",
+            "get", "sget", "put", "sput", "putln",
+            "lmove", "ladd", "lsub", "lmul", "l2d", "lput",
+            "liflt", "lifle", "lifeq", "lifne", "lifgt", "lifge"
+    };
+    static final String[] OPERANDS = {
+            "", "nn", "ss", "nnn", "nnn", "nnn", "nnn", "sss", "nss", "t",
+            "nnt", "nnt", "nnt", "nnt", "nnt", "nnt",
+            "nnt", "nnt", "nnt", "nnt", "nnt", "nnt",
+            "n", "s", "n", "s", "",
+            "ll", "lll", "lll", "lll", "nl", "l",
+            "llt", "llt", "llt", "llt", "llt", "llt"
+    };
+
+    /*The instructions*/
+    public final int[] code;
+
+    /*The sizes of the register files and the name of every register (the identifier of its variable, or null for a
+    * temporary or constant register)*/
+    public final String[] numberNames;
+    public final String[] stringNames;
+
+    /*The registers that hold constants, and the values to set them to*/
+    public final int[] numberConstantRegisters;
+    public final double[] numberConstants;
+    public final int[] stringConstantRegisters;
+    public final String[] stringConstants;
+
+    /*The registers of the variables in the long register file, and for every assignment of the code that uses them:
+    * its start, its end and its start in the code that only uses doubles. Both are empty if there are no longs*/
+    public final int[] integralRegisters;
+    public final int[] deoptimisation;
+
+    Bytecode(int[] code, String[] numberNames, String[] stringNames,
+             int[] numberConstantRegisters, double[] numberConstants,
+             int[] stringConstantRegisters, String[] stringConstants,
+             int[] integralRegisters, int[] deoptimisation) {
+        this.code = code;
+        this.numberNames = numberNames;
+        this.stringNames = stringNames;
+        this.numberConstantRegisters = numberConstantRegisters;
+        this.numberConstants = numberConstants;
+        this.stringConstantRegisters = stringConstantRegisters;
+        this.stringConstants = stringConstants;
+        this.integralRegisters = integralRegisters;
+        this.deoptimisation = deoptimisation;
+    }
+
+    /**
+     * @param opcode An opcode
+     * @return The length of an instruction with this opcode, including the opcode
+     */
+    public static int length(int opcode) {
+
+        return 1 + OPERANDS[opcode].length();
+    }
+}
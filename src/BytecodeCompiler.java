@@ -0,0 +1,498 @@
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * This class compiles the parse tree of a program (as built by TreeGenerate) to the instruction set of the
+ * VirtualMachine. Every variable gets a register of its own, in the number or the string register file according to
+ * its type, and the intermediate results of expressions use temporary registers, which are reused.
+ * If some variables are known to be integral, the program is compiled twice: first with long arithmetic for them,
+ * and then with double arithmetic only, as the code that the VirtualMachine falls back to if a long is out of range.
+ */
+public class BytecodeCompiler extends AbstractCompiler {
+
+    /*The instructions that have been emitted so far*/
+    private int[] code;
+    private int size;
+
+    /*The names of the registers of both files and the temporary registers among them, that are free to reuse*/
+    private final ArrayList<String> numberNames, stringNames;
+    private final BitSet numberTemps, stringTemps;
+    private final ArrayList<Integer> freeNumberTemps, freeStringTemps;
+
+    /*The register of every variable*/
+    private final HashMap<Variable, Integer> registers;
+
+    /*The register of every constant, and the registers of number constants, which hold them as longs as well*/
+    private final HashMap<Double, Integer> numberConstants;
+    private final BitSet numberConstantRegisters;
+    private final HashMap<String, Integer> stringConstants;
+
+    /*The start and the end of every assignment that has been compiled so far, in order*/
+    private final ArrayList<int[]> assignments;
+
+    private BytecodeCompiler() {
+        this.code = new int[256];
+        this.size = 0;
+        this.numberNames = new ArrayList<>();
+        this.stringNames = new ArrayList<>();
+        this.numberTemps = new BitSet();
+        this.stringTemps = new BitSet();
+        this.freeNumberTemps = new ArrayList<>();
+        this.freeStringTemps = new ArrayList<>();
+        this.registers = new HashMap<>();
+        this.numberConstants = new HashMap<>();
+        this.numberConstantRegisters = new BitSet();
+        this.stringConstants = new HashMap<>();
+        this.assignments = new ArrayList<>();
+    }
+
+    /**
+     * Compiles a program
+     * @param root The root (StatementPart) of the parse tree of the program
+     * @return The compiled program
+     * @throws CompilationException If the parse tree is not a valid program
+     */
+    public static Bytecode compile(ParseNode root) throws CompilationException {
+
+        return compile(root, Collections.emptySet());
+    }
+
+    /**
+     * Compiles a program, with long arithmetic for the variables that are integral
+     * @param root The root (StatementPart) of the parse tree of the program
+     * @param integral The number variables that only ever hold integral values, as found by NumberInference
+     * @return The compiled program
+     * @throws CompilationException If the parse tree is not a valid program
+     */
+    public static Bytecode compile(ParseNode root, Set<Variable> integral) throws CompilationException {
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        compiler.integral = integral;
+        compiler.statementList(root.child(1));
+        compiler.emit(Bytecode.HALT);
+        if (integral.isEmpty())
+            return compiler.build(new int[0], new int[0]);
+
+        // the same program with doubles only, which the code above falls back to, assignment by assignment
+        ArrayList<int[]> specialised = new ArrayList<>(compiler.assignments);
+        compiler.assignments.clear();
+        compiler.integral = Collections.emptySet();
+        compiler.statementList(root.child(1));
+        compiler.emit(Bytecode.HALT);
+
+        int[] deoptimisation = new int[specialised.size() * 3];
+        for (int i = 0; i < specialised.size(); i++) {
+            deoptimisation[i * 3] = specialised.get(i)[0];
+            deoptimisation[i * 3 + 1] = specialised.get(i)[1];
+            deoptimisation[i * 3 + 2] = compiler.assignments.get(i)[0];
+        }
+        ArrayList<Integer> registers = new ArrayList<>();
+        for (Variable v : integral) {
+            if (compiler.registers.containsKey(v))
+                registers.add(compiler.registers.get(v));
+        }
+        int[] integralRegisters = new int[registers.size()];
+        for (int i = 0; i < integralRegisters.length; i++)
+            integralRegisters[i] = registers.get(i);
+        return compiler.build(integralRegisters, deoptimisation);
+    }
+
+    /**
+     * identifier := <expression> | identifier := stringConstant
+     */
+    @Override
+    protected void assignment(ParseNode node) throws CompilationException {
+        ParseNode target = node.child(0);
+        ParseNode value = node.child(2);
+        int start = size;
+
+        if (value.is(Token.stringConstant)) {
+            Variable v = assigned(target, Variable.Type.STRING);
+            emit(Bytecode.SMOVE, register(v), stringConstant(value.token.getText()));
+        }
+        else {
+            Variable.Type type = typeOf(value);
+            Variable v = assigned(target, type);
+            if (type == Variable.Type.NUMBER && isIntegral(value) && !isIntegral(v)) {
+                int reg = expression(value, type, -1);
+                emit(numberConstantRegisters.get(reg) ? Bytecode.MOVE : Bytecode.L2D, register(v), reg);
+                release(reg, type);
+            }
+            else
+                expression(value, type, register(v)); // evaluate straight into the register of the variable
+        }
+        // an operation on longs only fails before the variable is written, so the assignment can start over
+        assignments.add(new int[] {start, size});
+    }
+
+    /**
+     * if <condition> then <statement list> [else <statement list>] end if
+     */
+    @Override
+    protected void ifStatement(ParseNode node) throws CompilationException {
+        int toElse = condition(node.child(1), false);
+        statementList(node.child(3));
+
+        if (node.child(4).is(Token.elseSymbol)) {
+            emit(Bytecode.JUMP, -1);
+            int toEnd = size - 1;
+            code[toElse] = size;
+            statementList(node.child(5));
+            code[toEnd] = size;
+        }
+        else
+            code[toElse] = size;
+    }
+
+    /**
+     * while <condition> loop <statement list> end loop. The condition is tested at the bottom of the loop, so that
+     * every iteration takes a single jump.
+     */
+    @Override
+    protected void whileStatement(ParseNode node) throws CompilationException {
+        emit(Bytecode.JUMP, -1);
+        int toTest = size - 1;
+        int body = size;
+        statementList(node.child(3));
+        code[toTest] = size;
+        code[condition(node.child(1), true)] = body;
+    }
+
+    /**
+     * do <statement list> until <condition>
+     */
+    @Override
+    protected void untilStatement(ParseNode node) throws CompilationException {
+        int body = size;
+        statementList(node.child(1));
+        code[condition(node.child(3), false)] = body;
+    }
+
+    /**
+     * for ( <assignment> ; <condition> ; <assignment> ) do <statement list> end loop
+     */
+    @Override
+    protected void forStatement(ParseNode node) throws CompilationException {
+        assignment(node.child(2));
+        emit(Bytecode.JUMP, -1);
+        int toTest = size - 1;
+        int body = size;
+        statementList(node.child(9));
+        assignment(node.child(6));
+        code[toTest] = size;
+        code[condition(node.child(4), true)] = body;
+    }
+
+    /**
+     * call get ( <argument list> ) | call put ( <argument list> )
+     */
+    @Override
+    protected void procedureStatement(ParseNode node) throws CompilationException {
+        boolean get = isGet(node);
+        for (ParseNode argument : arguments(node.child(3))) {
+            Variable v = variable(argument);
+            if (!get && isIntegral(v))
+                emit(Bytecode.LPUT, register(v)); // get never reads an integral variable
+            else if (v.type == Variable.Type.NUMBER)
+                emit(get ? Bytecode.GET : Bytecode.PUT, register(v));
+            else
+                emit(get ? Bytecode.SGET : Bytecode.SPUT, register(v));
+        }
+        if (!get)
+            emit(Bytecode.PUTLN);
+    }
+
+    /**
+     * Emits a conditional jump on a condition. The target of the jump is left to the caller to set.
+     * @param node The Condition node
+     * @param when true if the jump should be taken when the condition holds, false if it should be taken otherwise
+     * @return The position of the target in the code
+     */
+    private int condition(ParseNode node, boolean when) throws CompilationException {
+        Variable left = variable(node.child(0));
+        int operator = node.child(1).child(0).token.symbol;
+        ParseNode right = node.child(2);
+        if (left.type != typeOfOperand(right))
+            throw new CompilationException(INV_OPERATION, right.token.lineNumber);
+
+        int a, b;
+        boolean longs = false;
+        if (left.type == Variable.Type.NUMBER) {
+            a = register(left);
+            b = right.is(Token.identifier) ? register(variable(right)) : numberConstant(right.token.getText());
+            longs = isIntegral(left) && isIntegral(right);
+            if (!longs) {
+                a = toDouble(a, isIntegral(left));
+                b = toDouble(b, isIntegral(right));
+                release(a, Variable.Type.NUMBER);
+                release(b, Variable.Type.NUMBER);
+            }
+        }
+        else {
+            // compare the strings first, then the result of the comparison with 0
+            a = temp(Variable.Type.NUMBER);
+            b = right.is(Token.identifier) ? register(variable(right)) : stringConstant(right.token.getText());
+            emit(Bytecode.SCMP, a, register(left), b);
+            release(a, Variable.Type.NUMBER);
+            b = numberConstant(0.0);
+        }
+
+        int opcode;
+        switch (operator) {
+            case Token.lessThanSymbol: opcode = Bytecode.IFLT; break;
+            case Token.lessEqualSymbol: opcode = Bytecode.IFLE; break;
+            case Token.equalSymbol: opcode = Bytecode.IFEQ; break;
+            case Token.notEqualSymbol: opcode = Bytecode.IFNE; break;
+            case Token.greaterThanSymbol: opcode = Bytecode.IFGT; break;
+            case Token.greaterEqualSymbol: opcode = Bytecode.IFGE; break;
+            default: throw shapeError(node.child(1));
+        }
+        if (longs) {
+            // there is no NaN among longs, so the negation of a comparison is the opposite comparison
+            opcode += Bytecode.LIFLT - Bytecode.IFLT;
+            if (!when)
+                opcode = Bytecode.LIFLT + Bytecode.LIFGE - opcode;
+        }
+        else if (!when)
+            opcode += Bytecode.IFNLT - Bytecode.IFLT;
+        emit(opcode, a, b, -1);
+        return size - 1;
+    }
+
+    /**
+     * Compiles an expression, term or factor
+     * @param node The Expression, Term or Factor node
+     * @param type The type of the expression
+     * @param dest The register that the result must be written to, or -1 for any register. The result of a number
+     *             expression is in the register file of longs if isIntegral(node), and in the one of doubles if not
+     * @return The register that holds the result. If it is a temporary register, the caller must release it
+     */
+    private int expression(ParseNode node, Variable.Type type, int dest) throws CompilationException {
+        if (node.children.isEmpty())
+            throw shapeError(node);
+
+        if (node.is("Factor")) {
+            ParseNode first = node.child(0);
+            if (first.is(Token.leftParenthesis))
+                return expression(node.child(1), type, dest);
+
+            int reg;
+            if (first.is(Token.numberConstant)) {
+                if (type != Variable.Type.NUMBER)
+                    throw new CompilationException(INV_OPERATION, first.token.lineNumber);
+                reg = numberConstant(first.token.getText());
+            }
+            else {
+                Variable v = variable(first);
+                if (v.type != type)
+                    throw new CompilationException(INV_OPERATION, first.token.lineNumber);
+                reg = register(v);
+            }
+            return move(reg, type, isIntegral(node), dest);
+        }
+
+        // An expression (or a term) is a chain of operands with operators of the same precedence between them
+        ArrayList<ParseNode> operands = new ArrayList<>();
+        ArrayList<ParseNode> operators = new ArrayList<>();
+        chain(node, operands, operators);
+        if (operators.isEmpty())
+            return expression(operands.get(0), type, dest);
+
+        boolean number = type == Variable.Type.NUMBER;
+        boolean integral = number && isIntegral(operands.get(0));
+        int acc = expression(operands.get(0), type, -1);
+        for (int i = 0; i < operators.size(); i++) {
+            ParseNode operator = operators.get(i);
+            boolean operandIntegral = number && isIntegral(operands.get(i + 1));
+            int operand = expression(operands.get(i + 1), type, -1);
+
+            // the operands are evaluated from left to right with longs, until one of them is not integral
+            boolean result = integral && operandIntegral && !operator.is(Token.divideSymbol);
+            if (number && !result) {
+                acc = toDouble(acc, integral);
+                operand = toDouble(operand, operandIntegral);
+            }
+            int opcode = opcode(operator, type, result);
+
+            int target;
+            if (dest >= 0 && i == operators.size() - 1)
+                target = dest;
+            else
+                target = isTemp(acc, type) ? acc : temp(type);
+
+            emit(opcode, target, acc, operand);
+            release(operand, type);
+            if (acc != target)
+                release(acc, type);
+            acc = target;
+            integral = result;
+        }
+        return move(acc, type, integral, dest);
+    }
+
+    private int opcode(ParseNode operator, Variable.Type type, boolean integral) throws CompilationException {
+        if (type == Variable.Type.STRING) {
+            if (operator.is(Token.plusSymbol))
+                return Bytecode.CONCAT;
+            throw new CompilationException(INV_OPERATION, operator.token.lineNumber);
+        }
+        if (integral) {
+            switch (operator.token.symbol) {
+                case Token.plusSymbol: return Bytecode.LADD;
+                case Token.minusSymbol: return Bytecode.LSUB;
+                case Token.timesSymbol: return Bytecode.LMUL;
+                default: throw shapeError(operator);
+            }
+        }
+        switch (operator.token.symbol) {
+            case Token.plusSymbol: return Bytecode.ADD;
+            case Token.minusSymbol: return Bytecode.SUB;
+            case Token.timesSymbol: return Bytecode.MUL;
+            case Token.divideSymbol: return Bytecode.DIV;
+            default: throw shapeError(operator);
+        }
+    }
+
+    /**
+     * @return The register of a variable. A register is allocated the first time that a variable is seen
+     */
+    private int register(Variable v) throws CompilationException {
+        Integer reg = registers.get(v);
+        if (reg == null) {
+            if (v.type == Variable.Type.NUMBER) {
+                reg = numberNames.size();
+                numberNames.add(v.identifier);
+            }
+            else if (v.type == Variable.Type.STRING) {
+                reg = stringNames.size();
+                stringNames.add(v.identifier);
+            }
+            else
+                throw new CompilationException(MessageFormat.format(INV_TYPE, "Number or String", v.type.name), -1);
+            registers.put(v, reg);
+        }
+        return reg;
+    }
+
+    private int numberConstant(String text) {
+
+        return numberConstant(Double.parseDouble(text));
+    }
+
+    private int numberConstant(double value) {
+        Integer reg = numberConstants.get(value);
+        if (reg == null) {
+            reg = numberNames.size();
+            numberNames.add(null);
+            numberConstants.put(value, reg);
+            numberConstantRegisters.set(reg);
+        }
+        return reg;
+    }
+
+    private int stringConstant(String value) {
+        Integer reg = stringConstants.get(value);
+        if (reg == null) {
+            reg = stringNames.size();
+            stringNames.add(null);
+            stringConstants.put(value, reg);
+        }
+        return reg;
+    }
+
+    /**
+     * @return A temporary register of the given type, that is not in use
+     */
+    private int temp(Variable.Type type) {
+        boolean number = type == Variable.Type.NUMBER;
+        ArrayList<Integer> free = number ? freeNumberTemps : freeStringTemps;
+        if (!free.isEmpty())
+            return free.remove(free.size() - 1);
+
+        ArrayList<String> names = number ? numberNames : stringNames;
+        int reg = names.size();
+        names.add(null);
+        (number ? numberTemps : stringTemps).set(reg);
+        return reg;
+    }
+
+    private boolean isTemp(int reg, Variable.Type type) {
+
+        return (type == Variable.Type.NUMBER ? numberTemps : stringTemps).get(reg);
+    }
+
+    /**
+     * Releases a register, if it is a temporary register, so that it can be reused
+     */
+    private void release(int reg, Variable.Type type) {
+        if (isTemp(reg, type))
+            (type == Variable.Type.NUMBER ? freeNumberTemps : freeStringTemps).add(reg);
+    }
+
+    /**
+     * Moves a value to the destination register, if there is one
+     * @param integral true if the value is in the register file of longs
+     * @return The register that holds the value
+     */
+    private int move(int reg, Variable.Type type, boolean integral, int dest) {
+        if (dest < 0 || dest == reg)
+            return reg;
+
+        if (type == Variable.Type.STRING)
+            emit(Bytecode.SMOVE, dest, reg);
+        else
+            emit(integral ? Bytecode.LMOVE : Bytecode.MOVE, dest, reg);
+        release(reg, type);
+        return dest;
+    }
+
+    /**
+     * Converts a number to a double, if it is in the register file of longs
+     * @return The register of doubles that holds the number. If it is a temporary register, the caller must release it
+     */
+    private int toDouble(int reg, boolean integral) {
+        if (!integral || numberConstantRegisters.get(reg))
+            return reg; // a constant is in both register files
+
+        int temp = isTemp(reg, Variable.Type.NUMBER) ? reg : temp(Variable.Type.NUMBER);
+        emit(Bytecode.L2D, temp, reg);
+        return temp;
+    }
+
+    private void emit(int... instruction) {
+        if (size + instruction.length > code.length)
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + instruction.length));
+        System.arraycopy(instruction, 0, code, size, instruction.length);
+        size += instruction.length;
+    }
+
+    /**
+     * @return The compiled program
+     */
+    private Bytecode build(int[] integralRegisters, int[] deoptimisation) {
+        int[] numberConstantRegisters = new int[numberConstants.size()];
+        double[] numberConstantValues = new double[numberConstants.size()];
+        int i = 0;
+        for (HashMap.Entry<Double, Integer> entry : numberConstants.entrySet()) {
+            numberConstantRegisters[i] = entry.getValue();
+            numberConstantValues[i++] = entry.getKey();
+        }
+
+        int[] stringConstantRegisters = new int[stringConstants.size()];
+        String[] stringConstantValues = new String[stringConstants.size()];
+        i = 0;
+        for (HashMap.Entry<String, Integer> entry : stringConstants.entrySet()) {
+            stringConstantRegisters[i] = entry.getValue();
+            stringConstantValues[i++] = entry.getKey();
+        }
+
+        return new Bytecode(Arrays.copyOf(code, size),
+                numberNames.toArray(new String[0]), stringNames.toArray(new String[0]),
+                numberConstantRegisters, numberConstantValues, stringConstantRegisters, stringConstantValues,
+                integralRegisters, deoptimisation);
+    }
+}
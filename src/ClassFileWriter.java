@@ -0,0 +1,361 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A minimal writer of JVM class files, with just enough of the format for the classes of the JvmCompiler: a constant
+ * pool, interfaces and methods with a Code attribute and an exception table. The class files are written in version 49.0, which is verified
+ * by type inference, so that the methods do not need stack map frames.
+ */
+public class ClassFileWriter {
+
+    /*Access flags*/
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    /*The class file version*/
+    private static final int MAJOR_VERSION = 49;
+
+    /*Constant pool tags*/
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /*The constant pool, and the index of every constant in it by a key of its tag and contents*/
+    private final ByteArrayOutputStream pool;
+    private final DataOutputStream poolData;
+    private final HashMap<String, Integer> constants;
+    private int poolSize;
+
+    private final int thisClass, superClass;
+    private final int[] interfaces;
+    private final ArrayList<byte[]> methods;
+
+    /**
+     * Constructor of the ClassFileWriter
+     * @param name The internal name of the class (i.e. "java/lang/Object")
+     * @param superName The internal name of its super class
+     * @param interfaceNames The internal names of the interfaces that it implements
+     */
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        this.pool = new ByteArrayOutputStream();
+        this.poolData = new DataOutputStream(pool);
+        this.constants = new HashMap<>();
+        this.poolSize = 1; // entry 0 is not used
+        this.methods = new ArrayList<>();
+
+        this.thisClass = classConstant(name);
+        this.superClass = classConstant(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++)
+            interfaces[i] = classConstant(interfaceNames[i]);
+    }
+
+    public int utf8Constant(String value) {
+        String key = "U" + value;
+        Integer index = constants.get(key);
+        if (index == null) {
+            index = newConstant(key, 1);
+            write(CONSTANT_UTF8);
+            try {
+                poolData.writeUTF(value);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e); // a ByteArrayOutputStream does not throw
+            }
+        }
+        return index;
+    }
+
+    public int classConstant(String name) {
+        return reference("C" + name, CONSTANT_CLASS, utf8Constant(name), -1);
+    }
+
+    public int stringConstant(String value) {
+        return reference("S" + value, CONSTANT_STRING, utf8Constant(value), -1);
+    }
+
+    public int doubleConstant(double value) {
+
+        return wideConstant("D", CONSTANT_DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    public int longConstant(long value) {
+
+        return wideConstant("J", CONSTANT_LONG, value);
+    }
+
+    /**
+     * Adds a constant of 8 bytes, which takes two entries of the pool
+     */
+    private int wideConstant(String kind, int tag, long bits) {
+        String key = kind + bits;
+        Integer index = constants.get(key);
+        if (index == null) {
+            index = newConstant(key, 2);
+            write(tag);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                write((int) (bits >>> shift));
+        }
+        return index;
+    }
+
+    public int methodConstant(String owner, String name, String descriptor) {
+        return memberReference(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    public int interfaceMethodConstant(String owner, String name, String descriptor) {
+        return memberReference(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberReference(int tag, String owner, String name, String descriptor) {
+        int nameAndType = reference("N" + name + " " + descriptor, CONSTANT_NAME_AND_TYPE,
+                utf8Constant(name), utf8Constant(descriptor));
+        return reference(tag + owner + "." + name + descriptor, tag, classConstant(owner), nameAndType);
+    }
+
+    /**
+     * Adds a constant that refers to one or two other constants
+     */
+    private int reference(String key, int tag, int first, int second) {
+        Integer index = constants.get(key);
+        if (index == null) {
+            index = newConstant(key, 1);
+            write(tag);
+            write(first >> 8);
+            write(first);
+            if (second >= 0) {
+                write(second >> 8);
+                write(second);
+            }
+        }
+        return index;
+    }
+
+    private int newConstant(String key, int entries) {
+        int index = poolSize;
+        poolSize += entries;
+        constants.put(key, index);
+        return index;
+    }
+
+    private void write(int b) {
+
+        pool.write(b & 0xFF);
+    }
+
+    /**
+     * Adds a method to the class
+     * @param access The access flags of the method
+     * @param name The name of the method
+     * @param descriptor The descriptor of the method
+     * @param code The code of the method
+     */
+    public void addMethod(int access, String name, String descriptor, Code code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(1); // the Code attribute
+            out.writeShort(utf8Constant("Code"));
+            out.writeInt(12 + code.size + 8 * code.handlers.size());
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(code.size);
+            out.write(code.bytes, 0, code.size);
+            out.writeShort(code.handlers.size());
+            for (int[] handler : code.handlers) {
+                for (int field : handler)
+                    out.writeShort(field);
+            }
+            out.writeShort(0); // no attributes
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    /**
+     * @return The bytes of the class file
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int i : interfaces)
+                out.writeShort(i);
+            out.writeShort(0); // no fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods)
+                out.write(method);
+            out.writeShort(0); // no attributes
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The code of a method. Every instruction is added with the change that it makes to the depth of the operand
+     * stack, so that the maximum depth can be kept. Branches are 16-bit offsets, which are set when their target is.
+     */
+    public static class Code {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+        private int stack, maxStack, maxLocals;
+
+        /*The exception table: the start, the end, the handler and the class constant of the exception of every entry*/
+        private final ArrayList<int[]> handlers = new ArrayList<>();
+
+        Code(int maxLocals) {
+
+            this.maxLocals = maxLocals;
+        }
+
+        /**
+         * @return The position of the next instruction
+         */
+        public int position() {
+
+            return size;
+        }
+
+        /**
+         * Adds an instruction without operands
+         * @param opcode The opcode
+         * @param stackChange The change of the depth of the operand stack
+         */
+        public void op(int opcode, int stackChange) {
+            byte1(opcode);
+            stack(stackChange);
+        }
+
+        /**
+         * Adds an instruction with a 16-bit operand (i.e. the index of a constant)
+         */
+        public void op2(int opcode, int operand, int stackChange) {
+            byte1(opcode);
+            byte1(operand >> 8);
+            byte1(operand);
+            stack(stackChange);
+        }
+
+        /**
+         * Adds an instruction that loads or stores a local variable
+         */
+        public void local(int opcode, int local, int stackChange) {
+            if (local > 0xFF) {
+                byte1(0xC4); // wide
+                op2(opcode, local, stackChange);
+            }
+            else {
+                byte1(opcode);
+                byte1(local);
+                stack(stackChange);
+            }
+            maxLocals = Math.max(maxLocals, local + 2);
+        }
+
+        /**
+         * Adds a branch to a target that is not known yet
+         * @return The position of the branch, to pass to setTarget
+         */
+        public int branch(int opcode, int stackChange) {
+            int at = size;
+            op2(opcode, 0, stackChange);
+            return at;
+        }
+
+        /**
+         * Adds a branch to a known target
+         */
+        public void branch(int opcode, int stackChange, int target) {
+
+            setTarget(branch(opcode, stackChange), target);
+        }
+
+        /**
+         * Sets the target of a branch
+         * @param branch The position of the branch
+         * @param target The position of the target instruction
+         */
+        public void setTarget(int branch, int target) {
+            int offset = target - branch;
+            if (offset != (short) offset)
+                throw new IllegalStateException("branch offset out of range");
+            bytes[branch + 1] = (byte) (offset >> 8);
+            bytes[branch + 2] = (byte) offset;
+        }
+
+        /**
+         * Adds a tableswitch on the int at the top of the stack, from 0 to the number of targets - 1
+         * @param targets The position of the target of every value. The first one is the target of any other value
+         */
+        public void tableSwitch(int[] targets) {
+            int at = size;
+            byte1(0xAA);
+            while (size % 4 != 0)
+                byte1(0); // the operands are aligned to 4 bytes from the start of the code
+            byte4(targets[0] - at);
+            byte4(0);
+            byte4(targets.length - 1);
+            for (int target : targets)
+                byte4(target - at);
+            stack(-1);
+        }
+
+        /**
+         * Starts the handler of the exceptions of a range of the code at the next instruction. The handler starts
+         * with the exception on the stack
+         * @param start The position of the first instruction of the range
+         * @param end The position after the last instruction of the range
+         * @param catchType The class constant of the exception
+         */
+        public void handler(int start, int end, int catchType) {
+            handlers.add(new int[] {start, end, size, catchType});
+            stack = 0;
+            stack(1);
+        }
+
+        private void byte4(int b) {
+            byte1(b >> 24);
+            byte1(b >> 16);
+            byte1(b >> 8);
+            byte1(b);
+        }
+
+        private void stack(int change) {
+            stack += change;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void byte1(int b) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = (byte) b;
+        }
+    }
+}
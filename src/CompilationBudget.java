@@ -0,0 +1,213 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The limits of the resources that the compilation of a program may use: the number of tokens, the depth of nesting
+ * of the non-terminals, the number of variables that are declared at once, the number of bytes of the trace and the
+ * time that it takes. A compilation can be cancelled from another thread as well.
+ * The Syntax Analyser and the Lexical Analyser check the limits as they go, with a counter or two for each token, and
+ * look at the clock every CHECK_TOKENS tokens (and every CHECK_CHARACTERS characters of a token, i.e. a comment or a
+ * string that runs on). When a limit is exceeded, the Lexical Analyser stops reading, and the Syntax Analyser reports
+ * an error at the next token, so that the compilation ends with a CompilationException as for any other error.
+ * A budget is for a single compilation at a time, and is started again by the analysis of every program.
+ */
+public class CompilationBudget {
+
+    /*The number of tokens, and of characters, after which the clock is looked at again*/
+    static final int CHECK_TOKENS = 64;
+    static final int CHECK_CHARACTERS = 4096;
+
+    /*The limits, which are none until they are set*/
+    private long maxTokens = Long.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxVariables = Integer.MAX_VALUE;
+    private long maxTraceBytes = Long.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+
+    /*What the current compilation has used, and the time that it has to end by (as System.nanoTime)*/
+    private long tokens;
+    private long traceBytes;
+    private long deadline;
+    private boolean timed;
+
+    /*Whether the compilation was cancelled, and the limit that it exceeded (or null)*/
+    private volatile boolean cancelled;
+    private volatile String exceeded;
+
+    /**
+     * @param max The largest number of tokens of a program, including the end of file
+     */
+    public void setMaxTokens(long max) {
+
+        this.maxTokens = max;
+    }
+
+    /**
+     * @param max The deepest nesting of the non-terminals of a program (i.e. of the statement lists, of the
+     * statements inside if, while and for statements, and of the expressions in parentheses)
+     */
+    public void setMaxDepth(int max) {
+
+        this.maxDepth = max;
+    }
+
+    /**
+     * @param max The largest number of variables that may be declared at once, global and local
+     */
+    public void setMaxVariables(int max) {
+
+        this.maxVariables = max;
+    }
+
+    /**
+     * @param max The largest number of bytes of the trace, which are counted by the stream of count
+     */
+    public void setMaxTraceBytes(long max) {
+
+        this.maxTraceBytes = max;
+    }
+
+    /**
+     * @param millis The longest time that a compilation may take, in milliseconds
+     */
+    public void setTimeout(long millis) {
+
+        this.timeoutMillis = millis;
+    }
+
+    /**
+     * @return A budget with the limits of the system properties compile.maxTokens, compile.maxDepth,
+     * compile.maxVariables, compile.maxTraceBytes and compile.timeout (in milliseconds), or null if none of them is set
+     * @throws NumberFormatException If a property is not a number
+     */
+    public static CompilationBudget fromProperties() {
+        CompilationBudget budget = new CompilationBudget();
+        boolean set = false;
+        String value;
+        if ((value = System.getProperty("compile.maxTokens")) != null) {
+            budget.setMaxTokens(Long.parseLong(value));
+            set = true;
+        }
+        if ((value = System.getProperty("compile.maxDepth")) != null) {
+            budget.setMaxDepth(Integer.parseInt(value));
+            set = true;
+        }
+        if ((value = System.getProperty("compile.maxVariables")) != null) {
+            budget.setMaxVariables(Integer.parseInt(value));
+            set = true;
+        }
+        if ((value = System.getProperty("compile.maxTraceBytes")) != null) {
+            budget.setMaxTraceBytes(Long.parseLong(value));
+            set = true;
+        }
+        if ((value = System.getProperty("compile.timeout")) != null) {
+            budget.setTimeout(Long.parseLong(value));
+            set = true;
+        }
+        return set ? budget : null;
+    }
+
+    /**
+     * Starts the budget of a new compilation: nothing is used yet, and the time runs from now
+     */
+    public void start() {
+        tokens = 0;
+        traceBytes = 0;
+        timed = timeoutMillis != Long.MAX_VALUE;
+        if (timed)
+            deadline = System.nanoTime() + Math.min(timeoutMillis, Long.MAX_VALUE / 2_000_000) * 1_000_000;
+        cancelled = false;
+        exceeded = null;
+    }
+
+    /**
+     * Cancels the current compilation, from any thread. It stops at its next check.
+     */
+    public void cancel() {
+
+        cancelled = true;
+    }
+
+    /**
+     * @return The limit that the current compilation exceeded, or null if it has not exceeded any
+     */
+    public String getExceeded() {
+
+        return exceeded;
+    }
+
+    /**
+     * Counts a token, and checks the trace and, every CHECK_TOKENS tokens, the time
+     * @return true if the compilation is within its budget
+     */
+    boolean token() {
+        if (++tokens > maxTokens)
+            exceed("there are more than " + maxTokens + " tokens");
+        else if (traceBytes > maxTraceBytes)
+            exceed("the trace is longer than " + maxTraceBytes + " bytes");
+        else if (tokens % CHECK_TOKENS == 0)
+            inTime();
+        return exceeded == null;
+    }
+
+    /**
+     * @return true if the compilation was not cancelled, and has time left
+     */
+    boolean inTime() {
+        if (cancelled)
+            exceed("the compilation was cancelled");
+        else if (timed && System.nanoTime() - deadline > 0)
+            exceed("the compilation took longer than " + timeoutMillis + " ms");
+        return exceeded == null;
+    }
+
+    /**
+     * @param depth The depth of nesting of a non-terminal that commences
+     * @return true if it is not too deep
+     */
+    boolean depth(int depth) {
+        if (depth > maxDepth)
+            exceed("the non-terminals are nested deeper than " + maxDepth);
+        return exceeded == null;
+    }
+
+    /**
+     * @param variables The number of variables that are declared, after one more is
+     * @return true if they are not too many
+     */
+    boolean variables(int variables) {
+        if (variables > maxVariables)
+            exceed("there are more than " + maxVariables + " variables");
+        return exceeded == null;
+    }
+
+    /**
+     * Keeps the first limit that is exceeded
+     */
+    private void exceed(String limit) {
+        if (exceeded == null)
+            exceeded = limit;
+    }
+
+    /**
+     * @param out The stream that the trace is written to
+     * @return A stream that writes to it, and counts the bytes of the trace of the current compilation
+     */
+    public OutputStream count(OutputStream out) {
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(int b) throws IOException {
+                traceBytes++;
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                traceBytes += len;
+                out.write(b, off, len);
+            }
+        };
+    }
+}
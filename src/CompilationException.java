@@ -15,23 +15,61 @@ public class CompilationException extends Exception
 	private static final int MAX_TRACE_DEPTH = 20;
 
 	private final int lineNumber;
+	/** The column of the error in its line (from 1), or 0 if it is not known, and the text of the line, or null. */
+	private final int column;
+	private final String excerpt;
 
 	public CompilationException( String message, int lineNumber ) {
-		super( message );
-		this.lineNumber = lineNumber;
+		this( message, lineNumber, 0, null, null );
 	}
 
 	public CompilationException( String message, int lineNumber, CompilationException cause ) {
+		this( message, lineNumber, 0, null, cause );
+	}
+
+	/** An error at a known place in the source, whose line is kept so that it is shown without reading the source
+		again.
+
+	  @param message The message that explains the error.
+	  @param lineNumber The line number of the error.
+	  @param column The column of the error in its line, from 1, or 0 if it is not known.
+	  @param excerpt The text of the line of the error, or null.
+	  @param cause The error that this one is reported for, or null.
+	*/
+	public CompilationException( String message, int lineNumber, int column, String excerpt, CompilationException cause ) {
 		super( message, cause );
 		this.lineNumber = lineNumber;
+		this.column = column;
+		this.excerpt = excerpt;
 	}
 
 	public int getLineNumber() {
 		return this.lineNumber;
 	}
 
+	/** @return The column of the error in its line, from 1, or 0 if it is not known. */
+	public int getColumn() {
+		return this.column;
+	}
+
+	/** @return The text of the line of the error, or null if it is not known. */
+	public String getExcerpt() {
+		return this.excerpt;
+	}
+
 	public String toTraceString() {
+		return toTraceString( false );
+	}
+
+	/** The trace of the error and of the errors that it was reported for, with the columns of the errors and the
+		line of the innermost one that is known, under which a caret points at its column, if columns is true.
+
+	  @param columns Whether to show the columns and the line of the error.
+	  @return The trace.
+	*/
+	public String toTraceString( boolean columns ) {
 		StringBuffer buffer = new StringBuffer();
+		CompilationException located = null;
 		Throwable err = this;
 		int maxDepth = MAX_TRACE_DEPTH;
 		while( err != null && maxDepth-- > 0 ) {
@@ -39,6 +77,11 @@ public class CompilationException extends Exception
 			String computedLine = "???";
 			if( err instanceof CompilationException ) {
 				computedLine = Integer.toString(((CompilationException)err).getLineNumber());
+				if( columns && ((CompilationException)err).column > 0 ) {
+					computedLine += ", column " + ((CompilationException)err).column;
+					if( ((CompilationException)err).excerpt != null )
+						located = (CompilationException)err;
+				}
 			}
 
 			buffer.append( "\tCaused by " ).append( err.getMessage() ).append( " on line " ).append( computedLine ).append( "\r\n" );
@@ -51,6 +94,14 @@ public class CompilationException extends Exception
 		if( maxDepth < 1 )
 			buffer.append( "\t ... etc.\r\n" );
 
+		if( located != null ) {
+			// the caret is under the column, after the same tabs as the line
+			buffer.append( "\t" ).append( located.excerpt ).append( "\r\n\t" );
+			for( int i = 0; i < located.column - 1 && i < located.excerpt.length(); i++ )
+				buffer.append( located.excerpt.charAt(i) == '\t' ? '\t' : ' ' );
+			buffer.append( "^\r\n" );
+		}
+
 		return buffer.toString();
 	}
 } // end of class CompilationException
\ No newline at end of file
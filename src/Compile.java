@@ -11,10 +11,18 @@
  **/
 
 import java.io.* ;
+import java.util.concurrent.* ;
 
 public class Compile {
 
 	public static String fileName;
+	/** How the expressions are analysed (-compact for a trace of a single Expression for each of them). */
+	private SyntaxAnalyser.ExpressionMode expressionMode = SyntaxAnalyser.ExpressionMode.PRECEDENCE;
+	/** Whether res.txt shows the columns of errors and the lines that they are on (-columns). */
+	private boolean columns = false;
+	/** Whether the semantics of each file are analysed on a thread of their own, behind the parse of the next file
+		(-pipelined). */
+	private boolean pipelined = false;
 
 	/**
 	 *
@@ -29,12 +37,34 @@ public class Compile {
 		System.out.println( "rggSTART" );
 		PrintStream out = null;
 		String outputFile = new String( "res.txt" );
+		// one analyser and code generator for all the files, which are reset for each of them
+		SyntaxAnalyser syn = null;
+		Generate generate = new Generate();
+		// the limits of the compilation of each file, if any are set (i.e. -Dcompile.timeout=1000). The trace is
+		// counted as it is printed, and written out in blocks, which are flushed when a file exceeds the budget
+		CompilationBudget budget = CompilationBudget.fromProperties();
+		if( budget != null )
+			System.setOut( new PrintStream(budget.count(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16))) );
 		boolean goon = true;
+		// the semantic analysis of each file, and its trace and result, behind the parse of the next file (only
+		// without a budget, whose trace is counted as the file is parsed)
+		ExecutorService behind = null;
+		Future<?> analysed = null;
+		SemanticAnalyser semantics = null;
+		if( pipelined && budget == null ) {
+			behind = Executors.newSingleThreadExecutor( runnable -> {
+				Thread thread = new Thread( runnable, "semantic analysis" );
+				thread.setDaemon( true );	// which does not keep the compiler running if the parse fails
+				return thread;
+			} );
+			semantics = new SemanticAnalyser();
+		}
 
 		try {
 			out = new PrintStream( new FileOutputStream(outputFile) );
 		} catch( Exception e ) {
 			System.out.println("unable to open output file "+e);
+			System.out.flush();
 			System.exit(0);
 		}
 
@@ -42,24 +72,114 @@ public class Compile {
 			fileNumber++ ;
 			fileName = prefix + fileNumber;
 			goon = ((new File(fileName)).exists());
-			if( goon ) {
+			if( goon && behind != null ) {
+				if( syn == null ) {
+					syn = new SyntaxAnalyser(fileName) ;
+					syn.setExpressionMode( expressionMode ) ;
+					syn.setColumns( columns ) ;
+				}
+				else
+					syn.reset(fileName) ;
+				final ParseLog log = syn.record() ;
+				final String name = fileName ;
+				final SemanticAnalyser analyser = semantics ;
+				final PrintStream results = out ;
+				await( analysed ) ;
+				analysed = behind.submit( () -> {
+					System.out.println();
+					System.out.println( "rggFILE " + name );
+					log.replay( analyser, generate, results ) ;
+				} ) ;
+			}
+			else if( goon ) {
 				System.out.println();
 				System.out.println( "rggFILE " + fileName );
 
-				SyntaxAnalyser syn = new SyntaxAnalyser(fileName) ;
-				syn.parse( out ) ;
-			} else System.out.println(fileName+" does not exist");
+				if( syn == null ) {
+					syn = new SyntaxAnalyser(fileName) ;
+					syn.setExpressionMode( expressionMode ) ;
+					syn.setColumns( columns ) ;
+					syn.setBudget( budget ) ;
+				}
+				else
+					syn.reset(fileName) ;
+				syn.parse( out, generate ) ;
+				if( budget != null && budget.getExceeded() != null )
+					System.out.flush() ;
+			} else {
+				await( analysed ) ;
+				System.out.println(fileName+" does not exist");
+			}
 		}
 
 		System.out.println() ;
 		System.out.println("rggFINISH") ;
+		System.out.flush();
 		out.flush();out.close();
 		System.exit(exitFlag) ;
 	} // end of main method
 
+	/**
+	 *
+	 * Waits for the analysis of the last file that was parsed, if there is one
+	 *
+	 **/
+
+	private static void await( Future<?> analysed ) throws IOException {
+		if( analysed == null )
+			return;
+		try {
+			analysed.get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while analysing "+fileName);
+		} catch( ExecutionException e ) {
+			if( e.getCause() instanceof RuntimeException )
+				throw (RuntimeException) e.getCause();
+			if( e.getCause() instanceof Error )
+				throw (Error) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
 	public static void main(String[] args) throws IOException {
-		Compile c = new Compile();
-		c.go();
+		if( args.length >= 2 && args[0].equals("-workers") ) {
+			// compile the corpus in a number of worker JVMs
+			String prefix = args.length > 2 ? args[2] : "Programs Folder" + File.separator + "program";
+			new CompileCoordinator(Integer.parseInt(args[1]), prefix).go();
+		}
+		else if( args.length == 1 && args[0].equals("-worker") )
+			CompileCoordinator.work();
+		else if( args.length >= 1 && args[0].equals("-build") ) {
+			// build the units of a folder, in the order of the procedures that they call
+			String folder = args.length > 1 ? args[1] : "Programs Folder";
+			try {
+				new BuildScheduler(new File(folder).toPath(), Runtime.getRuntime().availableProcessors()).build();
+			} catch( InterruptedException e ) {
+				System.out.println("stopped building "+folder);
+			}
+		}
+		else if( args.length >= 1 && args[0].equals("-watch") ) {
+			// compile the corpus, and then the programs that change
+			String prefix = args.length > 1 ? args[1] : "Programs Folder" + File.separator + "program";
+			try {
+				new CompileWatcher(prefix, Runtime.getRuntime().availableProcessors()).go();
+			} catch( InterruptedException e ) {
+				System.out.println("stopped watching "+prefix);
+			}
+		}
+		else {
+			Compile c = new Compile();
+			for( String arg : args ) {
+				if( arg.equals("-compact") )
+					c.expressionMode = SyntaxAnalyser.ExpressionMode.COMPACT ;
+				else if( arg.equals("-columns") )
+					c.columns = true ;
+				else if( arg.equals("-pipelined") )
+					c.pipelined = true ;
+			}
+			c.go();
+		}
 	}
 
 } // end of class Compile
@@ -0,0 +1,351 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compiles the programs of the corpus (as Compile does) in a number of worker JVMs, so that a big corpus is not
+ * limited by the heap and the garbage collector of a single JVM. The coordinator hands the files out to the workers
+ * in batches over their standard input, which get smaller as the files run out, and the workers send the trace and
+ * the result of every file back over their standard output. When no files are left to hand out, a worker that is
+ * idle takes over the last files of the batch of the worker with the most files left (the straggler), and the result
+ * that arrives first is kept. A worker that crashes is started again, and the files of its batch that it had not
+ * finished are handed out again; a file that crashes a worker MAX_ATTEMPTS times is reported as a failure.
+ * The trace and res.txt are written in the order of the files, as Compile writes them.
+ *
+ * Usage: java Compile -workers n [prefix]   (the prefix of the files is "Programs Folder/program" if none is given)
+ */
+public class CompileCoordinator {
+
+    /*The number of times that a file is compiled by a worker that crashes, before it is reported as a failure*/
+    public static final int MAX_ATTEMPTS = 2;
+    /*The largest number of files in a batch*/
+    private static final int MAX_BATCH = 64;
+
+    private final int workers;
+    private final String prefix;
+
+    /*The files of the corpus, and their results (null until the first one arrives)*/
+    private final List<String> files = new ArrayList<>();
+    private Result[] results;
+    /*The files that are not handed out, in order, and the number of times that each one was in a worker that crashed*/
+    private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+    private int[] attempts;
+    /*The files that each worker has been given and not finished, and the files that were given to a second worker*/
+    private final Map<Worker, LinkedHashSet<Integer>> assigned = new HashMap<>();
+    private final Set<Integer> stolen = new HashSet<>();
+    /*The number of files whose results arrived, and the number that were written*/
+    private int completed;
+    private int written;
+    /*The error that stopped a worker from starting, or null*/
+    private IOException fatal;
+
+    private PrintStream res;
+
+    /**
+     * The trace (what Compile prints to the standard output) and the result (what it writes to res.txt) of a file
+     */
+    private static final class Result {
+
+        final byte[] trace;
+        final byte[] result;
+
+        Result(byte[] trace, byte[] result) {
+            this.trace = trace;
+            this.result = result;
+        }
+    }
+
+    /**
+     * @param workers The number of worker JVMs
+     * @param prefix The prefix of the names of the files, which are numbered from 0 on
+     */
+    public CompileCoordinator(int workers, String prefix) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("the number of workers must be positive: " + workers);
+        this.workers = workers;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Compiles the corpus, and exits
+     */
+    public void go() throws IOException {
+        System.out.println("rggSTART");
+        try {
+            res = new PrintStream(new FileOutputStream("res.txt"));
+        }
+        catch (IOException e) {
+            System.out.println("unable to open output file " + e);
+            System.exit(0);
+        }
+        int fileNumber = 0;
+        while (new File(prefix + fileNumber).exists())
+            files.add(prefix + fileNumber++);
+        results = new Result[files.size()];
+        attempts = new int[files.size()];
+        for (int i = 0; i < files.size(); i++)
+            queue.add(i);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < Math.min(workers, files.size()); i++) {
+            Thread thread = new Thread(this::coordinate, "worker " + i);
+            thread.start();
+            threads.add(thread);
+        }
+        synchronized (this) {
+            while (completed < files.size() && fatal == null) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted while compiling the corpus");
+                }
+            }
+            if (fatal != null) {
+                System.out.println("unable to start a worker " + fatal);
+                System.exit(1);
+            }
+            for (Worker worker : assigned.keySet())
+                worker.process.destroy(); // the stragglers whose files were finished by others
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while stopping the workers");
+            }
+        }
+
+        System.out.println(prefix + files.size() + " does not exist");
+        System.out.println();
+        System.out.println("rggFINISH");
+        res.flush();
+        res.close();
+        System.exit(0);
+    }
+
+    /**
+     * A worker JVM, and the pipes to it
+     */
+    private static final class Worker {
+
+        final Process process;
+        final PrintWriter requests;
+        final DataInputStream replies;
+
+        Worker() throws IOException {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments())
+                if (argument.startsWith("-X") || argument.startsWith("-D"))
+                    command.add(argument); // i.e. the heap and stack sizes
+            command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), "Compile", "-worker"));
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            requests = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), Charset.defaultCharset()));
+            replies = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+    }
+
+    /**
+     * Hands out batches of files to a worker, and collects their results, on a thread of its own
+     */
+    private void coordinate() {
+        Worker worker = null;
+        try {
+            while (true) {
+                if (worker == null && (worker = start()) == null)
+                    return; // the files were finished by the other workers
+                List<Integer> batch = batch(worker);
+                if (batch == null)
+                    break;
+                for (int file : batch)
+                    worker.requests.println(file + "\t" + files.get(file));
+                worker.requests.flush();
+                try {
+                    for (int i = 0; i < batch.size(); i++)
+                        receive(worker);
+                }
+                catch (IOException e) {
+                    crashed(worker, e);
+                    worker = null;
+                }
+            }
+            worker.requests.close(); // the worker ends at the end of its input
+        }
+        catch (IOException e) {
+            synchronized (this) {
+                if (completed < files.size())
+                    fatal = e;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return A new worker, or null if the results of all the files have arrived
+     */
+    private synchronized Worker start() throws IOException {
+        if (completed == files.size())
+            return null;
+        Worker worker = new Worker();
+        assigned.put(worker, new LinkedHashSet<>());
+        return worker;
+    }
+
+    /**
+     * @return The next files for a worker: the first ones that were not handed out, or the last ones of the
+     * straggler once all of them were, or null once the results of all the files have arrived
+     */
+    private synchronized List<Integer> batch(Worker worker) throws IOException {
+        while (completed < files.size()) {
+            List<Integer> batch = new ArrayList<>();
+            if (!queue.isEmpty()) {
+                int size = Math.max(1, Math.min(MAX_BATCH, queue.size() / (2 * workers)));
+                while (batch.size() < size && !queue.isEmpty())
+                    batch.add(queue.poll());
+            }
+            else {
+                Worker straggler = null;
+                int most = 0;
+                for (Map.Entry<Worker, LinkedHashSet<Integer>> entry : assigned.entrySet()) {
+                    int left = 0;
+                    for (int file : entry.getValue())
+                        if (results[file] == null && !stolen.contains(file))
+                            left++;
+                    if (entry.getKey() != worker && left > most) {
+                        straggler = entry.getKey();
+                        most = left;
+                    }
+                }
+                if (straggler != null) {
+                    List<Integer> left = new ArrayList<>();
+                    for (int file : assigned.get(straggler))
+                        if (results[file] == null && !stolen.contains(file))
+                            left.add(file);
+                    batch.addAll(left.subList(left.size() - (left.size() + 1) / 2, left.size()));
+                    stolen.addAll(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                assigned.get(worker).addAll(batch);
+                return batch;
+            }
+            try {
+                wait(); // until a file is finished, or handed out again
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while waiting for the workers");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the result of the next file of a worker
+     */
+    private void receive(Worker worker) throws IOException {
+        int file = worker.replies.readInt();
+        byte[] trace = new byte[worker.replies.readInt()];
+        worker.replies.readFully(trace);
+        byte[] result = new byte[worker.replies.readInt()];
+        worker.replies.readFully(result);
+        complete(worker, file, new Result(trace, result));
+    }
+
+    /**
+     * Keeps the result of a file, if it is the first one, and writes the results that are next in order
+     * @param worker The worker that compiled the file, or null if it is a failure
+     */
+    private synchronized void complete(Worker worker, int file, Result result) {
+        if (worker != null)
+            assigned.get(worker).remove(file);
+        if (results[file] != null)
+            return; // another worker was first
+        results[file] = result;
+        completed++;
+        for (; written < results.length && results[written] != null; written++) {
+            System.out.println();
+            System.out.println("rggFILE " + files.get(written));
+            System.out.write(results[written].trace, 0, results[written].trace.length);
+            res.write(results[written].result, 0, results[written].result.length);
+            results[written] = new Result(null, null); // the trace is not held once it is written
+        }
+        System.out.flush();
+        notifyAll();
+    }
+
+    /**
+     * Hands out the files that a worker that crashed had not finished again. The first of them is the one that it
+     * was compiling, which is reported as a failure once it has crashed workers MAX_ATTEMPTS times.
+     */
+    private synchronized void crashed(Worker worker, IOException e) {
+        worker.process.destroy();
+        List<Integer> again = new ArrayList<>();
+        boolean compiling = true;
+        for (int file : assigned.remove(worker)) {
+            boolean crashedIt = compiling;
+            compiling = false;
+            if (results[file] != null)
+                continue;
+            if (crashedIt && ++attempts[file] >= MAX_ATTEMPTS) {
+                ByteArrayOutputStream result = new ByteArrayOutputStream();
+                PrintStream ps = new PrintStream(result);
+                ps.println(files.get(file));
+                ps.println("Worker Failure");
+                ps.println("\tthe worker crashed " + attempts[file] + " times while compiling it: " + e);
+                ps.println("STOP\n");
+                ps.flush();
+                complete(null, file, new Result(new byte[0], result.toByteArray()));
+            }
+            else if (!stolen.remove(file)) // unless it is in the batch of another worker as well
+                again.add(file);
+        }
+        for (int i = again.size() - 1; i >= 0; i--)
+            queue.addFirst(again.get(i)); // before the files that were not handed out yet
+        notifyAll();
+    }
+
+    /**
+     * Runs a worker: compiles the files whose numbers and names it reads from the standard input, one per line, and
+     * writes the trace and the result of each of them to the standard output, until the end of the input
+     */
+    public static void work() throws IOException {
+        PrintStream stdout = System.out;
+        DataOutputStream replies = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, Charset.defaultCharset()));
+        SyntaxAnalyser analyser = null;
+        Generate generate = new Generate();
+        CompilationBudget budget = CompilationBudget.fromProperties(); // passed on by the coordinator
+        String request;
+        while ((request = requests.readLine()) != null) {
+            int tab = request.indexOf('\t');
+            Compile.fileName = request.substring(tab + 1);
+            ByteArrayOutputStream trace = new ByteArrayOutputStream(), result = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(budget != null ? budget.count(trace) : trace);
+            System.setOut(out); // the code generator prints the trace
+            try {
+                if (analyser == null) {
+                    analyser = new SyntaxAnalyser(Compile.fileName);
+                    analyser.setBudget(budget);
+                }
+                else
+                    analyser.reset(Compile.fileName); // one analyser for all the files of the worker
+                analyser.parse(new PrintStream(result), generate);
+            }
+            finally {
+                System.setOut(stdout);
+            }
+            out.flush();
+            replies.writeInt(Integer.parseInt(request.substring(0, tab)));
+            replies.writeInt(trace.size());
+            trace.writeTo(replies);
+            replies.writeInt(result.size());
+            result.writeTo(replies);
+            replies.flush();
+        }
+    }
+}
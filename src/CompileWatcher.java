@@ -0,0 +1,306 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compiles the programs of the corpus (as Compile does), and then watches the folder of the corpus, and compiles
+ * again the programs that change, or are created, until it is stopped. The trace is written to output.txt (the file
+ * that make run writes it to), and both it and res.txt keep the section of every program in the order of the
+ * programs: when programs are compiled again, their sections are written over the old ones, and only the sections
+ * after them are moved. So the time from an edit to its result depends on the size of the program that was edited,
+ * rather than on the size of the corpus.
+ * A burst of changes (an editor that saves a file in a few steps, or a checkout of many files) is compiled at once,
+ * when no change was seen for DEBOUNCE_MILLIS, and a program is compiled again only if its size or time of change
+ * differs from when it was compiled. The programs are compiled on a pool of threads, each of which has an analyser and
+ * a code generator of its own, which are reset for every program, and the trace of each thread goes to a buffer of its
+ * own.
+ *
+ * Usage: java Compile -watch [prefix]   (the prefix of the files is "Programs Folder/program" if none is given)
+ */
+public class CompileWatcher {
+
+    /*The time without changes after which the programs that changed are compiled, in milliseconds*/
+    public static final long DEBOUNCE_MILLIS = 100;
+
+    private final String prefix;
+    /*The folder of the programs, and the start of their names in it*/
+    private final Path folder;
+    private final String namePrefix;
+    private final ExecutorService pool;
+
+    /*The stream that the trace of the current thread goes to, and the analyser of each thread*/
+    private final ThreadLocal<OutputStream> trace = new ThreadLocal<>();
+    private final ThreadLocal<Compiler> compilers = ThreadLocal.withInitial(Compiler::new);
+
+    /*The size and the time of change of every program when it was compiled*/
+    private long[] sizes = new long[0];
+    private long[] modified = new long[0];
+    private int count;
+
+    private Sections output;
+    private Sections res;
+
+    /**
+     * @param prefix The prefix of the names of the files, which are numbered from 0 on
+     * @param threads The number of threads to compile on
+     */
+    public CompileWatcher(String prefix, int threads) {
+        Path path = Paths.get(prefix).toAbsolutePath();
+        this.prefix = prefix;
+        this.folder = path.getParent();
+        this.namePrefix = path.getFileName().toString();
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The analyser, the code generator and the budget of a thread
+     */
+    private static final class Compiler {
+
+        SyntaxAnalyser analyser;
+        final Generate generate = new Generate();
+        final CompilationBudget budget = CompilationBudget.fromProperties();
+    }
+
+    /**
+     * The sections of the programs in a file: a header, then a section for every program, in order, then a footer
+     */
+    private static final class Sections {
+
+        private final Path path;
+        /*The offsets of the end of the header, and of the end of the section of every program*/
+        private long[] ends;
+
+        /**
+         * Starts a file with a header, and no sections
+         */
+        Sections(Path path, byte[] header) throws IOException {
+            this.path = path;
+            this.ends = new long[] {header.length};
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel, ByteBuffer.wrap(header), 0);
+            }
+        }
+
+        /**
+         * Writes the sections of the programs from the first one that changed on, moves the sections after it that
+         * did not change, and writes the footer after them
+         * @param sections The section of every program, or null for the section of a program that did not change
+         * @param footer The footer
+         */
+        void update(byte[][] sections, byte[] footer) throws IOException {
+            int kept = Math.min(ends.length - 1, sections.length);
+            int first = 0;
+            while (first < kept && sections[first] == null)
+                first++;
+            long[] moved = Arrays.copyOf(ends, sections.length + 1);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // the old sections from the first one that changed on, which the new ones may overlap
+                ByteBuffer old = ByteBuffer.allocate((int) (ends[kept] - ends[first]));
+                while (old.hasRemaining() && channel.read(old, ends[first] + old.position()) >= 0)
+                    ;
+                long position = ends[first];
+                for (int i = first; i < sections.length; i++) {
+                    ByteBuffer section;
+                    if (sections[i] != null)
+                        section = ByteBuffer.wrap(sections[i]);
+                    else {
+                        section = old.duplicate();
+                        section.limit((int) (ends[i + 1] - ends[first]));
+                        section.position((int) (ends[i] - ends[first]));
+                    }
+                    position += write(channel, section, position);
+                    moved[i + 1] = position;
+                }
+                position += write(channel, ByteBuffer.wrap(footer), position);
+                channel.truncate(position);
+            }
+            ends = moved;
+        }
+
+        private static int write(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+            int length = bytes.remaining();
+            while (bytes.hasRemaining())
+                channel.write(bytes, position + length - bytes.remaining());
+            return length;
+        }
+    }
+
+    /**
+     * Compiles the corpus, and then the programs that change, until the watcher is interrupted
+     */
+    public void go() throws IOException, InterruptedException {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new OutputStream() { // the code generator prints the trace
+
+            @Override
+            public void write(int b) throws IOException {
+                trace.get().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                trace.get().write(b, off, len);
+            }
+        }));
+        output = new Sections(Paths.get("output.txt"), lines("rggSTART"));
+        res = new Sections(Paths.get("res.txt"), new byte[0]);
+
+        try (WatchService watcher = folder.getFileSystem().newWatchService()) {
+            // before the first compilation, so that no change is missed
+            folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            long start = System.nanoTime();
+            int compiled = compile(0);
+            stdout.println("compiled " + compiled + " of " + count + " files in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms, watching " + folder);
+            while (true) {
+                WatchKey key = watcher.take();
+                int first = Integer.MAX_VALUE;
+                do {
+                    for (WatchEvent<?> event : key.pollEvents())
+                        first = Math.min(first, event.kind() == StandardWatchEventKinds.OVERFLOW ? 0
+                                : number(event.context().toString()));
+                    if (!key.reset())
+                        throw new IOException(folder + " can no longer be watched");
+                } while ((key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+                if (first == Integer.MAX_VALUE)
+                    continue; // none of the programs changed
+                start = System.nanoTime();
+                int before = count;
+                compiled = compile(first);
+                if (compiled > 0 || count != before)
+                    stdout.println("compiled " + compiled + " of " + count + " files in "
+                            + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        }
+        finally {
+            System.setOut(stdout);
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param name The name of a file in the folder of the programs
+     * @return The number of the program, or Integer.MAX_VALUE if it is not a program of the corpus
+     */
+    private int number(String name) {
+        if (!name.startsWith(namePrefix) || name.length() == namePrefix.length()
+                || name.length() - namePrefix.length() > 9)
+            return Integer.MAX_VALUE;
+        String digits = name.substring(namePrefix.length());
+        for (int i = 0; i < digits.length(); i++)
+            if (!Character.isDigit(digits.charAt(i)))
+                return Integer.MAX_VALUE;
+        if (digits.length() > 1 && digits.charAt(0) == '0')
+            return Integer.MAX_VALUE; // not the name of a program, which is numbered as Compile numbers them
+        return Integer.parseInt(digits);
+    }
+
+    /**
+     * Compiles the programs from a number on whose size or time of change differ from when they were compiled, or
+     * that are new, and writes their sections
+     * @param first The number of the first program that may have changed
+     * @return The number of programs that were compiled
+     */
+    private int compile(int first) throws IOException, InterruptedException {
+        int newCount = Math.min(first, count);
+        while (Files.exists(Paths.get(prefix + newCount)))
+            newCount++;
+        long[] newSizes = Arrays.copyOf(sizes, newCount), newModified = Arrays.copyOf(modified, newCount);
+        List<Integer> changed = new ArrayList<>();
+        List<Callable<byte[][]>> tasks = new ArrayList<>();
+        for (int i = Math.min(first, newCount); i < newCount; i++) {
+            Path path = Paths.get(prefix + i);
+            try {
+                newSizes[i] = Files.size(path);
+                newModified[i] = Files.getLastModifiedTime(path).toMillis();
+            }
+            catch (NoSuchFileException e) {
+                newSizes[i] = newModified[i] = -1; // it is compiled, and fails, and it is compiled again when it comes back
+            }
+            if (i < count && newSizes[i] == sizes[i] && newModified[i] == modified[i])
+                continue;
+            final String fileName = prefix + i;
+            changed.add(i);
+            tasks.add(() -> compile(fileName));
+        }
+        if (changed.isEmpty() && newCount == count)
+            return 0;
+
+        byte[][] traces = new byte[newCount][], results = new byte[newCount][];
+        List<Future<byte[][]>> compiled = pool.invokeAll(tasks);
+        for (int i = 0; i < changed.size(); i++) {
+            try {
+                byte[][] sections = compiled.get(i).get();
+                traces[changed.get(i)] = sections[0];
+                results[changed.get(i)] = sections[1];
+            }
+            catch (ExecutionException e) {
+                throw new IOException("unable to compile " + prefix + changed.get(i), e.getCause());
+            }
+        }
+        output.update(traces, lines(prefix + newCount + " does not exist", "", "rggFINISH"));
+        res.update(results, new byte[0]);
+        sizes = newSizes;
+        modified = newModified;
+        count = newCount;
+        return changed.size();
+    }
+
+    /**
+     * Compiles a program, on a thread of the pool
+     * @return The section of the program in the trace, and its section in res.txt
+     */
+    private byte[][] compile(String fileName) {
+        Compiler compiler = compilers.get();
+        ByteArrayOutputStream section = new ByteArrayOutputStream(), result = new ByteArrayOutputStream();
+        PrintStream header = new PrintStream(section);
+        header.println();
+        header.println("rggFILE " + fileName);
+        header.flush();
+        trace.set(compiler.budget != null ? compiler.budget.count(section) : section);
+        PrintStream ps = new PrintStream(result);
+        try {
+            if (compiler.analyser == null) {
+                compiler.analyser = new SyntaxAnalyser(fileName);
+                compiler.analyser.setBudget(compiler.budget);
+            }
+            else
+                compiler.analyser.reset(fileName);
+            compiler.analyser.parse(ps, compiler.generate);
+        }
+        catch (IOException | RuntimeException | StackOverflowError e) {
+            compiler.analyser = null; // it is made again for the next program
+            ps.println(fileName);
+            ps.println("Compiler Failure");
+            ps.println("\tunable to compile it: " + e);
+            ps.println("STOP\n");
+        }
+        finally {
+            trace.remove();
+        }
+        ps.flush();
+        return new byte[][] {section.toByteArray(), result.toByteArray()};
+    }
+
+    /**
+     * @return Lines as they are printed
+     */
+    private static byte[] lines(String... lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(bytes);
+        for (String line : lines)
+            ps.println(line);
+        ps.flush();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,14 @@
+import java.io.IOException;
+
+/**
+ * A program that was compiled to a JVM class by the JvmCompiler. The class is loaded by a ProgramClassLoader.
+ */
+public interface CompiledProgram {
+
+    /**
+     * Executes the program
+     * @param io The input and output of the program
+     * @throws IOException If the program needs input that can not be read
+     */
+    void run(ProgramIO io) throws IOException;
+}
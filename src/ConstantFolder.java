@@ -0,0 +1,403 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * An optimisation pass over the parse tree of a program (as built by TreeGenerate), which runs before it is compiled.
+ * It evaluates the parts of expressions whose operands are all constants, propagates the values of variables that
+ * are known at compile time into the expressions and conditions that read them, and removes the branches of if
+ * statements and the loops whose conditions it can decide.
+ * The tree is rewritten in place, so that it keeps the shape that the Syntax Analyser gives it and the compilers do
+ * not need to know about this pass. The only exception is a Statement node, which may be left empty, or whose child
+ * may be replaced by the StatementList or the AssignmentStatement that is left of it.
+ * Constants are folded from left to right, as the compilers evaluate them, so that "1 + 2 + x" becomes "3 + x", but
+ * "x + 1 + 2" is left as it is. The results are the same as if the program was not optimised.
+ */
+public class ConstantFolder {
+
+    /**
+     * What the pass did to a program
+     */
+    public static class Report {
+        /*The number of nodes of the parse tree, before and after the pass*/
+        public int nodesBefore, nodesAfter;
+        /*The number of chains of constants that were replaced by their value*/
+        public int folded;
+        /*The number of reads of variables that were replaced by their value*/
+        public int propagated;
+        /*The number of branches and loops that were removed, or replaced by the statements that are left of them*/
+        public int deadBranches;
+
+        @Override
+        public String toString() {
+
+            return "constant folding: " + folded + " folded, " + propagated + " propagated, " + deadBranches +
+                    " dead branches, " + (nodesBefore - nodesAfter) + " of " + nodesBefore + " nodes eliminated";
+        }
+    }
+
+    /*Numbers that are integral and smaller than this are written without a fraction*/
+    private static final double MAX_INTEGRAL = 1e15;
+
+    private final Report report = new Report();
+
+    /**
+     * Optimises the parse tree of a program
+     * @param root The root of the parse tree, as returned by TreeGenerate.getRoot()
+     * @return What the pass did to the program
+     */
+    public static Report fold(ParseNode root) {
+        ConstantFolder folder = new ConstantFolder();
+        folder.report.nodesBefore = root.size();
+        folder.statementList(root.child(1), new HashMap<>());
+        folder.report.nodesAfter = root.size();
+        return folder.report;
+    }
+
+    /**
+     * @param list The StatementList node
+     * @param known The values of the variables that are known before the statements, which is updated to the ones
+     *              that are known after them
+     */
+    private void statementList(ParseNode list, HashMap<Variable, Object> known) {
+        while (true) {
+            statement(list.child(0), known);
+            if (list.children.size() < 3)
+                break;
+            list = list.child(2);
+        }
+    }
+
+    private void statement(ParseNode statement, HashMap<Variable, Object> known) {
+        if (statement.children.isEmpty())
+            return;
+
+        ParseNode node = statement.child(0);
+        switch (node.name) {
+            case "StatementList": statementList(node, known); break;
+            case "AssignmentStatement": assignment(node, known); break;
+            case "IfStatement": ifStatement(statement, node, known); break;
+            case "WhileStatement": whileStatement(statement, node, known); break;
+            case "UntilStatement": untilStatement(statement, node, known); break;
+            case "ForStatement": forStatement(statement, node, known); break;
+            case "ProcedureStatement":
+                // get changes its arguments, put only reads them
+                forget(assignedIn(node), known);
+                break;
+        }
+    }
+
+    /**
+     * identifier := <expression> | identifier := stringConstant
+     */
+    private void assignment(ParseNode node, HashMap<Variable, Object> known) {
+        ParseNode value = node.child(2);
+        Object v;
+        if (value.is(Token.stringConstant))
+            v = value.token.getText();
+        else {
+            v = expression(value, known);
+            if (v instanceof String) {
+                node.children.set(2, new ParseNode(new Token(Token.stringConstant, (String) v, value.lineNumber())));
+                report.folded++;
+            }
+        }
+
+        Variable target = node.child(0).variable;
+        if (target == null)
+            return;
+        if (v != null && (v instanceof Double) == (target.type == Variable.Type.NUMBER))
+            known.put(target, v);
+        else
+            known.remove(target);
+    }
+
+    /**
+     * if <condition> then <statement list> [else <statement list>] end if
+     */
+    private void ifStatement(ParseNode statement, ParseNode node, HashMap<Variable, Object> known) {
+        ParseNode condition = node.child(1);
+        ParseNode otherwise = node.child(4).is(Token.elseSymbol) ? node.child(5) : null;
+
+        Boolean holds = decide(condition, known);
+        if (holds != null) {
+            ParseNode taken = holds ? node.child(3) : otherwise;
+            statement.children.clear();
+            report.deadBranches++;
+            if (taken != null) {
+                statement.children.add(taken);
+                statementList(taken, known);
+            }
+            return;
+        }
+
+        propagate(condition, known);
+        HashMap<Variable, Object> then = new HashMap<>(known);
+        statementList(node.child(3), then);
+        if (otherwise != null)
+            statementList(otherwise, known);
+
+        // only the values that both branches agree on are known after the statement
+        known.entrySet().removeIf(e -> !e.getValue().equals(then.get(e.getKey())));
+    }
+
+    /**
+     * while <condition> loop <statement list> end loop
+     */
+    private void whileStatement(ParseNode statement, ParseNode node, HashMap<Variable, Object> known) {
+        if (Boolean.FALSE.equals(decide(node.child(1), known))) {
+            statement.children.clear();
+            report.deadBranches++;
+            return;
+        }
+
+        // the condition and the body are evaluated in every iteration, so only what the body does not change holds
+        forget(assignedIn(node.child(3)), known);
+        propagate(node.child(1), known);
+        statementList(node.child(3), new HashMap<>(known));
+    }
+
+    /**
+     * do <statement list> until <condition>
+     */
+    private void untilStatement(ParseNode statement, ParseNode node, HashMap<Variable, Object> known) {
+        forget(assignedIn(node.child(1)), known);
+        statementList(node.child(1), known);
+
+        // what is known at the end of the body holds every time that the condition is tested
+        if (Boolean.TRUE.equals(decide(node.child(3), known))) {
+            statement.children.set(0, node.child(1));
+            report.deadBranches++;
+            return;
+        }
+        propagate(node.child(3), known);
+    }
+
+    /**
+     * for ( <assignment> ; <condition> ; <assignment> ) do <statement list> end loop
+     */
+    private void forStatement(ParseNode statement, ParseNode node, HashMap<Variable, Object> known) {
+        assignment(node.child(2), known);
+        if (Boolean.FALSE.equals(decide(node.child(4), known))) {
+            statement.children.set(0, node.child(2));
+            report.deadBranches++;
+            return;
+        }
+
+        HashSet<Variable> assigned = assignedIn(node.child(9));
+        assigned.addAll(assignedIn(node.child(6)));
+        forget(assigned, known);
+        propagate(node.child(4), known);
+
+        HashMap<Variable, Object> body = new HashMap<>(known);
+        statementList(node.child(9), body);
+        assignment(node.child(6), body);
+    }
+
+    /**
+     * Folds the constants of an expression, term or factor
+     * @return The value of the whole expression, as a Double or a String, or null if it is not known
+     */
+    private Object expression(ParseNode node, HashMap<Variable, Object> known) {
+        if (node.children.isEmpty())
+            return null;
+        if (node.is("Factor"))
+            return factor(node, known);
+
+        ArrayList<ParseNode> links = new ArrayList<>();
+        for (ParseNode link = node; ; link = link.child(2)) {
+            if (link.children.isEmpty())
+                return null;
+            links.add(link);
+            if (link.children.size() < 3)
+                break;
+        }
+
+        Object[] values = new Object[links.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = expression(links.get(i).child(0), known);
+
+        // the longest prefix of the chain that is made of constants, which is evaluated first
+        Object value = values[0];
+        int last = 0;
+        while (value != null && last + 1 < values.length && values[last + 1] != null) {
+            Object next = apply(value, links.get(last).child(1).token.symbol, values[last + 1]);
+            if (next == null)
+                break;
+            value = next;
+            last++;
+        }
+
+        // strings can only be written as constants on their own, which the assignment takes care of
+        if (last > 0 && value instanceof Double) {
+            ParseNode end = links.get(last);
+            ParseNode operand = constantOperand(node, (Double) value, node.lineNumber());
+            node.children.clear();
+            node.children.add(operand);
+            if (end.children.size() == 3) {
+                node.children.add(end.child(1));
+                node.children.add(end.child(2));
+            }
+            report.folded++;
+        }
+        return last == values.length - 1 ? value : null;
+    }
+
+    /**
+     * identifier | numberConstant | ( <expression> )
+     */
+    private Object factor(ParseNode node, HashMap<Variable, Object> known) {
+        ParseNode first = node.child(0);
+        if (first.is(Token.numberConstant))
+            return Double.parseDouble(first.token.getText());
+
+        Object value;
+        if (first.is(Token.leftParenthesis)) {
+            value = expression(node.child(1), known);
+            if (value instanceof Double) {
+                node.children.clear();
+                node.children.add(numberConstant((Double) value, first.token.lineNumber));
+            }
+            return value;
+        }
+
+        value = first.variable != null ? known.get(first.variable) : null;
+        if (value instanceof Double) {
+            node.children.set(0, numberConstant((Double) value, first.token.lineNumber));
+            report.propagated++;
+        }
+        return value;
+    }
+
+    /**
+     * @return The value of "a operator b", or null if the operation can not be evaluated at compile time
+     */
+    private static Object apply(Object a, int operator, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            double x = (Double) a, y = (Double) b;
+            switch (operator) {
+                case Token.plusSymbol: return x + y;
+                case Token.minusSymbol: return x - y;
+                case Token.timesSymbol: return x * y;
+                case Token.divideSymbol: return x / y;
+                default: return null;
+            }
+        }
+        if (a instanceof String && b instanceof String && operator == Token.plusSymbol)
+            return (String) a + b;
+        return null; // an invalid operation, which is left for the compiler to report
+    }
+
+    /**
+     * Decides a condition from the values that are known
+     * @return The result of the condition, or null if it can not be decided
+     */
+    static Boolean decide(ParseNode condition, HashMap<Variable, Object> known) {
+        Variable left = condition.child(0).variable;
+        Object a = left != null ? known.get(left) : null;
+        Object b = operandValue(condition.child(2), known);
+        if (a == null || b == null)
+            return null;
+
+        int operator = condition.child(1).child(0).token.symbol;
+        if (a instanceof Double && b instanceof Double)
+            return compare((Double) a, operator, (Double) b);
+        if (a instanceof String && b instanceof String) {
+            // the compilers compare the result of the comparison of the strings with 0
+            return compare((double) ((String) a).compareTo((String) b), operator, 0.0);
+        }
+        return null;
+    }
+
+    private static Boolean compare(double a, int operator, double b) {
+        switch (operator) {
+            case Token.lessThanSymbol: return a < b;
+            case Token.lessEqualSymbol: return a <= b;
+            case Token.equalSymbol: return a == b;
+            case Token.notEqualSymbol: return a != b;
+            case Token.greaterThanSymbol: return a > b;
+            case Token.greaterEqualSymbol: return a >= b;
+            default: return null;
+        }
+    }
+
+    /**
+     * Replaces the right hand side of a condition with its value, if it is a variable whose value is known
+     */
+    private void propagate(ParseNode condition, HashMap<Variable, Object> known) {
+        ParseNode right = condition.child(2);
+        Object value = right.variable != null ? known.get(right.variable) : null;
+        if (value instanceof Double)
+            condition.children.set(2, numberConstant((Double) value, right.token.lineNumber));
+        else if (value instanceof String)
+            condition.children.set(2, new ParseNode(new Token(Token.stringConstant, (String) value,
+                    right.token.lineNumber)));
+        else
+            return;
+        report.propagated++;
+    }
+
+    private static Object operandValue(ParseNode operand, HashMap<Variable, Object> known) {
+        if (operand.is(Token.numberConstant))
+            return Double.parseDouble(operand.token.getText());
+        if (operand.is(Token.stringConstant))
+            return operand.token.getText();
+        return operand.variable != null ? known.get(operand.variable) : null;
+    }
+
+    /**
+     * @param chain The Expression or Term node that the operand belongs to
+     * @return The node of a constant operand of the chain: a Term for an Expression, or a Factor for a Term
+     */
+    private static ParseNode constantOperand(ParseNode chain, double value, int lineNumber) {
+        ParseNode factor = new ParseNode("Factor");
+        factor.children.add(numberConstant(value, lineNumber));
+        if (chain.is("Term"))
+            return factor;
+
+        ParseNode term = new ParseNode("Term");
+        term.children.add(factor);
+        return term;
+    }
+
+    /**
+     * @return A numberConstant terminal node of a value. Integral values are written without a fraction, so that
+     * they read like the constants of the source
+     */
+    static ParseNode numberConstant(double value, int lineNumber) {
+        // -0.0 keeps its fraction, as "-0" would be read back as 0
+        boolean integral = value == Math.rint(value) && Math.abs(value) < MAX_INTEGRAL
+                && Double.doubleToRawLongBits(value) != Long.MIN_VALUE;
+        String text = integral ? Long.toString((long) value) : Double.toString(value);
+        return new ParseNode(new Token(Token.numberConstant, text, lineNumber));
+    }
+
+    /**
+     * @return The variables that are assigned by any statement of a subtree, including the arguments of get
+     */
+    static HashSet<Variable> assignedIn(ParseNode node) {
+        HashSet<Variable> assigned = new HashSet<>();
+        assignedIn(node, assigned);
+        return assigned;
+    }
+
+    private static void assignedIn(ParseNode node, HashSet<Variable> assigned) {
+        if (node.is("AssignmentStatement")) {
+            if (node.child(0).variable != null)
+                assigned.add(node.child(0).variable);
+        }
+        else if (node.is("ProcedureStatement") && node.child(1).token.getText().equals("get")) {
+            for (ParseNode list = node.child(3); list != null; list = list.children.size() > 1 ? list.child(2) : null)
+                if (list.child(0).variable != null)
+                    assigned.add(list.child(0).variable);
+        }
+        for (ParseNode c : node.children)
+            assignedIn(c, assigned);
+    }
+
+    private static void forget(HashSet<Variable> variables, Map<Variable, Object> known) {
+
+        known.keySet().removeAll(variables);
+    }
+}
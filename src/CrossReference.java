@@ -0,0 +1,459 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * An index of the declarations, assignments and uses of the variables of a corpus of programs, which the Syntax
+ * Analyser reports as it analyses them, so that questions like "which programs use x" or "where is text first
+ * declared" are answered without analysing the corpus again. It is an inverted index in a file: the identifiers are
+ * sorted, and each of them has the list of its references (its postings), sorted by file and line, and encoded as
+ * variable-length deltas. The file is mapped, and an identifier is found by a binary search of a table of fixed-size
+ * entries, so a query reads a few pages of it.
+ * The index keeps the size and the time of the last change of every file, and update analyses only the files that
+ * changed (or are new) since the last update: the references of the other files are taken from the index.
+ *
+ * Usage: java CrossReference [-index file] update [prefix]   (the files of the corpus, from prefix0 on)
+ *        java CrossReference [-index file] find identifier   (all its references)
+ *        java CrossReference [-index file] files identifier  (the files that refer to it)
+ *        java CrossReference [-index file] declared identifier  (where it is first declared in each file)
+ */
+public class CrossReference {
+
+    /**
+     * What a reference to a variable does
+     */
+    public enum Kind {
+        /*The first assignment of the variable, which declares it*/
+        DECLARATION,
+        /*An assignment of a variable that is declared already*/
+        ASSIGNMENT,
+        /*A use of the value of the variable*/
+        USE
+    }
+
+    /**
+     * A reference to a variable: the file and the line that it is on, and its kind
+     */
+    public static final class Posting {
+
+        public final String file;
+        public final int line;
+        public final Kind kind;
+
+        Posting(String file, int line, Kind kind) {
+            this.file = file;
+            this.line = line;
+            this.kind = kind;
+        }
+
+        @Override
+        public String toString() {
+
+            return file + ":" + line + " " + kind.name().toLowerCase();
+        }
+    }
+
+    /*The index file: a header, the postings, the files, the table of the identifiers and their names*/
+    private static final int MAGIC = 0x58524546; // "XREF"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 7 * 4;
+    /*An entry of the table: the offsets of the name (among the names) and of the postings of an identifier*/
+    private static final int ENTRY_SIZE = 2 * 4;
+
+    private final ByteBuffer index;
+    private final int identifierCount;
+    private final int dictionary;
+    private final int names;
+    /*The files of the corpus, and the size and the time of the last change of each of them when it was indexed*/
+    private final String[] files;
+    private final long[] sizes;
+    private final long[] modified;
+
+    private CrossReference(ByteBuffer index) throws IOException {
+        this.index = index;
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION)
+            throw new IOException("not a cross-reference index");
+        int fileCount = index.getInt(8);
+        this.identifierCount = index.getInt(12);
+        this.dictionary = index.getInt(20);
+        this.names = index.getInt(24);
+        this.files = new String[fileCount];
+        this.sizes = new long[fileCount];
+        this.modified = new long[fileCount];
+        ByteBuffer in = index.duplicate();
+        in.position(index.getInt(16));
+        for (int i = 0; i < fileCount; i++) {
+            sizes[i] = in.getLong();
+            modified[i] = in.getLong();
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            files[i] = new String(name, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Opens an index, which is mapped rather than read
+     * @param indexFile The file of the index
+     * @return The index
+     * @throws IOException If the file can not be read, or is not an index
+     */
+    public static CrossReference open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(indexFile + " is too big to be an index");
+            return new CrossReference(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @return The files that are indexed
+     */
+    public List<String> getFiles() {
+
+        return Collections.unmodifiableList(Arrays.asList(files));
+    }
+
+    /**
+     * @return The number of identifiers that are indexed
+     */
+    public int getIdentifierCount() {
+
+        return identifierCount;
+    }
+
+    /**
+     * @param identifier An identifier
+     * @return All the references to it, by file and by line
+     */
+    public List<Posting> find(String identifier) {
+        List<Posting> postings = new ArrayList<>();
+        int entry = search(identifier);
+        if (entry >= 0)
+            decode(entry, postings);
+        return postings;
+    }
+
+    /**
+     * @param identifier An identifier
+     * @return The files that refer to it
+     */
+    public List<String> files(String identifier) {
+        List<String> files = new ArrayList<>();
+        for (Posting posting : find(identifier)) {
+            if (files.isEmpty() || !files.get(files.size() - 1).equals(posting.file))
+                files.add(posting.file);
+        }
+        return files;
+    }
+
+    /**
+     * @param identifier An identifier
+     * @return The first declaration of it in each of the files that declare it
+     */
+    public List<Posting> declarations(String identifier) {
+        List<Posting> declarations = new ArrayList<>();
+        for (Posting posting : find(identifier)) {
+            if (posting.kind == Kind.DECLARATION && (declarations.isEmpty()
+                    || !declarations.get(declarations.size() - 1).file.equals(posting.file)))
+                declarations.add(posting);
+        }
+        return declarations;
+    }
+
+    /**
+     * @return The entry of an identifier in the table, or -1 if it is not indexed
+     */
+    private int search(String identifier) {
+        int low = 0, high = identifierCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = name(middle).compareTo(identifier);
+            if (comparison < 0)
+                low = middle + 1;
+            else if (comparison > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The identifier of an entry of the table
+     */
+    private String name(int entry) {
+        int start = index.getInt(dictionary + entry * ENTRY_SIZE);
+        int end = index.getInt(dictionary + (entry + 1) * ENTRY_SIZE);
+        byte[] name = new byte[end - start];
+        ByteBuffer in = index.duplicate();
+        in.position(names + start);
+        in.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the postings of an entry of the table: for each of them, the difference of its file from that of the
+     * one before it, and the difference of its line from that of the one before it in the same file, with its kind
+     */
+    private void decode(int entry, List<Posting> postings) {
+        ByteBuffer in = index.duplicate();
+        in.position(index.getInt(dictionary + entry * ENTRY_SIZE + 4));
+        int end = index.getInt(dictionary + (entry + 1) * ENTRY_SIZE + 4);
+        int file = 0, line = 0;
+        while (in.position() < end) {
+            int fileDelta = readVarint(in);
+            if (fileDelta != 0) {
+                file += fileDelta;
+                line = 0;
+            }
+            int value = readVarint(in);
+            line += value >>> 2;
+            postings.add(new Posting(files[file], line, Kind.values()[value & 3]));
+        }
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * The references of a file, in the order that the analysis reported them
+     */
+    private static final class FileReferences implements SemanticAnalyser.References {
+
+        final String name;
+        final long size;
+        final long modified;
+        final ArrayList<String> identifiers = new ArrayList<>();
+        /*The line and the kind of each reference, as line << 2 | kind*/
+        int[] references = new int[64];
+
+        FileReferences(String name, long size, long modified) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public void reference(Token identifier, Kind kind) {
+            add(identifier.detach(), identifier.lineNumber, kind);
+        }
+
+        void add(String identifier, int line, Kind kind) {
+            if (identifiers.size() == references.length)
+                references = Arrays.copyOf(references, references.length * 2);
+            references[identifiers.size()] = line << 2 | kind.ordinal();
+            identifiers.add(identifier);
+        }
+    }
+
+    /**
+     * Brings an index up to date with the files of a corpus: the files that are not in the index, or whose size or
+     * time of the last change is not the one in the index, are analysed again, and the references of the others are
+     * taken from the index. The files that are no longer in the corpus are dropped. The new index replaces the old
+     * one when it is complete.
+     * @param indexFile The file of the index, which is created if it does not exist
+     * @param corpus The files of the corpus
+     * @return The number of files that were analysed
+     * @throws IOException If a file can not be read, or the index can not be written
+     */
+    public static int update(Path indexFile, List<String> corpus) throws IOException {
+        CrossReference old = Files.exists(indexFile) ? open(indexFile) : null;
+        Map<String, Integer> indexed = new HashMap<>();
+        if (old != null) {
+            for (int i = 0; i < old.files.length; i++)
+                indexed.put(old.files[i], i);
+        }
+
+        List<FileReferences> files = new ArrayList<>();
+        Map<String, FileReferences> kept = new HashMap<>();
+        SyntaxAnalyser analyser = null;
+        Generate generate = new QuietGenerate();
+        int analysed = 0;
+        for (String name : corpus) {
+            Path path = Paths.get(name);
+            FileReferences file = new FileReferences(name, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+            files.add(file);
+            Integer i = indexed.get(name);
+            if (i != null && old.sizes[i] == file.size && old.modified[i] == file.modified) {
+                kept.put(name, file);
+                continue;
+            }
+            if (analyser == null)
+                analyser = new SyntaxAnalyser(name);
+            else
+                analyser.reset(name);
+            analyser.setReferences(file);
+            try {
+                analyser.analyse(generate);
+            }
+            catch (CompilationException e) {
+                // the references before the error are kept
+            }
+            analysed++;
+        }
+        if (!kept.isEmpty()) {
+            List<Posting> postings = new ArrayList<>();
+            for (int entry = 0; entry < old.identifierCount; entry++) {
+                String identifier = old.name(entry);
+                postings.clear();
+                old.decode(entry, postings);
+                for (Posting posting : postings) {
+                    FileReferences file = kept.get(posting.file);
+                    if (file != null)
+                        file.add(identifier, posting.line, posting.kind);
+                }
+            }
+        }
+
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+            write(files, out);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return analysed;
+    }
+
+    /**
+     * Writes the index of the references of some files
+     */
+    private static void write(List<FileReferences> files, OutputStream out) throws IOException {
+        // every reference, as its file, line and kind in a long, by identifier
+        TreeMap<String, long[]> references = new TreeMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (int f = 0; f < files.size(); f++) {
+            FileReferences file = files.get(f);
+            for (int r = 0; r < file.identifiers.size(); r++) {
+                String identifier = file.identifiers.get(r);
+                long[] list = references.get(identifier);
+                int count = counts.getOrDefault(identifier, 0);
+                if (list == null || count == list.length)
+                    references.put(identifier, list = list == null ? new long[4] : Arrays.copyOf(list, count * 2));
+                list[count] = (long) f << 32 | file.references[r] & 0xffffffffL;
+                counts.put(identifier, count + 1);
+            }
+        }
+
+        ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        int[] nameOffsets = new int[references.size() + 1], postingOffsets = new int[references.size() + 1];
+        int entry = 0;
+        for (Map.Entry<String, long[]> identifier : references.entrySet()) {
+            nameOffsets[entry] = names.size();
+            postingOffsets[entry++] = HEADER_SIZE + postings.size();
+            byte[] name = identifier.getKey().getBytes(StandardCharsets.UTF_8);
+            names.write(name, 0, name.length);
+
+            long[] list = identifier.getValue();
+            int count = counts.get(identifier.getKey());
+            Arrays.sort(list, 0, count); // by file, line and kind
+            int file = 0, line = 0;
+            for (int i = 0; i < count; i++) {
+                int f = (int) (list[i] >>> 32), value = (int) list[i];
+                writeVarint(postings, f - file);
+                if (f != file) {
+                    file = f;
+                    line = 0;
+                }
+                writeVarint(postings, ((value >>> 2) - line) << 2 | value & 3);
+                line = value >>> 2;
+            }
+        }
+        nameOffsets[entry] = names.size();
+        postingOffsets[entry] = HEADER_SIZE + postings.size();
+
+        ByteArrayOutputStream fileTable = new ByteArrayOutputStream();
+        DataOutputStream table = new DataOutputStream(fileTable);
+        for (FileReferences file : files) {
+            byte[] name = file.name.getBytes(StandardCharsets.UTF_8);
+            table.writeLong(file.size);
+            table.writeLong(file.modified);
+            table.writeInt(name.length);
+            table.write(name);
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        int filesOffset = HEADER_SIZE + postings.size();
+        int dictionaryOffset = filesOffset + fileTable.size();
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(files.size());
+        data.writeInt(references.size());
+        data.writeInt(filesOffset);
+        data.writeInt(dictionaryOffset);
+        data.writeInt(dictionaryOffset + (references.size() + 1) * ENTRY_SIZE);
+        postings.writeTo(data);
+        fileTable.writeTo(data);
+        for (int i = 0; i <= references.size(); i++) {
+            data.writeInt(nameOffsets[i]);
+            data.writeInt(postingOffsets[i]);
+        }
+        names.writeTo(data);
+        data.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path indexFile = Paths.get("xref.idx");
+        int a = 0;
+        if (args.length > 1 && args[0].equals("-index")) {
+            indexFile = Paths.get(args[1]);
+            a = 2;
+        }
+        if (a >= args.length) {
+            System.out.println("usage: java CrossReference [-index file] update [prefix] | find identifier"
+                    + " | files identifier | declared identifier");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        String command = args[a];
+        if (command.equals("update")) {
+            String prefix = args.length > a + 1 ? args[a + 1] : "Programs Folder" + File.separator + "program";
+            List<String> corpus = new ArrayList<>();
+            for (int fileNumber = 0; new File(prefix + fileNumber).exists(); fileNumber++)
+                corpus.add(prefix + fileNumber);
+            int analysed = update(indexFile, corpus);
+            CrossReference index = open(indexFile);
+            System.out.println("indexed " + index.getFiles().size() + " files (" + analysed + " analysed) and "
+                    + index.getIdentifierCount() + " identifiers in " + (System.nanoTime() - start) / 1_000_000
+                    + " ms");
+            return;
+        }
+        if (args.length != a + 2) {
+            System.out.println("usage: java CrossReference [-index file] " + command + " identifier");
+            System.exit(1);
+        }
+        CrossReference index = open(indexFile);
+        String identifier = args[a + 1];
+        List<?> answer;
+        switch (command) {
+            case "find": answer = index.find(identifier); break;
+            case "files": answer = index.files(identifier); break;
+            case "declared": answer = index.declarations(identifier); break;
+            default:
+                System.out.println("unknown command " + command);
+                System.exit(1);
+                return;
+        }
+        for (Object line : answer)
+            System.out.println(line);
+        System.out.println("(" + answer.size() + " in " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.PrintStream;
+
+/**
+ * This class prints a program that was compiled to Bytecode in a readable form: one instruction per line, with its
+ * position, its mnemonic and its operands. Number registers are written as "n3", string registers as "s1", long
+ * registers as "l2", and the variable or the constant that a register holds is written next to it.
+ */
+public class Disassembler {
+
+    private final Bytecode program;
+
+    /*The text of the contents of every register (the identifier of its variable, or its constant value)*/
+    private final String[] numberLabels;
+    private final String[] stringLabels;
+
+    /**
+     * Constructor of the Disassembler
+     * @param program The program to disassemble
+     */
+    Disassembler(Bytecode program) {
+        this.program = program;
+        this.numberLabels = program.numberNames.clone();
+        this.stringLabels = program.stringNames.clone();
+
+        for (int i = 0; i < program.numberConstantRegisters.length; i++)
+            numberLabels[program.numberConstantRegisters[i]] = ProgramIO.formatNumber(program.numberConstants[i]);
+        for (int i = 0; i < program.stringConstantRegisters.length; i++)
+            stringLabels[program.stringConstantRegisters[i]] = '"' + program.stringConstants[i] + '"';
+    }
+
+    /**
+     * Prints the whole program
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        out.println("; " + program.code.length + " words, " + program.numberNames.length + " number registers, "
+                + program.stringNames.length + " string registers");
+
+        // the code that only uses doubles, if there is one, starts at the first target of the deoptimisation table
+        int generic = program.deoptimisation.length > 0 ? program.deoptimisation[2] : -1;
+        for (int pc = 0; pc < program.code.length; pc += Bytecode.length(program.code[pc])) {
+            if (pc == generic)
+                out.println("; deoptimised code, for " + program.deoptimisation.length / 3 + " assignments");
+            out.println(instruction(pc));
+        }
+    }
+
+    /**
+     * @param pc The position of an instruction
+     * @return The text of the instruction
+     */
+    public String instruction(int pc) {
+        int[] code = program.code;
+        int opcode = code[pc];
+        String operands = Bytecode.OPERANDS[opcode];
+
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("%5d  %-7s", pc, Bytecode.MNEMONICS[opcode]));
+        for (int i = 0; i < operands.length(); i++) {
+            int operand = code[pc + 1 + i];
+            line.append(i == 0 ? " " : ", ");
+            switch (operands.charAt(i)) {
+                case 'n': line.append(register('n', operand, numberLabels)); break;
+                case 's': line.append(register('s', operand, stringLabels)); break;
+                case 'l': line.append(register('l', operand, numberLabels)); break;
+                default: line.append('@').append(operand);
+            }
+        }
+        return line.toString();
+    }
+
+    private static String register(char file, int reg, String[] labels) {
+        String label = labels[reg];
+
+        return label == null ? file + Integer.toString(reg) : file + Integer.toString(reg) + "(" + label + ")";
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Driver program that compiles a single program and executes it, reading the input of the program from the
+ * standard input and writing its output to the standard output.
+ *
+ * Usage: java Execute [-trace] [-pipelined | -parallel] [-O] [-integral] [-report] [-disassemble] [-jvm]
+ *                     [-save directory] [-artifact] [-in file] [-out file] file
+ *   -trace        print the trace of the analysis, as Compile does
+ *   -pipelined    lex the program on a thread of its own, ahead of the analysis
+ *   -parallel     lex the program in chunks, in parallel, before the analysis reads them (for very big files)
+ *   -O            optimise the parse tree of the program before it is compiled
+ *   -integral     compile the number variables that only hold integral values to long arithmetic
+ *   -report       print what the optimisation passes did (implies -O)
+ *   -disassemble  print the compiled program before it is executed
+ *   -jvm          compile the program to a JVM class and execute that, instead of the VirtualMachine
+ *   -save         write the JVM class of the program to the directory as well (implies -jvm)
+ *   -artifact     execute the Artifact of the program (the file with ".spa" after its name) if it was compiled from
+ *                 the source as it is now, with the same flags, or else compile the program and write its artifact
+ *                 (the VirtualMachine only)
+ *   -in           read the input of the program from a file instead of the standard input
+ *   -out          write the output of the program to a file instead of the standard output
+ * A file that ends in ".class" or ".spa" is a program that was saved before, which is executed without compiling it
+ * again.
+ */
+public class Execute {
+
+    /**
+     * Parses a program and builds its parse tree
+     * @param fileName The name of the file of the program
+     * @param trace true if the trace of the analysis should be printed as well
+     * @return The root of the parse tree
+     * @throws IOException If the file can not be read
+     * @throws CompilationException If the program is not valid
+     */
+    public static ParseNode parse(String fileName, boolean trace) throws IOException, CompilationException {
+
+        return parse(fileName, trace, false);
+    }
+
+    /**
+     * Parses a program and builds its parse tree
+     * @param fileName The name of the file of the program
+     * @param trace true if the trace of the analysis should be printed as well
+     * @param pipelined true if the program should be lexed on a thread of its own, ahead of the analysis
+     * @return The root of the parse tree
+     * @throws IOException If the file can not be read
+     * @throws CompilationException If the program is not valid
+     */
+    public static ParseNode parse(String fileName, boolean trace, boolean pipelined)
+            throws IOException, CompilationException {
+
+        return parse(fileName, trace, pipelined, false);
+    }
+
+    /**
+     * Parses a program and builds its parse tree
+     * @param fileName The name of the file of the program
+     * @param trace true if the trace of the analysis should be printed as well
+     * @param pipelined true if the program should be lexed on a thread of its own, ahead of the analysis
+     * @param parallel true if the program should be lexed in chunks, in parallel (which pipelined is then not used
+     * with)
+     * @return The root of the parse tree
+     * @throws IOException If the file can not be read
+     * @throws CompilationException If the program is not valid
+     */
+    public static ParseNode parse(String fileName, boolean trace, boolean pipelined, boolean parallel)
+            throws IOException, CompilationException {
+        TreeGenerate tree = new TreeGenerate(trace);
+        if (parallel) {
+            try (ParallelLexer tokens = ParallelLexer.of(fileName)) {
+                new SyntaxAnalyser(tokens).analyse(tree);
+            }
+        }
+        else if (pipelined) {
+            try (PipelinedLexer tokens = new PipelinedLexer(new LexicalAnalyser(fileName))) {
+                new SyntaxAnalyser(tokens).analyse(tree);
+            }
+        }
+        else
+            new SyntaxAnalyser(fileName).analyse(tree);
+        return root(tree);
+    }
+
+    /**
+     * Parses a program that is in memory and builds its parse tree
+     * @param name The name that stands for the file of the program
+     * @param source The text of the program
+     * @param trace true if the trace of the analysis should be printed as well
+     * @return The root of the parse tree
+     * @throws CompilationException If the program is not valid
+     */
+    public static ParseNode parse(String name, CharSequence source, boolean trace) throws CompilationException {
+        TreeGenerate tree = new TreeGenerate(trace);
+        try {
+            new SyntaxAnalyser(name, source).analyse(tree);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e); // the text is not read from a file
+        }
+        return root(tree);
+    }
+
+    /**
+     * @return The root of the parse tree of a program that was analysed
+     * @throws CompilationException If the program has no statements (a unit that only declares procedures)
+     */
+    private static ParseNode root(TreeGenerate tree) throws CompilationException {
+        if (tree.getRoot() == null)
+            throw new CompilationException(": the program only declares procedures, and has no statements to execute",
+                    0);
+        return tree.getRoot();
+    }
+
+    /**
+     * Runs the optimisation passes over the parse tree of a program
+     * @param root The root of the parse tree, which is rewritten in place
+     * @param report true if what the passes did should be printed to the standard error
+     * @return The root of the parse tree
+     */
+    public static ParseNode optimise(ParseNode root, boolean report) {
+        ConstantFolder.Report folding = ConstantFolder.fold(root);
+        LoopOptimiser.Report loops = LoopOptimiser.optimise(root);
+        if (report) {
+            System.err.println(folding);
+            System.err.println(loops);
+        }
+        return root;
+    }
+
+    /**
+     * Finds the number variables of a program that only ever hold integral values
+     * @param root The root of the parse tree
+     * @param report true if the variables should be printed to the standard error
+     * @return The variables, to compile to long arithmetic
+     */
+    public static Set<Variable> integral(ParseNode root, boolean report) {
+        Set<Variable> integral = NumberInference.integral(root);
+        if (report) {
+            StringBuilder names = new StringBuilder();
+            for (Variable v : integral)
+                names.append(names.length() > 0 ? ", " : "").append(v.identifier);
+            System.err.println("number inference: " + integral.size() + " integral variables [" + names + "]");
+        }
+        return integral;
+    }
+
+    /**
+     * @return The program of the artifact of a source file, or null if there is none, or it is not for the source as
+     * it is now and the given flags
+     */
+    private static Bytecode saved(Path source, int flags) {
+        Path file = Artifact.pathFor(source);
+        if (!Files.isRegularFile(file))
+            return null;
+        try {
+            Artifact saved = Artifact.map(file);
+            return saved.isFor(source, flags) ? saved.bytecode() : null;
+        }
+        catch (IOException e) {
+            return null; // an artifact of another version is compiled again
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean trace = false, optimise = false, integral = false, report = false, disassemble = false, jvm = false;
+        boolean artifact = false, pipelined = false, parallel = false;
+        String fileName = null, saveDirectory = null;
+        Path input = null, output = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-trace"))
+                trace = true;
+            else if (args[i].equals("-pipelined"))
+                pipelined = true;
+            else if (args[i].equals("-parallel"))
+                parallel = true;
+            else if (args[i].equals("-O"))
+                optimise = true;
+            else if (args[i].equals("-integral"))
+                integral = true;
+            else if (args[i].equals("-report"))
+                optimise = report = true;
+            else if (args[i].equals("-disassemble"))
+                disassemble = true;
+            else if (args[i].equals("-jvm"))
+                jvm = true;
+            else if (args[i].equals("-save") && i + 1 < args.length) {
+                jvm = true;
+                saveDirectory = args[++i];
+            }
+            else if (args[i].equals("-artifact"))
+                artifact = true;
+            else if (args[i].equals("-in") && i + 1 < args.length)
+                input = Paths.get(args[++i]);
+            else if (args[i].equals("-out") && i + 1 < args.length)
+                output = Paths.get(args[++i]);
+            else
+                fileName = args[i];
+        }
+        if (fileName == null) {
+            System.err.println("usage: java Execute [-trace] [-pipelined | -parallel] [-O] [-integral] [-report] "
+                    + "[-disassemble] [-jvm] [-save directory] [-artifact] [-in file] [-out file] file");
+            System.exit(2);
+        }
+        if (pipelined && parallel) {
+            System.err.println("-pipelined can not be used with -parallel");
+            System.exit(2);
+        }
+        if (artifact && jvm) {
+            System.err.println("-artifact can not be used with -jvm");
+            System.exit(2);
+        }
+
+        CompiledProgram compiled = null;
+        Bytecode program = null;
+        try {
+            Path source = Paths.get(fileName);
+            int flags = (optimise ? Artifact.OPTIMISED : 0) | (integral ? Artifact.INTEGRAL : 0);
+            if (fileName.endsWith(".class"))
+                compiled = ProgramClassLoader.load(new File(fileName));
+            else if (fileName.endsWith(Artifact.EXTENSION))
+                program = Artifact.map(source).bytecode();
+            else if (artifact && !trace && !report)
+                program = saved(source, flags);
+
+            if (compiled == null && program == null) {
+                ParseNode root = parse(fileName, trace, pipelined, parallel);
+                List<Token> tokens = artifact ? Artifact.tokens(root) : null;
+                Collection<Variable> variables = artifact ? Artifact.variables(root) : null;
+                if (optimise)
+                    optimise(root, report);
+                Set<Variable> longs = integral ? integral(root, report) : Collections.<Variable>emptySet();
+                if (jvm) {
+                    String className = JvmCompiler.classNameFor(fileName);
+                    byte[] classFile = JvmCompiler.compile(root, className, longs);
+                    if (saveDirectory != null)
+                        JvmCompiler.write(new File(saveDirectory), className, classFile);
+                    compiled = new ProgramClassLoader().define(className, classFile);
+                }
+                else
+                    program = BytecodeCompiler.compile(root, longs);
+                if (artifact)
+                    Artifact.write(Artifact.pathFor(source), source, flags, tokens, variables, program);
+            }
+        }
+        catch (CompilationException ex) {
+            System.err.println("Compilation Exception");
+            System.err.print(ex.toTraceString());
+            System.exit(1);
+            return;
+        }
+
+        if (disassemble && program != null)
+            new Disassembler(program).print(System.err);
+
+        try (ProgramIO io = ProgramIO.files(input, output)) { // the output is flushed when it is closed
+            if (compiled != null)
+                compiled.run(io);
+            else
+                new VirtualMachine(program).run(io);
+        }
+        catch (IOException ex) {
+            System.err.println("Execution stopped: " + ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -19,6 +19,15 @@ public class Generate extends AbstractGenerate {
         this.indentationLevel = 0; // initialise to 0, as it is the start of the program. Indentation is 0
     }
 
+    /**
+     * Returns to the start of a program, so that the same Generate can be used for the analysis of another one (an
+     * analysis that failed leaves the indentation of the method that the error was found in)
+     */
+    void reset() {
+
+        this.indentationLevel = 0;
+    }
+
     /**
      * This method will indicate that a temporary variable V was created
      * @param v The variable to add
@@ -90,7 +99,7 @@ public class Generate extends AbstractGenerate {
         for(int i=0; i<indentationLevel; i++)
             System.out.print("\t"); // print a tab 'n' times, where n = indentation level
         System.out.println("rggERROR "+ token.toString());  //indicate the error identified
-        throw new CompilationException(explanatoryMessage, token.lineNumber);  //throw a compilation exception
+        throw error(token, explanatoryMessage, null);  //throw a compilation exception, at the column of the token
     }
 
     /**
@@ -104,6 +113,6 @@ public class Generate extends AbstractGenerate {
     void reportError(Token token, String explanatoryMessage, CompilationException exception)
             throws CompilationException {
 
-        throw new CompilationException(explanatoryMessage, token.lineNumber, exception);
+        throw error(token, explanatoryMessage, exception);
     }
 }
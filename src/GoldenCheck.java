@@ -0,0 +1,505 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks the output of Compile against golden files, byte for byte: Compile is run over the corpus (with the arguments
+ * that are given to the check), and the section of every file in the trace (from its rggFILE line to the blank line
+ * before the next file) is compared with its golden trace, and its entry in res.txt with its golden result. The first
+ * line where a file diverges is reported with the lines before it, and the check exits with 1 if any file diverges,
+ * has no golden files, or has golden files but was not compiled.
+ * The files are compared as they are mapped in windows, a long at a time, so neither the trace nor a golden file is
+ * read into memory, and a file is only scanned for where its section ends if it does not end where its golden file
+ * does. With -record the golden files are written from the sections instead (and those of files that were not
+ * compiled are removed), and with -no-run the output.txt and res.txt that are there are checked, without compiling.
+ *
+ * Usage: java GoldenCheck [-record] [-no-run] [-golden folder] [arguments of Compile]   (golden if no folder is given)
+ */
+public class GoldenCheck {
+
+    /*The golden files that are checked if no folder is given, and the extensions of the traces and the results*/
+    private static final String GOLDEN = "golden";
+    private static final String TRACE = ".trace";
+    private static final String RESULT = ".res";
+
+    /*The output of Compile: the trace, that it prints, and the results, that it writes*/
+    private static final Path OUTPUT = Paths.get("output.txt");
+    private static final Path RESULTS = Paths.get("res.txt");
+
+    /*The number of lines before a divergence that are reported, and the characters of a line that are*/
+    private static final int CONTEXT = 3;
+    private static final int MAX_LINE = 160;
+
+    private static final byte[] FILE_LINE = bytes("rggFILE ");
+    private static final byte[] FINISH_LINE = bytes("rggFINISH");
+    private static final byte[] NOT_EXISTS = bytes(" does not exist");
+
+    private final Path golden;
+    /*The names of the files in the trace, in order, which res.txt has the entries of in the same order*/
+    private final List<String> names = new ArrayList<>();
+    /*The number of files that diverge from their golden files, or have none*/
+    private int failures;
+
+    private GoldenCheck(Path golden) {
+        this.golden = golden;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean record = false;
+        boolean run = true;
+        Path golden = Paths.get(GOLDEN);
+        int i = 0;
+        for (; i < args.length; i++) {
+            if (args[i].equals("-record"))
+                record = true;
+            else if (args[i].equals("-no-run"))
+                run = false;
+            else if (args[i].equals("-golden") && i + 1 < args.length)
+                golden = Paths.get(args[++i]);
+            else
+                break;
+        }
+        List<String> compileArgs = new ArrayList<>();
+        for (; i < args.length; i++)
+            compileArgs.add(args[i]);
+
+        if (run && !compile(compileArgs))
+            System.exit(1);
+        GoldenCheck check = new GoldenCheck(golden);
+        if (record) {
+            check.record();
+            return;
+        }
+        check.check();
+        if (check.failures > 0) {
+            System.err.println("golden check: " + check.failures + " of " + check.names.size()
+                    + " files diverge from the golden files in " + golden);
+            System.exit(1);
+        }
+        System.out.println("golden check: " + check.names.size() + " files are the same as the golden files in "
+                + golden);
+    }
+
+    /**
+     * Runs Compile in a JVM of its own, as make run does, with its trace written to output.txt
+     * @param args The arguments of Compile
+     * @return Whether Compile ran to its end
+     */
+    private static boolean compile(List<String> args) throws IOException, InterruptedException {
+        if (!args.isEmpty() && (args.get(0).equals("-watch") || args.get(0).equals("-worker"))) {
+            System.err.println("golden check: Compile " + args.get(0) + " does not compile the corpus once");
+            return false;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Compile");
+        command.addAll(args);
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+        // a build writes output.txt itself, and prints how many units it analysed
+        if (!args.isEmpty() && args.get(0).equals("-build"))
+            builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        else
+            builder.redirectOutput(OUTPUT.toFile());
+        int exit = builder.start().waitFor();
+        if (exit != 0)
+            System.err.println("golden check: Compile exited with " + exit);
+        return exit == 0;
+    }
+
+    /**
+     * Writes the section of every file in the trace, and its entry in res.txt, to its golden files, and removes the
+     * golden files of the files that are not in the trace
+     */
+    private void record() throws IOException {
+        Files.createDirectories(golden);
+        Set<String> recorded = new HashSet<>();
+        try (MappedFile trace = new MappedFile(OUTPUT); MappedFile results = new MappedFile(RESULTS)) {
+            for (long section = nextSection(trace, 0); section >= 0; ) {
+                long end = sectionEnd(trace, section);
+                String name = fileName(trace, section);
+                names.add(name);
+                recorded.add(base(name));
+                trace.copy(section, end, golden.resolve(base(name) + TRACE));
+                section = nextSection(trace, end);
+            }
+            long entry = names.isEmpty() ? results.size : find(results, 0, bytes(names.get(0)));
+            for (int i = 0; i < names.size(); i++) {
+                byte[] next = i + 1 < names.size() ? bytes(names.get(i + 1)) : null;
+                long end = entryEnd(results, entry, next);
+                results.copy(entry, end, golden.resolve(base(names.get(i)) + RESULT));
+                entry = end;
+            }
+        }
+        for (String name : goldenNames())
+            if (!recorded.contains(name)) {
+                Files.deleteIfExists(golden.resolve(name + TRACE));
+                Files.deleteIfExists(golden.resolve(name + RESULT));
+            }
+        System.out.println("golden check: recorded " + names.size() + " files in " + golden);
+    }
+
+    /**
+     * Compares the section of every file in the trace, and then its entry in res.txt, with its golden files
+     */
+    private void check() throws IOException {
+        Set<String> diverged = new HashSet<>();
+        try (MappedFile trace = new MappedFile(OUTPUT)) {
+            for (long section = nextSection(trace, 0); section >= 0; ) {
+                String name = fileName(trace, section);
+                names.add(name);
+                long end = compare(trace, section, name, TRACE, diverged, null);
+                section = nextSection(trace, end);
+            }
+        }
+        try (MappedFile results = new MappedFile(RESULTS)) {
+            long entry = names.isEmpty() ? results.size : find(results, 0, bytes(names.get(0)));
+            for (int i = 0; i < names.size(); i++) {
+                byte[] next = i + 1 < names.size() ? bytes(names.get(i + 1)) : null;
+                entry = compare(results, entry, names.get(i), RESULT, diverged, next);
+            }
+        }
+        failures = diverged.size();
+
+        Set<String> compiled = new HashSet<>();
+        for (String name : names)
+            compiled.add(base(name));
+        for (String name : goldenNames())
+            if (!compiled.contains(name)) {
+                System.out.println(name + ": in the golden files, but not in " + OUTPUT);
+                failures++;
+            }
+    }
+
+    /**
+     * Compares the section of a file, or its entry in res.txt, with its golden file, and reports the first line where
+     * they diverge
+     * @param output The trace or res.txt
+     * @param start Where the section or the entry of the file starts
+     * @param name The name of the file
+     * @param extension The extension of the golden file
+     * @param diverged The names of the files that diverge, which a file that does is added to
+     * @param nextName The name of the file of the next entry of res.txt (null for the last), or null for the trace
+     * @return Where the section or the entry of the file ends
+     */
+    private long compare(MappedFile output, long start, String name, String extension, Set<String> diverged,
+                         byte[] nextName) throws IOException {
+        boolean trace = extension.equals(TRACE);
+        Path file = golden.resolve(base(name) + extension);
+        if (!Files.isRegularFile(file)) {
+            if (diverged.add(name))
+                System.out.println(name + ": no golden file " + file);
+            return trace ? sectionEnd(output, start) : entryEnd(output, start, nextName);
+        }
+        try (MappedFile expected = new MappedFile(file)) {
+            long length = expected.size;
+            // the common case: the output is the golden file, and the section or entry ends where it does
+            long divergence = start + length <= output.size ? mismatch(expected, 0, output, start, length) : 0;
+            if (divergence < 0 && (trace ? endsSection(output, start + length) : endsEntry(output, start + length,
+                    nextName)))
+                return start + length;
+
+            long end = trace ? sectionEnd(output, start) : entryEnd(output, start, nextName);
+            divergence = mismatch(expected, 0, output, start, Math.min(length, end - start));
+            if (divergence < 0)
+                divergence = Math.min(length, end - start);
+            diverged.add(name);
+            report(name, trace ? OUTPUT : RESULTS, file, expected, output, start, end, divergence);
+            return end;
+        }
+    }
+
+    /**
+     * Reports the line where the output of a file diverges from its golden file, after the lines before it
+     * @param divergence The offset of the first byte that is not the same, or of the end of the shorter of the two
+     */
+    private static void report(String name, Path outputName, Path file, MappedFile expected, MappedFile output,
+                               long start, long end, long divergence) throws IOException {
+        long line = 1;
+        long lineStart = 0;
+        for (long i = 0; i < divergence; i++)
+            if (expected.get(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        System.out.println(name + ": " + outputName + " diverges from " + file + " at line " + line + " (byte "
+                + (start + lineStart) + " of " + outputName + ")");
+
+        List<Long> context = new ArrayList<>();
+        for (long i = lineStart - 1; i > 0 && context.size() < CONTEXT; i--)
+            if (expected.get(i - 1) == '\n')
+                context.add(0, i);
+        if (lineStart > 0 && context.size() < CONTEXT)
+            context.add(0, 0L);
+        for (int i = 0; i < context.size(); i++)
+            System.out.println(String.format("%8d   %s", line - context.size() + i,
+                    line(expected, context.get(i), lineStart)));
+        System.out.println(String.format("%8d - %s", line, lineStart < expected.size
+                ? line(expected, lineStart, expected.size) : "(the end of the golden file)"));
+        System.out.println(String.format("%8d + %s", line, start + lineStart < end
+                ? line(output, start + lineStart, end) : "(the end of the output)"));
+    }
+
+    /**
+     * @return The line that starts at a position, without its line separator, and cut at MAX_LINE characters
+     */
+    private static String line(MappedFile file, long from, long limit) throws IOException {
+        long end = Math.min(Math.min(lineEnd(file, from), limit), from + MAX_LINE);
+        byte[] text = new byte[(int) (end - from)];
+        for (int i = 0; i < text.length; i++)
+            text[i] = file.get(from + i);
+        String line = new String(text, StandardCharsets.UTF_8);
+        if (line.endsWith("\r"))
+            line = line.substring(0, line.length() - 1);
+        return end - from == MAX_LINE && end < lineEnd(file, from) ? line + "..." : line;
+    }
+
+    /**
+     * @return Where the next section of the trace starts (the next rggFILE line), or -1 if there is none
+     */
+    private static long nextSection(MappedFile trace, long from) throws IOException {
+        for (long line = from; line < trace.size; line = nextLine(trace, line)) {
+            if (startsWith(trace, line, FILE_LINE))
+                return line;
+            if (startsWith(trace, line, FINISH_LINE))
+                return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return Where the section of the trace that starts at a position ends (see endsSection), which is found at the
+     * blank lines that Compile prints, as only those lines are looked at
+     */
+    private static long sectionEnd(MappedFile trace, long section) throws IOException {
+        long previous = section;
+        for (long line = nextLine(trace, section); line < trace.size; line = nextLine(trace, line)) {
+            if (blank(trace, line)) {
+                long next = nextLine(trace, line);
+                if (startsWith(trace, next, FILE_LINE))
+                    return line;
+                if (startsWith(trace, next, FINISH_LINE))
+                    return endsSection(trace, previous) ? previous : line;
+            }
+            previous = line;
+        }
+        return trace.size;
+    }
+
+    /**
+     * @return Whether a section of the trace ends at a line: at the blank line that Compile prints before a file and
+     * before rggFINISH, at the line that it prints for the first file that does not exist, or at the end of the trace
+     */
+    private static boolean endsSection(MappedFile trace, long line) throws IOException {
+        if (line >= trace.size)
+            return true;
+        long next = nextLine(trace, line);
+        if (blank(trace, line))
+            return next < trace.size && (startsWith(trace, next, FILE_LINE) || startsWith(trace, next, FINISH_LINE));
+        long end = lineEnd(trace, line);
+        if (end > line && trace.get(end - 1) == '\r')
+            end--;
+        if (end - line < NOT_EXISTS.length || !startsWith(trace, end - NOT_EXISTS.length, NOT_EXISTS))
+            return false;
+        return next < trace.size && blank(trace, next) && startsWith(trace, nextLine(trace, next), FINISH_LINE);
+    }
+
+    /**
+     * @param nextName The name of the file of the next entry, or null if the entry is the last one
+     * @return Where the entry of res.txt that starts at a position ends: at the name of the next file
+     */
+    private static long entryEnd(MappedFile results, long entry, byte[] nextName) throws IOException {
+        return nextName == null ? results.size : find(results, Math.min(nextLine(results, entry), results.size),
+                nextName);
+    }
+
+    private static boolean endsEntry(MappedFile results, long line, byte[] nextName) throws IOException {
+        return nextName == null ? line == results.size : line < results.size && isLine(results, line, nextName);
+    }
+
+    /**
+     * @return The first line from a position that is a text, or the end of the file if there is none
+     */
+    private static long find(MappedFile file, long from, byte[] text) throws IOException {
+        long line = from;
+        while (line < file.size && !isLine(file, line, text))
+            line = nextLine(file, line);
+        return line;
+    }
+
+    /**
+     * @return The name of the file of the section that starts at a position (the rest of its rggFILE line)
+     */
+    private static String fileName(MappedFile trace, long section) throws IOException {
+        return line(trace, section + FILE_LINE.length, trace.size);
+    }
+
+    /**
+     * @return The name of the golden files of a file: the last part of its path
+     */
+    private static String base(String name) {
+        return name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf(File.separatorChar)) + 1);
+    }
+
+    /**
+     * @return The names of the files that there are golden traces of
+     */
+    private List<String> goldenNames() throws IOException {
+        List<String> goldenNames = new ArrayList<>();
+        if (!Files.isDirectory(golden))
+            return goldenNames;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(golden, "*" + TRACE)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                goldenNames.add(name.substring(0, name.length() - TRACE.length()));
+            }
+        }
+        return goldenNames;
+    }
+
+    /**
+     * @return The position of the line separator of the line that starts at a position, or the end of the file
+     */
+    private static long lineEnd(MappedFile file, long line) throws IOException {
+
+        return file.indexOf((byte) '\n', line);
+    }
+
+    private static long nextLine(MappedFile file, long line) throws IOException {
+        return Math.min(lineEnd(file, line) + 1, file.size);
+    }
+
+    private static boolean blank(MappedFile file, long line) throws IOException {
+        return file.get(line) == '\n' || (file.get(line) == '\r' && line + 1 < file.size && file.get(line + 1) == '\n');
+    }
+
+    private static boolean startsWith(MappedFile file, long position, byte[] prefix) throws IOException {
+        if (position + prefix.length > file.size)
+            return false;
+        for (int i = 0; i < prefix.length; i++)
+            if (file.get(position + i) != prefix[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * @return Whether the line that starts at a position is a text, followed by its line separator or the end of file
+     */
+    private static boolean isLine(MappedFile file, long line, byte[] text) throws IOException {
+        if (!startsWith(file, line, text))
+            return false;
+        long end = line + text.length;
+        if (end < file.size && file.get(end) == '\r')
+            end++;
+        return end == file.size || file.get(end) == '\n';
+    }
+
+    /**
+     * Compares the bytes of two files, a long at a time where both of their windows have them
+     * @return The offset of the first byte that is not the same, or -1 if they all are
+     */
+    private static long mismatch(MappedFile a, long aFrom, MappedFile b, long bFrom, long length) throws IOException {
+        long done = 0;
+        while (done < length) {
+            MappedByteBuffer x = a.window(aFrom + done);
+            int i = (int) (aFrom + done - a.start);
+            MappedByteBuffer y = b.window(bFrom + done);
+            int j = (int) (bFrom + done - b.start);
+            int n = (int) Math.min(length - done, Math.min(x.limit() - i, y.limit() - j));
+            int k = 0;
+            while (k + Long.BYTES <= n && x.getLong(i + k) == y.getLong(j + k))
+                k += Long.BYTES;
+            for (; k < n; k++)
+                if (x.get(i + k) != y.get(j + k))
+                    return done + k;
+            done += n;
+        }
+        return -1;
+    }
+
+    private static byte[] bytes(String text) {
+
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A file that is read as it is mapped, a window at a time, so that a file of any size is read without a buffer
+     * of its size (and a file of more than 2GB, which a single MappedByteBuffer can not map)
+     */
+    private static final class MappedFile implements Closeable {
+
+        /*The bytes that a window maps, and those that windows start at a multiple of, so that a window has at least
+        HALF bytes after any position that it is mapped for*/
+        private static final int WINDOW = 1 << 26;
+        private static final int HALF = WINDOW / 2;
+
+        private final FileChannel channel;
+        final long size;
+        /*The window that is mapped, and the position of the file that it starts at*/
+        private MappedByteBuffer window;
+        private long start = -1;
+
+        MappedFile(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+        }
+
+        /**
+         * @return The window that a position of the file is in, which is mapped if it was not
+         */
+        MappedByteBuffer window(long position) throws IOException {
+            if (window == null || position < start || position >= start + window.limit()) {
+                start = position - position % HALF;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+            }
+            return window;
+        }
+
+        /**
+         * @return The position of the first byte from a position that is a byte, or the size of the file if none is
+         */
+        long indexOf(byte b, long from) throws IOException {
+            for (long position = from; position < size; ) {
+                MappedByteBuffer buffer = window(position);
+                for (int i = (int) (position - start), n = buffer.limit(); i < n; i++)
+                    if (buffer.get(i) == b)
+                        return start + i;
+                position = start + buffer.limit();
+            }
+            return size;
+        }
+
+        byte get(long position) throws IOException {
+            return window(position).get((int) (position - start));
+        }
+
+        /**
+         * Copies the bytes from a position to another to a file, which is written again
+         */
+        void copy(long from, long to, Path file) throws IOException {
+            try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (long done = from; done < to; )
+                    done += channel.transferTo(done, to - done, out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
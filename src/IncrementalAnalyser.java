@@ -0,0 +1,713 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyses a program that is being edited (i.e. in an editor) again after every edit, without analysing all of it
+ * again. The tokens of the program are kept with their offsets in its text, and the parse tree with the semantic state
+ * of the Syntax Analyser before and after every statement (a checkpoint).
+ * After an edit, the tokens are lexed again from the last token that ends before the edit, until a token ends where an
+ * old token ended after the edit, from where on the tokens are the same as before (on lines that may have moved).
+ * Then the statement list is analysed again from the smallest statement that contains the tokens that changed, in the
+ * state before that statement, until the analysis reaches a statement of the same list that was not changed, in the
+ * same state as before it: that statement and those after it are kept, with their variables. If the list can not be
+ * analysed again like that (i.e. a token that ends it was changed, or a statement declares a new global variable),
+ * the statement that contains the list is analysed again, and so on up to the whole program.
+ * The parse tree is always the same as that of an analysis of the whole text, and an invalid program throws the same
+ * CompilationException, as it is analysed again from the start.
+ */
+public class IncrementalAnalyser {
+
+    private final String name;
+    private final StringBuilder text;
+
+    /*The tokens of the text up to its end of file, with the offsets of their first character and of their end*/
+    private final ArrayList<Token> tokens;
+    private int[] starts, ends;
+
+    private final Cursor cursor;
+    private SyntaxAnalyser analyser;
+
+    /*The parse tree of the text, or null if it is not a valid program or it was not analysed yet*/
+    private ParseNode root;
+    /*The checkpoints of all the statements of the tree, in the order of their first tokens*/
+    private final ArrayList<Checkpoint> checkpoints;
+
+    /**
+     * A statement of the parse tree, with the semantic state of the analysis before and after it
+     */
+    private static final class Checkpoint {
+
+        final ParseNode statement;
+        final ParseNode list;          // the StatementList whose first child is the statement
+        ParseNode listParent;          // the node that the list is a child of
+        final Checkpoint parent;       // the statement that contains this one, or null
+        final Block block;             // the statement list that the statement is in
+        int start, end;                // the indices of the first token of the statement, and of the token after it
+        final SemanticAnalyser.State before;
+        SemanticAnalyser.State after;
+        List<ParseNode> pendingBefore, pendingAfter; // the identifiers that TreeGenerate has not bound yet
+
+        Checkpoint(ParseNode statement, ParseNode list, ParseNode listParent, Checkpoint parent, Block block,
+                   int start, SemanticAnalyser.State before, List<ParseNode> pendingBefore) {
+            this.statement = statement;
+            this.list = list;
+            this.listParent = listParent;
+            this.parent = parent;
+            this.block = block;
+            this.start = start;
+            this.before = before;
+            this.pendingBefore = pendingBefore;
+        }
+    }
+
+    /**
+     * The statements of a statement list, including those of the nested StatementLists that it ends with
+     */
+    private static final class Block {
+
+        final boolean program; // true if this is the statement list of the StatementPart
+        Checkpoint last;       // the last statement of the list
+
+        Block(boolean program) {
+
+            this.program = program;
+        }
+    }
+
+    /**
+     * Constructor of IncrementalAnalyser. The text is lexed, but not analysed until analyse is called
+     * @param name The name that stands for the file of the program
+     * @param text The text of the program
+     */
+    public IncrementalAnalyser(String name, CharSequence text) {
+        this.name = name;
+        this.text = new StringBuilder(text);
+        this.tokens = new ArrayList<>();
+        this.starts = new int[16];
+        this.ends = new int[16];
+        this.cursor = new Cursor();
+        this.checkpoints = new ArrayList<>();
+
+        LexicalAnalyser lex = new LexicalAnalyser(name, this.text);
+        Token token;
+        do {
+            token = nextToken(lex);
+            ensureCapacity(tokens.size() + 1);
+            starts[tokens.size()] = lex.getTokenStart();
+            ends[tokens.size()] = lex.getTokenEnd();
+            tokens.add(token);
+        } while (token.symbol != Token.eofSymbol);
+    }
+
+    /**
+     * @return The current text of the program
+     */
+    public CharSequence getText() {
+
+        return text;
+    }
+
+    /**
+     * @return The parse tree of the program, or null if it is not valid, or it was not analysed yet
+     */
+    public ParseNode getRoot() {
+
+        return root;
+    }
+
+    /**
+     * Analyses the whole program
+     * @return The parse tree of the program
+     * @throws CompilationException If the program is not valid
+     */
+    public ParseNode analyse() throws CompilationException {
+        root = null;
+        checkpoints.clear();
+        analyser = new SyntaxAnalyser(cursor);
+        Recorder recorder = new Recorder(null, null, null);
+        cursor.index = 0;
+        try {
+            analyser.analyse(recorder);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e); // the tokens are in memory
+        }
+        root = recorder.getRoot();
+        checkpoints.addAll(recorder.recorded);
+        return root;
+    }
+
+    /**
+     * Replaces a range of the text of the program, and analyses the program again, as little of it as possible
+     * @param start The offset of the first character to replace
+     * @param end The offset after the last character to replace
+     * @param replacement The text that replaces the range (empty to delete it)
+     * @return The parse tree of the program after the edit
+     * @throws CompilationException If the program is not valid after the edit
+     */
+    public ParseNode edit(int start, int end, CharSequence replacement) throws CompilationException {
+        if (start < 0 || start > end || end > text.length())
+            throw new IndexOutOfBoundsException("invalid range " + start + "-" + end + " of " + text.length());
+        text.replace(start, end, replacement.toString());
+        int delta = replacement.length() - (end - start);
+
+        // Lex again from the end of the last token that ends before the edit, until a token ends where an old token
+        // ended after the edit
+        int first = firstEnding(start);
+        LexicalAnalyser lex = first == 0 ? new LexicalAnalyser(name, text)
+                : new LexicalAnalyser(name, text, ends[first - 1], tokens.get(first - 1).lineNumber);
+        ArrayList<Token> lexed = new ArrayList<>();
+        int[] lexedStarts = new int[8], lexedEnds = new int[8];
+        int last = first;
+        while (true) {
+            Token token = nextToken(lex);
+            if (lexed.size() == lexedStarts.length) {
+                lexedStarts = Arrays.copyOf(lexedStarts, 2 * lexed.size());
+                lexedEnds = Arrays.copyOf(lexedEnds, 2 * lexed.size());
+            }
+            lexedStarts[lexed.size()] = lex.getTokenStart();
+            lexedEnds[lexed.size()] = lex.getTokenEnd();
+            lexed.add(token);
+            if (token.symbol == Token.eofSymbol) {
+                last = tokens.size() - 1;
+                break;
+            }
+            int oldEnd = lex.getTokenEnd() - delta;
+            if (oldEnd >= end) {
+                while (last < tokens.size() && ends[last] < oldEnd)
+                    last++;
+                if (last < tokens.size() && ends[last] == oldEnd && tokens.get(last).symbol != Token.eofSymbol)
+                    break;
+            }
+        }
+        int lineShift = lexed.get(lexed.size() - 1).lineNumber - tokens.get(last).lineNumber;
+
+        // The old tokens that are the same at both ends of the lexed tokens are kept, as the parse tree refers to them
+        int count = last + 1 - first, prefix = 0, suffix = 0;
+        while (prefix < lexed.size() && prefix < count && same(lexed.get(prefix), tokens.get(first + prefix), 0)) {
+            lexed.set(prefix, tokens.get(first + prefix));
+            prefix++;
+        }
+        while (suffix < lexed.size() - prefix && suffix < count - prefix
+                && same(lexed.get(lexed.size() - 1 - suffix), tokens.get(last - suffix), lineShift)) {
+            lexed.set(lexed.size() - 1 - suffix, tokens.get(last - suffix));
+            suffix++;
+        }
+        int changedStart = first + prefix, changedEnd = last + 1 - suffix, shift = lexed.size() - count;
+        if (lineShift != 0) {
+            for (int i = changedEnd; i < tokens.size(); i++)
+                tokens.get(i).lineNumber += lineShift;
+        }
+        replaceTokens(first, last + 1, lexed, lexedStarts, lexedEnds, delta);
+
+        if (changedStart == changedEnd && shift == 0)
+            return root != null ? root : analyse(); // only the offsets (and maybe the lines) of the tokens changed
+        if (root == null || !analyser.getProcedures().isEmpty())
+            return analyse(); // the states of the statements do not keep the procedures that the program declares
+        return analyse(changedStart, changedEnd, shift);
+    }
+
+    /**
+     * Analyses the program again after some of its tokens were replaced
+     * @param changedStart The index of the first token that was replaced
+     * @param changedEnd The index after the last token that was replaced, before the tokens were replaced
+     * @param shift The number of tokens that were added (or removed, if negative)
+     * @return The parse tree of the program
+     * @throws CompilationException If the program is not valid
+     */
+    private ParseNode analyse(int changedStart, int changedEnd, int shift) throws CompilationException {
+
+        // The statements to analyse again, and the tokens to start from: the statement where the change starts, in the
+        // smallest statement that contains all of it, and then the statements that contain that one
+        int position = lastStarting(changedStart);
+        Checkpoint innermost = position >= 0 ? checkpoints.get(position) : null, containing = innermost;
+        while (containing != null && containing.end < changedEnd)
+            containing = containing.parent;
+        ArrayList<Checkpoint> attempts = new ArrayList<>();
+        for (Checkpoint c = innermost; c != containing; c = c.parent) {
+            if (c.parent == containing && c.end >= changedStart)
+                attempts.add(c);
+        }
+        for (Checkpoint c = containing; c != null; c = c.parent)
+            attempts.add(c);
+        int[] from = new int[attempts.size()];
+        for (int i = 0; i < from.length; i++)
+            from[i] = attempts.get(i).start;
+
+        // The checkpoints after the change move with their tokens, and those that start or end in it are invalid
+        for (Checkpoint c : checkpoints) {
+            c.start = shifted(c.start, changedStart, changedEnd, shift);
+            c.end = shifted(c.end, changedStart, changedEnd, shift);
+        }
+
+        for (int i = 0; i < attempts.size(); i++) {
+            if (analyse(attempts.get(i), from[i], changedEnd + shift, position))
+                return root;
+        }
+        return analyse();
+    }
+
+    /**
+     * Analyses the statements of a statement list again, from a statement, until a statement that was not changed is
+     * reached in the same state as before it, or the list ends in the same state as before. The parse tree and the
+     * checkpoints are only changed if that is the case.
+     * @param first The first statement to analyse
+     * @param from The index of the first token of the statement
+     * @param changedEnd The index after the last token that was changed
+     * @param position The index of a checkpoint that is the first statement or after it
+     * @return true if the statements were analysed again, and replaced in the tree
+     */
+    private boolean analyse(Checkpoint first, int from, int changedEnd, int position) {
+        ParseNode list = first.list, listParent = first.listParent;
+        List<ParseNode> pendingBefore = first.pendingBefore;
+        Variable[] bound = new Variable[pendingBefore.size()];
+        for (int i = 0; i < bound.length; i++) {
+            bound[i] = pendingBefore.get(i).variable;
+            pendingBefore.get(i).variable = null;
+        }
+
+        Recorder recorder = new Recorder(listParent, first.block, first.parent);
+        recorder.resume(first.before.variables(), pendingBefore);
+        analyser.resume(first.before, recorder, tokens.get(from));
+        cursor.index = from + 1;
+
+        int lists = 0, scan = position;
+        Checkpoint resync = null, last = first.block.last;
+        SemanticAnalyser.State state;
+        try {
+            while (true) {
+                recorder.commenceNonterminal("StatementList");
+                lists++;
+                analyser.statement();
+                if (analyser.nextToken.symbol == Token.semicolonSymbol) {
+                    analyser.acceptTerminal(Token.semicolonSymbol);
+                    int next = cursor.index - 1;
+                    if (next < changedEnd)
+                        continue;
+                    while (scan < checkpoints.size() && checkpoints.get(scan).start < next)
+                        scan++;
+                    if (scan == checkpoints.size() || checkpoints.get(scan).start != next
+                            || checkpoints.get(scan).block != first.block)
+                        continue;
+                    state = analyser.state();
+                    Checkpoint old = checkpoints.get(scan);
+                    if (same(state, recorder.pending(), old.before, old.pendingBefore, first.before.globalCount)) {
+                        resync = old;
+                        break;
+                    }
+                }
+                else {
+                    int next = cursor.index - 1;
+                    state = analyser.state();
+                    if (last.end < changedEnd || next != last.end || !first.block.program
+                            && !same(state, recorder.pending(), last.after, last.pendingAfter, first.before.globalCount))
+                        throw new CompilationException("the list does not end as before", analyser.nextToken.lineNumber);
+                    break;
+                }
+            }
+        }
+        catch (CompilationException | RuntimeException e) { // a full analysis reports the error
+            for (int i = 0; i < bound.length; i++)
+                pendingBefore.get(i).variable = bound[i];
+            return false;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ParseNode receiving = recorder.top();
+        if (resync != null)
+            receiving.children.add(resync.list);
+        for (int i = 0; i < lists; i++)
+            recorder.finishNonterminal("StatementList");
+
+        // The variables of the new statements that are still declared after them are replaced with the variables of
+        // the old statements, which the statements after them refer to
+        IdentityHashMap<Variable, Variable> renamed = new IdentityHashMap<>();
+        IdentityHashMap<ParseNode, ParseNode> replaced = new IdentityHashMap<>();
+        if (resync != null || !first.block.program) {
+            SemanticAnalyser.State old = resync != null ? resync.before : last.after;
+            List<ParseNode> oldPending = resync != null ? resync.pendingBefore : last.pendingAfter;
+            rename(state, old, first.before.globalCount, renamed);
+            List<ParseNode> pending = recorder.pending();
+            for (int i = 0; i < pending.size(); i++) {
+                ParseNode node = pending.get(i), oldNode = oldPending.get(i);
+                int k = indexOf(pendingBefore, oldNode);
+                node.variable = k >= 0 ? bound[k] : oldNode.variable; // bound by a statement after these
+                if (node != oldNode)
+                    replaced.put(oldNode, node);
+            }
+        }
+        if (!renamed.isEmpty()) {
+            rename(recorder.getRoot(), resync != null ? resync.list : null, renamed);
+            for (ParseNode node : pendingBefore)
+                node.variable = renamed(node.variable, renamed);
+            List<Variable> globals = state.globals; // the states of the new statements share the list
+            for (int i = first.before.globalCount; i < state.globalCount; i++)
+                globals.set(i, renamed(globals.get(i), renamed));
+            for (Checkpoint c : recorder.recorded) {
+                rename(c.before.locals, renamed);
+                rename(c.after.locals, renamed);
+            }
+        }
+
+        // The new statements replace the old ones in the tree and in the checkpoints
+        int begin = position;
+        while (checkpoints.get(begin) != first)
+            begin--;
+        int stop = begin;
+        if (resync != null)
+            stop = scan;
+        else {
+            while (checkpoints.get(stop) != last)
+                stop++;
+            stop++;
+            while (stop < checkpoints.size() && contains(last, checkpoints.get(stop)))
+                stop++;
+        }
+        listParent.children.set(indexOf(listParent.children, list), recorder.getRoot());
+        checkpoints.subList(begin, stop).clear();
+        checkpoints.addAll(begin, recorder.recorded);
+        if (resync != null) {
+            resync.listParent = receiving;
+            for (int i = begin + recorder.recorded.size(); i < checkpoints.size(); i++) {
+                Checkpoint c = checkpoints.get(i);
+                if (c.pendingBefore.isEmpty() && c.pendingAfter.isEmpty())
+                    break;
+                c.pendingBefore = replaced(c.pendingBefore, replaced);
+                c.pendingAfter = replaced(c.pendingAfter, replaced);
+            }
+        }
+        else
+            first.block.last = recorder.baseLast;
+        return true;
+    }
+
+    /**
+     * Records the checkpoints of the statements, as the parse tree is built
+     */
+    private final class Recorder extends TreeGenerate {
+
+        /*The non-terminals that have commenced and not finished, from the node that the tree is added to (if the
+        * analysis was resumed), with the statement list of each StatementList*/
+        private final ArrayList<ParseNode> nodes = new ArrayList<>();
+        private final ArrayList<Block> blocks = new ArrayList<>();
+        /*The statements that have commenced and not finished, from the statement that contains them all*/
+        private final ArrayList<Checkpoint> statements = new ArrayList<>();
+        private final Block base;
+
+        /*The checkpoints of the statements, in the order that they commenced*/
+        final ArrayList<Checkpoint> recorded = new ArrayList<>();
+        /*The last statement of the base statement list that finished*/
+        Checkpoint baseLast;
+
+        /**
+         * @param under The node that the tree is added to, or null if the whole program is analysed
+         * @param base The statement list that the analysis is resumed in, or null
+         * @param parent The statement that contains that statement list, or null
+         */
+        Recorder(ParseNode under, Block base, Checkpoint parent) {
+            super(false);
+            this.base = base;
+            if (under != null) {
+                nodes.add(under);
+                blocks.add(base);
+            }
+            statements.add(parent);
+        }
+
+        @Override
+        public void commenceNonterminal(String name) {
+            ParseNode parent = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+            super.commenceNonterminal(name);
+            ParseNode node = top();
+
+            Block block = null;
+            if (name.equals("StatementList")) {
+                if (parent != null && (parent.is("StatementList") || base != null && nodes.size() == 1))
+                    block = blocks.get(blocks.size() - 1);
+                else
+                    block = new Block(parent != null && parent.is("StatementPart"));
+            }
+            nodes.add(node);
+            blocks.add(block);
+
+            if (name.equals("Statement")) {
+                Checkpoint c = new Checkpoint(node, parent, nodes.get(nodes.size() - 3),
+                        statements.get(statements.size() - 1), blocks.get(blocks.size() - 2), cursor.index - 1,
+                        analyser.state(), copy(pending()));
+                statements.add(c);
+                recorded.add(c);
+            }
+        }
+
+        @Override
+        public void finishNonterminal(String name) {
+            if (name.equals("Statement")) {
+                Checkpoint c = statements.remove(statements.size() - 1);
+                c.end = cursor.index - 1;
+                c.after = analyser.state();
+                c.pendingAfter = copy(pending());
+                if (c.block == base)
+                    baseLast = c;
+                else
+                    c.block.last = c;
+            }
+            super.finishNonterminal(name);
+            nodes.remove(nodes.size() - 1);
+            blocks.remove(blocks.size() - 1);
+        }
+    }
+
+    /**
+     * Reads the tokens of the program for the Syntax Analyser
+     */
+    private final class Cursor implements TokenSource {
+
+        int index; // the index of the next token to read
+
+        @Override
+        public Token getNextToken() {
+            if (index == tokens.size())
+                return tokens.get(index - 1); // the end of file, again
+            return tokens.get(index++);
+        }
+
+        @Override
+        public String getFilename() {
+
+            return name;
+        }
+    }
+
+    /**
+     * @return The next token of a lexical analyser of the text, which does not read a file
+     */
+    private static Token nextToken(LexicalAnalyser lex) {
+        try {
+            Token token = lex.getNextToken();
+            token.detach(); // the text is edited, so the tokens do not keep slices of it
+            return token;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The index of the first token that ends at or after the offset
+     */
+    private int firstEnding(int offset) {
+        int low = 0, high = tokens.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ends[middle] < offset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return The position of the last checkpoint whose statement starts at or before the token, or -1 if there is none
+     */
+    private int lastStarting(int index) {
+        int low = 0, high = checkpoints.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (checkpoints.get(middle).start <= index)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low - 1;
+    }
+
+    /**
+     * Replaces a range of the tokens with other tokens, and moves the offsets of the tokens after them
+     */
+    private void replaceTokens(int from, int to, List<Token> replacement, int[] newStarts, int[] newEnds, int delta) {
+        int size = tokens.size(), shift = replacement.size() - (to - from);
+        ensureCapacity(size + shift);
+        System.arraycopy(starts, to, starts, to + shift, size - to);
+        System.arraycopy(ends, to, ends, to + shift, size - to);
+        System.arraycopy(newStarts, 0, starts, from, replacement.size());
+        System.arraycopy(newEnds, 0, ends, from, replacement.size());
+        for (int i = to + shift; i < size + shift; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+        }
+        if (shift == 0) {
+            for (int i = 0; i < replacement.size(); i++)
+                tokens.set(from + i, replacement.get(i));
+        }
+        else {
+            tokens.subList(from, to).clear();
+            tokens.addAll(from, replacement);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > starts.length) {
+            starts = Arrays.copyOf(starts, Math.max(size, 2 * starts.length));
+            ends = Arrays.copyOf(ends, starts.length);
+        }
+    }
+
+    /**
+     * @return true if a lexed token is the same as an old token, whose line has moved by the given number of lines
+     */
+    private static boolean same(Token token, Token old, int lineShift) {
+
+        return token.symbol == old.symbol && token.textEquals(old.text) && token.lineNumber == old.lineNumber + lineShift;
+    }
+
+    /**
+     * @return The index of a checkpoint after the tokens of a change, in which they have been replaced: -1 if it starts
+     * or ends in the change
+     */
+    private static int shifted(int index, int changedStart, int changedEnd, int shift) {
+        if (index >= changedEnd)
+            return index + shift;
+        return index >= changedStart ? -1 : index;
+    }
+
+    /**
+     * @return true if the states of two analyses are the same, with variables of the same names and types that were
+     * declared after the first given number of global variables, and identifiers of the same names not bound yet
+     */
+    private static boolean same(SemanticAnalyser.State state, List<ParseNode> pending, SemanticAnalyser.State old,
+                                List<ParseNode> oldPending, int globals) {
+        if (state.globalCount != old.globalCount || state.forStatementBody != old.forStatementBody
+                || state.forStatementCount != old.forStatementCount || pending.size() != oldPending.size())
+            return false;
+        for (int i = globals; i < state.globalCount; i++) {
+            if (!same(state.globals.get(i), old.globals.get(i)))
+                return false;
+        }
+        if (state.locals == null || old.locals == null) {
+            if (state.locals != old.locals)
+                return false;
+        }
+        else {
+            if (!state.locals.keySet().equals(old.locals.keySet()))
+                return false;
+            for (Map.Entry<Integer, HashMap<String, Variable>> scope : state.locals.entrySet()) {
+                Map<String, Variable> oldScope = old.locals.get(scope.getKey());
+                if (!scope.getValue().keySet().equals(oldScope.keySet()))
+                    return false;
+                for (Variable v : scope.getValue().values()) {
+                    if (!same(v, oldScope.get(v.identifier)))
+                        return false;
+                }
+            }
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            if (!pending.get(i).token.textEquals(oldPending.get(i).token.text))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean same(Variable v, Variable old) {
+
+        return v == old || v.identifier.equals(old.identifier) && v.type == old.type;
+    }
+
+    /**
+     * Maps the variables of a state to those of the same state of another analysis, where they are different
+     */
+    private static void rename(SemanticAnalyser.State state, SemanticAnalyser.State old, int globals,
+                               IdentityHashMap<Variable, Variable> renamed) {
+        for (int i = globals; i < state.globalCount; i++) {
+            if (state.globals.get(i) != old.globals.get(i))
+                renamed.put(state.globals.get(i), old.globals.get(i));
+        }
+        if (state.locals != null) {
+            for (Map.Entry<Integer, HashMap<String, Variable>> scope : state.locals.entrySet()) {
+                Map<String, Variable> oldScope = old.locals.get(scope.getKey());
+                for (Variable v : scope.getValue().values()) {
+                    if (v != oldScope.get(v.identifier))
+                        renamed.put(v, oldScope.get(v.identifier));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces renamed variables in the scopes of the for-loops of a state
+     */
+    private static void rename(Map<Integer, HashMap<String, Variable>> locals,
+                               IdentityHashMap<Variable, Variable> renamed) {
+        if (locals != null) {
+            for (HashMap<String, Variable> scope : locals.values())
+                scope.replaceAll((identifier, v) -> renamed(v, renamed));
+        }
+    }
+
+    /**
+     * Replaces renamed variables in the nodes of a subtree, up to a node that is not part of it
+     */
+    private static void rename(ParseNode subtree, ParseNode end, IdentityHashMap<Variable, Variable> renamed) {
+        ArrayList<ParseNode> stack = new ArrayList<>();
+        stack.add(subtree);
+        while (!stack.isEmpty()) {
+            ParseNode node = stack.remove(stack.size() - 1);
+            if (node == end)
+                continue;
+            node.variable = renamed(node.variable, renamed);
+            if (node.dropped != null)
+                node.dropped.replaceAll(v -> renamed(v, renamed));
+            stack.addAll(node.children);
+        }
+    }
+
+    private static Variable renamed(Variable v, IdentityHashMap<Variable, Variable> renamed) {
+        Variable other = v == null ? null : renamed.get(v);
+        return other != null ? other : v;
+    }
+
+    private static List<ParseNode> replaced(List<ParseNode> nodes, IdentityHashMap<ParseNode, ParseNode> replaced) {
+        if (nodes.isEmpty() || replaced.isEmpty())
+            return nodes;
+        List<ParseNode> copy = new ArrayList<>(nodes.size());
+        for (ParseNode node : nodes)
+            copy.add(replaced.getOrDefault(node, node));
+        return copy;
+    }
+
+    private static List<ParseNode> copy(List<ParseNode> nodes) {
+
+        return nodes.isEmpty() ? Collections.<ParseNode>emptyList() : new ArrayList<>(nodes);
+    }
+
+    /**
+     * @return The index of a node in a list, compared by identity, or -1 if it is not in it
+     */
+    private static int indexOf(List<ParseNode> nodes, ParseNode node) {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i) == node)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if a statement contains another
+     */
+    private static boolean contains(Checkpoint statement, Checkpoint other) {
+        for (Checkpoint c = other.parent; c != null; c = c.parent) {
+            if (c == statement)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * The arithmetic of the numbers that NumberInference proved to be integral, which the execution back-ends compute
+ * with longs instead of doubles.
+ * A long gives the same results as a double only while the values are exact in both, so every operation checks that
+ * its result is within 2^53 of zero, and that it is not the negative zero of a double (which a long can not hold).
+ * If it is not, the operation throws OUT_OF_RANGE, and the back-end goes on with doubles from the start of the
+ * statement, exactly as if the program had never used longs.
+ */
+public final class Integral {
+
+    /*The largest magnitude of an integer that a double holds exactly, with all the integers below it*/
+    public static final long MAX = 1L << 53;
+
+    /**
+     * The exception that an operation throws when its result can not be computed with longs. There is only one
+     * instance, without a stack trace, so that throwing it is cheap
+     */
+    public static final class OutOfRange extends ArithmeticException {
+
+        private static final long serialVersionUID = 1L;
+
+        private OutOfRange() {
+
+            super("integral value out of range");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+
+            return this;
+        }
+    }
+
+    /*The operands of a multiplication that are within this of zero have a product that is within MAX of zero*/
+    private static final long HALF = 1L << 26;
+
+    public static final OutOfRange OUT_OF_RANGE = new OutOfRange();
+
+    private Integral() {
+    }
+
+    public static long add(long a, long b) {
+
+        return check(a + b);
+    }
+
+    public static long subtract(long a, long b) {
+
+        return check(a - b);
+    }
+
+    public static long multiply(long a, long b) {
+        // both within 2^26 of zero is the common case, for which the product is exact; otherwise, the product of two
+        // doubles can only round to less than 2^53 if it is less than 2^53
+        if (((a + HALF) | (b + HALF)) >>> 27 != 0 && !(Math.abs((double) a * (double) b) < MAX))
+            throw OUT_OF_RANGE;
+        long product = a * b;
+        if (product == 0 && (a | b) < 0)
+            throw OUT_OF_RANGE; // -0.0 as a double
+        return product;
+    }
+
+    /**
+     * @return true if a double is an integer that a long holds with the same value, as far as the operations of this
+     * class go
+     */
+    public static boolean isIntegral(double value) {
+        return value == Math.rint(value) && Math.abs(value) <= MAX
+                && Double.doubleToRawLongBits(value) != Long.MIN_VALUE;
+    }
+
+    private static long check(long value) {
+        // one unsigned comparison for -MAX <= value <= MAX, as the operands are within MAX of zero
+        if (Long.compareUnsigned(value + MAX, 2 * MAX) > 0)
+            throw OUT_OF_RANGE;
+        return value;
+    }
+}
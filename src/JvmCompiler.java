@@ -0,0 +1,559 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * This class compiles the parse tree of a program (as built by TreeGenerate) to a JVM class, which implements
+ * CompiledProgram. Every variable becomes a local variable of the run method, a double or a CharSequence (a String or a
+ * Rope) according to its type, and every loop becomes a native loop of branches, so that the JIT compiler of the JVM can optimise the loops
+ * of the program like the ones of any other method.
+ * The variables that are known to be integral become long local variables, whose operations are checked by the
+ * methods of Integral. The method then has a second copy of the code with doubles only: an exception handler on every
+ * assignment that uses longs copies them to the local variables of doubles, and goes on from the start of the same
+ * assignment in that copy.
+ */
+public class JvmCompiler extends AbstractCompiler {
+
+    /*JVM opcodes*/
+    private static final int ICONST_0 = 0x03, LCONST_0 = 0x09, LCONST_1 = 0x0A, DCONST_0 = 0x0E, DCONST_1 = 0x0F;
+    private static final int SIPUSH = 0x11, LDC_W = 0x13, LDC2_W = 0x14;
+    private static final int ILOAD = 0x15, LLOAD = 0x16, DLOAD = 0x18, ALOAD = 0x19;
+    private static final int ISTORE = 0x36, LSTORE = 0x37, DSTORE = 0x39, ASTORE = 0x3A, POP = 0x57;
+    private static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6B, DDIV = 0x6F, L2D = 0x8A;
+    private static final int LCMP = 0x94, DCMPL = 0x97, DCMPG = 0x98;
+    private static final int IFEQ = 0x99, IFNE = 0x9A, IFLT = 0x9B, IFGE = 0x9C, IFGT = 0x9D, IFLE = 0x9E;
+    private static final int GOTO = 0xA7, RETURN = 0xB1, INVOKEVIRTUAL = 0xB6, INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC = 0xB8;
+
+    /*The maximum length of the code of a method, such that every branch fits in a 16-bit offset*/
+    private static final int MAX_CODE_LENGTH = 32767;
+    private final String TOO_LARGE = ": the program is too large to compile to a JVM method";
+
+    /*The local variables of the run method: 0 is "this" and 1 is the ProgramIO*/
+    private static final int IO_LOCAL = 1;
+
+    private final ClassFileWriter classFile;
+    private final ClassFileWriter.Code code;
+
+    /*The local variable of every variable of the program, the long local variable of every integral variable, and
+    * the next local variable that is free*/
+    private final HashMap<Variable, Integer> locals;
+    private final HashMap<Variable, Integer> longLocals;
+    private int nextLocal;
+
+    /*The start and the end of every assignment that has been compiled so far, in order, and 1 after them if the
+    * assignment uses the operations of Integral (0 if not)*/
+    private final ArrayList<int[]> assignments;
+    private boolean checked;
+
+    /*Set if the code does not fit in a method*/
+    private boolean tooLarge;
+
+    private JvmCompiler(String className, Set<Variable> integral) {
+        this.classFile = new ClassFileWriter(className, "java/lang/Object", "CompiledProgram");
+        this.code = new ClassFileWriter.Code(IO_LOCAL + 1);
+        this.locals = new HashMap<>();
+        this.longLocals = new HashMap<>();
+        this.nextLocal = IO_LOCAL + 1;
+        this.assignments = new ArrayList<>();
+        this.integral = integral;
+    }
+
+    /**
+     * Compiles a program to a class
+     * @param root The root (StatementPart) of the parse tree of the program
+     * @param className The name of the class
+     * @return The bytes of the class file
+     * @throws CompilationException If the parse tree is not a valid program, or it is too large for a JVM method
+     */
+    public static byte[] compile(ParseNode root, String className) throws CompilationException {
+
+        return compile(root, className, Collections.emptySet());
+    }
+
+    /**
+     * Compiles a program to a class, with long arithmetic for the variables that are integral
+     * @param root The root (StatementPart) of the parse tree of the program
+     * @param className The name of the class
+     * @param integral The number variables that only ever hold integral values, as found by NumberInference
+     * @return The bytes of the class file
+     * @throws CompilationException If the parse tree is not a valid program, or it is too large for a JVM method
+     */
+    public static byte[] compile(ParseNode root, String className, Set<Variable> integral)
+            throws CompilationException {
+        JvmCompiler compiler = new JvmCompiler(className, integral);
+        try {
+            compiler.constructor();
+            compiler.run(root);
+            return compiler.classFile.toByteArray();
+        }
+        catch (CompilationException e) {
+            if (!compiler.tooLarge || integral.isEmpty())
+                throw e;
+        }
+        // the two copies of the code do not fit in a method, but the one with doubles only may
+        return compile(root, className, Collections.emptySet());
+    }
+
+    /**
+     * Compiles a program and loads its class
+     * @param root The root (StatementPart) of the parse tree of the program
+     * @param className The name of the class
+     * @return The program
+     * @throws CompilationException If the parse tree is not a valid program, or it is too large for a JVM method
+     */
+    public static CompiledProgram load(ParseNode root, String className) throws CompilationException {
+
+        return new ProgramClassLoader().define(className, compile(root, className));
+    }
+
+    /**
+     * Writes a class file to a directory, so that it can be loaded later without compiling the program again
+     * @param directory The directory
+     * @param className The name of the class
+     * @param bytes The bytes of the class file
+     * @return The class file
+     * @throws IOException If the file can not be written
+     */
+    public static File write(File directory, String className, byte[] bytes) throws IOException {
+        File file = new File(directory, className + ".class");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+        return file;
+    }
+
+    /**
+     * @param fileName The name of the file of a program
+     * @return A name for the class of the program, which is a valid Java identifier
+     */
+    public static String classNameFor(String fileName) {
+        String base = new File(fileName).getName().replaceFirst("\\.[^.]*$", "");
+        StringBuilder name = new StringBuilder("Program_");
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            name.append(Character.isJavaIdentifierPart(c) ? c : '_');
+        }
+        return name.toString();
+    }
+
+    private void constructor() {
+        ClassFileWriter.Code init = new ClassFileWriter.Code(1);
+        init.local(ALOAD, 0, 1);
+        init.op2(INVOKESPECIAL, classFile.methodConstant("java/lang/Object", "<init>", "()V"), -1);
+        init.op(RETURN, 0);
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", init);
+    }
+
+    /**
+     * Compiles the run method. The local variables are only known at the end, so their initial values are set by a
+     * block at the end of the method, which is jumped to at the start and jumps back to the first statement.
+     */
+    private void run(ParseNode root) throws CompilationException {
+        int toInit = code.branch(GOTO, 0);
+        int start = code.position();
+
+        int entry = -1;
+        try {
+            statementList(root.child(1));
+            code.local(ALOAD, IO_LOCAL, 1);
+            invokeIO("flush", "()V", -1);
+            code.op(RETURN, 0);
+            if (!integral.isEmpty())
+                entry = deoptimised(root);
+        }
+        catch (IllegalStateException e) {
+            tooLarge = true;
+            throw new CompilationException(TOO_LARGE, -1); // a branch that does not fit in its offset
+        }
+
+        code.setTarget(toInit, code.position());
+        for (HashMap.Entry<Variable, Integer> local : longLocals.entrySet()) {
+            code.op(LCONST_0, 2);
+            code.local(LSTORE, local.getValue(), -2);
+        }
+        if (entry >= 0) {
+            code.op(ICONST_0, 1);
+            code.local(ISTORE, entry, -1);
+        }
+        for (HashMap.Entry<Variable, Integer> local : locals.entrySet()) {
+            if (local.getKey().type == Variable.Type.NUMBER) {
+                code.op(DCONST_0, 2);
+                code.local(DSTORE, local.getValue(), -2);
+            }
+            else {
+                code.op2(LDC_W, classFile.stringConstant(""), 1);
+                code.local(ASTORE, local.getValue(), -1);
+            }
+        }
+        code.branch(GOTO, 0, start);
+
+        if (code.position() > MAX_CODE_LENGTH) {
+            tooLarge = true;
+            throw new CompilationException(TOO_LARGE, -1);
+        }
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC, "run", "(LProgramIO;)V", code);
+    }
+
+    /**
+     * Compiles the copy of the program with doubles only, and the exception handlers that go on in it when an
+     * operation of Integral is out of range
+     * @return The local variable that holds the number of the assignment to go on from, or -1 if there is no copy
+     */
+    private int deoptimised(ParseNode root) throws CompilationException {
+        ArrayList<int[]> specialised = new ArrayList<>(assignments);
+        if (specialised.stream().noneMatch(assignment -> assignment[2] != 0))
+            return -1; // nothing can fail
+        assignments.clear();
+        integral = Collections.emptySet();
+        statementList(root.child(1));
+        code.local(ALOAD, IO_LOCAL, 1);
+        invokeIO("flush", "()V", -1);
+        code.op(RETURN, 0);
+
+        int entry = nextLocal++;
+        int catchType = classFile.classConstant("Integral$OutOfRange");
+        ArrayList<Integer> toDeoptimise = new ArrayList<>();
+        for (int i = 0; i < specialised.size(); i++) {
+            int[] assignment = specialised.get(i);
+            if (assignment[2] == 0)
+                continue;
+            code.handler(assignment[0], assignment[1], catchType);
+            code.op(POP, -1);
+            code.op2(SIPUSH, i, 1);
+            code.local(ISTORE, entry, -1);
+            toDeoptimise.add(code.branch(GOTO, 0));
+        }
+
+        for (int branch : toDeoptimise)
+            code.setTarget(branch, code.position());
+        for (HashMap.Entry<Variable, Integer> local : longLocals.entrySet()) {
+            code.local(LLOAD, local.getValue(), 2);
+            code.op(L2D, 0);
+            code.local(DSTORE, local(local.getKey()), -2);
+        }
+        int[] targets = new int[assignments.size()];
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = assignments.get(i)[0];
+        code.local(ILOAD, entry, 1);
+        code.tableSwitch(targets);
+        return entry;
+    }
+
+    /**
+     * identifier := <expression> | identifier := stringConstant
+     */
+    @Override
+    protected void assignment(ParseNode node) throws CompilationException {
+        ParseNode target = node.child(0);
+        ParseNode value = node.child(2);
+
+        int start = code.position();
+        checked = false;
+
+        if (value.is(Token.stringConstant)) {
+            Variable v = assigned(target, Variable.Type.STRING);
+            code.op2(LDC_W, classFile.stringConstant(value.token.getText()), 1);
+            code.local(ASTORE, local(v), -1);
+        }
+        else {
+            Variable.Type type = typeOf(value);
+            Variable v = assigned(target, type);
+            expression(value, type);
+            if (type == Variable.Type.NUMBER && isIntegral(value) && !isIntegral(v))
+                code.op(L2D, 0);
+            store(v);
+        }
+        // an operation of Integral only fails before the variable is written, so the assignment can start over
+        assignments.add(new int[] {start, code.position(), checked ? 1 : 0});
+    }
+
+    /**
+     * if <condition> then <statement list> [else <statement list>] end if
+     */
+    @Override
+    protected void ifStatement(ParseNode node) throws CompilationException {
+        int toElse = condition(node.child(1), false);
+        statementList(node.child(3));
+
+        if (node.child(4).is(Token.elseSymbol)) {
+            int toEnd = code.branch(GOTO, 0);
+            code.setTarget(toElse, code.position());
+            statementList(node.child(5));
+            code.setTarget(toEnd, code.position());
+        }
+        else
+            code.setTarget(toElse, code.position());
+    }
+
+    /**
+     * while <condition> loop <statement list> end loop. The condition is tested at the bottom of the loop.
+     */
+    @Override
+    protected void whileStatement(ParseNode node) throws CompilationException {
+        int toTest = code.branch(GOTO, 0);
+        int body = code.position();
+        statementList(node.child(3));
+        code.setTarget(toTest, code.position());
+        code.setTarget(condition(node.child(1), true), body);
+    }
+
+    /**
+     * do <statement list> until <condition>
+     */
+    @Override
+    protected void untilStatement(ParseNode node) throws CompilationException {
+        int body = code.position();
+        statementList(node.child(1));
+        code.setTarget(condition(node.child(3), false), body);
+    }
+
+    /**
+     * for ( <assignment> ; <condition> ; <assignment> ) do <statement list> end loop
+     */
+    @Override
+    protected void forStatement(ParseNode node) throws CompilationException {
+        assignment(node.child(2));
+        int toTest = code.branch(GOTO, 0);
+        int body = code.position();
+        statementList(node.child(9));
+        assignment(node.child(6));
+        code.setTarget(toTest, code.position());
+        code.setTarget(condition(node.child(4), true), body);
+    }
+
+    /**
+     * call get ( <argument list> ) | call put ( <argument list> )
+     */
+    @Override
+    protected void procedureStatement(ParseNode node) throws CompilationException {
+        boolean get = isGet(node);
+        for (ParseNode argument : arguments(node.child(3))) {
+            Variable v = variable(argument);
+            code.local(ALOAD, IO_LOCAL, 1);
+            if (get) {
+                if (v.type == Variable.Type.NUMBER)
+                    invokeIO("readNumber", "()D", 1);
+                else
+                    invokeIO("readString", "()Ljava/lang/String;", 0);
+                store(v);
+            }
+            else {
+                load(v);
+                if (isIntegral(v))
+                    code.op(L2D, 0);
+                if (v.type == Variable.Type.NUMBER)
+                    invokeIO("writeNumber", "(D)V", -3);
+                else
+                    invokeIO("writeString", "(Ljava/lang/CharSequence;)V", -2);
+            }
+        }
+        if (!get) {
+            code.local(ALOAD, IO_LOCAL, 1);
+            invokeIO("endLine", "()V", -1);
+        }
+    }
+
+    /**
+     * Compiles a conditional branch on a condition. The target of the branch is left to the caller to set.
+     * A comparison of doubles is compiled with the one of dcmpl and dcmpg that makes NaN fail the condition.
+     * @param node The Condition node
+     * @param when true if the branch should be taken when the condition holds, false if it should be taken otherwise
+     * @return The position of the branch
+     */
+    private int condition(ParseNode node, boolean when) throws CompilationException {
+        Variable left = variable(node.child(0));
+        int operator = node.child(1).child(0).token.symbol;
+        ParseNode right = node.child(2);
+        if (left.type != typeOfOperand(right))
+            throw new CompilationException(INV_OPERATION, right.token.lineNumber);
+
+        int compare = DCMPL, branch;
+        switch (operator) {
+            case Token.lessThanSymbol: compare = DCMPG; branch = when ? IFLT : IFGE; break;
+            case Token.lessEqualSymbol: compare = DCMPG; branch = when ? IFLE : IFGT; break;
+            case Token.equalSymbol: branch = when ? IFEQ : IFNE; break;
+            case Token.notEqualSymbol: branch = when ? IFNE : IFEQ; break;
+            case Token.greaterThanSymbol: branch = when ? IFGT : IFLE; break;
+            case Token.greaterEqualSymbol: branch = when ? IFGE : IFLT; break;
+            default: throw shapeError(node.child(1));
+        }
+
+        // two integral numbers are compared as longs, and an integral one with any other as doubles
+        boolean longs = isIntegral(left) && isIntegral(right);
+        load(left);
+        if (isIntegral(left) && !longs)
+            code.op(L2D, 0);
+        if (right.is(Token.identifier))
+            load(variable(right));
+        else if (right.is(Token.numberConstant))
+            number(Double.parseDouble(right.token.getText()), longs);
+        else
+            code.op2(LDC_W, classFile.stringConstant(right.token.getText()), 1);
+        if (right.is(Token.identifier) && isIntegral(right) && !longs)
+            code.op(L2D, 0);
+
+        if (longs)
+            code.op(LCMP, -3);
+        else if (left.type == Variable.Type.NUMBER)
+            code.op(compare, -3);
+        else
+            code.op2(INVOKESTATIC, classFile.methodConstant("Rope", "compare",
+                    "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)I"), -1);
+        return code.branch(branch, -1);
+    }
+
+    /**
+     * Compiles an expression, term or factor, which leaves its value on the operand stack
+     * @param node The Expression, Term or Factor node
+     * @param type The type of the expression
+     */
+    private void expression(ParseNode node, Variable.Type type) throws CompilationException {
+        if (node.children.isEmpty())
+            throw shapeError(node);
+
+        if (node.is("Factor")) {
+            ParseNode first = node.child(0);
+            if (first.is(Token.leftParenthesis))
+                expression(node.child(1), type);
+            else if (first.is(Token.numberConstant)) {
+                if (type != Variable.Type.NUMBER)
+                    throw new CompilationException(INV_OPERATION, first.token.lineNumber);
+                number(Double.parseDouble(first.token.getText()), isIntegral(first));
+            }
+            else {
+                Variable v = variable(first);
+                if (v.type != type)
+                    throw new CompilationException(INV_OPERATION, first.token.lineNumber);
+                load(v);
+            }
+            return;
+        }
+
+        ArrayList<ParseNode> operands = new ArrayList<>();
+        ArrayList<ParseNode> operators = new ArrayList<>();
+        chain(node, operands, operators);
+
+        boolean number = type == Variable.Type.NUMBER;
+        boolean integral = number && isIntegral(operands.get(0));
+        expression(operands.get(0), type);
+        for (int i = 0; i < operators.size(); i++) {
+            ParseNode operator = operators.get(i);
+            boolean operandIntegral = number && isIntegral(operands.get(i + 1));
+
+            // the operands are evaluated from left to right with longs, until one of them is not integral
+            boolean result = integral && operandIntegral && !operator.is(Token.divideSymbol);
+            if (integral && !result)
+                code.op(L2D, 0);
+            expression(operands.get(i + 1), type);
+            if (operandIntegral && !result)
+                code.op(L2D, 0);
+            integral = result;
+
+            if (result) {
+                String method;
+                switch (operator.token.symbol) {
+                    case Token.plusSymbol: method = "add"; break;
+                    case Token.minusSymbol: method = "subtract"; break;
+                    case Token.timesSymbol: method = "multiply"; break;
+                    default: throw shapeError(operator);
+                }
+                code.op2(INVOKESTATIC, classFile.methodConstant("Integral", method, "(JJ)J"), -2);
+                checked = true;
+                continue;
+            }
+            if (type == Variable.Type.STRING) {
+                if (!operator.is(Token.plusSymbol))
+                    throw new CompilationException(INV_OPERATION, operator.token.lineNumber);
+                code.op2(INVOKESTATIC, classFile.methodConstant("Rope", "concat",
+                        "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Ljava/lang/CharSequence;"), -1);
+                continue;
+            }
+            switch (operator.token.symbol) {
+                case Token.plusSymbol: code.op(DADD, -2); break;
+                case Token.minusSymbol: code.op(DSUB, -2); break;
+                case Token.timesSymbol: code.op(DMUL, -2); break;
+                case Token.divideSymbol: code.op(DDIV, -2); break;
+                default: throw shapeError(operator);
+            }
+        }
+    }
+
+    /**
+     * Pushes a number constant
+     * @param integral true if it is pushed as a long
+     */
+    private void number(double value, boolean integral) {
+        if (integral) {
+            if (value == 0.0)
+                code.op(LCONST_0, 2);
+            else if (value == 1.0)
+                code.op(LCONST_1, 2);
+            else
+                code.op2(LDC2_W, classFile.longConstant((long) value), 2);
+        }
+        else if (Double.doubleToRawLongBits(value) == 0L)
+            code.op(DCONST_0, 2);
+        else if (value == 1.0)
+            code.op(DCONST_1, 2);
+        else
+            code.op2(LDC2_W, classFile.doubleConstant(value), 2);
+    }
+
+    private void load(Variable v) throws CompilationException {
+        if (isIntegral(v))
+            code.local(LLOAD, longLocal(v), 2);
+        else if (v.type == Variable.Type.NUMBER)
+            code.local(DLOAD, local(v), 2);
+        else
+            code.local(ALOAD, local(v), 1);
+    }
+
+    private void store(Variable v) throws CompilationException {
+        if (isIntegral(v))
+            code.local(LSTORE, longLocal(v), -2);
+        else if (v.type == Variable.Type.NUMBER)
+            code.local(DSTORE, local(v), -2);
+        else
+            code.local(ASTORE, local(v), -1);
+    }
+
+    private void invokeIO(String name, String descriptor, int stackChange) {
+
+        code.op2(INVOKEVIRTUAL, classFile.methodConstant("ProgramIO", name, descriptor), stackChange);
+    }
+
+    /**
+     * @return The local variable of a variable. A local variable is allocated the first time that a variable is seen
+     */
+    private int local(Variable v) throws CompilationException {
+        Integer local = locals.get(v);
+        if (local == null) {
+            if (v.type == Variable.Type.UNKNOWN)
+                throw new CompilationException(MessageFormat.format(INV_TYPE, "Number or String", v.type.name), -1);
+            local = nextLocal;
+            nextLocal += v.type == Variable.Type.NUMBER ? 2 : 1; // a double takes two local variables
+            locals.put(v, local);
+        }
+        return local;
+    }
+
+    /**
+     * @return The long local variable of an integral variable, which is allocated the first time that it is seen
+     */
+    private int longLocal(Variable v) {
+        Integer local = longLocals.get(v);
+        if (local == null) {
+            local = nextLocal;
+            nextLocal += 2; // a long takes two local variables
+            longLocals.put(v, local);
+        }
+        return local;
+    }
+}
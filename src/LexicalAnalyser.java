@@ -10,12 +10,19 @@
  *
  **/
 import java.io.* ;
-
-public class LexicalAnalyser
+import java.nio.ByteBuffer ;
+import java.nio.CharBuffer ;
+import java.nio.channels.FileChannel ;
+import java.nio.charset.Charset ;
+import java.nio.charset.CharsetDecoder ;
+import java.nio.charset.CodingErrorAction ;
+import java.nio.file.Paths ;
+
+public class LexicalAnalyser implements TokenSource
 {
 
 	/** Represents a textual and symbolic reserved word. */
-	class ReservedWord
+	static class ReservedWord
 	{
 		/** The text used in source. */
 		public String text ;
@@ -39,10 +46,15 @@ public class LexicalAnalyser
 	/** The EOF character. */
 	private static final char EOF = '\000' ;
 
-	/** A list of symbols. */
-	private ReservedWord[] symbols = new ReservedWord[maxTableSize] ;
+	/** A list of symbols, which every LexicalAnalyser shares. */
+	private static final ReservedWord[] symbols = new ReservedWord[maxTableSize] ;
 	/** Holds the current number of symbols held. */
-	private int noOfSymbols ;
+	private static int noOfSymbols ;
+
+	static
+	{
+		initialiseScanner() ;
+	}
 
 	/** Is this the first time we have been called? */
 	private boolean firstCall ;
@@ -53,29 +65,66 @@ public class LexicalAnalyser
 	/** An input stream from the filename mentioned above. */
 	private BufferedReader sourceFile ;
 
+	/** The text to read instead of a file, or null. It is split into lines as readLine splits a file. */
+	private CharSequence sourceText ;
+	/* The offsets in the text of the next character of the current line, and of the end of that line (-1 once
+	   there are no more lines). */
+	private int nextOffset,
+			lineEnd ;
+	/* The offsets in the text of the current character, and of the first character of the last token. */
+	private int currentPosition,
+			tokenStart ;
+
+	/* The offsets where the lines of the text start, as far as they were read, or null for a file that is read line
+	   by line. Each text has a table of its own, which the record of its parse keeps (see ParseLog) after the
+	   LexicalAnalyser is reset to the next one. */
+	private LineTable lines ;
+
 	/* State-change character and offset counts. */
 	private char currentCharacter ;
 	private String currentLine ;
 	private int currentOffset,
 			currentLineNumber ;
 
-	/* input buffer */
-	private StringBuffer currentText = new StringBuffer() ;
+	/* input buffer, for the characters of a token that are not read in place: those of a file that is read line by
+	   line, or of a string that spans lines. Whether the current token is copied to it. */
+	private final StringBuilder currentText = new StringBuilder() ;
+	private boolean copying ;
+
+	/* The names (identifiers and reserved words) that were lexed, with their symbols, in an open-addressing hash
+	   table, so that a name that was seen before is found by its characters in place, without a String of them or a
+	   lower-case copy, and its text is the same String every time. The table is emptied when it is full, and the
+	   symbol of the last name that was found. */
+	private static final int maxNames = 1 << 16 ;
+	private String[] names ;
+	private int[] nameSymbols ;
+	private int noOfNames ;
+	private int nameSymbol ;
+
+	/* The bytes of the last file that reset read, which are kept for the next one, and the decoder of them. */
+	private ByteBuffer fileBytes ;
+	private CharsetDecoder decoder ;
+
+	/* The budget of the compilation, or null, and the number of characters until it is checked again. Once it is
+	   exceeded, the input is stopped: the current line ends, and the end of the input follows. */
+	private CompilationBudget budget ;
+	private int charactersToCheck ;
+	private boolean stopped ;
 
 	/** Adds a reserved word to the internal symbol table.
 
 	  @param t The text as seen in source.
 	  @param s The type of this word, typically a class constant from Token
 	 */
-	private void setReservedWord(String t, int s)
+	private static void setReservedWord(String t, int s)
 	{
 		symbols[noOfSymbols] = new ReservedWord(t, s) ;
 		noOfSymbols++ ;
 	} // end of method setReservedWord
 
 
-	/** Sets all initial variables and adds the language's reserved words to the symbol table. */
-	private void initialiseScanner()
+	/** Adds the language's reserved words to the symbol table, once. */
+	private static void initialiseScanner()
 	{
 		noOfSymbols = 0 ;
 		setReservedWord("begin", Token.beginSymbol) ;
@@ -104,16 +153,175 @@ public class LexicalAnalyser
 	 */
 	public LexicalAnalyser(String fileName) throws IOException
 	{
-		initialiseScanner() ;
+		reset(fileName) ;	// the text of the file is read at once, so that the text of a token is read in place
+	} // end of constructor method
 
-		sourceFileName = fileName;
-		sourceFile = new BufferedReader(new FileReader(fileName)) ;
+	/** Creates a new LexicalAnalyser which will run over the text that a reader reads, i.e. a text in memory.
+
+	  @param name The name that stands for the file of the text.
+	  @param reader The reader to read the text from, line by line.
+	  @throws IOException if any read errors occur during parsing.
+	 */
+	public LexicalAnalyser(String name, Reader reader) throws IOException
+	{
+		sourceFileName = name;
+		sourceFile = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader) ;
 		currentLine = sourceFile.readLine() ;
 		currentOffset = 0 ;
 		firstCall = true ;
 		currentLineNumber = 0 ;
+		stopped = false ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which will run over a text, from the start of it.
+
+	  @param name The name that stands for the file of the text.
+	  @param text The text to read.
+	 */
+	public LexicalAnalyser(String name, CharSequence text)
+	{
+		this(name, text, 0, 0) ;
+	} // end of constructor method
+
+	/** Creates a new LexicalAnalyser which will run over a text, from an offset where a token may start (i.e. the
+	  end of a token that an earlier LexicalAnalyser returned), on the given line.
+
+	  @param name The name that stands for the file of the text.
+	  @param text The text to read.
+	  @param offset The offset in the text to start from.
+	  @param lineNumber The line number of the text at that offset.
+	 */
+	public LexicalAnalyser(String name, CharSequence text, int offset, int lineNumber)
+	{
+		reset(name, text, offset, lineNumber) ;
 	} // end of constructor method
 
+	/** Makes this LexicalAnalyser run over another file, from its start, as a new one would. The bytes of the file
+	  are read into the buffer of the last file that was read, so that a LexicalAnalyser can be reused for many
+	  files (i.e. by a batch compiler) without building it again, and decoded into characters of its own, so that
+	  the text of a token of the last file stays valid.
+
+	  @param fileName The file to read.
+	  @throws IOException if the file cannot be read.
+	 */
+	public void reset(String fileName) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName)))
+		{
+			long size = channel.size() ;
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(fileName + " is too big to be read") ;
+			if ((fileBytes == null) || (fileBytes.capacity() < size))
+				fileBytes = ByteBuffer.allocate((int) Math.max(size, 8192)) ;
+			fileBytes.clear() ;
+			while ((fileBytes.position() < size) && (channel.read(fileBytes) >= 0))
+				;
+			fileBytes.flip() ;
+		}
+
+		// decoded as a FileReader decodes it
+		if (decoder == null)
+			decoder = Charset.defaultCharset().newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE) ;
+		// the characters are not read into those of the last file, which the tokens of that file may still slice
+		int length = (int) Math.ceil(fileBytes.remaining() * (double) decoder.maxCharsPerByte()) ;
+		CharBuffer characters = CharBuffer.allocate(length) ;
+		decoder.reset() ;
+		decoder.decode(fileBytes, characters, true) ;
+		decoder.flush(characters) ;
+		characters.flip() ;
+		reset(fileName, characters, 0, 0) ;
+	} // end of method reset
+
+	/** Makes this LexicalAnalyser run over another text, from its start, as a new one would.
+
+	  @param name The name that stands for the file of the text.
+	  @param text The text to read.
+	 */
+	public void reset(String name, CharSequence text)
+	{
+		reset(name, text, 0, 0) ;
+	} // end of method reset
+
+	/** Makes this LexicalAnalyser run over another text, from an offset where a token may start, on the given
+	  line, as a new one would.
+
+	  @param name The name that stands for the file of the text.
+	  @param text The text to read.
+	  @param offset The offset in the text to start from.
+	  @param lineNumber The line number of the text at that offset.
+	 */
+	public void reset(String name, CharSequence text, int offset, int lineNumber)
+	{
+		sourceFileName = name ;
+		sourceFile = null ;
+		currentLine = null ;
+		currentOffset = 0 ;
+		currentText.setLength(0) ;
+		sourceText = text ;
+		nextOffset = offset ;
+		if (offset < text.length())
+			lineEnd = endOfLine(offset) ;
+		else if (offset > 0 && text.charAt(offset - 1) != '\n' && text.charAt(offset - 1) != '\r')
+			lineEnd = offset ;	// the last line, which has no line terminator
+		else
+			lineEnd = -1 ;
+		firstCall = true ;
+		currentLineNumber = lineNumber ;
+		stopped = false ;
+		int lineStart = offset ;
+		while ((lineStart > 0) && (text.charAt(lineStart - 1) != '\n') && (text.charAt(lineStart - 1) != '\r'))
+			lineStart-- ;
+		lines = new LineTable(text, lineStart) ;	// of its own, as the characters are
+	} // end of method reset
+
+	/** Creates a new LexicalAnalyser which will run over the characters of an array, which it reads in place.
+
+	  @param name The name that stands for the file of the text.
+	  @param text The characters of the text.
+	  @return the LexicalAnalyser.
+	 */
+	public static LexicalAnalyser of(String name, char[] text)
+	{
+		return new LexicalAnalyser(name, CharBuffer.wrap(text)) ;
+	} // end of method of
+
+	/** Creates a new LexicalAnalyser which will run over the bytes of a text (i.e. a message or a mapped file),
+	  decoded with the default charset, as a file is read.
+
+	  @param name The name that stands for the file of the text.
+	  @param bytes The bytes of the text, from its position to its limit. The position is not changed.
+	  @return the LexicalAnalyser.
+	 */
+	public static LexicalAnalyser of(String name, ByteBuffer bytes)
+	{
+		return of(name, bytes, Charset.defaultCharset()) ;
+	} // end of method of
+
+	/** Creates a new LexicalAnalyser which will run over the bytes of a text, decoded with the given charset.
+
+	  @param name The name that stands for the file of the text.
+	  @param bytes The bytes of the text, from its position to its limit. The position is not changed.
+	  @param charset The charset of the text.
+	  @return the LexicalAnalyser.
+	 */
+	public static LexicalAnalyser of(String name, ByteBuffer bytes, Charset charset)
+	{
+		return new LexicalAnalyser(name, charset.decode(bytes.duplicate())) ;
+	} // end of method of
+
+	/** Makes this LexicalAnalyser check the budget of the compilation while it reads a token, so that a token that
+	  runs on (i.e. a comment or a string that is not closed) stops when the time of the compilation is up, or it is
+	  cancelled. The input then ends, and the budget tells why.
+
+	  @param budget The budget, or null for none.
+	 */
+	public void setBudget(CompilationBudget budget)
+	{
+		this.budget = budget ;
+		charactersToCheck = CompilationBudget.CHECK_CHARACTERS ;
+	} // end of method setBudget
+
 	/**
 	 * Simply returns the current loaded input file name
 	 */
@@ -128,7 +336,20 @@ public class LexicalAnalyser
 	 */
 	private void getNextCharacter() throws IOException
 	{
-		if (currentLine == null)
+		if ((budget != null) && (--charactersToCheck < 0))
+		{
+			charactersToCheck = CompilationBudget.CHECK_CHARACTERS ;
+			stopped = stopped || !budget.inTime() ;
+		}
+		if (stopped)	// the end of the current line, and then of the input
+		{
+			currentCharacter = ((currentCharacter == '\n') || (currentCharacter == EOF)) ? EOF : '\n' ;
+			if (sourceText != null)
+				currentPosition = Math.min(nextOffset, sourceText.length()) ;	// after the last character that was read
+		}
+		else if (sourceText != null)
+			getNextTextCharacter() ;
+		else if (currentLine == null)
 			currentCharacter = EOF ;
 		else if (currentOffset >= currentLine.length())
 		{
@@ -143,6 +364,197 @@ public class LexicalAnalyser
 		}
 	} // end of method getNextCharacter
 
+	/** Loads the next character of the text into the buffer, with the offset of it. */
+	private void getNextTextCharacter()
+	{
+		if (lineEnd < 0)
+		{
+			currentPosition = sourceText.length() ;
+			currentCharacter = EOF ;
+		}
+		else if (nextOffset >= lineEnd)
+		{
+			// the end of the line, after which the line terminator ("\n", "\r" or "\r\n") is skipped
+			currentPosition = lineEnd ;
+			currentCharacter = '\n' ;
+			int next = lineEnd ;
+			if (next < sourceText.length())
+			{
+				if ((sourceText.charAt(next) == '\r') && (next + 1 < sourceText.length()) &&
+						(sourceText.charAt(next + 1) == '\n'))
+					next++ ;
+				next++ ;
+				lines.add(next) ;	// (at the end of the text, the empty line of the end of file)
+			}
+			nextOffset = next ;
+			lineEnd = next < sourceText.length() ? endOfLine(next) : -1 ;
+		}
+		else
+		{
+			currentPosition = nextOffset ;
+			currentCharacter = sourceText.charAt(nextOffset) ;
+			nextOffset++ ;
+		}
+	} // end of method getNextTextCharacter
+
+	/** Returns true if the current character is the end of the input, rather than a null character in a line. */
+	private boolean atEnd()
+	{
+		return (currentCharacter == EOF) && (stopped || (sourceText != null ? lineEnd < 0 : currentLine == null)) ;
+	} // end of method atEnd
+
+	/** Returns the offset of the end of the line of the text that starts at the given offset. */
+	private int endOfLine(int offset)
+	{
+		while (offset < sourceText.length() &&
+				(sourceText.charAt(offset) != '\n') && (sourceText.charAt(offset) != '\r'))
+			offset++ ;
+		return offset ;
+	} // end of method endOfLine
+
+	/** Returns the offsets where the lines of the text start, as far as the text was read, or null if the input is
+	  read line by line from a Reader.
+	 */
+	@Override
+	public LineTable getLines()
+	{
+		return lines ;
+	}
+
+	/** Returns the offset in the text of the first character of the token that was returned last.
+	  Only a LexicalAnalyser of a text keeps the offsets of its tokens.
+	 */
+	public int getTokenStart()
+	{
+		return tokenStart ;
+	}
+
+	/** Returns the offset in the text just after the token that was returned last, where the next token may start.
+	  Only a LexicalAnalyser of a text keeps the offsets of its tokens.
+	 */
+	public int getTokenEnd()
+	{
+		return currentPosition ;
+	}
+
+	/** Starts the text of a token at the current character: it is read in place in a text, and copied from the
+	  lines of a file that is read line by line. */
+	private void startText()
+	{
+		copying = sourceText == null ;
+		currentText.setLength(0) ;
+	} // end of method startText
+
+	/** Adds the current character to the text of the token, if it is copied. */
+	private void appendText()
+	{
+		if (copying)
+			currentText.append(currentCharacter) ;
+	} // end of method appendText
+
+	/** Returns the text of the token, from the given offset in the text to the current character: a slice of the
+	  text, or a copy of the characters that were copied. */
+	private CharSequence text(int start)
+	{
+		return copying ? currentText.toString() : new TextSlice(sourceText, start, currentPosition) ;
+	} // end of method text
+
+	/** Finds a name in the table of names, by its characters, or adds it, with its symbol: that of the reserved
+	  word that it is in any case, or an identifier. Sets nameSymbol to the symbol.
+
+	  @param text The text of the name.
+	  @param start The offset of the first character of the name.
+	  @param end The offset after the last character of the name.
+	  @return The name, as the same String every time.
+	 */
+	private String name(CharSequence text, int start, int end)
+	{
+		int hash = 0 ;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + text.charAt(i) ;
+		if ((names == null) || (noOfNames >= maxNames))
+		{
+			names = new String[256] ;
+			nameSymbols = new int[256] ;
+			noOfNames = 0 ;
+		}
+		int mask = names.length - 1 ;
+		int slot = (hash ^ (hash >>> 16)) & mask ;
+		for (String name; (name = names[slot]) != null; slot = (slot + 1) & mask)
+		{
+			if ((name.hashCode() == hash) && (name.length() == end - start) && sameText(name, text, start))
+			{
+				nameSymbol = nameSymbols[slot] ;
+				return name ;
+			}
+		}
+
+		String name = text.subSequence(start, end).toString() ;
+		nameSymbol = symbol(name) ;
+		names[slot] = name ;
+		nameSymbols[slot] = nameSymbol ;
+		if (++noOfNames * 2 > names.length)
+		{
+			// a bigger table, with the names in their slots in it
+			String[] oldNames = names ;
+			int[] oldSymbols = nameSymbols ;
+			names = new String[oldNames.length * 2] ;
+			nameSymbols = new int[oldNames.length * 2] ;
+			mask = names.length - 1 ;
+			for (int i = 0; i < oldNames.length; i++)
+			{
+				if (oldNames[i] == null)
+					continue ;
+				int h = oldNames[i].hashCode() ;
+				for (slot = (h ^ (h >>> 16)) & mask; names[slot] != null; slot = (slot + 1) & mask)
+					;
+				names[slot] = oldNames[i] ;
+				nameSymbols[slot] = oldSymbols[i] ;
+			}
+		}
+		return name ;
+	} // end of method name
+
+	/** Returns true if a name has the characters of a text from an offset on. */
+	private static boolean sameText(String name, CharSequence text, int start)
+	{
+		for (int i = 0; i < name.length(); i++)
+			if (name.charAt(i) != text.charAt(start + i))
+				return false ;
+		return true ;
+	} // end of method sameText
+
+	/** Returns the symbol of a name: that of the reserved word that it is in any case, or an identifier. The
+	  PushLexer finds the symbols of its names here as well, so that both lexers find the same tokens.
+
+	  @param name The text of the name.
+	  @return The symbol of the name.
+	 */
+	static int symbol(CharSequence name)
+	{
+		for (int i = 0; i < noOfSymbols; i++)
+			if (reservedWord(name, symbols[i].text))
+				return symbols[i].symbol ;
+		return Token.identifier ;
+	} // end of method symbol
+
+	/** Returns true if a name is a reserved word in any case, without a lower-case copy of it (the reserved words
+	  are in lower-case ASCII letters, to which only the upper-case ASCII letters are made lower-case). */
+	private static boolean reservedWord(CharSequence name, String word)
+	{
+		if (name.length() != word.length())
+			return false ;
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i) ;
+			if ((c >= 'A') && (c <= 'Z'))
+				c += 'a' - 'A' ;
+			if (c != word.charAt(i))
+				return false ;
+		}
+		return true ;
+	} // end of method reservedWord
+
 	/** Returns the next token from the source file.  Repeatedly calling this
 	  will return each token in the file, and eventually null.
 
@@ -150,6 +562,18 @@ public class LexicalAnalyser
 	  @return the next token from the source file.
 	 */
 	public Token getNextToken() throws IOException
+	{
+		Token token = lexToken() ;
+		if (sourceText != null)
+		{
+			token.start = tokenStart ;
+			token.end = currentPosition ;
+		}
+		return token ;
+	} // end of method getNextToken
+
+	/** Returns the next token, without its offsets. */
+	private Token lexToken() throws IOException
 	{
 		if (firstCall)
 		{
@@ -162,6 +586,7 @@ public class LexicalAnalyser
 		{
 			if (currentCharacter == '-')
 			{
+				tokenStart = currentPosition ;
 				getNextCharacter() ;
 				if (currentCharacter == '-')
 				{
@@ -177,58 +602,62 @@ public class LexicalAnalyser
 			getNextCharacter() ;
 		}
 
+		tokenStart = currentPosition ;
 		if (Character.isLetter(currentCharacter))
 		{
-			currentText.setLength(0) ;
+			startText() ;
 			while ((Character.isLetter(currentCharacter)) ||
 					(Character.isDigit(currentCharacter)))
 			{
-				currentText.append(currentCharacter) ;
+				appendText() ;
 				getNextCharacter() ;
 			}
 
-			int i = 0 ;
-			String t = (new String(currentText)).toLowerCase() ;
-			while ((i < noOfSymbols) &&
-					(!t.equals(symbols[i].text)))
-				i++ ;
-
-			if (i < noOfSymbols)
-				return new Token(symbols[i].symbol, currentText, currentLineNumber) ;
-			else
-				return new Token(Token.identifier, currentText, currentLineNumber) ;
+			String name = copying ? name(currentText, 0, currentText.length()) :
+					name(sourceText, tokenStart, currentPosition) ;
+			return new Token(nameSymbol, name, currentLineNumber) ;
 		}
 		else if (Character.isDigit(currentCharacter))
 		{
-			currentText.setLength(0);
+			startText() ;
 			while (Character.isDigit(currentCharacter))
 			{
-				currentText.append(currentCharacter) ;
+				appendText() ;
 				getNextCharacter() ;
 			}
 			if (currentCharacter == '.')
 			{
-				currentText.append(currentCharacter) ;
+				appendText() ;
 				getNextCharacter() ;
 				while (Character.isDigit(currentCharacter))
 				{
-					currentText.append(currentCharacter) ;
+					appendText() ;
 					getNextCharacter() ;
 				}
 			}
-			return new Token(Token.numberConstant, currentText, currentLineNumber) ;
+			return new Token(Token.numberConstant, text(tokenStart), currentLineNumber) ;
 		}
 		else if (currentCharacter == '"')
 		{
 			getNextCharacter() ;
-			currentText.setLength(0) ;
+			int start = currentPosition ;
+			startText() ;
 			while (currentCharacter != '"')
 			{
-				currentText.append(currentCharacter) ;
+				if (atEnd())	// a string that is not closed before the end of the text is an error
+					return new Token(Token.errorSymbol, text(start), currentLineNumber) ;
+				if (!copying && (currentCharacter == '\n'))
+				{
+					// a line terminator is a '\n' in the string, whatever it is in the text
+					currentText.append(sourceText, start, currentPosition) ;
+					copying = true ;
+				}
+				appendText() ;
 				getNextCharacter() ;
 			}
+			CharSequence text = text(start) ;
 			getNextCharacter() ;
-			return new Token(Token.stringConstant, currentText, currentLineNumber) ;
+			return new Token(Token.stringConstant, text, currentLineNumber) ;
 		}
 		else if (currentCharacter == ':')
 		{
@@ -315,11 +744,11 @@ public class LexicalAnalyser
 		}
 		else
 		{
-			currentText = new StringBuffer(currentCharacter) ;
+			// the text of an invalid character has always been empty (it was a StringBuffer of that capacity)
 			getNextCharacter() ;		// added 21st January 2005
-			return new Token(Token.errorSymbol, currentText, currentLineNumber) ;
+			return new Token(Token.errorSymbol, "", currentLineNumber) ;
 		}
-	} // end of method getNextToken
+	} // end of method lexToken
 
 	/** Entry point to text Lexer */
 	public static void main(String[] args) throws IOException
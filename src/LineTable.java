@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The offsets in a text where its lines start, which a LexicalAnalyser records as it reads the text, so that the
+ * offset of a token is mapped to its line and column, and to the text of its line, by a binary search rather than by
+ * reading the text again. The lines are those that the LexicalAnalyser reads: they end at "\n", "\r" or "\r\n".
+ * The table only holds the lines that were read so far, and it is only valid while the text does not change.
+ * The lines may be read on another thread than the one that adds them (the thread of the analysis, behind a
+ * PipelinedLexer): the count of the lines is published with an ordered write after the start of the line that it
+ * counts, so a thread that was handed a token sees the start of its line, and of every line before it.
+ */
+public final class LineTable {
+
+    private final CharSequence text;
+    /*The offsets of the starts of the lines, in order, and the number of them, which only the thread that adds the
+    lines writes*/
+    private volatile int[] starts = new int[64];
+    private volatile int count;
+
+    private static final AtomicIntegerFieldUpdater<LineTable> COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(LineTable.class, "count");
+
+    /**
+     * @param text The text
+     * @param start The offset where the first line that is read starts
+     */
+    LineTable(CharSequence text, int start) {
+        this.text = text;
+        add(start);
+    }
+
+    /**
+     * Adds the start of the next line
+     */
+    void add(int start) {
+        int n = count;
+        int[] s = starts;
+        if (n == s.length)
+            starts = s = Arrays.copyOf(s, n * 2);
+        s[n] = start;
+        COUNT.lazySet(this, n + 1);
+    }
+
+    /**
+     * @return The number of lines that were read, from the first one on
+     */
+    public int getLineCount() {
+
+        return count;
+    }
+
+    /**
+     * @param offset An offset in the text, in a line that was read
+     * @return The index of the line of the offset, from 0 for the first line of the table
+     */
+    public int line(int offset) {
+        int n = count; // before the starts, which hold at least n of them once it is read
+        int index = Arrays.binarySearch(starts, 0, n, offset);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * @param offset An offset in the text, in a line that was read
+     * @return The column of the offset in its line, from 1 on
+     */
+    public int column(int offset) {
+
+        return offset - starts[line(offset)] + 1;
+    }
+
+    /**
+     * @param offset An offset in the text, in a line that was read
+     * @return The text of the line of the offset, without its line terminator
+     */
+    public String excerpt(int offset) {
+        int start = starts[line(offset)], end = start;
+        while (end < text.length() && text.charAt(end) != '\n' && text.charAt(end) != '\r')
+            end++;
+        return text.subSequence(start, end).toString();
+    }
+}
@@ -0,0 +1,468 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An optimisation pass over the loops of the parse tree of a program, which runs after the ConstantFolder.
+ * Assignments of a loop body whose value does not change from one iteration to the next are moved out of the loop,
+ * so that they are evaluated once (loop-invariant code motion). In a for loop that counts by a constant step, an
+ * assignment "x := i * k" of the counter "i" and a constant "k" is replaced with an addition of "step * k" to x at
+ * the end of every iteration (strength reduction).
+ * Inner loops are optimised first, so that an assignment can move out of a nest of loops one loop at a time.
+ * A variable that belongs to the scope of a for loop (as the Syntax Analyser declares it) is never moved out of that
+ * loop, and an assignment is only moved out of a while or for loop under an if statement that makes the same test as
+ * the loop, so that it is not evaluated if the loop is not entered.
+ */
+public class LoopOptimiser {
+
+    /**
+     * What the pass did to a program
+     */
+    public static class Report {
+        /*The number of loops that were examined*/
+        public int loops;
+        /*The number of assignments that were moved out of a loop*/
+        public int hoisted;
+        /*The number of multiplications that were replaced with additions*/
+        public int reduced;
+
+        @Override
+        public String toString() {
+
+            return "loop optimisation: " + loops + " loops, " + hoisted + " hoisted, " + reduced + " reduced";
+        }
+    }
+
+    private final Report report = new Report();
+
+    /**
+     * Optimises the loops of the parse tree of a program
+     * @param root The root of the parse tree, as returned by TreeGenerate.getRoot()
+     * @return What the pass did to the program
+     */
+    public static Report optimise(ParseNode root) {
+        LoopOptimiser optimiser = new LoopOptimiser();
+        optimiser.statementList(root.child(1));
+        return optimiser.report;
+    }
+
+    private void statementList(ParseNode list) {
+        for (ParseNode statement : statements(list))
+            statement(statement);
+    }
+
+    private void statement(ParseNode statement) {
+        if (statement.children.isEmpty())
+            return;
+
+        ParseNode node = statement.child(0);
+        switch (node.name) {
+            case "StatementList":
+                statementList(node);
+                break;
+            case "IfStatement":
+                statementList(node.child(3));
+                if (node.child(4).is(Token.elseSymbol))
+                    statementList(node.child(5));
+                break;
+            case "WhileStatement":
+                statementList(node.child(3));
+                loop(statement, node, null, node.child(1), null, node.child(3));
+                break;
+            case "UntilStatement":
+                statementList(node.child(1));
+                loop(statement, node, null, null, null, node.child(1));
+                break;
+            case "ForStatement":
+                statementList(node.child(9));
+                loop(statement, node, node.child(2), node.child(4), node.child(6), node.child(9));
+                break;
+        }
+    }
+
+    /**
+     * Optimises a loop, whose inner loops have been optimised already. The statements that are moved out of the loop
+     * are put before it, in a statement list that replaces the loop in its Statement node
+     * @param statement The Statement node of the loop
+     * @param node The WhileStatement, UntilStatement or ForStatement node
+     * @param init The assignment that initialises a for loop, or null
+     * @param test The condition that is tested before every iteration, or null for an until loop
+     * @param step The assignment at the end of every iteration of a for loop, or null
+     * @param body The StatementList node of the body of the loop
+     */
+    private void loop(ParseNode statement, ParseNode node, ParseNode init, ParseNode test, ParseNode step,
+                      ParseNode body) {
+        report.loops++;
+        List<Variable> local = statement.dropped != null ? statement.dropped : new ArrayList<>();
+        ArrayList<ParseNode> direct = statements(body);
+
+        // the counter of a for loop is written by its initialisation, so nothing that reads it can move before it
+        HashMap<Variable, Integer> assigned = new HashMap<>();
+        count(body, assigned);
+        if (step != null)
+            count(step, assigned);
+        if (init != null && init.child(0).variable != null)
+            assigned.put(init.child(0).variable, 2);
+
+        ArrayList<ParseNode> hoisted = new ArrayList<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < direct.size(); i++) {
+                ParseNode assignment = assignment(direct.get(i));
+                if (assignment == null || !invariant(assignment, i, direct, assigned, local, init, test))
+                    continue;
+
+                hoisted.add(assignment);
+                direct.get(i).children.clear();
+                assigned.remove(assignment.child(0).variable); // which may make other assignments invariant
+                report.hoisted++;
+                changed = true;
+            }
+        }
+
+        ArrayList<ParseNode> before = new ArrayList<>();
+        if (!hoisted.isEmpty()) {
+            if (test == null || entered(init, test))
+                before.addAll(hoisted);
+            else {
+                if (init != null)
+                    before.add(init.copy()); // the test of a for loop is only valid after its initialisation
+                before.add(ifStatement(test.copy(), hoisted));
+            }
+        }
+        if (step != null)
+            reduce(init, test, step, body, direct, assigned, local, before);
+        if (before.isEmpty())
+            return;
+
+        ParseNode loop = new ParseNode("Statement");
+        loop.children.add(node);
+        before.add(loop);
+        statement.children.set(0, statementList(before));
+    }
+
+    /**
+     * @return true if an assignment of the body of a loop evaluates to the same value in every iteration, and can be
+     * moved before the loop
+     */
+    private static boolean invariant(ParseNode assignment, int position, ArrayList<ParseNode> direct,
+                                     HashMap<Variable, Integer> assigned, List<Variable> local, ParseNode init,
+                                     ParseNode test) {
+        Variable target = assignment.child(0).variable;
+        if (target == null || local.contains(target) || assigned.getOrDefault(target, 0) != 1)
+            return false;
+
+        // the value that it assigns must not depend on the loop
+        ArrayList<ParseNode> operands = new ArrayList<>();
+        identifiers(assignment.child(2), operands);
+        for (ParseNode operand : operands) {
+            if (operand.variable == null || assigned.containsKey(operand.variable))
+                return false;
+        }
+
+        // nothing may read the variable before it is assigned in the first iteration
+        if (init != null && reads(init.child(2), target))
+            return false;
+        if (test != null && reads(test, target))
+            return false;
+        for (int i = 0; i < position; i++) {
+            if (reads(direct.get(i), target))
+                return false;
+        }
+
+        // the initialisation of a for loop is repeated before the test that guards the moved assignments
+        return init == null || !reads(init.child(2), init.child(0).variable);
+    }
+
+    /**
+     * Replaces the multiplications of the counter of a for loop with a constant by additions
+     * @param before The statements that are put before the loop, to add the initial values of the products to
+     */
+    private void reduce(ParseNode init, ParseNode test, ParseNode step, ParseNode body, ArrayList<ParseNode> direct,
+                        HashMap<Variable, Integer> assigned, List<Variable> local, ArrayList<ParseNode> before) {
+        // i := start ; ... ; i := i + increment, where i is not assigned by the body and everything is integral
+        Variable counter = init.child(0).variable;
+        Double start = integralConstant(init.child(2));
+        Double increment = increment(step, counter);
+        if (counter == null || start == null || increment == null || count(body, counter) != 0)
+            return;
+
+        for (int i = 0; i < direct.size(); i++) {
+            ParseNode assignment = assignment(direct.get(i));
+            if (assignment == null)
+                continue;
+            Variable target = assignment.child(0).variable;
+            Double factor = product(assignment.child(2), counter);
+            // the product is only kept up to date in the loop, so it must not be visible after it
+            if (factor == null || target == null || target == counter || !local.contains(target)
+                    || assigned.getOrDefault(target, 0) != 1 || reads(test, target) || reads(step, target))
+                continue;
+
+            boolean read = false;
+            for (int j = 0; j < i && !read; j++)
+                read = reads(direct.get(j), target);
+            if (read)
+                continue;
+
+            int line = assignment.lineNumber();
+            before.add(assignment(assignment.child(0), constant(start * factor, line)));
+            direct.get(i).children.clear();
+            append(body, assignment(assignment.child(0), sum(assignment.child(0), increment * factor, line)));
+            report.reduced++;
+        }
+    }
+
+    /**
+     * @return true if the test of a for loop is known to hold after its initialisation, so that the loop is entered
+     */
+    private static boolean entered(ParseNode init, ParseNode test) {
+        if (init == null || init.child(0).variable == null)
+            return false;
+
+        Object value;
+        if (init.child(2).is(Token.stringConstant))
+            value = init.child(2).token.getText();
+        else
+            value = integralConstant(init.child(2));
+        if (value == null)
+            return false;
+
+        HashMap<Variable, Object> known = new HashMap<>();
+        known.put(init.child(0).variable, value);
+        return Boolean.TRUE.equals(ConstantFolder.decide(test, known));
+    }
+
+    /**
+     * @return The value of an expression that is a single integral number constant, or null if it is not one
+     */
+    private static Double integralConstant(ParseNode expression) {
+        ParseNode factor = operand(expression);
+        if (factor == null || !factor.child(0).is(Token.numberConstant))
+            return null;
+        double value = Double.parseDouble(factor.child(0).token.getText());
+        return value == Math.rint(value) ? value : null;
+    }
+
+    /**
+     * @return The integral constant that the step "i := i + c" (or "i := i - c") of a for loop adds to its counter,
+     * or null if it is any other assignment
+     */
+    private static Double increment(ParseNode step, Variable counter) {
+        ParseNode expression = step.child(2);
+        if (step.child(0).variable != counter || expression.children.size() != 3)
+            return null;
+
+        ParseNode first = operand(expression.child(0));
+        Double value = integralConstant(expression.child(2));
+        if (first == null || first.child(0).variable != counter || value == null)
+            return null;
+        if (expression.child(1).is(Token.plusSymbol))
+            return value;
+        return expression.child(1).is(Token.minusSymbol) ? -value : null;
+    }
+
+    /**
+     * @return The integral constant k of an expression "i * k" or "k * i" of the counter i, or null if it is any
+     * other expression
+     */
+    private static Double product(ParseNode expression, Variable counter) {
+        if (!expression.is("Expression") || expression.children.size() != 1)
+            return null;
+        ParseNode term = expression.child(0);
+        if (term.children.size() != 3 || !term.child(1).is(Token.timesSymbol) || term.child(2).children.size() != 1)
+            return null;
+
+        ParseNode left = term.child(0).child(0), right = term.child(2).child(0).child(0);
+        if (left.variable == counter && right.is(Token.numberConstant))
+            return integralConstant(expression.child(0).child(2).child(0));
+        if (right.variable == counter && left.is(Token.numberConstant))
+            return integralConstant(term.child(0));
+        return null;
+    }
+
+    /**
+     * @return The Factor node of an expression (or a term, or a factor) that is made of a single operand, or null
+     */
+    private static ParseNode operand(ParseNode node) {
+        while (!node.is("Factor")) {
+            if (node.isTerminal() || node.children.size() != 1)
+                return null;
+            node = node.child(0);
+        }
+        return node.child(0).is(Token.leftParenthesis) ? null : node;
+    }
+
+    /**
+     * @return The AssignmentStatement of a Statement node, or null if it is any other statement
+     */
+    private static ParseNode assignment(ParseNode statement) {
+        if (statement.children.isEmpty() || !statement.child(0).is("AssignmentStatement"))
+            return null;
+        return statement.child(0);
+    }
+
+    /**
+     * @return The Statement nodes of a statement list that are executed every time that the list is, in order. The
+     * statements of a statement list that an optimisation pass has put in a Statement node are included
+     */
+    private static ArrayList<ParseNode> statements(ParseNode list) {
+        ArrayList<ParseNode> statements = new ArrayList<>();
+        statements(list, statements);
+        return statements;
+    }
+
+    private static void statements(ParseNode list, ArrayList<ParseNode> statements) {
+        while (true) {
+            ParseNode statement = list.child(0);
+            if (!statement.children.isEmpty() && statement.child(0).is("StatementList"))
+                statements(statement.child(0), statements);
+            else
+                statements.add(statement);
+            if (list.children.size() < 3)
+                break;
+            list = list.child(2);
+        }
+    }
+
+    /**
+     * Counts the assignments to every variable in a subtree, including the arguments of get
+     */
+    private static void count(ParseNode node, HashMap<Variable, Integer> assigned) {
+        for (Variable v : ConstantFolder.assignedIn(node))
+            assigned.merge(v, count(node, v), Integer::sum);
+    }
+
+    /**
+     * @return The number of the assignments to a variable in a subtree, including the arguments of get
+     */
+    private static int count(ParseNode node, Variable v) {
+        int n = 0;
+        if (node.is("AssignmentStatement") && node.child(0).variable == v)
+            n++;
+        else if (node.is("ProcedureStatement") && node.child(1).token.getText().equals("get") && reads(node.child(3), v))
+            n++;
+        for (ParseNode c : node.children)
+            n += count(c, v);
+        return n;
+    }
+
+    /**
+     * @return true if any identifier of a subtree refers to a variable
+     */
+    private static boolean reads(ParseNode node, Variable v) {
+        if (node.is(Token.identifier))
+            return node.variable == v;
+        for (ParseNode c : node.children) {
+            if (reads(c, v))
+                return true;
+        }
+        return false;
+    }
+
+    private static void identifiers(ParseNode node, ArrayList<ParseNode> identifiers) {
+        if (node.is(Token.identifier))
+            identifiers.add(node);
+        for (ParseNode c : node.children)
+            identifiers(c, identifiers);
+    }
+
+    /**
+     * Adds a statement to the end of a statement list
+     */
+    private static void append(ParseNode list, ParseNode statement) {
+        while (list.children.size() == 3)
+            list = list.child(2);
+
+        list.children.add(terminal(Token.semicolonSymbol, ";", statement.lineNumber()));
+        list.children.add(statementList(Collections.singletonList(statement)));
+    }
+
+    /**
+     * @param statements The Statement nodes of the list, or the nodes of the statements themselves
+     * @return A StatementList node of statements, separated by semicolons
+     */
+    private static ParseNode statementList(List<ParseNode> statements) {
+        ParseNode list = null;
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            ParseNode statement = statements.get(i);
+            if (!statement.is("Statement")) {
+                statement = new ParseNode("Statement");
+                statement.children.add(statements.get(i));
+            }
+
+            ParseNode link = new ParseNode("StatementList");
+            link.children.add(statement);
+            if (list != null) {
+                link.children.add(terminal(Token.semicolonSymbol, ";", statement.lineNumber()));
+                link.children.add(list);
+            }
+            list = link;
+        }
+        return list;
+    }
+
+    /**
+     * @return A Statement node of "if condition then statements end if"
+     */
+    private static ParseNode ifStatement(ParseNode condition, List<ParseNode> statements) {
+        int line = condition.lineNumber();
+        ParseNode node = new ParseNode("IfStatement");
+        node.children.add(terminal(Token.ifSymbol, "if", line));
+        node.children.add(condition);
+        node.children.add(terminal(Token.thenSymbol, "then", line));
+        node.children.add(statementList(statements));
+        node.children.add(terminal(Token.endSymbol, "end", line));
+        node.children.add(terminal(Token.ifSymbol, "if", line));
+
+        ParseNode statement = new ParseNode("Statement");
+        statement.children.add(node);
+        return statement;
+    }
+
+    /**
+     * @return An AssignmentStatement node of "target := value"
+     */
+    private static ParseNode assignment(ParseNode target, ParseNode value) {
+        ParseNode node = new ParseNode("AssignmentStatement");
+        node.children.add(target.copy());
+        node.children.add(terminal(Token.becomesSymbol, ":=", target.lineNumber()));
+        node.children.add(value);
+        return node;
+    }
+
+    /**
+     * @return An Expression node of "identifier + constant"
+     */
+    private static ParseNode sum(ParseNode identifier, double value, int line) {
+        ParseNode factor = new ParseNode("Factor");
+        factor.children.add(identifier.copy());
+        ParseNode term = new ParseNode("Term");
+        term.children.add(factor);
+
+        ParseNode node = new ParseNode("Expression");
+        node.children.add(term);
+        node.children.add(terminal(Token.plusSymbol, "+", line));
+        node.children.add(constant(value, line));
+        return node;
+    }
+
+    /**
+     * @return An Expression node of a number constant
+     */
+    private static ParseNode constant(double value, int line) {
+        ParseNode factor = new ParseNode("Factor");
+        factor.children.add(ConstantFolder.numberConstant(value, line));
+        ParseNode term = new ParseNode("Term");
+        term.children.add(factor);
+        ParseNode node = new ParseNode("Expression");
+        node.children.add(term);
+        return node;
+    }
+
+    private static ParseNode terminal(int symbol, String text, int line) {
+
+        return new ParseNode(new Token(symbol, text, line));
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A static analysis of the parse tree of a program (as built by TreeGenerate), which finds the number variables that
+ * only ever hold integral values, so that the execution back-ends can compute them with longs.
+ * Every number variable is assumed integral at first, as its initial value 0 is. Then the variables that are read by
+ * get, or assigned an expression that is not integral, are removed until nothing changes. An expression is integral
+ * if all of its operands are integral constants or integral variables and it does not divide, as the division of
+ * two integers is not one in general.
+ * The analysis does not bound the values: the back-ends check that every result is small enough to be exact in a
+ * double, and fall back to doubles if it is not (see Integral).
+ */
+public class NumberInference {
+
+    private NumberInference() {
+    }
+
+    /**
+     * @param root The root of the parse tree of a program
+     * @return The number variables of the program that only ever hold integral values
+     */
+    public static Set<Variable> integral(ParseNode root) {
+        HashSet<Variable> integral = new HashSet<>(), read = new HashSet<>();
+        ArrayList<ParseNode> assignments = new ArrayList<>();
+        collect(root, integral, read, assignments);
+        integral.removeAll(read);
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ParseNode assignment : assignments) {
+                Variable target = assignment.child(0).variable;
+                if (integral.contains(target) && !integral(assignment.child(2), integral)) {
+                    integral.remove(target);
+                    changed = true;
+                }
+            }
+        }
+        return integral;
+    }
+
+    /**
+     * @param node An Expression, Term or Factor node, or the terminal node of an operand of a condition
+     * @param integral The variables that are integral
+     * @return true if the value of the node is always integral
+     */
+    public static boolean integral(ParseNode node, Set<Variable> integral) {
+        if (node.isTerminal()) {
+            if (node.is(Token.numberConstant))
+                return Integral.isIntegral(Double.parseDouble(node.token.getText()));
+            return node.is(Token.identifier) && node.variable != null && integral.contains(node.variable);
+        }
+        if (node.children.isEmpty())
+            return false;
+        if (node.is("Factor"))
+            return integral(node.child(node.child(0).is(Token.leftParenthesis) ? 1 : 0), integral);
+
+        for (ParseNode link = node; ; link = link.child(2)) {
+            if (link.children.isEmpty() || !integral(link.child(0), integral))
+                return false;
+            if (link.children.size() < 3)
+                return true;
+            if (link.child(1).is(Token.divideSymbol))
+                return false;
+        }
+    }
+
+    /**
+     * Finds the number variables, the variables that get reads and the assignments
+     */
+    private static void collect(ParseNode node, HashSet<Variable> numbers, HashSet<Variable> read,
+                                ArrayList<ParseNode> assignments) {
+        if (node.is(Token.identifier) && node.variable != null && node.variable.type == Variable.Type.NUMBER)
+            numbers.add(node.variable);
+        for (ParseNode c : node.children)
+            collect(c, numbers, read, assignments);
+
+        if (node.is("AssignmentStatement") && node.child(0).variable != null)
+            assignments.add(node);
+        else if (node.is("ProcedureStatement") && node.child(1).token.getText().equals("get")) {
+            for (ParseNode list = node.child(3); list != null; list = list.children.size() > 1 ? list.child(2) : null)
+                if (list.child(0).variable != null)
+                    read.add(list.child(0).variable);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The tokens of a big text, lexed in parallel. The text is split into chunks at line terminators, and every chunk is
+ * lexed on a ForkJoinPool by a LexicalAnalyser of its own, from the start of the chunk and from line 0, as if no token
+ * was open there. That guess is wrong where a string that spans lines is open at the start of a chunk. So the tokens
+ * are passed on in order, by checking every chunk against the chunk before it: the token after the end of a chunk
+ * (which its lexer lexed from a right start) must start at the offset of a token of the next chunk. If it does, the
+ * lexers were in the same state there, and the rest of the next chunk is right, with its line numbers moved on by
+ * the lines of the chunks before it (a running sum). If it does not, the text is lexed again from that token, on
+ * the thread that reads the tokens, until a token starts at the offset of a token of a chunk again.
+ * The tokens are the same as those of a single LexicalAnalyser of the text, with the same line numbers.
+ */
+public class ParallelLexer implements TokenSource, Closeable {
+
+    /*The number of characters of a chunk, which ends at the first line terminator after that*/
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    private final String name;
+    private final CharSequence text;
+    /*The offsets in the text where the chunks start*/
+    private final int[] starts;
+    private final ForkJoinTask<Chunk>[] chunks;
+    private final ForkJoinPool pool;
+    /*The number of chunks that are lexed ahead of the one whose tokens are passed on, so that the tokens that are
+    * held are a few chunks at most, and the number of chunks that were started*/
+    private final int ahead;
+    private int started;
+
+    /*The chunk whose tokens are passed on, the next of them, and what to add to their line numbers*/
+    private int chunk;
+    private int next;
+    private int shift;
+    /*The lexer that lexes the text again where no chunk was right, or null*/
+    private LexicalAnalyser relex;
+    /*The token of the end of file, once it was passed on*/
+    private Token end;
+
+    /**
+     * The tokens of a chunk, which start at or after its start, and before its limit. The token after them (the
+     * first one that starts at or after the limit) is the last one, unless the text ends in the chunk.
+     */
+    private static final class Chunk {
+
+        private final int limit;
+        private Token[] tokens;
+        private int[] starts;
+        /*The number of tokens, and of those before the limit*/
+        private int size;
+        private int count;
+
+        /**
+         * @param limit The offset in the text where the next chunk starts
+         * @param capacity The number of tokens that the chunk is expected to have
+         */
+        Chunk(int limit, int capacity) {
+            this.limit = limit;
+            this.tokens = new Token[capacity];
+            this.starts = new int[capacity];
+        }
+
+        void add(Token token, int start) {
+            if (size == tokens.length) {
+                tokens = Arrays.copyOf(tokens, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            tokens[size] = token;
+            starts[size++] = start;
+        }
+    }
+
+    /**
+     * Starts lexing a text in parallel, in chunks of CHUNK_SIZE characters, on the common ForkJoinPool
+     * @param name The name that stands for the file of the text
+     * @param text The text, which must not change while it is lexed
+     */
+    public ParallelLexer(String name, CharSequence text) {
+
+        this(name, text, CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Starts lexing a text in parallel
+     * @param name The name that stands for the file of the text
+     * @param text The text, which must not change while it is lexed
+     * @param chunkSize The number of characters of a chunk, up to the line terminator after them
+     * @param pool The pool to lex the chunks on
+     */
+    public ParallelLexer(String name, CharSequence text, int chunkSize, ForkJoinPool pool) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("the size of a chunk must be positive: " + chunkSize);
+        this.name = name;
+        this.text = text;
+        this.starts = split(text, chunkSize);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        ForkJoinTask<Chunk>[] chunks = new ForkJoinTask[starts.length];
+        this.chunks = chunks;
+        this.pool = pool;
+        this.ahead = 2 * pool.getParallelism();
+        chunk(0);
+    }
+
+    /**
+     * Starts lexing a file in parallel. The file is mapped, and decoded with the default charset as it is read by a
+     * LexicalAnalyser of the file.
+     * @param fileName The name of the file
+     * @return The lexer
+     * @throws IOException If the file can not be read
+     */
+    public static ParallelLexer of(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName))) {
+            return new ParallelLexer(fileName, Charset.defaultCharset().decode(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+        }
+    }
+
+    /**
+     * @return The offsets where the chunks of a text start: the start of the text, and the start of the line after
+     * every chunkSize characters
+     */
+    private static int[] split(CharSequence text, int chunkSize) {
+        int length = text.length();
+        int[] starts = new int[length / chunkSize + 1];
+        int count = 1;
+        for (int offset = chunkSize; offset < length; offset += chunkSize) {
+            while (offset < length && text.charAt(offset) != '\n' && text.charAt(offset) != '\r')
+                offset++;
+            if (offset + 1 < length && text.charAt(offset) == '\r' && text.charAt(offset + 1) == '\n')
+                offset++;
+            if (++offset >= length)
+                break;
+            starts[count++] = offset;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * @return The tokens of a chunk, once it was lexed. The chunks after it are started, up to the number that are
+     * lexed ahead.
+     */
+    private Chunk chunk(int index) {
+        for (; started < chunks.length && started <= index + ahead; started++) {
+            final int next = started;
+            chunks[next] = pool.submit(() -> lex(next));
+        }
+        return chunks[index].join();
+    }
+
+    /**
+     * Lexes a chunk, on a thread of the pool
+     */
+    private Chunk lex(int index) {
+        int limit = index + 1 < starts.length ? starts[index + 1] : Integer.MAX_VALUE;
+        // a token and the space after it are 4 characters or so
+        Chunk chunk = new Chunk(limit, (Math.min(limit, text.length()) - starts[index]) / 4 + 16);
+        LexicalAnalyser lex = new LexicalAnalyser(name, text, starts[index], 0);
+        try {
+            Token token;
+            do {
+                token = lex.getNextToken();
+                chunk.add(token, lex.getTokenStart());
+            } while (token.symbol != Token.eofSymbol && lex.getTokenStart() < chunk.limit);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e); // the text is not read from a file
+        }
+        chunk.count = chunk.starts[chunk.size - 1] < chunk.limit ? chunk.size : chunk.size - 1;
+        return chunk;
+    }
+
+    @Override
+    public Token getNextToken() throws IOException {
+        if (end != null)
+            return end;
+        Token token = relex != null ? relexed() : copied();
+        if (token.symbol == Token.eofSymbol) {
+            end = token;
+            close();
+        }
+        return token;
+    }
+
+    /**
+     * @return The next token of the chunk that is right from the next token on
+     */
+    private Token copied() throws IOException {
+        while (true) {
+            Chunk current = chunk(chunk);
+            if (next < current.count) {
+                Token token = current.tokens[next++];
+                token.lineNumber += shift;
+                return token;
+            }
+            Token after = current.tokens[next];
+            int offset = current.starts[next], line = after.lineNumber + shift;
+            if (after.symbol == Token.eofSymbol) { // the chunk ran on to the end of the text
+                after.lineNumber = line;
+                return after;
+            }
+            if (!resync(offset, line)) {
+                relex = new LexicalAnalyser(name, text, offset, line);
+                return relexed();
+            }
+        }
+    }
+
+    /**
+     * @return The next token of the text, lexed again where no chunk was right
+     */
+    private Token relexed() throws IOException {
+        Token token = relex.getNextToken();
+        if (token.symbol != Token.eofSymbol && resync(relex.getTokenStart(), token.lineNumber)) {
+            relex = null;
+            next++; // the token of the chunk is this one
+        }
+        return token;
+    }
+
+    /**
+     * Finds the token of a chunk that starts where a token that was lexed from a right start does
+     * @param offset The offset of the token in the text
+     * @param line The line number of the token
+     * @return true if there is one, which is then the next token
+     */
+    private boolean resync(int offset, int line) {
+        while (offset >= chunk(chunk).limit)
+            chunks[chunk++] = null; // its tokens were passed on
+        Chunk current = chunk(chunk);
+        int index = Arrays.binarySearch(current.starts, 0, current.count, offset);
+        if (index < 0)
+            return false;
+        next = index;
+        shift = line - current.tokens[index].lineNumber;
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+
+        return name;
+    }
+
+    /**
+     * @return The number of chunks that the text was split into
+     */
+    public int getChunkCount() {
+
+        return chunks.length;
+    }
+
+    /**
+     * Stops lexing the chunks that have not started yet, when no more tokens will be read
+     */
+    @Override
+    public void close() {
+        for (int i = chunk; i < started; i++)
+            chunks[i].cancel(false);
+        started = chunks.length; // and no more are started
+    }
+}
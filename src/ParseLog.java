@@ -0,0 +1,298 @@
+import java.io.PrintStream;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The record of the parse of a program (see SyntaxAnalyser.record): the trace that the Syntax Analyser reports and the
+ * semantic events that it sends, in the order that it sent them, and the error that ended the parse, if there was one.
+ * Nothing is printed as they are recorded. Replaying the record analyses the semantics of the program and prints its
+ * trace and its result, as parse does, so a program can be parsed on one thread and analysed on another, behind the
+ * parse of the next program (as Compile -pipelined does). The tokens are kept as they are, with their text in the
+ * characters of their file, which the Lexical Analyser does not reuse for the next file.
+ */
+final class ParseLog extends Generate implements SemanticEvents {
+
+    /*The kinds of the events: those of the trace, and the semantic events*/
+    private static final int COMMENCE = 0, FINISH = 1, TERMINAL = 2, SUCCESS = 3, ERROR = 4;
+    private static final int PROCEDURE = 5, END_PROCEDURE = 6, PARAMETER = 7, ENTER_FOR = 8, EXIT_FOR = 9,
+            ASSIGN = 10, ASSIGN_EXPRESSION = 11, DISCARD_EXPRESSION = 12, USE = 13, ARGUMENT = 14, CALL = 15,
+            OPERAND = 16, NUMBER = 17, NESTED = 18, MULTIPLICAND = 19, APPLY = 20;
+
+    private final String fileName;
+    private final boolean columns;
+    private LineTable lines;
+
+    /*The events, in order: the kind of each, its token, the next token of the parse (for an event that can fail), and
+    * the name of a non-terminal, the message of an error or the type of a declaration*/
+    private int[] kinds = new int[256];
+    private Token[] tokens = new Token[256];
+    private Token[] nexts = new Token[256];
+    private Object[] values = new Object[256];
+    private int count;
+
+    /*The error that ended the parse, as the methods of the non-terminals reported it, or null if it succeeded*/
+    private CompilationException exception;
+
+    /**
+     * @param fileName The name of the file of the program
+     * @param columns Whether the result shows the columns of errors, and the lines that they are on
+     */
+    ParseLog(String fileName, boolean columns) {
+        this.fileName = fileName;
+        this.columns = columns;
+    }
+
+    /**
+     * @param exception The error that ended the parse
+     */
+    void fail(CompilationException exception) {
+
+        this.exception = exception;
+    }
+
+    @Override
+    void setLines(LineTable lines) {
+        super.setLines(lines);
+        this.lines = lines;
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+
+        add(COMMENCE, null, null, name);
+    }
+
+    @Override
+    public void finishNonterminal(String name) {
+
+        add(FINISH, null, null, name);
+    }
+
+    @Override
+    public void insertTerminal(Token token) {
+
+        add(TERMINAL, token, null, null);
+    }
+
+    @Override
+    public void reportSuccess() {
+
+        add(SUCCESS, null, null, null);
+    }
+
+    @Override
+    public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+        add(ERROR, token, null, explanatoryMessage);
+        throw error(token, explanatoryMessage, null);
+    }
+
+    @Override
+    public void procedure(Token name, Token next) {
+
+        add(PROCEDURE, name, next, null);
+    }
+
+    @Override
+    public void endProcedure() {
+
+        add(END_PROCEDURE, null, null, null);
+    }
+
+    @Override
+    public void parameter(Token parameter, Variable.Type type, Token next) {
+
+        add(PARAMETER, parameter, next, type);
+    }
+
+    @Override
+    public void enterFor() {
+
+        add(ENTER_FOR, null, null, null);
+    }
+
+    @Override
+    public void exitFor() {
+
+        add(EXIT_FOR, null, null, null);
+    }
+
+    @Override
+    public void assign(Token variable, Variable.Type type, Token next) {
+
+        add(ASSIGN, variable, next, type);
+    }
+
+    @Override
+    public void assignExpression(Token variable, Token next) {
+
+        add(ASSIGN_EXPRESSION, variable, next, null);
+    }
+
+    @Override
+    public void discardExpression() {
+
+        add(DISCARD_EXPRESSION, null, null, null);
+    }
+
+    @Override
+    public void use(Token identifier) {
+
+        add(USE, identifier, identifier, null);
+    }
+
+    @Override
+    public void argument(Token identifier) {
+
+        add(ARGUMENT, identifier, identifier, null);
+    }
+
+    @Override
+    public void call(Token name, Token next) {
+
+        add(CALL, name, next, null);
+    }
+
+    @Override
+    public void operand(Token identifier) {
+
+        add(OPERAND, identifier, identifier, null);
+    }
+
+    @Override
+    public void number(Token number) {
+
+        add(NUMBER, number, null, null);
+    }
+
+    @Override
+    public void nested(Token parenthesis) {
+
+        add(NESTED, parenthesis, null, null);
+    }
+
+    @Override
+    public void multiplicand(Token first, Token next) {
+
+        add(MULTIPLICAND, first, next, null);
+    }
+
+    @Override
+    public void apply(Token operator, Token next) {
+
+        add(APPLY, operator, next, null);
+    }
+
+    private void add(int kind, Token token, Token next, Object value) {
+        if (count == kinds.length) {
+            kinds = Arrays.copyOf(kinds, count * 2);
+            tokens = Arrays.copyOf(tokens, count * 2);
+            nexts = Arrays.copyOf(nexts, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        kinds[count] = kind;
+        tokens[count] = token;
+        nexts[count] = next;
+        values[count++] = value;
+    }
+
+    /**
+     * Analyses the semantics of the program, and prints its trace and writes its result as parse does: the events are
+     * replayed in order to the code generator and to the Semantic Analyser, and the first error, of the parse or of the
+     * analysis, ends the replay. The output is the same as that of the analysis of the program as it is parsed.
+     * @param analyser The Semantic Analyser, which is started for the program
+     * @param generate The code generator to report the analysis to, which is reset before it
+     * @param ps The stream of the results
+     */
+    void replay(SemanticAnalyser analyser, Generate generate, PrintStream ps) {
+        ps.println(fileName);
+        generate.reset();
+        generate.setLines(lines);
+        analyser.start(generate);
+        try {
+            replay(analyser, generate);
+            ps.println("OK\n");
+        }
+        catch (CompilationException ex) {
+            ps.println("Compilation Exception");
+            ps.println(ex.toTraceString(columns));
+            ps.println("STOP\n");
+        }
+    }
+
+    /**
+     * Replays the events. An error that the analysis finds is reported from the method of each of the non-terminals
+     * that are open, innermost first, at the next token of the parse, as if it had been thrown into them.
+     * @throws CompilationException The error of the parse, or the first error of the analysis
+     */
+    private void replay(SemanticAnalyser analyser, Generate generate) throws CompilationException {
+        ArrayList<String> open = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            switch (kinds[i]) {
+                case COMMENCE:
+                    generate.commenceNonterminal((String) values[i]);
+                    open.add((String) values[i]);
+                    break;
+                case FINISH:
+                    open.remove(open.size() - 1);
+                    generate.finishNonterminal((String) values[i]);
+                    break;
+                case TERMINAL:
+                    generate.insertTerminal(tokens[i]);
+                    break;
+                case SUCCESS:
+                    generate.reportSuccess();
+                    break;
+                case ERROR:
+                    try {
+                        generate.reportError(tokens[i], (String) values[i]);
+                    }
+                    catch (CompilationException printed) {
+                        // the error is printed, and the parse reported it from the methods of its non-terminals
+                    }
+                    throw exception;
+                default:
+                    try {
+                        send(i, analyser);
+                    }
+                    catch (CompilationException ce) {
+                        for (int j = open.size() - 1; j >= 0; j--) {
+                            try {
+                                generate.reportError(nexts[i], MessageFormat.format(SyntaxAnalyser.TRACE_METHOD,
+                                        open.get(j)), ce);
+                            }
+                            catch (CompilationException traced) {
+                                ce = traced;
+                            }
+                        }
+                        throw ce;
+                    }
+            }
+        }
+    }
+
+    /**
+     * Sends a semantic event to the Semantic Analyser
+     */
+    private void send(int i, SemanticAnalyser analyser) throws CompilationException {
+        Token token = tokens[i], next = nexts[i];
+        switch (kinds[i]) {
+            case PROCEDURE: analyser.procedure(token, next); break;
+            case END_PROCEDURE: analyser.endProcedure(); break;
+            case PARAMETER: analyser.parameter(token, (Variable.Type) values[i], next); break;
+            case ENTER_FOR: analyser.enterFor(); break;
+            case EXIT_FOR: analyser.exitFor(); break;
+            case ASSIGN: analyser.assign(token, (Variable.Type) values[i], next); break;
+            case ASSIGN_EXPRESSION: analyser.assignExpression(token, next); break;
+            case DISCARD_EXPRESSION: analyser.discardExpression(); break;
+            case USE: analyser.use(token); break;
+            case ARGUMENT: analyser.argument(token); break;
+            case CALL: analyser.call(token, next); break;
+            case OPERAND: analyser.operand(token); break;
+            case NUMBER: analyser.number(token); break;
+            case NESTED: analyser.nested(token); break;
+            case MULTIPLICAND: analyser.multiplicand(token, next); break;
+            case APPLY: analyser.apply(token, next); break;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * A node of the parse tree of a program, as built by TreeGenerate from the events of the Syntax Analyser.
+ * A non-terminal node carries the name of its non-terminal (i.e. "Expression") and its children, in the order that
+ * they were parsed. A terminal node carries the token that was accepted.
+ */
+public class ParseNode {
+
+    /*The name of the non-terminal, or null if this is a terminal node*/
+    public final String name;
+    /*The accepted token, or null if this is a non-terminal node*/
+    public final Token token;
+    /*The children of a non-terminal node, in the order that they were parsed*/
+    public final ArrayList<ParseNode> children;
+
+    /*The variable that an identifier refers to. Null for any other node, or if the identifier is not a variable
+    * (i.e. the name of a procedure)*/
+    public Variable variable;
+    /*The variables of a for-loop scope that were dropped when this (Statement) node finished. Null if none*/
+    public ArrayList<Variable> dropped;
+
+    /**
+     * Constructor of a non-terminal node
+     * @param name The name of the non-terminal
+     */
+    ParseNode(String name) {
+        this.name = name;
+        this.token = null;
+        this.children = new ArrayList<>();
+    }
+
+    /**
+     * Constructor of a terminal node
+     * @param token The token that was accepted
+     */
+    ParseNode(Token token) {
+        this.name = null;
+        this.token = token;
+        this.children = new ArrayList<>(0);
+    }
+
+    /**
+     * @return true if this is a terminal node
+     */
+    public boolean isTerminal() {
+
+        return token != null;
+    }
+
+    /**
+     * @param name The name of a non-terminal
+     * @return true if this is a node of the non-terminal with the given name
+     */
+    public boolean is(String name) {
+
+        return name.equals(this.name);
+    }
+
+    /**
+     * @param symbol The symbol of a token, as a class constant from Token
+     * @return true if this is a terminal node of the given symbol
+     */
+    public boolean is(int symbol) {
+
+        return token != null && token.symbol == symbol;
+    }
+
+    /**
+     * @param i The index of the child
+     * @return The i-th child of this node
+     */
+    public ParseNode child(int i) {
+
+        return children.get(i);
+    }
+
+    /**
+     * @return The line number of the first token under this node, or -1 if there is none
+     */
+    public int lineNumber() {
+        if (token != null)
+            return token.lineNumber;
+
+        for (ParseNode c : children) {
+            int line = c.lineNumber();
+            if (line >= 0)
+                return line;
+        }
+        return -1;
+    }
+
+    /**
+     * @return A copy of the subtree of this node, whose identifiers are bound to the same variables
+     */
+    public ParseNode copy() {
+        ParseNode copy = token != null ? new ParseNode(token) : new ParseNode(name);
+        copy.variable = variable;
+        copy.dropped = dropped;
+        for (ParseNode c : children)
+            copy.children.add(c.copy());
+        return copy;
+    }
+
+    /**
+     * @return The number of nodes of the subtree of this node, including this node
+     */
+    public int size() {
+        int size = 1;
+        for (ParseNode c : children)
+            size += c.size();
+        return size;
+    }
+
+    /**
+     * @param other The root of another parse tree
+     * @return true if the subtree of this node is the same as that of the other node: the same non-terminals, and tokens
+     * of the same text on the same lines, whose identifiers refer to variables of the same names and types in the same
+     * way (two nodes refer to the same variable in one tree if and only if they do in the other)
+     */
+    public boolean sameAs(ParseNode other) {
+        IdentityHashMap<Variable, Variable> ours = new IdentityHashMap<>(), theirs = new IdentityHashMap<>();
+        ArrayList<ParseNode> stack = new ArrayList<>();
+        stack.add(this);
+        stack.add(other);
+        while (!stack.isEmpty()) {
+            ParseNode b = stack.remove(stack.size() - 1), a = stack.remove(stack.size() - 1);
+            if (a.name == null ? b.name != null : !a.name.equals(b.name))
+                return false;
+            if (a.token == null ? b.token != null : b.token == null || a.token.symbol != b.token.symbol
+                    || !a.token.textEquals(b.token.text) || a.token.lineNumber != b.token.lineNumber)
+                return false;
+            if (!sameVariable(a.variable, b.variable, ours, theirs) || a.children.size() != b.children.size())
+                return false;
+            if (a.dropped != null || b.dropped != null) {
+                if (a.dropped == null || b.dropped == null || a.dropped.size() != b.dropped.size())
+                    return false;
+                for (int i = 0; i < a.dropped.size(); i++) {
+                    if (!sameVariable(a.dropped.get(i), b.dropped.get(i), ours, theirs))
+                        return false;
+                }
+            }
+            for (int i = 0; i < a.children.size(); i++) {
+                stack.add(a.children.get(i));
+                stack.add(b.children.get(i));
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameVariable(Variable a, Variable b, IdentityHashMap<Variable, Variable> ours,
+                                        IdentityHashMap<Variable, Variable> theirs) {
+        if (a == null || b == null)
+            return a == b;
+        if (!a.identifier.equals(b.identifier) || a.type != b.type)
+            return false;
+        Variable x = ours.putIfAbsent(a, b), y = theirs.putIfAbsent(b, a);
+        return (x == null || x == b) && (y == null || y == a);
+    }
+
+    @Override
+    public String toString() {
+
+        return token != null ? token.toString() : name;
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The tokens of a LexicalAnalyser that runs ahead of the Syntax Analyser on a thread of its own, so that lexing and
+ * parsing a big file overlap. The lexer puts its tokens into a TokenRing, in the order that it finds them, and
+ * getNextToken takes the same tokens from the ring on the thread of the analysis, so that they keep their offsets in
+ * the source, and an error in a pipelined analysis reports its column and excerpt as any other does.
+ * The analysis should close it when it ends, so that the lexer stops if it was ahead of an error.
+ */
+public class PipelinedLexer implements TokenSource, Closeable {
+
+    /*The number of tokens that the lexer may be ahead of the analysis*/
+    public static final int RING_CAPACITY = 4096;
+
+    private final String name;
+    /*The starts of the lines that the lexer read, which it adds to as it goes on*/
+    private final LineTable lines;
+    private final TokenRing ring = new TokenRing(RING_CAPACITY);
+    /*The error that the lexer stopped with, or null*/
+    private volatile Throwable failure;
+    /*The token of the end of file, once it was taken*/
+    private Token end;
+
+    /**
+     * Starts lexing a program, on a thread of its own
+     * @param lex The lexical analyser of the program, which only that thread uses from now on
+     */
+    public PipelinedLexer(final LexicalAnalyser lex) {
+        this.name = lex.getFilename();
+        this.lines = lex.getLines();
+        Thread thread = new Thread(() -> {
+            Token token = null;
+            try {
+                do {
+                    token = lex.getNextToken();
+                } while (ring.put(token) && token.symbol != Token.eofSymbol);
+            }
+            catch (IOException | RuntimeException | Error e) {
+                failure = e;
+                ring.put(new Token(Token.eofSymbol, "", token != null ? token.lineNumber : 0));
+            }
+        }, "lexer of " + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Token getNextToken() throws IOException {
+        if (end != null)
+            return end;
+        Token token = ring.take();
+        if (token.symbol == Token.eofSymbol) {
+            if (failure instanceof IOException)
+                throw (IOException) failure;
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure != null)
+                throw (Error) failure;
+            end = token;
+        }
+        return token;
+    }
+
+    @Override
+    public String getFilename() {
+
+        return name;
+    }
+
+    @Override
+    public LineTable getLines() {
+
+        return lines;
+    }
+
+    /**
+     * Stops the lexer, if it has not ended yet
+     */
+    @Override
+    public void close() {
+
+        ring.close();
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The interface of a procedure that a program declares: its name, and its parameters, which are the variables that
+ * its body starts with. A call of the procedure is checked against it, in the program that declares it and in the
+ * programs of other units that call it (which a build gives the interfaces of the units that they depend on).
+ */
+public final class Procedure {
+
+    public final String name;
+    /*The parameters, in order: the types of the arguments that a call passes to them*/
+    public final List<Variable> parameters;
+
+    /**
+     * @param name The name of the procedure
+     * @param parameters The parameters of the procedure, in order
+     */
+    public Procedure(String name, List<Variable> parameters) {
+        this.name = name;
+        this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
+    }
+
+    /**
+     * @return The interface as a line of the summary of a unit: "procedure name x:Number s:String"
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder("procedure ").append(name);
+        for (Variable parameter : parameters)
+            line.append(' ').append(parameter.identifier).append(':').append(parameter.type.name);
+        return line.toString();
+    }
+
+    /**
+     * @param line A line of the summary of a unit, as toString writes it
+     * @return The procedure of the line
+     * @throws IllegalArgumentException If the line is not the interface of a procedure
+     */
+    static Procedure parse(String line) {
+        String[] words = line.split(" ");
+        if (words.length < 2 || !words[0].equals("procedure"))
+            throw new IllegalArgumentException("not the interface of a procedure: " + line);
+        List<Variable> parameters = new ArrayList<>();
+        for (int i = 2; i < words.length; i++) {
+            int colon = words[i].indexOf(':');
+            if (colon <= 0)
+                throw new IllegalArgumentException("not a parameter: " + words[i]);
+            parameters.add(new Variable(words[i].substring(0, colon), type(words[i].substring(colon + 1))));
+        }
+        return new Procedure(words[1], parameters);
+    }
+
+    private static Variable.Type type(String name) {
+        for (Variable.Type type : Variable.Type.values())
+            if (type.name.equals(name))
+                return type;
+        throw new IllegalArgumentException("not a type: " + name);
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * The class loader of programs that were compiled to JVM classes by the JvmCompiler, either in memory or from a class
+ * file that was written to disk before. Every program gets a loader of its own, so that its class can be unloaded
+ * when it is no longer used.
+ */
+public class ProgramClassLoader extends ClassLoader {
+
+    ProgramClassLoader() {
+
+        super(ProgramClassLoader.class.getClassLoader());
+    }
+
+    /**
+     * Defines the class of a compiled program and creates an instance of it
+     * @param className The name of the class
+     * @param classFile The bytes of the class file
+     * @return The program
+     */
+    public CompiledProgram define(String className, byte[] classFile) {
+        Class<?> c = defineClass(className, classFile, 0, classFile.length);
+        try {
+            return (CompiledProgram) c.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("unable to instantiate " + className, e);
+        }
+    }
+
+    /**
+     * Loads a compiled program from a class file
+     * @param classFile The class file, as written by the JvmCompiler
+     * @return The program
+     * @throws IOException If the file can not be read, or it is not a compiled program
+     */
+    public static CompiledProgram load(File classFile) throws IOException {
+        String className = classFile.getName().replaceFirst("\\.class$", "");
+        byte[] bytes = Files.readAllBytes(classFile.toPath());
+        try {
+            return new ProgramClassLoader().define(className, bytes);
+        }
+        catch (ClassFormatError | ClassCastException e) {
+            throw new IOException(classFile + " is not a compiled program: " + e);
+        }
+    }
+}
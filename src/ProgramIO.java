@@ -0,0 +1,411 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The input and output of an executed program, as used by "call get" and "call put".
+ * Input is read as whitespace separated words. The values that one "call put" writes are separated by a space,
+ * and every "call put" ends its line.
+ * Both directions are buffered in large blocks of bytes. Numbers are parsed from the bytes of the input and formatted
+ * into the bytes of the output, without a String in between, unless they are too long or not in plain decimal form.
+ * The output is only written when the program ends, when its buffer is full, or when "call get" has to wait for more
+ * input (so that a prompt is always shown before the program waits for its answer).
+ * The input and output can also be files, in which case the input file is mapped to memory and the output is written
+ * to its file channel directly.
+ */
+public class ProgramIO implements Closeable {
+
+    /*The size of the buffers of the input and of the output*/
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /*The powers of ten that a double holds exactly*/
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private final Charset charset = Charset.defaultCharset();
+
+    private ByteBuffer in;                   // the input that has been read and not yet parsed, from its position
+    private final ReadableByteChannel source; // where more input is read from, or null if all of it is in "in"
+    private final ByteBuffer out;             // the output that has not been written yet
+    private final WritableByteChannel sink;
+    private final Flushable sinkStream;       // the stream under the sink, if there is one
+    private final Closeable[] files;          // the files that were opened for this, which close closes
+
+    private final byte[] digits = new byte[20]; // the digits of a number that is being written, from the end
+    private final char[] chars = new char[1024]; // a block of the characters of a string that is being written
+    private boolean lineStart;                 // true if nothing has been written on the current output line
+
+    /**
+     * Constructor of ProgramIO
+     * @param in The input of the program
+     * @param out The output of the program
+     */
+    ProgramIO(InputStream in, OutputStream out) {
+
+        this(ByteBuffer.allocate(BUFFER_SIZE), Channels.newChannel(in), Channels.newChannel(out), out);
+    }
+
+    private ProgramIO(ByteBuffer in, ReadableByteChannel source, WritableByteChannel sink, Flushable sinkStream,
+                      Closeable... files) {
+        this.in = in;
+        this.source = source;
+        this.out = ByteBuffer.allocate(BUFFER_SIZE);
+        this.sink = sink;
+        this.sinkStream = sinkStream;
+        this.files = files;
+        this.lineStart = true;
+        if (source != null)
+            in.limit(0); // nothing read yet
+    }
+
+    /**
+     * Opens the input and output of a program that are files. The input file is mapped to memory, and the output
+     * file is created or replaced.
+     * @param input The input file, or null to read the standard input
+     * @param output The output file, or null to write the standard output
+     * @return The input and output, which should be closed when the program has ended
+     * @throws IOException If a file can not be opened
+     */
+    public static ProgramIO files(Path input, Path output) throws IOException {
+        FileChannel inFile = null, outFile = null;
+        try {
+            ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+            ReadableByteChannel source = Channels.newChannel(System.in);
+            if (input != null) {
+                inFile = FileChannel.open(input, StandardOpenOption.READ);
+                if (inFile.size() <= Integer.MAX_VALUE) {
+                    in = inFile.map(FileChannel.MapMode.READ_ONLY, 0, inFile.size());
+                    source = null;
+                }
+                else
+                    source = inFile;
+            }
+
+            WritableByteChannel sink = Channels.newChannel(System.out);
+            Flushable sinkStream = System.out;
+            if (output != null) {
+                outFile = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                sink = outFile;
+                sinkStream = null;
+            }
+            return new ProgramIO(in, source, sink, sinkStream, inFile, outFile);
+        }
+        catch (IOException e) {
+            if (inFile != null)
+                inFile.close();
+            if (outFile != null)
+                outFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next number of the input
+     * @return The value of the number
+     * @throws IOException If the input has ended, or the next word is not a number
+     */
+    public double readNumber() throws IOException {
+        int end = nextWord();
+        double value = parseNumber(in.position(), end);
+        if (value != value) { // not in plain decimal form, or not a number at all
+            String word = text(in.position(), end);
+            try {
+                value = Double.parseDouble(word);
+            }
+            catch (NumberFormatException e) {
+                throw new IOException("invalid number in input: \"" + word + "\"");
+            }
+        }
+        in.position(end);
+        return value;
+    }
+
+    /**
+     * Reads the next word of the input
+     * @return The word
+     * @throws IOException If the input has ended
+     */
+    public String readString() throws IOException {
+        int end = nextWord();
+        String word = text(in.position(), end);
+        in.position(end);
+        return word;
+    }
+
+    /**
+     * Writes a number to the output
+     * @param value The number to write
+     * @throws IOException If the output can not be written
+     */
+    public void writeNumber(double value) throws IOException {
+        separate();
+        if (value == Math.rint(value) && Math.abs(value) < 1e18)
+            writeLong((long) value);
+        else
+            writeText(Double.toString(value));
+    }
+
+    /**
+     * Writes a string to the output
+     * @param value The string to write, a String or a Rope
+     * @throws IOException If the output can not be written
+     */
+    public void writeString(CharSequence value) throws IOException {
+        separate();
+        writeText(value);
+    }
+
+    /**
+     * Writes a string to the output. The classes that JvmCompiler saved before strings could be Ropes call this
+     * @param value The string to write
+     * @throws IOException If the output can not be written
+     */
+    public void writeString(String value) throws IOException {
+
+        writeString((CharSequence) value);
+    }
+
+    /**
+     * Ends the current line of the output
+     * @throws IOException If the output can not be written
+     */
+    public void endLine() throws IOException {
+        if (out.remaining() < LINE_SEPARATOR.length)
+            drain();
+        out.put(LINE_SEPARATOR);
+        lineStart = true;
+    }
+
+    /**
+     * Writes everything that is buffered to the output
+     * @throws IOException If the output can not be written
+     */
+    public void flush() throws IOException {
+        drain();
+        if (sinkStream != null)
+            sinkStream.flush();
+    }
+
+    /**
+     * Flushes the output, and closes the files that were opened for it
+     * @throws IOException If the output can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            for (Closeable file : files)
+                if (file != null)
+                    file.close();
+        }
+    }
+
+    /**
+     * Formats a number the way that a program writes it: whole numbers are written without a fraction.
+     * @param value The number
+     * @return The text of the number
+     */
+    public static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e18)
+            return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    /**
+     * Finds the next word of the input, which starts at the position of "in" afterwards
+     * @return The index of the end of the word in "in"
+     * @throws IOException If the input has ended
+     */
+    private int nextWord() throws IOException {
+        while (true) {
+            int position = in.position(), limit = in.limit();
+            while (position < limit && isSpace(in.get(position)))
+                position++;
+            in.position(position);
+            if (position < limit)
+                break;
+            if (!fill())
+                throw new IOException("end of input");
+        }
+
+        int end = in.position();
+        while (true) {
+            int limit = in.limit();
+            while (end < limit && !isSpace(in.get(end)))
+                end++;
+            if (end < limit)
+                return end;
+            int length = end - in.position();
+            boolean more = fill();
+            end = in.position() + length;
+            if (!more)
+                return end; // the input ends with the word
+        }
+    }
+
+    /**
+     * Reads more input after what has not been parsed yet, which is moved to the start of the buffer. The output is
+     * flushed first, as the program may have written a prompt for the input that it waits for.
+     * @return false if the input has ended
+     */
+    private boolean fill() throws IOException {
+        if (source == null)
+            return false;
+        flush();
+        in.compact();
+        if (!in.hasRemaining()) { // a single word fills the whole buffer
+            ByteBuffer larger = ByteBuffer.allocate(2 * in.capacity());
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+        int read;
+        do
+            read = source.read(in);
+        while (read == 0);
+        in.flip();
+        return read > 0;
+    }
+
+    /**
+     * Parses a number in plain decimal form ([+-]digits[.digits]), when its value can be computed exactly: its
+     * digits without the point are a long below 2^53, and it has at most 22 digits after the point, so that it is a
+     * single correctly rounded division of two doubles that hold their values exactly.
+     * @return The value of the number, or NaN if it is not in that form, and Double.parseDouble has to parse it
+     */
+    private double parseNumber(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        byte c = in.get(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0, scale = 0;
+        boolean digit = false, point = false;
+        for (; i < end; i++) {
+            c = in.get(i);
+            if (c >= '0' && c <= '9') {
+                if (significant == 18)
+                    return Double.NaN;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0)
+                    significant++;
+                if (point)
+                    scale++;
+                digit = true;
+            }
+            else if (c == '.' && !point)
+                point = true;
+            else
+                return Double.NaN;
+        }
+        if (!digit || mantissa >= Integral.MAX || scale >= POWERS_OF_TEN.length)
+            return Double.NaN;
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return The text of the bytes from start to end of the input
+     */
+    private String text(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = in.get(start + i);
+        return new String(bytes, charset);
+    }
+
+    private static boolean isSpace(byte c) {
+
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Writes the space between two values of the same line
+     */
+    private void separate() throws IOException {
+        if (!lineStart) {
+            if (!out.hasRemaining())
+                drain();
+            out.put((byte) ' ');
+        }
+        lineStart = false;
+    }
+
+    /**
+     * Writes the digits of a whole number
+     */
+    private void writeLong(long value) throws IOException {
+        if (out.remaining() < digits.length + 1)
+            drain();
+        if (value < 0) {
+            out.put((byte) '-');
+            value = -value;
+        }
+        int first = digits.length;
+        do {
+            digits[--first] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        out.put(digits, first, digits.length - first);
+    }
+
+    /**
+     * Writes the characters of a string, which are copied to the output in blocks while they are ASCII, so that a
+     * Rope is never flattened
+     */
+    private void writeText(CharSequence text) throws IOException {
+        int length = text.length();
+        for (int start = 0; start < length; start += chars.length) {
+            int end = Math.min(length, start + chars.length);
+            if (text instanceof Rope)
+                ((Rope) text).getChars(start, end, chars, 0);
+            else
+                text.toString().getChars(start, end, chars, 0);
+            for (int i = 0; i < end - start; i++) {
+                char c = chars[i];
+                if (c >= 0x80) {
+                    writeBytes(text.subSequence(start + i, length).toString().getBytes(charset));
+                    return;
+                }
+                if (!out.hasRemaining())
+                    drain();
+                out.put((byte) c);
+            }
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        for (int written = 0; written < bytes.length; ) {
+            if (!out.hasRemaining())
+                drain();
+            int count = Math.min(out.remaining(), bytes.length - written);
+            out.put(bytes, written, count);
+            written += count;
+        }
+    }
+
+    /**
+     * Writes the buffer of the output to its channel
+     */
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            sink.write(out);
+        out.clear();
+    }
+}
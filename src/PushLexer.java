@@ -0,0 +1,205 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * A lexical analyser that is given the text of a program in chunks as it arrives (i.e. from a pipe or a socket),
+ * instead of reading a file itself. It finds the same tokens as LexicalAnalyser, and passes each of them to a Sink as
+ * soon as the character after it has arrived. The state of the token that a chunk ends in (i.e. in a string or a
+ * comment, or after a '\r' that may be followed by a '\n') is kept until the next chunk.
+ */
+public class PushLexer {
+
+    /**
+     * Where the tokens of a PushLexer go
+     */
+    public interface Sink {
+
+        /**
+         * @param token The next token of the program. The token of the end of file is the last one
+         * @throws IOException If the token can not be passed on
+         */
+        void token(Token token) throws IOException;
+    }
+
+    /*The states of the lexer between two characters: which token (or part of one) the characters so far are*/
+    private static final int START = 0, MINUS = 1, COMMENT = 2, WORD = 3, NUMBER = 4, FRACTION = 5, STRING = 6,
+            COLON = 7, GREATER = 8, LESS = 9, SLASH = 10, DONE = 11;
+    /*The character that stands for the end of the input*/
+    private static final int END = -1;
+
+    private final Sink sink;
+    private int state = START;
+    private int lineNumber;
+    /*The text of the token so far*/
+    private final StringBuilder text = new StringBuilder();
+    /*true if the last character was a '\r', so that a '\n' after it is part of the same line terminator*/
+    private boolean afterCarriageReturn;
+    /*true if the current line has characters, but no line terminator yet*/
+    private boolean lineOpen;
+
+    /**
+     * @param sink Where the tokens go
+     */
+    public PushLexer(Sink sink) {
+
+        this.sink = sink;
+    }
+
+    /**
+     * Lexes the next chunk of the text of the program
+     * @param chunk The characters of the chunk, which are all read
+     * @throws IOException If the sink can not take a token
+     */
+    public void feed(CharBuffer chunk) throws IOException {
+        while (chunk.hasRemaining()) {
+            char c = chunk.get();
+            if (c == '\n' && afterCarriageReturn) {
+                afterCarriageReturn = false;
+                continue;
+            }
+            afterCarriageReturn = c == '\r';
+            lineOpen = c != '\r' && c != '\n';
+            accept(lineOpen ? c : '\n'); // as LexicalAnalyser reads the lines of a file, every terminator is a '\n'
+        }
+    }
+
+    /**
+     * Ends the text of the program, and passes the last token and the token of the end of file to the sink
+     * @throws IOException If the sink can not take a token
+     */
+    public void finish() throws IOException {
+        if (lineOpen) {
+            lineOpen = false;
+            accept('\n'); // the last line ends, as if it had a line terminator
+        }
+        accept(END);
+    }
+
+    /**
+     * Takes the next character of the text, as LexicalAnalyser.getNextToken does
+     * @param c The character, or END
+     */
+    private void accept(int c) throws IOException {
+        while (true) {
+            switch (state) {
+                case DONE:
+                    return;
+                case START:
+                    if (c == ' ' || c == '\t')
+                        return;
+                    if (c == '\n')
+                        lineNumber++;
+                    else if (c == END || c == '\000') { // LexicalAnalyser takes a null character for the end of file
+                        emit(Token.eofSymbol, "");
+                        state = DONE;
+                    }
+                    else if (Character.isLetter((char) c))
+                        begin(WORD, c);
+                    else if (Character.isDigit((char) c))
+                        begin(NUMBER, c);
+                    else
+                        start((char) c);
+                    return;
+                case MINUS:
+                    state = START;
+                    if (c == '-') {
+                        state = COMMENT;
+                        return;
+                    }
+                    emit(Token.minusSymbol, "-");
+                    continue;
+                case COMMENT:
+                    if (c == END) {
+                        state = START;
+                        continue;
+                    }
+                    if (c == '\n') {
+                        lineNumber++;
+                        state = START;
+                    }
+                    return;
+                case WORD:
+                    if (c != END && Character.isLetterOrDigit((char) c)) {
+                        text.append((char) c);
+                        return;
+                    }
+                    // a reserved word in any case of its ASCII letters, as LexicalAnalyser finds it
+                    emit(LexicalAnalyser.symbol(text), text.toString());
+                    state = START;
+                    continue;
+                case NUMBER:
+                case FRACTION:
+                    if (c != END && Character.isDigit((char) c) || c == '.' && state == NUMBER) {
+                        text.append((char) c);
+                        if (c == '.')
+                            state = FRACTION;
+                        return;
+                    }
+                    emit(Token.numberConstant, text.toString());
+                    state = START;
+                    continue;
+                case STRING:
+                    if (c == END) { // a string that is not closed is an error, as in LexicalAnalyser
+                        emit(Token.errorSymbol, text.toString());
+                        state = START;
+                        continue;
+                    }
+                    if (c == '"') {
+                        emit(Token.stringConstant, text.toString());
+                        state = START;
+                    }
+                    else
+                        text.append((char) c);
+                    return;
+                default: // the first character of ":=", ">=", "<=" or "/="
+                    int previous = state;
+                    state = START;
+                    if (c == '=') {
+                        emit(previous == COLON ? Token.becomesSymbol : previous == GREATER ? Token.greaterEqualSymbol
+                                : previous == LESS ? Token.lessEqualSymbol : Token.notEqualSymbol, null);
+                        return;
+                    }
+                    emit(previous == COLON ? Token.colonSymbol : previous == GREATER ? Token.greaterThanSymbol
+                            : previous == LESS ? Token.lessThanSymbol : Token.divideSymbol, null);
+                    continue;
+            }
+        }
+    }
+
+    /**
+     * Starts a token of one or two characters, in the START state
+     */
+    private void start(char c) throws IOException {
+        switch (c) {
+            case '-': state = MINUS; break;
+            case '"': text.setLength(0); state = STRING; break;
+            case ':': state = COLON; break;
+            case '>': state = GREATER; break;
+            case '<': state = LESS; break;
+            case '/': state = SLASH; break;
+            case '=': emit(Token.equalSymbol, "="); break;
+            case ',': emit(Token.commaSymbol, ","); break;
+            case ';': emit(Token.semicolonSymbol, ";"); break;
+            case '+': emit(Token.plusSymbol, "+"); break;
+            case '*': emit(Token.timesSymbol, "*"); break;
+            case '(': emit(Token.leftParenthesis, "("); break;
+            case ')': emit(Token.rightParenthesis, ")"); break;
+            default: emit(Token.errorSymbol, ""); // LexicalAnalyser does not keep the text of an invalid character
+        }
+    }
+
+    private void begin(int state, int c) {
+        this.state = state;
+        text.setLength(0);
+        text.append((char) c);
+    }
+
+    /**
+     * Passes a token to the sink
+     * @param text The text of the token, or null for the text of its symbol
+     */
+    private void emit(int symbol, String text) throws IOException {
+
+        sink.token(new Token(symbol, text != null ? text : Token.getName(symbol), lineNumber));
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * A code generator that prints nothing, for an analysis whose trace is not wanted (i.e. one that only looks at the
+ * variables, or a benchmark of the analysis alone). An error is thrown as Generate throws it.
+ */
+final class QuietGenerate extends Generate {
+
+    @Override
+    public void insertTerminal(Token token) {
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+    }
+
+    @Override
+    public void finishNonterminal(String name) {
+    }
+
+    @Override
+    public void addVariable(Variable v) {
+    }
+
+    @Override
+    public void removeVariable(Variable v) {
+    }
+
+    @Override
+    public void reportSuccess() {
+    }
+
+    @Override
+    public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+
+        throw error(token, explanatoryMessage, null);
+    }
+}
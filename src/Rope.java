@@ -0,0 +1,114 @@
+/**
+ * The value of a string that an executed program built by concatenation. Programs mostly build their output by
+ * appending to the same variable in a loop, which copies the whole string every time if strings are Strings.
+ * A rope is instead a prefix of a buffer that only ever grows: appending to the rope that ends the buffer appends to
+ * the buffer in place, and makes a new rope that is a longer prefix of it, so the old value does not change and an
+ * append costs the length of what is appended. Appending to any other rope copies it to a new buffer first.
+ * The rope is only flattened to a String when that is needed: "call put" copies its characters to the output without
+ * flattening it.
+ */
+public final class Rope implements CharSequence {
+
+    /*The strings that are shorter than this are concatenated as Strings, as a copy of them costs less than a rope*/
+    private static final int MIN_LENGTH = 32;
+
+    private final StringBuilder buffer; // shared by all the ropes that are prefixes of it
+    private final int length;
+    private String flat;                // the String of the rope, once it is flattened
+
+    private Rope(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * Concatenates two strings
+     * @param a The first string, a String or a Rope
+     * @param b The second string, a String or a Rope
+     * @return A string with the characters of a followed by those of b
+     */
+    public static CharSequence concat(CharSequence a, CharSequence b) {
+        int length = a.length() + b.length();
+        if (b.length() == 0)
+            return a;
+        if (a.length() == 0)
+            return b;
+
+        if (a instanceof Rope) {
+            Rope rope = (Rope) a;
+            if (rope.buffer.length() == rope.length) {
+                append(rope.buffer, b);
+                return new Rope(rope.buffer, length);
+            }
+        }
+        if (length < MIN_LENGTH)
+            return a.toString().concat(b.toString());
+
+        StringBuilder buffer = new StringBuilder(2 * length);
+        append(buffer, a);
+        append(buffer, b);
+        return new Rope(buffer, length);
+    }
+
+    /**
+     * Compares two strings in the order of String.compareTo
+     * @return A negative number, zero or a positive number if a is less than, equal to or greater than b
+     */
+    public static int compare(CharSequence a, CharSequence b) {
+        if (a instanceof String && b instanceof String)
+            return ((String) a).compareTo((String) b);
+
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i), y = b.charAt(i);
+            if (x != y)
+                return x - y;
+        }
+        return a.length() - b.length();
+    }
+
+    @Override
+    public int length() {
+
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new StringIndexOutOfBoundsException(index);
+        return buffer.charAt(index);
+    }
+
+    /**
+     * Copies characters of the rope to an array, as String.getChars does
+     */
+    public void getChars(int start, int end, char[] destination, int destinationStart) {
+        if (end > length)
+            throw new StringIndexOutOfBoundsException(end);
+        buffer.getChars(start, end, destination, destinationStart);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null)
+            flat = buffer.substring(0, length);
+        return flat;
+    }
+
+    /**
+     * Appends a string to a buffer, which may be the buffer of the string itself
+     */
+    private static void append(StringBuilder buffer, CharSequence value) {
+        if (value instanceof Rope)
+            buffer.append(((Rope) value).buffer, 0, value.length());
+        else
+            buffer.append(value);
+    }
+}
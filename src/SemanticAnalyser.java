@@ -0,0 +1,490 @@
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The semantic analysis of a program, as a pass of its own over the events of the Syntax Analyser: it keeps the
+ * variables that are declared, in the scopes of the for-loops and of the procedures, and the procedures, and checks
+ * every use of a variable, every operator and every call against them. Each identifier is resolved once, when it is
+ * read, and each operand of an expression is pushed once with its type, and popped by the operator that takes it, so
+ * the type of every subexpression is known exactly once.
+ * The events are checked as the Syntax Analyser sends them, and an error is thrown into the method of the non-terminal
+ * that it was found in, or as a ParseLog replays them, behind the parse (see ParseLog.replay). The declarations and
+ * the errors are reported to the code generator that the analysis is given.
+ * @author Petros Soutzis, 34023852
+ */
+public class SemanticAnalyser implements SemanticEvents {
+
+    /*Error messages that the analysis will use*/
+    private final String VAR_NAME_NOT_EXISTS = ": could not find \"{0}\". This variable has not been initialised yet.";
+    private final String INV_OPERATION =  ": invalid operation. It is not possible to perform operation";
+    private final String INV_TYPE = "invalid type assignment. Expected: \"{0}\", but got \"{1}\" instead!";
+    private final String PROC_NOT_EXISTS = ": could not find procedure \"{0}\". It is not declared by this program, or by the units that it calls.";
+    private final String PROC_EXISTS = ": procedure \"{0}\" has already been declared.";
+    private final String PARAM_EXISTS = ": parameter \"{0}\" has already been declared.";
+    private final String INV_ARGUMENTS = ": procedure \"{0}\" takes {1} arguments, but got {2} instead!";
+    private final String INV_ARGUMENT_TYPE = ": invalid type of argument {0} of procedure \"{1}\". Expected: \"{2}\", but got \"{3}\" instead!";
+
+    /*Containers of global and local variables respectively*/
+    private HashMap<String, Variable> globalVariables;
+    private HashMap<Integer, HashMap<String, Variable>> localVariables;
+    /*The global variables in the order that they were declared (a State only keeps the number of them), and true if
+    * a State shares them, so that a reset does not clear them*/
+    private ArrayList<Variable> globalOrder;
+    private boolean globalOrderShared;
+    /*The containers of the scopes of for-loops that have ended, cleared to hold the next ones*/
+    private final ArrayList<HashMap<String, Variable>> spareScopes = new ArrayList<>();
+
+    /*Flags
+    * 1) If the analysis is currently in the body of a for loop
+    * 2) The current scope. (The depth of nesting of for-loop)*/
+    private boolean forStatementBody;
+    private int forStatementCount;
+
+    /*The operands of the expressions being analysed that no operator has taken yet (their types, and their first
+    * tokens), as a stack that the expressions in parentheses continue*/
+    private Variable.Type[] operandTypes = new Variable.Type[8];
+    private Token[] operandTokens = new Token[8];
+    private int operandCount;
+
+    /*The procedures that the program declares, in order (its interface), those of the units that it can call, or null
+    * if it can call any procedure (as Compile analyses a program on its own), and the types of the arguments of the
+    * call that is being analysed*/
+    private final LinkedHashMap<String, Procedure> procedures = new LinkedHashMap<>();
+    private HashMap<String, Procedure> imports;
+    private final ArrayList<Variable.Type> arguments = new ArrayList<>();
+
+    /**
+     * Is told of every declaration, assignment and use of a variable that the analysis sees (i.e. to index them)
+     */
+    public interface References {
+
+        /**
+         * @param identifier The token of the identifier of the variable
+         * @param kind Whether the variable is declared (by its first assignment), assigned again, or used
+         */
+        void reference(Token identifier, CrossReference.Kind kind);
+    }
+    private References references;
+
+    /*The budget of the compilation, or null, and the code generator that the analysis reports to*/
+    private CompilationBudget budget;
+    private Generate generate;
+
+    /**
+     * Constructor of Semantic Analyser, for a program that has not started yet
+     */
+    SemanticAnalyser() {
+        this.globalVariables = new HashMap<>();
+        this.localVariables = new HashMap<>();
+        this.globalOrder = new ArrayList<>();
+        this.forStatementBody = false;
+        this.forStatementCount = 0;
+    }
+
+    /**
+     * @param budget The limit of the number of variables that may be declared at once, from now on, or null for none
+     */
+    void setBudget(CompilationBudget budget) {
+
+        this.budget = budget;
+    }
+
+    /**
+     * @param references What to tell of the declarations, assignments and uses of the variables, from now on, or
+     * null
+     */
+    void setReferences(References references) {
+
+        this.references = references;
+    }
+
+    /**
+     * Makes the analyses from now on resolve the calls of a program, as a build does (see SyntaxAnalyser.setImports)
+     * @param imports The procedures of the units that the program can call, or null to allow a call of any procedure
+     * that the program does not declare
+     */
+    void setImports(Collection<Procedure> imports) {
+        if (imports == null)
+            this.imports = null;
+        else {
+            this.imports = new HashMap<>();
+            for (Procedure procedure : imports)
+                this.imports.put(procedure.name, procedure);
+        }
+    }
+
+    /**
+     * @return The procedures that the last analysis declared, in order, which are the interface of its program (of
+     * those whose declarations it read, if it failed). It is cleared by the next analysis.
+     */
+    Collection<Procedure> getProcedures() {
+
+        return procedures.values();
+    }
+
+    /**
+     * Starts the analysis of a program, as a new Semantic Analyser would, reporting to the given code generator. The
+     * containers of the variables and of the scopes of for-loops are kept and cleared rather than built again. The
+     * States that were taken of the last analysis keep the global variables of it.
+     * @param generate The code generator to report the analysis to
+     */
+    void start(Generate generate) {
+        globalVariables.clear();
+        for (HashMap<String, Variable> scope : localVariables.values()) {
+            scope.clear();
+            spareScopes.add(scope);
+        }
+        localVariables.clear();
+        if (globalOrderShared)
+            globalOrder = new ArrayList<>();
+        else
+            globalOrder.clear();
+        globalOrderShared = false;
+        procedures.clear();
+        arguments.clear();
+        Arrays.fill(operandTokens, 0, operandCount, null);
+        this.operandCount = 0;
+        this.forStatementBody = false;
+        this.forStatementCount = 0;
+        this.generate = generate;
+    }
+
+    @Override
+    public void procedure(Token name, Token next) throws CompilationException {
+        // declared before its body, which may call it
+        String identifier = name.detach();
+        if (procedures.containsKey(identifier) || identifier.equals("get") || identifier.equals("put"))
+            generate.reportError(name, MessageFormat.format(PROC_EXISTS, identifier));
+        procedures.put(identifier, new Procedure(identifier, globalOrder));
+    }
+
+    @Override
+    public void endProcedure() {
+        //Print the destroyed variables of the procedure, and remove them
+        for (Variable v : globalOrder)
+            generate.removeVariable(v);
+        globalVariables.clear();
+        if (globalOrderShared)
+            globalOrder = new ArrayList<>();
+        else
+            globalOrder.clear();
+        globalOrderShared = false;
+    }
+
+    @Override
+    public void parameter(Token parameter, Variable.Type type, Token next) throws CompilationException {
+        // a parameter is declared as a variable is, by its first assignment, with the type that it is given
+        if (variable(parameter.getText()) != null)
+            generate.reportError(parameter, MessageFormat.format(PARAM_EXISTS, parameter.text));
+        createVariable(parameter, type, next);
+    }
+
+    @Override
+    public void enterFor() {
+        if(this.forStatementCount == 0)  // check if this is the most outer loop
+            this.forStatementBody = true; // set flag that indicates we are in a for loop
+        // increment counter by 1, so the analysis can determine whether the outer for loop has finished
+        this.forStatementCount ++;
+    }
+
+    @Override
+    public void exitFor() {
+        //Print the destroyed variables
+        HashMap<String, Variable> scope = localVariables.get(forStatementCount);
+        for(Variable v : scope.values()){
+            generate.removeVariable(v);
+        }
+
+        localVariables.remove(forStatementCount);//Remove the scope (which contains the destroyed variables)
+        scope.clear();
+        spareScopes.add(scope); // and keep its container for the next for-loop
+        this.forStatementCount --; // decrement by 1, to indicate that for-loop has exited
+
+        if(this.forStatementCount == 0)  // check if this is the most outer loop
+            this.forStatementBody = false; // set flag that indicates we are in a for loop
+    }
+
+    @Override
+    public void assign(Token variable, Variable.Type type, Token next) throws CompilationException {
+
+        createVariable(variable, type, next);
+    }
+
+    @Override
+    public void assignExpression(Token variable, Token next) throws CompilationException {
+
+        createVariable(variable, pop(), next);
+    }
+
+    @Override
+    public void discardExpression() {
+
+        pop();
+    }
+
+    @Override
+    public void use(Token identifier) throws CompilationException {
+
+        resolve(identifier);
+    }
+
+    @Override
+    public void argument(Token identifier) throws CompilationException {
+
+        arguments.add(resolve(identifier).type); // keep its type for the call
+    }
+
+    /**
+     * Checks the arguments of a call against the parameters of its procedure, if the program declared it or it is a
+     * procedure of the units that the program can call (in which case a call of any other procedure than get and put
+     * is an error)
+     */
+    @Override
+    public void call(Token name, Token next) throws CompilationException {
+        String identifier = name.getText();
+        Procedure procedure = procedures.get(identifier);
+        if (procedure == null && imports != null) {
+            procedure = imports.get(identifier);
+            if (procedure == null && !identifier.equals("get") && !identifier.equals("put"))
+                generate.reportError(name, MessageFormat.format(PROC_NOT_EXISTS, identifier));
+        }
+        if (procedure != null) {
+            List<Variable> parameters = procedure.parameters;
+            if (arguments.size() != parameters.size())
+                generate.reportError(name, MessageFormat.format(INV_ARGUMENTS, identifier, parameters.size(),
+                        arguments.size()));
+            for (int i = 0; i < parameters.size(); i++) {
+                if (arguments.get(i) != parameters.get(i).type)
+                    generate.reportError(name, MessageFormat.format(INV_ARGUMENT_TYPE, i + 1, identifier,
+                            parameters.get(i).type.name, arguments.get(i).name));
+            }
+        }
+        // else get, put, or a procedure that the program is analysed without (as Compile does)
+        arguments.clear();
+    }
+
+    @Override
+    public void operand(Token identifier) throws CompilationException {
+
+        push(resolve(identifier).type, identifier);
+    }
+
+    @Override
+    public void number(Token number) {
+
+        push(Variable.Type.NUMBER, number);
+    }
+
+    @Override
+    public void nested(Token parenthesis) {
+
+        operandTokens[operandCount - 1] = parenthesis;
+    }
+
+    @Override
+    public void multiplicand(Token first, Token next) throws CompilationException {
+        if (operandTypes[operandCount - 1] == Variable.Type.STRING)
+            generate.reportError(first, INV_OPERATION);
+    }
+
+    /**
+     * Applies an operator to the two operands on the top of the stack: + takes two operands of the same type, and -,
+     * * and / take numbers. The result has the type of the left operand, which it replaces.
+     */
+    @Override
+    public void apply(Token operator, Token next) throws CompilationException {
+        Variable.Type right = operandTypes[--operandCount];
+        Variable.Type left = operandTypes[operandCount - 1];
+        if (operator.symbol == Token.plusSymbol ? left != right
+                : left != Variable.Type.NUMBER || right != Variable.Type.NUMBER)
+            generate.reportError(operandTokens[operandCount], INV_OPERATION);
+        operandTokens[operandCount] = null;
+    }
+
+    /**
+     * Pushes an operand on the stack of the operands
+     */
+    private void push(Variable.Type type, Token first) {
+        if (operandCount == operandTypes.length) {
+            operandTypes = Arrays.copyOf(operandTypes, operandCount * 2);
+            operandTokens = Arrays.copyOf(operandTokens, operandCount * 2);
+        }
+        operandTypes[operandCount] = type;
+        operandTokens[operandCount++] = first;
+    }
+
+    /**
+     * @return The type of the operand on the top of the stack, which is removed
+     */
+    private Variable.Type pop() {
+        operandTokens[--operandCount] = null;
+        return operandTypes[operandCount];
+    }
+
+    /**
+     * Resolves the variable of an identifier that is used, and tells the references of the use
+     * @param token The token of the identifier
+     * @return The variable
+     * @throws CompilationException If the variable does not exist
+     */
+    private Variable resolve(Token token) throws CompilationException {
+        Variable v = variable(token.getText());
+        if (v == null)
+            generate.reportError(token, MessageFormat.format(VAR_NAME_NOT_EXISTS, token.text));
+        if (references != null)
+            references.reference(token, CrossReference.Kind.USE);
+        return v;
+    }
+
+    /**
+     * This method will check the collections of temp variables and global variables. If an identifier does
+     * not exist, then create the variable, insert it in the appropriate collection and print that the.
+     * variable has been created ("rggDECL {variable}")
+     * @param token The token of the variable identifier
+     * @param type The type of the variable
+     * @param next The next token of the parse, which an error is reported at
+     */
+    private void createVariable(Token token, Variable.Type type, Token next) throws CompilationException {
+        String identifier = token.detach();
+
+        /*THIS CODE-SNIPPET CREATES A NEW VARIABLE, ONLY IF THE VARIABLE IS NOT ALREADY INSTANTIATED*/
+        Variable existing = variable(identifier);
+        if(existing == null){
+            if (references != null)
+                references.reference(token, CrossReference.Kind.DECLARATION);
+            Variable v = new Variable(identifier, type);
+            generate.addVariable(v);  //declare the creation of this variable
+            //check if we are in a for-loop
+            if(forStatementBody) {
+                //check if the scope already exists. If not exists, a new HashMap will be added
+                if(localVariables.containsKey(forStatementCount))
+                    localVariables.get(forStatementCount).put(identifier, v); //put variable in scope
+                else {
+                    //take the container of an earlier scope to hold the scope, or create a new one
+                    HashMap<String, Variable> scope =
+                            spareScopes.isEmpty() ? new HashMap<>() : spareScopes.remove(spareScopes.size() - 1);
+                    scope.put(identifier, v); //put local variable of this scope
+                    localVariables.put(forStatementCount, scope); //put scope identifier + scope variables
+                }
+            }
+            else {
+                globalVariables.put(identifier, v);
+                globalOrder.add(v);
+            }
+            if (budget != null) {
+                int variables = globalVariables.size();
+                for (HashMap<String, Variable> scope : localVariables.values())
+                    variables += scope.size();
+                if (!budget.variables(variables))
+                    generate.reportError(next, MessageFormat.format(SyntaxAnalyser.BUDGET_EXCEEDED,
+                            budget.getExceeded()));
+            }
+        }
+        else{
+            if (references != null)
+                references.reference(token, CrossReference.Kind.ASSIGNMENT);
+            Variable.Type expectedType = existing.type;
+            if (expectedType != type)
+                generate.reportError(next, MessageFormat.format(INV_TYPE, expectedType.name, type.name));
+        }
+    }
+
+    /**
+     * @param identifier The name of the variable to retrieve (aka the variable's identifier)
+     * @return The variable that has the name specified in "identifier": a global variable, or one of the scope of a
+     * for-loop (a name is never declared in more than one of them). Returns null otherwise
+     */
+    private Variable variable(String identifier) {
+        Variable var = globalVariables.get(identifier);
+        if (var == null) {
+            for (HashMap<String, Variable> scope : localVariables.values()) {
+                var = scope.get(identifier);
+                if (var != null)
+                    break;
+            }
+        }
+        return var;
+    }
+
+    /**
+     * The semantic state of an analysis between two statements: the variables that are declared, the scope of the
+     * for-loops. IncrementalAnalyser keeps the state before and after every
+     * statement, so that a statement can be analysed again without the statements before it.
+     * The global variables are never removed, so a state shares the list of them with its analysis, and only keeps
+     * how many of them there were.
+     */
+    static final class State {
+
+        final List<Variable> globals;
+        final int globalCount;
+        /*Copies of the scopes of the for-loops, or null if there are none*/
+        final HashMap<Integer, HashMap<String, Variable>> locals;
+        final boolean forStatementBody;
+        final int forStatementCount;
+
+        private State(SemanticAnalyser analyser) {
+            this.globals = analyser.globalOrder;
+            this.globalCount = analyser.globalOrder.size();
+            this.locals = analyser.localVariables.isEmpty() ? null : copy(analyser.localVariables);
+            this.forStatementBody = analyser.forStatementBody;
+            this.forStatementCount = analyser.forStatementCount;
+        }
+
+        /**
+         * @return The variables that are declared in this state: the global variables, and those of the scopes of the
+         * for-loops
+         */
+        List<Variable> variables() {
+            List<Variable> variables = new ArrayList<>(globals.subList(0, globalCount));
+            if (locals != null) {
+                for (HashMap<String, Variable> scope : locals.values())
+                    variables.addAll(scope.values());
+            }
+            return variables;
+        }
+    }
+
+    /**
+     * @return The semantic state of the analysis at this point, which should be between two statements
+     */
+    State state() {
+        globalOrderShared = true;
+        return new State(this);
+    }
+
+    /**
+     * Continues an analysis from the state that it had before a statement
+     * @param state The state before the statement
+     * @param generate The code generator to report the analysis to
+     */
+    void resume(State state, Generate generate) {
+        this.globalOrder = new ArrayList<>(state.globals.subList(0, state.globalCount));
+        this.globalOrderShared = false;
+        this.globalVariables = new HashMap<>();
+        for (Variable v : globalOrder)
+            globalVariables.put(v.identifier, v);
+        this.localVariables = state.locals == null ? new HashMap<>() : copy(state.locals);
+        this.forStatementBody = state.forStatementBody;
+        this.forStatementCount = state.forStatementCount;
+        this.arguments.clear();
+        Arrays.fill(operandTokens, 0, operandCount, null);
+        this.operandCount = 0;
+        this.generate = generate;
+    }
+
+    /**
+     * @return A copy of the scopes of for-loops, whose variables are shared with the original
+     */
+    private static HashMap<Integer, HashMap<String, Variable>> copy(HashMap<Integer, HashMap<String, Variable>> scopes) {
+        HashMap<Integer, HashMap<String, Variable>> copy = new HashMap<>();
+        for (Map.Entry<Integer, HashMap<String, Variable>> scope : scopes.entrySet())
+            copy.put(scope.getKey(), new HashMap<>(scope.getValue()));
+        return copy;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * What the Syntax Analyser tells the semantic analysis of a program, in the order that it parses it: the declarations
+ * of procedures, parameters and variables, the scopes of for-loops, the uses of variables, the operands and operators
+ * of expressions and the calls of procedures. The SemanticAnalyser checks them as they come, or a ParseLog records
+ * them, with the trace, so that they are checked later (i.e. on another thread, as the next file is parsed).
+ * An event that can fail is given the token after the last one that was accepted, the next token of the parse, which
+ * is where the methods of the non-terminals that are open report the error from.
+ */
+public interface SemanticEvents {
+
+    /**
+     * A procedure is declared, before its body, with the parameters that were declared since the last one
+     * @param name The token of the name of the procedure
+     * @param next The next token of the parse
+     * @throws CompilationException If a procedure of the name exists
+     */
+    void procedure(Token name, Token next) throws CompilationException;
+
+    /**
+     * The body of a procedure has ended, and its variables are removed
+     */
+    void endProcedure();
+
+    /**
+     * @param parameter The token of the identifier of a parameter, which is declared with the given type
+     * @param type The type of the parameter
+     * @param next The next token of the parse
+     * @throws CompilationException If a parameter of the name exists
+     */
+    void parameter(Token parameter, Variable.Type type, Token next) throws CompilationException;
+
+    /**
+     * A for-loop starts a scope, one level deeper than the one that it is in
+     */
+    void enterFor();
+
+    /**
+     * A for-loop has ended, and the variables of its scope are removed
+     */
+    void exitFor();
+
+    /**
+     * A variable is assigned a value of a type, which declares it if it does not exist
+     * @param variable The token of the identifier of the variable
+     * @param type The type of the value
+     * @param next The next token of the parse
+     * @throws CompilationException If the variable has another type
+     */
+    void assign(Token variable, Variable.Type type, Token next) throws CompilationException;
+
+    /**
+     * A variable is assigned the value of the expression that has just ended, as assign does
+     * @param variable The token of the identifier of the variable
+     * @param next The next token of the parse
+     * @throws CompilationException If the variable has another type than the expression
+     */
+    void assignExpression(Token variable, Token next) throws CompilationException;
+
+    /**
+     * The value of the expression that has just ended is not assigned
+     */
+    void discardExpression();
+
+    /**
+     * A variable is used, in a condition, before its identifier is accepted (the next token of the parse)
+     * @param identifier The token of the identifier
+     * @throws CompilationException If the variable does not exist
+     */
+    void use(Token identifier) throws CompilationException;
+
+    /**
+     * A variable is passed to the procedure that is called, before its identifier is accepted
+     * @param identifier The token of the identifier
+     * @throws CompilationException If the variable does not exist
+     */
+    void argument(Token identifier) throws CompilationException;
+
+    /**
+     * A procedure is called with the arguments since the last call
+     * @param name The token of the name of the procedure
+     * @param next The next token of the parse
+     * @throws CompilationException If the procedure does not exist, or the arguments do not match its parameters
+     */
+    void call(Token name, Token next) throws CompilationException;
+
+    /**
+     * A variable is an operand of an expression, before its identifier is accepted
+     * @param identifier The token of the identifier
+     * @throws CompilationException If the variable does not exist
+     */
+    void operand(Token identifier) throws CompilationException;
+
+    /**
+     * A number is an operand of an expression
+     * @param number The token of the number
+     */
+    void number(Token number);
+
+    /**
+     * The expression in parentheses that has just ended is an operand of the expression around it
+     * @param parenthesis The token of its left parenthesis, which an error in the type of the operand is reported at
+     */
+    void nested(Token parenthesis);
+
+    /**
+     * The operand that has just ended is the left operand of * or /
+     * @param first The first token of the operand
+     * @param next The next token of the parse (the operator)
+     * @throws CompilationException If the operand is a string
+     */
+    void multiplicand(Token first, Token next) throws CompilationException;
+
+    /**
+     * An operator is applied to the last two operands, which are replaced by their result
+     * @param operator The token of the operator
+     * @param next The next token of the parse
+     * @throws CompilationException If an operand has the wrong type
+     */
+    void apply(Token operator, Token next) throws CompilationException;
+}
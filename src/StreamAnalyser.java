@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Analyses a program whose text arrives in chunks (i.e. from a pipe or a socket) while it arrives, instead of after
+ * all of it was read. The chunks are lexed by a PushLexer as they are fed, and the Syntax Analyser runs on a thread of
+ * its own, reading the tokens from a bounded queue. So the trace and the errors of the analysis are reported to the
+ * code generator as soon as the tokens that decide them have arrived, and at most QUEUE_CAPACITY tokens are held in
+ * memory: feed waits while the analysis is behind.
+ */
+public class StreamAnalyser {
+
+    /*The number of tokens that may be lexed ahead of the analysis*/
+    public static final int QUEUE_CAPACITY = 1024;
+
+    private final String name;
+    private final ArrayBlockingQueue<Token> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final PushLexer lexer;
+    private final Thread thread;
+    /*The error that the analysis ended with, or null*/
+    private volatile Throwable failure;
+
+    /**
+     * Starts the analysis of a program, which waits for its text
+     * @param name The name that stands for the file of the program
+     * @param generate The code generator to report the analysis to, from the thread of the analysis
+     */
+    public StreamAnalyser(String name, final Generate generate) {
+        this.name = name;
+        this.lexer = new PushLexer(token -> {
+            if (failure != null)
+                return; // nothing reads the tokens after an error
+            try {
+                queue.put(token);
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException("interrupted while the analysis of " + name + " was behind");
+            }
+        });
+        this.thread = new Thread(() -> analyse(generate), "analysis of " + name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Lexes the next chunk of the text of the program, and passes its tokens on to the analysis
+     * @param chunk The characters of the chunk, which are all read
+     * @throws IOException If the thread is interrupted while the analysis is behind
+     * @throws CompilationException If the analysis has found an error already, in this or an earlier chunk
+     */
+    public void feed(CharBuffer chunk) throws IOException, CompilationException {
+        lexer.feed(chunk);
+        if (failure != null)
+            rethrow();
+    }
+
+    /**
+     * Ends the text of the program, and waits for the end of its analysis
+     * @throws IOException If the thread is interrupted while it waits
+     * @throws CompilationException If the program is not valid
+     */
+    public void finish() throws IOException, CompilationException {
+        lexer.finish();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while waiting for the analysis of " + name);
+        }
+        if (failure != null)
+            rethrow();
+    }
+
+    /**
+     * Analyses a program that is read from a reader, while it is read
+     * @param name The name that stands for the file of the program
+     * @param reader The text of the program, which is read to its end
+     * @param generate The code generator to report the analysis to
+     * @throws IOException If the text can not be read
+     * @throws CompilationException If the program is not valid
+     */
+    public static void analyse(String name, Reader reader, Generate generate) throws IOException, CompilationException {
+        StreamAnalyser analyser = new StreamAnalyser(name, generate);
+        CharBuffer chunk = CharBuffer.allocate(8192);
+        while (reader.read(chunk) >= 0) {
+            chunk.flip();
+            analyser.feed(chunk);
+            chunk.clear();
+        }
+        analyser.finish();
+    }
+
+    /**
+     * Runs the analysis, on its own thread
+     */
+    private void analyse(Generate generate) {
+        TokenSource tokens = new TokenSource() {
+
+            private Token last;
+
+            @Override
+            public Token getNextToken() throws IOException {
+                if (last != null && last.symbol == Token.eofSymbol)
+                    return last; // the lexer passes on one token of the end of file
+                try {
+                    return last = queue.take();
+                }
+                catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted while waiting for the text of " + name);
+                }
+            }
+
+            @Override
+            public String getFilename() {
+
+                return name;
+            }
+        };
+        try {
+            new SyntaxAnalyser(tokens).analyse(generate);
+        }
+        catch (CompilationException | IOException | RuntimeException | Error e) { // i.e. a StackOverflowError
+            failure = e;
+            queue.clear(); // so that a feed that waits for room goes on, and sees the failure
+        }
+    }
+
+    private void rethrow() throws IOException, CompilationException {
+        if (failure instanceof CompilationException)
+            throw (CompilationException) failure;
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        throw (RuntimeException) failure;
+    }
+}
@@ -1,7 +1,10 @@
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.MessageFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
 
 /**
  * This class will analyse the syntax of a program written in a very simple language (a bit similar to Ada) and
@@ -10,37 +13,43 @@ import java.util.Map;
  */
 public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
-    /*Error messages that the SA will use*/
+    /*Error messages that the SA will use (the SemanticAnalyser and a ParseLog report errors from the methods of the
+    * non-terminals, and the budget of the compilation, as the SA does)*/
     private final String INV_TKN_ERR = ": invalid token: \"{0}\"";
     private final String XPCTD_OTHR_TKN = ": invalid token. Expected: token \"{0}\", but got \"{1}\" instead!";
-    private final String TRACE_METHOD = ": an error in method \"{0}\" of the Syntax Analyser. Error is";
-    private final String VAR_NAME_NOT_EXISTS = ": could not find \"{0}\". This variable has not been initialised yet.";
-    private final String INV_OPERATION =  ": invalid operation. It is not possible to perform operation";
-    private final String INV_TYPE = "invalid type assignment. Expected: \"{0}\", but got \"{1}\" instead!";
-
-    /*These are used to indicate the recursion depth of an expression <_expression_()>
-    * I.e. NO_EXPRESSION means that the first expression has not been identified by the syntax analyser and
-    * NESTED_EXPRESSION will mean that the syntax analyser has already seen both first and second expressions*/
-    private final int NO_EXPRESSION = 0;
-    private final int FIRST_EXPRESSION = 1;
-    private final int SECOND_EXPRESSION = 2;
-    private final int NESTED_EXPRESSION = 3;
-
-    /*Containers of global and local variables respectively*/
-    private HashMap<String, Variable> globalVariables;
-    private HashMap<Integer, HashMap<String, Variable>> localVariables;
-
-    /*Flags
-    * 1) If the SA is currently in the body of a for loop
-    * 2) The current scope. (The depth of nesting of for-loop)*/
-    private boolean forStatementBody;
-    private int forStatementCount;
-
-    /*Flags
-    * 1) expressionsSeen marks the number of consecutive (recursive) expressions that the SA parses
-    * 2) varType1 and varType2 are the variable types given in an expressions. Used in semantic evaluation*/
-    private int expressionsSeen;
-    private Variable.Type varType1, varType2;
+    static final String TRACE_METHOD = ": an error in method \"{0}\" of the Syntax Analyser. Error is";
+    static final String BUDGET_EXCEEDED = ": the compilation was stopped, because {0}";
+
+    /*The semantic analysis of the program, and where the semantic events are sent: to it, as they come, or to the
+    * ParseLog of a parse that is recorded*/
+    private final SemanticAnalyser semantics = new SemanticAnalyser();
+    private SemanticEvents events = semantics;
+
+    /**
+     * How expressions are analysed
+     */
+    public enum ExpressionMode {
+        /*A single loop that climbs the precedence of the operators, whose trace is that of the non-terminals
+        * Expression, Term and Factor calling each other for every operand and operator*/
+        PRECEDENCE,
+        /*The loop, whose trace is a single Expression for every expression, with the operands in the order that they
+        * are read and every operator after its operands (the tree of which the back-ends do not take)*/
+        COMPACT
+    }
+    private ExpressionMode expressionMode = ExpressionMode.PRECEDENCE;
+
+    /*The precedence of the operators: those that bind tighter have a higher one, and other tokens end an expression*/
+    private static final int ADDITIVE = 1;
+    private static final int MULTIPLICATIVE = 2;
+
+    /*The operators of the expressions being analysed that are not applied yet, as a stack that the expressions in
+    * parentheses continue (the SemanticAnalyser keeps the operands that they wait for)*/
+    private Token[] operators = new Token[8];
+    private int operatorCount;
+
+    /*The budget of the compilation, or null, and the depth of nesting of the non-terminals that are open*/
+    private CompilationBudget budget;
+    private int depth;
 
     /**
      * Constructor of Syntax Analyser
@@ -51,23 +60,247 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
     SyntaxAnalyser(String filename) throws IOException {
 
         // Instantiates the Lexical Analyser, so it can be accessed during execution of the parse method
-        this.lex = new LexicalAnalyser(filename);
-        this.globalVariables = new HashMap<>();
-        this.localVariables = new HashMap<>();
-        this.forStatementBody = false;
-        this.forStatementCount = 0;
-        this.expressionsSeen = NO_EXPRESSION;
+        this(new LexicalAnalyser(filename));
+    }
+
+    /**
+     * Constructor of Syntax Analyser, for a program that is in memory
+     * @param name The name that stands for the file of the program
+     * @param text The text of the program
+     */
+    public SyntaxAnalyser(String name, CharSequence text) {
+
+        this(new LexicalAnalyser(name, text));
+    }
+
+    /**
+     * Constructor of Syntax Analyser, for a program that a reader reads
+     * @param name The name that stands for the file of the program
+     * @param reader The reader of the text of the program
+     * @throws IOException If the first line of the program can not be read
+     */
+    public SyntaxAnalyser(String name, Reader reader) throws IOException {
+
+        this(new LexicalAnalyser(name, reader));
+    }
+
+    /**
+     * @param name The name that stands for the file of the program
+     * @param text The characters of the text of the program, which are read in place
+     * @return A Syntax Analyser of the program
+     */
+    public static SyntaxAnalyser of(String name, char[] text) {
+
+        return new SyntaxAnalyser(LexicalAnalyser.of(name, text));
+    }
+
+    /**
+     * @param name The name that stands for the file of the program
+     * @param bytes The bytes of the text of the program, in the default charset, from their position to their limit
+     * @return A Syntax Analyser of the program
+     */
+    public static SyntaxAnalyser of(String name, ByteBuffer bytes) {
+
+        return new SyntaxAnalyser(LexicalAnalyser.of(name, bytes));
+    }
+
+    /**
+     * @param name The name that stands for the file of the program
+     * @param bytes The bytes of the text of the program, from their position to their limit
+     * @param charset The charset of the text
+     * @return A Syntax Analyser of the program
+     */
+    public static SyntaxAnalyser of(String name, ByteBuffer bytes, Charset charset) {
+
+        return new SyntaxAnalyser(LexicalAnalyser.of(name, bytes, charset));
+    }
+
+    /**
+     * Constructor of Syntax Analyser
+     * @param tokens Where the tokens of the program that will be analysed are read from
+     */
+    SyntaxAnalyser(TokenSource tokens) {
+
+        this.lex = tokens;
+    }
+
+    /**
+     * @param mode How the expressions are analysed, from now on. Every mode reports the same analysis for a
+     * program whose expressions are valid, and only the COMPACT mode a different trace of it.
+     */
+    public void setExpressionMode(ExpressionMode mode) {
+
+        this.expressionMode = mode;
+    }
+
+    /**
+     * @return How the expressions are analysed
+     */
+    public ExpressionMode getExpressionMode() {
+
+        return expressionMode;
+    }
+
+    /**
+     * @param budget The limits of the resources that the analysis of a program may use, from now on, or null for
+     * none. The budget is started again by every analysis, and the Lexical Analyser checks it as well.
+     */
+    public void setBudget(CompilationBudget budget) {
+        this.budget = budget;
+        semantics.setBudget(budget);
+        if (lex instanceof LexicalAnalyser)
+            ((LexicalAnalyser) lex).setBudget(budget);
+    }
+
+    /**
+     * @param references What to tell of the declarations, assignments and uses of the variables, from now on, or
+     * null
+     */
+    public void setReferences(SemanticAnalyser.References references) {
+
+        semantics.setReferences(references);
+    }
+
+    /**
+     * Makes the analyses from now on resolve the calls of a program, as a build does: a call of a procedure that is
+     * neither declared by the program nor one of the given ones (nor get or put) is an error. The program may declare
+     * a procedure of the same name as one of them, which its calls then call.
+     * @param imports The procedures of the units that the program can call, or null to allow a call of any procedure
+     * that the program does not declare
+     */
+    public void setImports(Collection<Procedure> imports) {
+
+        semantics.setImports(imports);
+    }
+
+    /**
+     * @return The procedures that the last analysis declared, in order, which are the interface of its program (of
+     * those whose declarations it read, if it failed). It is cleared by the next analysis.
+     */
+    public Collection<Procedure> getProcedures() {
+
+        return semantics.getProcedures();
+    }
+
+    /**
+     * Makes this Syntax Analyser analyse another file, as a new one would. The Lexical Analyser and the Semantic
+     * Analyser are kept and cleared rather than built again, so that a single Syntax Analyser can analyse many files in
+     * turn (i.e. on each thread of a batch compiler).
+     * @param filename the name of the file that will be analysed
+     * @throws IOException If the file can not be read
+     */
+    public void reset(String filename) throws IOException {
+        if (lex instanceof LexicalAnalyser)
+            ((LexicalAnalyser) lex).reset(filename);
+        else {
+            lex = new LexicalAnalyser(filename);
+            ((LexicalAnalyser) lex).setBudget(budget);
+        }
+        clear();
+    }
+
+    /**
+     * Makes this Syntax Analyser analyse a program that is in memory, as a new one would
+     * @param name The name that stands for the file of the program
+     * @param text The text of the program
+     */
+    public void reset(String name, CharSequence text) {
+        if (lex instanceof LexicalAnalyser)
+            ((LexicalAnalyser) lex).reset(name, text);
+        else {
+            lex = new LexicalAnalyser(name, text);
+            ((LexicalAnalyser) lex).setBudget(budget);
+        }
+        clear();
+    }
+
+    /**
+     * Makes this Syntax Analyser analyse the tokens of another program, as a new one would
+     * @param tokens Where the tokens of the program that will be analysed are read from
+     */
+    void reset(TokenSource tokens) {
+        this.lex = tokens;
+        clear();
+    }
+
+    /**
+     * Clears the state of the last analysis. The States that were taken of it keep the global variables of it.
+     */
+    private void clear() {
+        semantics.start(null);
+        this.myGenerate = null;
+        this.nextToken = null;
+        this.depth = 0;
+    }
+
+    /**
+     * Analyses the whole program, within the budget of the compilation if there is one
+     * @param generate The code generator to report the analysis to.
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If the program is not valid, or it exceeds the budget
+     */
+    @Override
+    public void analyse(Generate generate) throws IOException, CompilationException {
+        semantics.start(generate);
+        analyse(generate, semantics);
+    }
+
+    /**
+     * Parses the whole program without analysing its semantics or printing anything: the trace and the semantic
+     * events are recorded, with the error that ends the parse if there is one, for the semantics of the program to be
+     * analysed by replaying them (i.e. on another thread, as the next file is parsed). The number of variables is not
+     * counted against the budget of the compilation, if there is one, as they are only declared by the replay.
+     * @return The record of the parse
+     * @throws IOException If an i/o exception occurs.
+     */
+    public ParseLog record() throws IOException {
+        ParseLog log = new ParseLog(lex.getFilename(), columns);
+        try {
+            analyse(log, log);
+        }
+        catch (CompilationException ce) {
+            log.fail(ce);
+        }
+        return log;
+    }
+
+    /**
+     * Analyses the whole program, sending its semantic events to the given ones
+     */
+    private void analyse(Generate generate, SemanticEvents events) throws IOException, CompilationException {
+        if (budget != null)
+            budget.start();
+        depth = 0;
+        this.events = events;
+        super.analyse(generate);
     }
 
     /**
-     * Method for non-terminal 'StatementPart'.  StatementPart is the distinguished symbol of this language.
+     * Analyses a program: the declarations of its procedures, if it has any, each at the top level of the trace, and
+     * then its StatementPart, which is the distinguished symbol of this language. A unit that declares procedures may
+     * have no StatementPart, for other units to call its procedures.
      * @throws IOException If an i/o exception occurs.
      * @throws CompilationException If an invalid token is parsed
      */
     @Override
     public void _statementPart_() throws IOException, CompilationException {
+        boolean declarations = false;
+        while (nextToken.symbol == Token.procedureSymbol) {
+            _procedureDeclaration_();
+            declarations = true;
+        }
+        if (!declarations || nextToken.symbol != Token.eofSymbol)
+            statementPart();
+    }
+
+    /**
+     * Method for non-terminal 'StatementPart'
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If an invalid token is parsed
+     */
+    private void statementPart() throws IOException, CompilationException {
         final String nonTerminalName = "StatementPart";
-        myGenerate.commenceNonterminal(nonTerminalName); // Indicate start of Non-terminal recursion
+        commence(nonTerminalName); // Indicate start of Non-terminal recursion
 
         acceptTerminal(Token.beginSymbol); // first thing to do is accept the begin symbol (terminal)
         try {
@@ -79,7 +312,80 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         }
         acceptTerminal(Token.endSymbol); // last thing to do is to accept the end symbol (terminal)
 
-        myGenerate.finishNonterminal(nonTerminalName); // Indicate end of the distinguished symbol
+        finish(nonTerminalName); // Indicate end of the distinguished symbol
+    }
+
+    /**
+     * Method for non-terminal "ProcedureDeclaration".
+     * Accepted grammar: procedure identifier ( [ <parameter list> ] ) is <statement part>
+     * The parameters are the variables that the body starts with, and all the variables of the body are removed when
+     * it ends, so a procedure only sees its own. The procedure can be called from its own body on.
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If an invalid token is parsed
+     */
+    private void _procedureDeclaration_() throws IOException, CompilationException {
+        final String nonTerminalName = "ProcedureDeclaration";
+        commence(nonTerminalName); //mark the beginning of non-terminal
+
+        try {
+            acceptTerminal(Token.procedureSymbol); // accept terminal "procedure"
+            Token name = nextToken;
+            acceptTerminal(Token.identifier); // accept the name of the procedure
+            acceptTerminal(Token.leftParenthesis);
+            // the parameters are declared as the first variables of the procedure, which may have none
+            if (nextToken.symbol != Token.rightParenthesis)
+                _parameterList_();
+            acceptTerminal(Token.rightParenthesis);
+
+            events.procedure(name, nextToken); // declare the procedure before its body, which may call it
+
+            acceptTerminal(Token.isSymbol); // accept terminal "is"
+            statementPart();
+            events.endProcedure(); // the variables of the procedure are removed
+        }
+        // catch error thrown here and throw a new error, to build a stack trace
+        catch (CompilationException ce){
+            myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
+        }
+        finish(nonTerminalName); // mark the end of non-terminal
+    }
+
+    /**
+     * Method for non-terminal "ParameterList".
+     * Accepted grammar: identifier : <type> [ , <parameter list> ], where the type is integer or float (a Number), or
+     * string
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If an invalid token is parsed
+     */
+    private void _parameterList_() throws IOException, CompilationException {
+        final String nonTerminalName = "ParameterList";
+        commence(nonTerminalName);
+
+        try {
+            Token parameter = nextToken;
+            acceptTerminal(Token.identifier);
+            acceptTerminal(Token.colonSymbol);
+            Variable.Type type = Variable.Type.UNKNOWN;
+            switch (nextToken.symbol) {
+                case Token.integerSymbol: acceptTerminal(Token.integerSymbol); type = Variable.Type.NUMBER; break;
+                case Token.floatSymbol: acceptTerminal(Token.floatSymbol); type = Variable.Type.NUMBER; break;
+                case Token.stringSymbol: acceptTerminal(Token.stringSymbol); type = Variable.Type.STRING; break;
+                default: myGenerate.reportError(nextToken, MessageFormat.format(INV_TKN_ERR, nextToken.text));
+            }
+            events.parameter(parameter, type, nextToken);
+
+            // if next token is a comma, then call this method recursively
+            if (nextToken.symbol == Token.commaSymbol) {
+                acceptTerminal(Token.commaSymbol);
+                _parameterList_(); //recursive call
+            }
+        }
+        // catch error thrown here and throw a new error, to build a stack trace
+        catch (CompilationException ce){
+            myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
+        }
+
+        finish(nonTerminalName);
     }
 
     /**
@@ -89,7 +395,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _statementList_() throws IOException, CompilationException{
         final String nonTerminalName = "StatementList";
-        myGenerate.commenceNonterminal(nonTerminalName); // indicate that a statement list has commenced
+        commence(nonTerminalName); // indicate that a statement list has commenced
 
         try {
             _statement_(); // parse the statement
@@ -105,7 +411,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName); // mark the end of statement list
+        finish(nonTerminalName); // mark the end of statement list
     }
 
     /**
@@ -115,7 +421,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _statement_() throws IOException, CompilationException {
         final String nonTerminalName = "Statement";
-        myGenerate.commenceNonterminal(nonTerminalName);  //mark the beginning of a 'statement'
+        commence(nonTerminalName);  //mark the beginning of a 'statement'
 
         try {
             //Switch cases to check if an accepted symbol is read. If not, then default is to throw CompilationError.
@@ -137,27 +443,11 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
                     _untilStatement_();
                     break;
                 case Token.forSymbol:
-                    if(this.forStatementCount == 0)  // check if this is the most outer loop
-                        this.forStatementBody = true; // set flag that indicates we are in a for loop
-                    // increment counter by 1, so the analyser can determine whether the outer for loop has finished
-                    this.forStatementCount ++;
-
                     /*ENTER FOR STATEMENT*/
+                    events.enterFor();
                     _forStatement_();
                     /*EXIT FOR STATEMENT and delete all variables of this for-loop's scope*/
-
-                    //Print the destroyed variables
-                    HashMap<String, Variable> scope = localVariables.get(forStatementCount);
-                    for(Variable v : scope.values()){
-                        myGenerate.removeVariable(v);
-                    }
-
-                    localVariables.remove(forStatementCount);//Remove the scope (which contains the destroyed variables)
-                    this.forStatementCount --; // decrement by 1, to indicate that for-loop has exited
-
-                    if(this.forStatementCount == 0)  // check if this is the most outer loop
-                        this.forStatementBody = false; // set flag that indicates we are in a for loop
-
+                    events.exitFor();
                     break;
                 // if none of the above cases, throw an error for invalid token
                 default:
@@ -168,7 +458,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName); // mark the end of a 'statement'
+        finish(nonTerminalName); // mark the end of a 'statement'
     }
 
     /**
@@ -178,10 +468,9 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _assignmentStatement_() throws IOException, CompilationException {
         final String nonTerminalName = "AssignmentStatement";
-        myGenerate.commenceNonterminal(nonTerminalName);  // mark the beginning of an 'assignment statement'
+        commence(nonTerminalName);  // mark the beginning of an 'assignment statement'
         try {
-            String variableIdentifier = nextToken.text;
-            Variable v;
+            Token variableIdentifier = nextToken;
             acceptTerminal(Token.identifier);  // first accept the identifier. If it is a valid identifier, keep on
             acceptTerminal(Token.becomesSymbol); // accept the terminal symbol ':=' that assigns value to identifier
 
@@ -189,27 +478,23 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
                 // If next symbol is either identifier, number constant of a left parenthesis, then call method
                 //for non-terminal <expression>
                 case Token.identifier:
-                    _expression_();
-                    expressionsSeen = NO_EXPRESSION; //when expression returns, reset variable
-                    // if no error is thrown after expression has finished, then varType1 is the type of this variable
-                    v = new Variable(variableIdentifier, varType1);
-                    createVariable(variableIdentifier, v);
+                    // if no error is thrown after expression has finished, then its type is the type of this variable
+                    expression();
+                    events.assignExpression(variableIdentifier, nextToken);
                     break;
                 case Token.numberConstant:
-                    v = new Variable(variableIdentifier, Variable.Type.NUMBER);
-                    _expression_();
-                    expressionsSeen = NO_EXPRESSION; //when expression returns, reset variable
-                    createVariable(variableIdentifier, v);
+                    expression();
+                    events.discardExpression();
+                    events.assign(variableIdentifier, Variable.Type.NUMBER, nextToken);
                     break;
                 case Token.leftParenthesis:
-                    _expression_();
-                    expressionsSeen = NO_EXPRESSION; //when expression returns, reset variable
+                    expression();
+                    events.discardExpression();
                     break;
                 // Otherwise, if symbol is a string constant, then accept it as a terminal
                 case Token.stringConstant:
-                    v = new Variable(variableIdentifier, Variable.Type.STRING);
                     acceptTerminal(Token.stringConstant);
-                    createVariable(variableIdentifier, v);
+                    events.assign(variableIdentifier, Variable.Type.STRING, nextToken);
                     break;
 
                 // If everything else fails, then throw an exception, which will be caught later
@@ -220,7 +505,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName);
+        finish(nonTerminalName);
     }
 
     /**
@@ -231,7 +516,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _ifStatement_() throws IOException, CompilationException {
         final String nonTerminalName = "IfStatement";
-        myGenerate.commenceNonterminal(nonTerminalName);
+        commence(nonTerminalName);
 
         try {
             /*1. Accept "if" token*/
@@ -264,31 +549,35 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName);
+        finish(nonTerminalName);
     }
 
     /**
      * Method for non-terminal "Procedure Statement".
-     * Accepted grammar: call identifier ( <argument list> )
+     * Accepted grammar: call identifier ( [ <argument list> ] ), where get and put take at least one argument
      * @throws IOException If an i/o exception occurs.
      * @throws CompilationException If an invalid token is parsed.
      */
     private void _procedureStatement_() throws IOException, CompilationException {
         final String nonTerminalName = "ProcedureStatement";
-        myGenerate.commenceNonterminal(nonTerminalName); //mark the beginning of non-terminal
+        commence(nonTerminalName); //mark the beginning of non-terminal
 
         try {
             acceptTerminal(Token.callSymbol); // accept terminal "call"
+            Token name = nextToken;
             acceptTerminal(Token.identifier); // accept an identifier as terminal (reserved "get")
             acceptTerminal(Token.leftParenthesis); // accept a left parenthesis terminal
-            _argumentList_(); // call method for non-terminal <argument list>
+            // call method for non-terminal <argument list>, unless a procedure other than get and put takes none
+            if (nextToken.symbol != Token.rightParenthesis || name.textEquals("get") || name.textEquals("put"))
+                _argumentList_();
             acceptTerminal(Token.rightParenthesis); // finally accept a right parenthesis terminal
+            events.call(name, nextToken); // check the arguments against the parameters of the procedure
         }
         // catch error thrown here and throw a new error, to build a stack trace
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName); // mark the end of non-terminal
+        finish(nonTerminalName); // mark the end of non-terminal
     }
 
     /**
@@ -298,7 +587,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _whileStatement_() throws IOException, CompilationException {
         final String nonTerminalName = "WhileStatement";
-        myGenerate.commenceNonterminal(nonTerminalName); //mark beginning of non terminal
+        commence(nonTerminalName); //mark beginning of non terminal
 
         try {
             acceptTerminal(Token.whileSymbol); // accept terminal 'while'
@@ -312,7 +601,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName); //mark the end of non-terminal
+        finish(nonTerminalName); //mark the end of non-terminal
 
     }
 
@@ -323,7 +612,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _untilStatement_() throws IOException, CompilationException {
         final String nonTerminalName = "UntilStatement";
-        myGenerate.commenceNonterminal(nonTerminalName); //mark beginning of non-terminal
+        commence(nonTerminalName); //mark beginning of non-terminal
 
         // execute in this sequence, based on grammar
         try {
@@ -336,7 +625,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName); //mark the end of nonterminal
+        finish(nonTerminalName); //mark the end of nonterminal
 
     }
 
@@ -347,7 +636,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _forStatement_() throws IOException, CompilationException {
         final String nonTerminalName = "ForStatement";
-        myGenerate.commenceNonterminal(nonTerminalName);
+        commence(nonTerminalName);
 
         try {
             acceptTerminal(Token.forSymbol);  // for
@@ -367,7 +656,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName);
+        finish(nonTerminalName);
 
     }
 
@@ -378,15 +667,12 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _argumentList_() throws IOException, CompilationException {
         final String nonTerminalName = "ArgumentList";
-        myGenerate.commenceNonterminal(nonTerminalName);
+        commence(nonTerminalName);
 
         try {
-            // Check if this variable exists, before accepting it
-            if(variableExists(nextToken.text))
-                acceptTerminal(Token.identifier);
-            // if this variable does not exist, then throw an error
-            else
-                myGenerate.reportError(nextToken, MessageFormat.format(VAR_NAME_NOT_EXISTS, nextToken.text));
+            // Check if this variable exists, before accepting it, and keep its type for the call
+            events.argument(nextToken);
+            acceptTerminal(Token.identifier);
             // if next token is a comma, then call this method recursively
             if (nextToken.symbol == Token.commaSymbol) {
                 acceptTerminal(Token.commaSymbol);
@@ -398,7 +684,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
 
-        myGenerate.finishNonterminal(nonTerminalName);
+        finish(nonTerminalName);
     }
 
     /**
@@ -408,15 +694,12 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
      */
     private void _condition_() throws IOException, CompilationException {
         final String nonTerminalName = "Condition";
-        myGenerate.commenceNonterminal(nonTerminalName);
+        commence(nonTerminalName);
 
         try {
-            // STEP 1. Check if this variable exists
-            if(variableExists(nextToken.text))
-                acceptTerminal(Token.identifier); //accept an identifier terminal
-            // if this variable does not exist, then throw an error
-            else
-                myGenerate.reportError(nextToken, MessageFormat.format(VAR_NAME_NOT_EXISTS, nextToken.text));
+            // STEP 1. Check if this variable exists, and accept an identifier terminal
+            events.use(nextToken);
+            acceptTerminal(Token.identifier);
 
             _conditionalOperator_();
 
@@ -424,11 +707,8 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
             switch (nextToken.symbol) {
                 case Token.identifier:
                     // STEP 2: Same as STEP 1
-                    if(variableExists(nextToken.text))
-                        acceptTerminal(Token.identifier); //accept an identifier terminal
-                    // if this variable does not exist, then throw an error
-                    else
-                        myGenerate.reportError(nextToken, MessageFormat.format(VAR_NAME_NOT_EXISTS, nextToken.text));
+                    events.use(nextToken);
+                    acceptTerminal(Token.identifier);
                     break;
                 case Token.numberConstant: acceptTerminal(Token.numberConstant); break;
                 case Token.stringConstant: acceptTerminal(Token.stringConstant); break;
@@ -440,7 +720,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName);
+        finish(nonTerminalName);
     }
 
     /**
@@ -451,7 +731,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
     private void _conditionalOperator_() throws IOException, CompilationException {
         final String nonTerminalName = "ConditionalOperator";
         final String expectedTokens = "> or >= or = or /= or < or <="; //the expected tokens (terminals)
-        myGenerate.commenceNonterminal(nonTerminalName); //mark beginning of non terminal
+        commence(nonTerminalName); //mark beginning of non terminal
 
         try {
             // accept one of the expected tokens, or throw an error
@@ -472,246 +752,159 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
         catch (CompilationException ce){
             myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
         }
-        myGenerate.finishNonterminal(nonTerminalName); //mark end of non terminal
+        finish(nonTerminalName); //mark end of non terminal
 
     }
 
     /**
-     * Method for non-terminal "expression". This method will not allow a String and a Number in same operation.
-     * I.e. You can not do: myVariable := "Hello world" + 128;
+     * Analyses the expression of an assignment, in the mode of the expressions. Its value is the last operand that is
+     * sent to the semantic events, which the assignment takes.
      * @throws IOException If an i/o exception occurs.
      * @throws CompilationException If an invalid token is parsed
      */
-    private void _expression_() throws IOException, CompilationException {
-        final String nonTerminalName = "Expression";
-        myGenerate.commenceNonterminal(nonTerminalName);
-
-        //Check which part of the sequence this is. If expressionsSeen is No expression, then this is the first.
-        //If expressionsSeen is first expression, then this is the second expression. And so on and so forth
-        switch (expressionsSeen){
-            case NO_EXPRESSION:
-                expressionsSeen = FIRST_EXPRESSION;
-                break;
-            case FIRST_EXPRESSION:
-                expressionsSeen = SECOND_EXPRESSION;
-                break;
-            case SECOND_EXPRESSION:
-                expressionsSeen = NESTED_EXPRESSION;
-                break;
-        }
-
-        try {
-            // if symbol is either identifier, number constant or a left parenthesis, then call <term>'s method
-            switch (nextToken.symbol) {
-                case Token.identifier:
-                    String temp = nextToken.text;  //Store this. If _term_() returns, then variable exists. Get it.
-                    _term_();
-                    // If this is the first expression, assign only varType1
-                    if(expressionsSeen == FIRST_EXPRESSION)
-                        varType1 = getVariable(temp).type;
-                    //If this is the second expression, assign only varType2
-                    else if(expressionsSeen == SECOND_EXPRESSION)
-                        varType2 = getVariable(temp).type;
-                    // If this is a nested expression, deeper than 2 expressions,
-                    //then assign the value of varType2 to varType1 and assign current type to varType2
-                    else {
-                        varType1 = varType2;
-                        varType2 = getVariable(temp).type;
-                    }
-                    break;
-                case Token.numberConstant:
-                    _term_();
-                    if(expressionsSeen == FIRST_EXPRESSION)
-                        varType1 = Variable.Type.NUMBER;
-                    else if(expressionsSeen == SECOND_EXPRESSION)
-                        varType2 = Variable.Type.NUMBER;
-                    else {
-                        varType1 = varType2;
-                        varType2 = Variable.Type.NUMBER;
-                    }
-                    break;
-                case Token.stringConstant:
-                    if(expressionsSeen == FIRST_EXPRESSION)
-                        varType1 = Variable.Type.STRING;
-                    else if(expressionsSeen == SECOND_EXPRESSION)
-                        varType2 = Variable.Type.STRING;
-                    else {
-                        varType1 = varType2;
-                        varType2 = Variable.Type.STRING;
-                    }
-                    break;
-                case Token.leftParenthesis:
-                    _term_();
-                    break;
-            }
-            //Variable to store temporary token, in order to pass as an error parameter
-            Token tempToken;
-            // When returning from _term_(), check if symbol is '+' or '-'. If yes, then call current method recursively
-            switch (nextToken.symbol) {
-                case Token.plusSymbol:
-                    acceptTerminal(Token.plusSymbol);
-                    tempToken = nextToken;
-                    _expression_();
-                    //Make sure this is not the first expression, otherwise varType2 will be un-initialised
-                    if(expressionsSeen != FIRST_EXPRESSION){
-                        //Disallow different types
-                        if(varType1 != varType2){
-                            myGenerate.reportError(tempToken, INV_OPERATION);
-                        }
-                    }
-                    break;
-                case Token.minusSymbol:
-                    acceptTerminal(Token.minusSymbol);
-                    tempToken = nextToken;
-                    _expression_();
-                    //make sure this is not the first expression
-                    if(expressionsSeen != FIRST_EXPRESSION) {
-                        //disallow different types
-                        if (varType1 != varType2) {
-                            myGenerate.reportError(tempToken, INV_OPERATION);
-                        }
-                        //disallow subtraction of strings
-                        if (varType1 == Variable.Type.STRING || varType2 == Variable.Type.STRING) {
-                            myGenerate.reportError(tempToken, INV_OPERATION);
-                        }
-                    }
-                    break;
-            }
-        }
-        // catch error thrown here and throw a new error, to build a stack trace
-        catch (CompilationException ce){
-            myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
-        }
-
-        myGenerate.finishNonterminal(nonTerminalName);
+    private void expression() throws IOException, CompilationException {
 
+        climb(false);
     }
 
     /**
-     * Method for non-terminal "term"
+     * Analyses an expression in a single loop, instead of a method for every operand and operator. The operands (the
+     * factors) are read in turn, and the operators between them are kept on a stack until the operator after their
+     * right operand does not bind tighter than they do, when they are applied: left to right, and * and / before + and
+     * -. An expression in parentheses is analysed by a call of its own. Every operand and every operator that is
+     * applied is sent to the semantic events, which check the type of every operand as its operator is applied, so each
+     * of them is looked up once (see SemanticAnalyser.apply). An operand of * or / is sent before the operator is
+     * accepted, and a token that does not start an operand where one is expected (i.e. "a * ;" or "()") is an invalid
+     * token.
+     * In the PRECEDENCE mode the trace is that of the non-terminals Expression, Term and Factor calling each other for
+     * every operand and operator, which nest to the right, and an error is reported from each of them that is open. In
+     * the COMPACT mode it is a single Expression.
+     * @param nested true for an expression in parentheses
      * @throws IOException If an i/o exception occurs.
-     * @throws CompilationException If an invalid token is parsed
+     * @throws CompilationException If an invalid token is parsed, or an operand has the wrong type
      */
-    private void _term_() throws IOException, CompilationException {
-        final String nonTerminalName = "Term";
-        myGenerate.commenceNonterminal(nonTerminalName);
-
-        // Store this as temp token, so that it can be passed to reportError
-        Token tempToken = null;
-        //Variable to store temporary token, in order to pass as an error parameter
-        Variable.Type type = Variable.Type.UNKNOWN;
+    private void climb(boolean nested) throws IOException, CompilationException {
+        final boolean trace = expressionMode == ExpressionMode.PRECEDENCE;
+        final int operatorBase = operatorCount;
+        // the non-terminals of the trace that are open
+        int expressions = 0, terms = 0;
+        boolean factor = false;
 
         try {
-            // if symbol is either identifier, number constant or a left parenthesis, then call <factor>'s method
-            // method _factor_() returns and does not throw an error, then store Type, for check afterwards.
-            switch (nextToken.symbol) {
-                case Token.identifier:
-                    String temp = nextToken.text;  //Store this. If _term_() returns, then variable exists. Get it.
-                    tempToken = nextToken;
-                    _factor_();
-                    type = getVariable(temp).type;
-                    break;
-                case Token.numberConstant:
-                    tempToken = nextToken;
-                    _factor_();
-                    type = Variable.Type.NUMBER;
-                    break;
-                case Token.leftParenthesis:
-                    _factor_();
-                    break;
+            if (trace || !nested) {
+                commence("Expression");
+                expressions++;
             }
+            else
+                enter(); // the parentheses nest as deep as the Expression of the trace would
+            while (true) {
+                Token first = nextToken;
+                if (first.symbol != Token.identifier && first.symbol != Token.numberConstant
+                        && first.symbol != Token.leftParenthesis)
+                    myGenerate.reportError(first, MessageFormat.format(INV_TKN_ERR, first.text));
+                if (trace) {
+                    commence("Term");
+                    terms++;
+                    commence("Factor");
+                    factor = true;
+                }
 
-            // When returning from _factor_(), check if symbol is '*' or '/'. If yes, then call current method recursively
-            // If the type of the variable before * or / is String, then disallow
-            switch (nextToken.symbol) {
-                case Token.timesSymbol:
-                    //disallow multiplication of strings
-                    if (type == Variable.Type.STRING) {
-                        myGenerate.reportError(tempToken, INV_OPERATION);
-                    }
-                    // accept '*'
-                    acceptTerminal(Token.timesSymbol);
-
-                    //get type of token that is after the '*' symbol
-                    String temp_identifier1 = nextToken.text;
-                    if (nextToken.symbol == Token.identifier)
-                        type = getVariable(temp_identifier1).type;
-                    else if (nextToken.symbol == Token.stringConstant)
-                        type = Variable.Type.STRING;
-
-                    _term_();
-
-                    // check type
-                    if (type == Variable.Type.STRING) {
-                        myGenerate.reportError(tempToken, INV_OPERATION);
-                    }
-                    break;
-                case Token.divideSymbol:
-                    //disallow string division
-                    if (type == Variable.Type.STRING) {
-                        myGenerate.reportError(tempToken, INV_OPERATION);
-                    }
-                    //accept '/'
-                    acceptTerminal(Token.divideSymbol);
-
-                    String temp_identifier2 = nextToken.text;
-                    if (nextToken.symbol == Token.identifier)
-                        type = getVariable(temp_identifier2).type;
-                    else if (nextToken.symbol == Token.stringConstant)
-                        type = Variable.Type.STRING;
-
-                    _term_();
-
-                    if (type == Variable.Type.STRING) {
-                        myGenerate.reportError(tempToken, INV_OPERATION);
-                    }
+                switch (first.symbol) {
+                    case Token.identifier:
+                        events.operand(first);
+                        acceptTerminal(Token.identifier);
+                        break;
+                    case Token.numberConstant:
+                        acceptTerminal(Token.numberConstant);
+                        events.number(first);
+                        break;
+                    case Token.leftParenthesis:
+                        acceptTerminal(Token.leftParenthesis, trace); // the compact trace has no parentheses
+                        climb(true);
+                        acceptTerminal(Token.rightParenthesis, trace);
+                        events.nested(first);
+                        break;
+                }
+                if (trace) {
+                    finish("Factor");
+                    factor = false;
+                }
+
+                Token operator = nextToken;
+                int precedence = precedence(operator.symbol);
+                if (trace) {
+                    for (; precedence < MULTIPLICATIVE && terms > 0; terms--)
+                        finish("Term"); // the terms before a + or - (or the end)
+                }
+                while (operatorCount > operatorBase && precedence(operators[operatorCount - 1].symbol) >= precedence) {
+                    Token applied = operators[--operatorCount];
+                    events.apply(applied, operator);
+                    if (!trace)
+                        myGenerate.insertTerminal(applied); // after its operands
+                }
+                if (precedence == 0)
                     break;
+
+                if (precedence == MULTIPLICATIVE)
+                    events.multiplicand(first, operator);
+                acceptTerminal(operator.symbol, trace); // the compact trace has it after its operands
+                if (operatorCount == operators.length)
+                    operators = Arrays.copyOf(operators, operatorCount * 2);
+                operators[operatorCount++] = operator;
+                if (trace && precedence == ADDITIVE) {
+                    commence("Expression");
+                    expressions++;
+                }
             }
+            for (; expressions > 0; expressions--)
+                finish("Expression");
+            if (!trace && nested)
+                depth--;
         }
-        // catch error thrown here and throw a new error, to build a stack trace
+        // report the error from each of the non-terminals that are open, innermost first, to build a stack trace
         catch (CompilationException ce){
-            myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
+            if (factor)
+                ce = traced("Factor", ce);
+            for (; terms > 0; terms--)
+                ce = traced("Term", ce);
+            for (; expressions > 0; expressions--)
+                ce = traced("Expression", ce);
+            throw ce;
+        }
+        finally {
+            operatorCount = operatorBase;
         }
-
-        myGenerate.finishNonterminal(nonTerminalName);
     }
 
     /**
-     * Method for non-terminal "factor"
-     * @throws IOException If an i/o exception occurs.
-     * @throws CompilationException If an invalid token is parsed
+     * @return The precedence of an operator, or 0 if the symbol is not an operator
      */
-    private void _factor_() throws IOException, CompilationException {
-        final String nonTerminalName = "Factor";
-        myGenerate.commenceNonterminal(nonTerminalName);
+    private static int precedence(int symbol) {
+        switch (symbol) {
+            case Token.plusSymbol:
+            case Token.minusSymbol:
+                return ADDITIVE;
+            case Token.timesSymbol:
+            case Token.divideSymbol:
+                return MULTIPLICATIVE;
+            default:
+                return 0;
+        }
+    }
 
+    /**
+     * @param nonTerminalName The name of the non-terminal that an error was found in
+     * @param cause The error
+     * @return The error in the non-terminal, caused by the given one, as the method of the non-terminal reports it
+     */
+    private CompilationException traced(String nonTerminalName, CompilationException cause) {
         try {
-            // based on what the token is, take the appropriate action
-            switch (nextToken.symbol) {
-                case Token.identifier:
-                    if(variableExists(nextToken.text)) {
-                        acceptTerminal(Token.identifier);
-                    }
-                    // if this variable does not exist, then throw an error
-                    else
-                        myGenerate.reportError(nextToken, MessageFormat.format(VAR_NAME_NOT_EXISTS, nextToken.text));
-                    break;
-                case Token.numberConstant:
-                    acceptTerminal(Token.numberConstant);
-                    break;
-                case Token.leftParenthesis:
-                    acceptTerminal(Token.leftParenthesis); // accept left parenthesis if one is read
-                    _expression_(); //call expression, but when the (SP) returns, expect a right parenthesis for each call!
-                    acceptTerminal(Token.rightParenthesis);
-                    break;
-            }
+            myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), cause);
         }
-        // catch error thrown here and throw a new error, to build a stack trace
-        catch (CompilationException ce){
-            myGenerate.reportError(nextToken, MessageFormat.format(TRACE_METHOD, nonTerminalName), ce);
+        catch (CompilationException ce) {
+            return ce;
         }
-        myGenerate.finishNonterminal(nonTerminalName);
-
+        return cause;
     }
 
     /**
@@ -726,7 +919,7 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
 
         if (examinedSymbol == symbol){
             myGenerate.insertTerminal(nextToken); //print terminal name to output
-            nextToken = lex.getNextToken();  //get next token from lexical analyser
+            advance();  //get next token from lexical analyser
         }
         else {
             myGenerate.reportError(nextToken,
@@ -735,94 +928,92 @@ public class SyntaxAnalyser extends AbstractSyntaxAnalyser {
     }
 
     /**
-     * This method will check the collections of temp variables and global variables. If an identifier does
-     * not exist, then create the variable, insert it in the appropriate collection and print that the.
-     * variable has been created ("rggDECL {variable}")
-     * @param identifier The variable identifier
-     * @param v The variable
+     * Reads the next token, and counts it against the budget of the compilation
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If the budget is exceeded (by this token, or by the Lexical Analyser)
      */
-    private void createVariable(String identifier, Variable v) throws CompilationException {
+    private void advance() throws IOException, CompilationException {
+        nextToken = lex.getNextToken();
+        if (budget != null && !budget.token())
+            myGenerate.reportError(nextToken, MessageFormat.format(BUDGET_EXCEEDED, budget.getExceeded()));
+    }
 
-        /*THIS CODE-SNIPPET CREATES A NEW VARIABLE, ONLY IF THE VARIABLE IS NOT ALREADY INSTANTIATED*/
-        if(!variableExists(identifier)){
-            myGenerate.addVariable(v);  //declare the creation of this variable
-            //check if we are in a for-loop
-            if(forStatementBody) {
-                //check if the scope already exists. If not exists, a new HashMap will be added
-                if(localVariables.containsKey(forStatementCount))
-                    localVariables.get(forStatementCount).put(identifier, v); //put variable in scope
-                else {
-                    HashMap<String, Variable> scope = new HashMap<>(); //create new hashmap to hold the scope
-                    scope.put(identifier, v); //put local variable of this scope
-                    localVariables.put(forStatementCount, scope); //put scope identifier + scope variables
-                }
-            }
-            else
-                globalVariables.put(identifier, v);
-        }
-        else{
-            Variable.Type expectedType = getVariable(identifier).type;
-            if (expectedType != v.type)
-                myGenerate.reportError(nextToken, MessageFormat.format(INV_TYPE, expectedType.name, v.type.name));
-        }
-
-        /*THIS SNIPPET WILL CREATE A NEW VARIABLE WHEN THERE IS AN ASSIGNMENT*/
-//        myGenerate.addVariable(v);  //declare the creation of this variable
-//        //check if we are in a for-loop
-//        if(forStatementBody) {
-//            //check if the scope already exists. If not exists, a new HashMap will be added
-//            if(localVariables.containsKey(forStatementCount))
-//                localVariables.get(forStatementCount).put(identifier, v); //put/replace variable in scope
-//            else {
-//                HashMap<String, Variable> scope = new HashMap<>(); //create new hashmap to hold the scope
-//                scope.put(identifier, v); //put local variable of this scope
-//                localVariables.put(forStatementCount, scope); //put scope identifier + scope variables
-//            }
-//        }
-//
-//        //otherwise, put in global-variables container
-//        else
-//            globalVariables.put(identifier, v);
-    }
-
-    /**
-     * Will return true if variable with specific identifier exists (is assigned).
-     * @param identifier The identifier of the variable
-     * @return true if variable exists
-     */
-    private boolean variableExists(String identifier){
-
-        //first check temporary variables
-        for(HashMap<String, Variable> scope : localVariables.values()){
-            for(Map.Entry<String, Variable> entry : scope.entrySet()) {
-                if(identifier.equals(entry.getKey()))
-                    return true;
-            }
-        }
+    /**
+     * Indicates that a non-terminal has commenced, one level deeper than the one that it is in
+     * @param nonTerminalName The name of the non-terminal
+     * @throws CompilationException If it is nested deeper than the budget of the compilation allows
+     */
+    private void commence(String nonTerminalName) throws CompilationException {
+        enter();
+        myGenerate.commenceNonterminal(nonTerminalName);
+    }
 
-        return globalVariables.containsKey(identifier);
+    /**
+     * Indicates that a non-terminal has finished
+     * @param nonTerminalName The name of the non-terminal
+     */
+    private void finish(String nonTerminalName) {
+        depth--;
+        myGenerate.finishNonterminal(nonTerminalName);
+    }
+
+    /**
+     * Goes a level deeper in the nesting of the non-terminals
+     * @throws CompilationException If it is deeper than the budget of the compilation allows
+     */
+    private void enter() throws CompilationException {
+        depth++;
+        if (budget != null && !budget.depth(depth))
+            myGenerate.reportError(nextToken, MessageFormat.format(BUDGET_EXCEEDED, budget.getExceeded()));
+    }
+
+    /**
+     * Accepts a token, as acceptTerminal does, and inserts it in the trace only if asked to
+     * @param symbol Is the symbol that the current token (nextToken) will be compared to.
+     * @param insert true if the token is inserted in the trace
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If the current token is not the one expected to read.
+     */
+    private void acceptTerminal(int symbol, boolean insert) throws IOException, CompilationException {
+        if (insert)
+            acceptTerminal(symbol);
+        else if (nextToken.symbol == symbol)
+            advance();
+        else
+            myGenerate.reportError(nextToken,
+                    MessageFormat.format(XPCTD_OTHR_TKN, Token.getName(symbol), nextToken.text));
     }
 
     /**
-     * @param identifier The name of the variable to retrieve (aka the variable's identifier)
-     * @return The variable object that has the name specified in "identifier". Returns null otherwise
-     * @throws NullPointerException If the identifier is the name of a variable that does not exist
+     * @return The semantic state of the analysis at this point, which should be between two statements
      */
-    private Variable getVariable(String identifier) throws NullPointerException{
+    SemanticAnalyser.State state() {
 
-        Variable var = null;
+        return semantics.state();
+    }
 
-        if(globalVariables.containsKey(identifier))
-            var = globalVariables.get(identifier);
-        else{
-            for(HashMap<String, Variable> scope : localVariables.values()){
-                for(Variable v : scope.values()) {
-                    if(identifier.equals(v.identifier))
-                        var = v;
-                }
-            }
-        }
+    /**
+     * Continues an analysis from the state that it had before a statement, with the given token as the first token of
+     * the statement. The tokens after it are read from the token source of this analyser.
+     * @param state The state before the statement
+     * @param generate The code generator to report the analysis to
+     * @param next The first token of the statement
+     */
+    void resume(SemanticAnalyser.State state, Generate generate, Token next) {
+        semantics.resume(state, generate);
+        this.events = semantics;
+        this.myGenerate = generate;
+        this.nextToken = next;
+        this.depth = 0;
+    }
+
+    /**
+     * Analyses a single statement, from the current token
+     * @throws IOException If an i/o exception occurs.
+     * @throws CompilationException If an invalid token is parsed
+     */
+    void statement() throws IOException, CompilationException {
 
-        return var;
+        _statement_();
     }
 }
@@ -0,0 +1,84 @@
+/**
+ * A part of a text that is read in place rather than copied. The text of a number or a string constant that a
+ * LexicalAnalyser lexes is a slice of the text that it reads, so that lexing a token does not copy its characters.
+ * A slice is only valid while the text does not change. A LexicalAnalyser decodes every file that it is reset to into
+ * characters of its own, so a token of a file stays valid, but a text that is edited in place (as IncrementalAnalyser
+ * edits its document) is not: where the text of a token escapes (i.e. into a Variable), Token.detach makes a String
+ * of it.
+ */
+public final class TextSlice implements CharSequence {
+
+    private final CharSequence text;
+    private final int start;
+    private final int end;
+
+    /**
+     * @param text The text
+     * @param start The offset of the first character of the slice in the text
+     * @param end The offset after the last character of the slice in the text
+     */
+    public TextSlice(CharSequence text, int start, int end) {
+        if (start < 0 || start > end || end > text.length())
+            throw new IndexOutOfBoundsException("invalid slice " + start + "-" + end + " of " + text.length());
+        this.text = text;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start)
+            throw new IndexOutOfBoundsException("index " + index + " of a slice of " + (end - start));
+        return text.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > this.end - this.start)
+            throw new IndexOutOfBoundsException("invalid range " + start + "-" + end + " of " + (this.end - this.start));
+        return new TextSlice(text, this.start + start, this.start + end);
+    }
+
+    /**
+     * @return The characters of the slice, copied to a String
+     */
+    @Override
+    public String toString() {
+        if (text instanceof String)
+            return ((String) text).substring(start, end);
+        return new StringBuilder(end - start).append(text, start, end).toString();
+    }
+
+    /**
+     * @return true if the other object is a slice of the same characters, wherever they are
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TextSlice))
+            return false;
+        TextSlice slice = (TextSlice) other;
+        if (slice.end - slice.start != end - start)
+            return false;
+        for (int i = 0; i < end - start; i++)
+            if (text.charAt(start + i) != slice.text.charAt(slice.start + i))
+                return false;
+        return true;
+    }
+
+    /**
+     * @return The hash code of the characters, which is that of a String of them
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.charAt(i);
+        return hash;
+    }
+}
@@ -62,10 +62,14 @@ public class Token
 
 	/** The symbol this token instance represents */
 	public int symbol ;
-	/** The original text. */
-	public String text ;
+	/** The original text: a String, or a TextSlice of the text that was lexed, which is not copied (see detach). */
+	public CharSequence text ;
 	/** The line number of the original text in the source file. */
 	public int lineNumber ;
+	/** The offsets in the text of the source of the first character of the token and of the character after it, or
+	  -1 if they are not known (i.e. the source was read line by line). */
+	public int start = -1,
+			end = -1 ;
 
 	/** Constructs a new token with a given token type and line number.
 
@@ -73,7 +77,7 @@ public class Token
 	  @param t The original string recognised from the source file.
 	  @param l The line number of the original string.
 	 */
-	public Token(int s, String t, int l)
+	public Token(int s, CharSequence t, int l)
 	{
 		symbol = s ;
 		text = t ;
@@ -94,6 +98,42 @@ public class Token
 		lineNumber = l ;
 	} // end of constructor method
 
+	/** Returns the text as a String. The text of the token is left as it is, so a slice is copied by every call.
+
+	  @return The original text.
+	 */
+	public String getText()
+	{
+		return text.toString() ;
+	} // end of method getText
+
+	/** Makes the text a String, if it is a slice of the text that was lexed, so that it stays valid wherever it
+	  is kept (i.e. in a Variable, or a token kept after the text that was lexed is edited).
+
+	  @return The text, as a String.
+	 */
+	public String detach()
+	{
+		if (!(text instanceof String))
+			text = text.toString() ;
+		return (String) text ;
+	} // end of method detach
+
+	/** Returns true if the text is the same as another, without making a String of either.
+
+	  @param t The other text.
+	  @return true if both have the same characters.
+	 */
+	public boolean textEquals(CharSequence t)
+	{
+		if (text.length() != t.length())
+			return false ;
+		for (int i = 0; i < t.length(); i++)
+			if (text.charAt(i) != t.charAt(i))
+				return false ;
+		return true ;
+	} // end of method textEquals
+
 	/** Returns a string representation of a symbol type.
 
 	  @param i The value of a symbol, typically as a class constant from Token.
@@ -0,0 +1,86 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the text of a token stays what was lexed. The tokens of a file are kept, with a copy of their texts, while
+ * the LexicalAnalyser that lexed them is reset to other files, bigger than it and of other characters, and lexes them;
+ * the texts of the kept tokens are then compared with the copies. A number or a string constant is a slice of the
+ * characters of its file, so the check fails if a reset reads a file into the characters of the one before. getText
+ * and detach are checked too: getText does not change the text of the token, and detach makes it a String of the same
+ * characters. A difference is reported, and the check exits with 1, so that `make check` fails.
+ *
+ * Usage: java TokenCheck
+ */
+public class TokenCheck {
+
+    /*The number of files that the LexicalAnalyser is reset to after the first one*/
+    private static final int RESETS = 3;
+
+    public static void main(String[] args) throws IOException {
+        File first = program("token-check", "begin\n    x := \"the first file\" ;\n    y := 12345 ;\n"
+                + "    z := \"of two lines\n    \" ;\n    call put(x)\nend\n");
+        List<File> others = new ArrayList<>();
+        for (int i = 0; i < RESETS; i++) {
+            StringBuilder text = new StringBuilder("begin\n");
+            for (int line = 0; line < 100 * (i + 1); line++)
+                text.append("    w := \"").append((char) ('a' + i)).append("-----------------------\" ;\n");
+            others.add(program("token-check-" + i, text.append("    w := 0\nend\n").toString()));
+        }
+
+        int failures = 0;
+        try {
+            LexicalAnalyser lex = new LexicalAnalyser(first.getPath());
+            List<Token> tokens = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            for (Token token = lex.getNextToken(); token.symbol != Token.eofSymbol; token = lex.getNextToken()) {
+                tokens.add(token);
+                texts.add(token.text.toString());
+            }
+            for (File other : others) {
+                lex.reset(other.getPath());
+                for (Token token = lex.getNextToken(); token.symbol != Token.eofSymbol; token = lex.getNextToken())
+                    ;
+            }
+
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                CharSequence text = token.text;
+                if (!token.textEquals(texts.get(i)) || !token.getText().equals(texts.get(i))) {
+                    System.out.println("token check: the text of token " + i + " on line " + token.lineNumber
+                            + " was \"" + texts.get(i) + "\", and is \"" + token.text + "\" after the resets");
+                    failures++;
+                }
+                else if (token.text != text) {
+                    System.out.println("token check: getText changed the text of token " + i);
+                    failures++;
+                }
+                else if (!token.detach().equals(texts.get(i)) || !(token.text instanceof String)) {
+                    System.out.println("token check: detach did not make the text of token " + i + " a String of it");
+                    failures++;
+                }
+            }
+            if (failures == 0)
+                System.out.println("token check: the " + tokens.size() + " tokens of a file have their text after "
+                        + RESETS + " resets");
+        }
+        finally {
+            first.delete();
+            for (File other : others)
+                other.delete();
+        }
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * @return A temporary file of the text of a program
+     */
+    private static File program(String name, String text) throws IOException {
+        File file = File.createTempFile(name, ".txt");
+        Files.write(file.toPath(), text.getBytes());
+        return file;
+    }
+}
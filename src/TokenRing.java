@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded ring of tokens, from a single thread that puts them to a single thread that takes them, without locks.
+ * The ring holds the tokens that the producer made (with their offsets in the source, which an error reports its
+ * column and excerpt from), so that taking a token allocates nothing. Each side publishes how far it has got
+ * with an ordered write of its own index, and only reads the index of the other side when its cached copy of it says
+ * that the ring is full (or empty). A side that has to wait spins for a while, and then parks until the other side
+ * unparks it; it parks for a short time at most, so that a wake-up that crossed its parking is not missed for long.
+ * A producer that found the ring full waits until half of it is free, so that the two sides do not wake each other
+ * for every token when the consumer is the slower one.
+ */
+final class TokenRing {
+
+    /*The number of times that a side checks the ring again before it parks (none with a single processor, where
+    * the other side can not go on while it spins), and how long it parks at most*/
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 2000 : 0;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Token[] tokens;
+    private final int mask;
+
+    /*The number of tokens that were taken (at HEAD) and put (at TAIL), published by the side that changes them. They
+    * are far enough apart in the array that they are not on the same cache line*/
+    private static final int HEAD = 16, TAIL = 32;
+    private final AtomicLongArray indices = new AtomicLongArray(TAIL + 16);
+    /*The copies of the indices that each side keeps for itself*/
+    private final Side producer = new Side(), consumer = new Side();
+
+    /*The side that is parked, waiting for the other one, or null*/
+    private volatile Thread parkedProducer, parkedConsumer;
+    private volatile boolean closed;
+
+    /**
+     * The index of one side, and its cached copy of the index of the other side, padded so that they are not on the
+     * cache line of anything that the other side writes
+     */
+    private static final class Side {
+        long p0, p1, p2, p3, p4, p5, p6, p7;
+        long own, other;
+        long q0, q1, q2, q3, q4, q5, q6, q7;
+    }
+
+    /**
+     * @param capacity The number of tokens that the ring holds, a power of two
+     */
+    TokenRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("the capacity of a ring must be a power of two: " + capacity);
+        this.tokens = new Token[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Puts a token at the tail of the ring, waiting while the ring is full. Only the producer calls this.
+     * @param token The token
+     * @return false if the ring was closed, so that the token will never be taken
+     */
+    boolean put(Token token) {
+        Side side = producer;
+        long t = side.own;
+        if (t - side.other == tokens.length) {
+            side.other = indices.get(HEAD);
+            for (int spins = 0; t - side.other > tokens.length / 2; spins++) { // until half of it is free
+                if (closed)
+                    return false;
+                if (spins >= SPINS) {
+                    parkedProducer = Thread.currentThread();
+                    if (t - indices.get(HEAD) > tokens.length / 2)
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    parkedProducer = null;
+                }
+                side.other = indices.get(HEAD);
+            }
+        }
+        tokens[(int) t & mask] = token;
+        side.own = t + 1;
+        indices.lazySet(TAIL, t + 1);
+        Thread parked = parkedConsumer;
+        if (parked != null) {
+            parkedConsumer = null; // woken once, and not again for every token until it runs
+            LockSupport.unpark(parked);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the token at the head of the ring, waiting while the ring is empty. Only the consumer calls this.
+     * @return The token
+     */
+    Token take() {
+        Side side = consumer;
+        long h = side.own;
+        if (h == side.other) {
+            side.other = indices.get(TAIL);
+            for (int spins = 0; h == side.other; spins++) {
+                if (spins >= SPINS) {
+                    parkedConsumer = Thread.currentThread();
+                    if (h == indices.get(TAIL))
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    parkedConsumer = null;
+                }
+                side.other = indices.get(TAIL);
+            }
+        }
+        int i = (int) h & mask;
+        Token token = tokens[i];
+        tokens[i] = null; // not kept alive by the ring after it was taken
+        side.own = h + 1;
+        indices.lazySet(HEAD, h + 1);
+        Thread parked = parkedProducer;
+        if (parked != null && indices.get(TAIL) - (h + 1) <= tokens.length / 2) {
+            parkedProducer = null;
+            LockSupport.unpark(parked);
+        }
+        return token;
+    }
+
+    /**
+     * Closes the ring, when the consumer will not take any more tokens, so that the producer stops waiting
+     */
+    void close() {
+        closed = true;
+        Thread parked = parkedProducer;
+        if (parked != null)
+            LockSupport.unpark(parked);
+    }
+}
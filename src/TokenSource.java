@@ -0,0 +1,28 @@
+import java.io.IOException;
+
+/**
+ * Where the Syntax Analyser reads the tokens of a program from: the LexicalAnalyser of a file or of a text, or the
+ * tokens of a program that were kept from an earlier analysis (as IncrementalAnalyser does).
+ */
+public interface TokenSource {
+
+    /**
+     * @return The next token of the program. Once the program has ended, every call returns a token of the end of file
+     * @throws IOException If the program can not be read
+     */
+    Token getNextToken() throws IOException;
+
+    /**
+     * @return The name of the file of the program, or a name that stands for it
+     */
+    String getFilename();
+
+    /**
+     * @return The offsets where the lines of the program start, as far as it was read, which map the offsets of its
+     * tokens to lines and columns, or null if the tokens have no offsets
+     */
+    default LineTable getLines() {
+
+        return null;
+    }
+}
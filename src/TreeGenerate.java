@@ -0,0 +1,163 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This generator builds the parse tree of a program from the events of the Syntax Analyser, so that the program can
+ * be compiled by one of the execution back-ends. The trace of the analysis is printed as well, if it is enabled.
+ * Every identifier is bound to the variable that it refers to, following the declarations ("rggDECL") and the
+ * for-loop scopes ("rggDROP") that the Syntax Analyser reports.
+ */
+public class TreeGenerate extends Generate {
+
+    private final boolean trace; // print the trace of the analysis, as Generate does
+
+    /*The stack of non-terminal nodes that have commenced, but not finished yet*/
+    private final ArrayList<ParseNode> open;
+    private ParseNode root;
+    /*The declarations of the procedures of the program, which come before its StatementPart*/
+    private final ArrayList<ParseNode> procedures = new ArrayList<>();
+
+    /*The variables that are currently declared, and the identifiers of the current assignment that were read
+    * before their variable was declared (i.e. the left hand side of a new variable)*/
+    private final HashMap<String, Variable> declared;
+    private final ArrayList<ParseNode> unbound;
+
+    /**
+     * Constructor of the TreeGenerate class
+     * @param trace true if the trace of the analysis should be printed as well
+     */
+    TreeGenerate(boolean trace) {
+        this.trace = trace;
+        this.open = new ArrayList<>();
+        this.declared = new HashMap<>();
+        this.unbound = new ArrayList<>();
+    }
+
+    /**
+     * @return The root (StatementPart) of the parse tree, or null if nothing has been parsed
+     */
+    public ParseNode getRoot() {
+
+        return root;
+    }
+
+    /**
+     * @return The ProcedureDeclaration nodes of the procedures that the program declares, in order
+     */
+    public List<ParseNode> getProcedures() {
+
+        return procedures;
+    }
+
+    /**
+     * Continues the tree from the middle of a program, where the given variables are declared: the first non-terminal
+     * that commences is the root of the tree that is built
+     * @param variables The variables that are declared
+     * @param pending The identifiers of the current assignment that were read before their variable was declared
+     */
+    void resume(Collection<Variable> variables, List<ParseNode> pending) {
+        declared.clear();
+        for (Variable v : variables)
+            declared.put(v.identifier, v);
+        unbound.clear();
+        unbound.addAll(pending);
+    }
+
+    /**
+     * @return The identifiers that were read since the last assignment finished, and whose variable was not declared
+     * when they were read. The variable that the next assignment declares is bound to those of its name
+     */
+    List<ParseNode> pending() {
+
+        return unbound;
+    }
+
+    @Override
+    public void commenceNonterminal(String name) {
+        if (trace)
+            super.commenceNonterminal(name);
+
+        ParseNode node = new ParseNode(name);
+        if (open.isEmpty() && name.equals("ProcedureDeclaration"))
+            procedures.add(node);
+        else if (open.isEmpty())
+            root = node;
+        else
+            top().children.add(node);
+        open.add(node);
+    }
+
+    @Override
+    public void finishNonterminal(String name) {
+        if (trace)
+            super.finishNonterminal(name);
+
+        open.remove(open.size() - 1);
+        if (name.equals("AssignmentStatement"))
+            unbound.clear(); // an identifier can only be declared by its own assignment
+    }
+
+    @Override
+    public void insertTerminal(Token token) {
+        if (trace)
+            super.insertTerminal(token);
+        if (open.isEmpty())
+            return; // the end of file, after the StatementPart
+
+        ParseNode node = new ParseNode(token);
+        if (token.symbol == Token.identifier) {
+            node.variable = declared.get(token.getText());
+            if (node.variable == null)
+                unbound.add(node);
+        }
+        top().children.add(node);
+    }
+
+    @Override
+    public void addVariable(Variable v) {
+        if (trace)
+            super.addVariable(v);
+
+        declared.put(v.identifier, v);
+        for (ParseNode node : unbound) {
+            if (node.token.getText().equals(v.identifier))
+                node.variable = v;
+        }
+    }
+
+    @Override
+    public void removeVariable(Variable v) {
+        if (trace)
+            super.removeVariable(v);
+
+        declared.remove(v.identifier);
+        ParseNode node = top();
+        if (node.dropped == null)
+            node.dropped = new ArrayList<>();
+        node.dropped.add(v);
+    }
+
+    @Override
+    public void reportSuccess() {
+        if (trace)
+            super.reportSuccess();
+    }
+
+    @Override
+    public void reportError(Token token, String explanatoryMessage) throws CompilationException {
+        if (trace)
+            super.reportError(token, explanatoryMessage);
+
+        throw error(token, explanatoryMessage, null);
+    }
+
+    /**
+     * @return The innermost non-terminal node that has not finished yet
+     */
+    ParseNode top() {
+
+        return open.get(open.size() - 1);
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+
+/**
+ * This class executes a program that was compiled to Bytecode. Numbers and strings are kept in two separate register
+ * files (a double[] and a CharSequence[]), so that no value is ever boxed, and the instructions are dispatched by a
+ * single switch in a tight loop. Apart from the results of string operations, nothing is allocated while the program
+ * runs. Strings are concatenated as Ropes, which only become Strings when they are written.
+ * The numbers that are known to be integral are kept in a third register file of longs. If an operation on them is
+ * out of range, the machine copies them to the registers of doubles and goes on in the code that only uses doubles.
+ */
+public class VirtualMachine {
+
+    private final Bytecode program;
+
+    /**
+     * Constructor of the VirtualMachine
+     * @param program The program that this machine will execute
+     */
+    VirtualMachine(Bytecode program) {
+
+        this.program = program;
+    }
+
+    /**
+     * Executes the program, from its first instruction until it halts
+     * @param io The input and output of the program
+     * @throws IOException If the program needs input that can not be read
+     */
+    public void run(ProgramIO io) throws IOException {
+        final int[] code = program.code;
+        final double[] n = new double[program.numberNames.length];
+        final CharSequence[] s = new CharSequence[program.stringNames.length];
+        final long[] l = new long[program.numberNames.length];
+
+        java.util.Arrays.fill(s, "");
+        for (int i = 0; i < program.numberConstantRegisters.length; i++) {
+            double value = program.numberConstants[i];
+            n[program.numberConstantRegisters[i]] = value;
+            if (Integral.isIntegral(value))
+                l[program.numberConstantRegisters[i]] = (long) value;
+        }
+        for (int i = 0; i < program.stringConstantRegisters.length; i++)
+            s[program.stringConstantRegisters[i]] = program.stringConstants[i];
+
+        int pc = 0;
+        while (true) {
+            try {
+                while (true) {
+                    switch (code[pc]) {
+                        case Bytecode.HALT:
+                            io.flush();
+                            return;
+                        case Bytecode.MOVE:
+                            n[code[pc + 1]] = n[code[pc + 2]];
+                            pc += 3;
+                            break;
+                        case Bytecode.SMOVE:
+                            s[code[pc + 1]] = s[code[pc + 2]];
+                            pc += 3;
+                            break;
+                        case Bytecode.ADD:
+                            n[code[pc + 1]] = n[code[pc + 2]] + n[code[pc + 3]];
+                            pc += 4;
+                            break;
+                        case Bytecode.SUB:
+                            n[code[pc + 1]] = n[code[pc + 2]] - n[code[pc + 3]];
+                            pc += 4;
+                            break;
+                        case Bytecode.MUL:
+                            n[code[pc + 1]] = n[code[pc + 2]] * n[code[pc + 3]];
+                            pc += 4;
+                            break;
+                        case Bytecode.DIV:
+                            n[code[pc + 1]] = n[code[pc + 2]] / n[code[pc + 3]];
+                            pc += 4;
+                            break;
+                        case Bytecode.CONCAT:
+                            s[code[pc + 1]] = Rope.concat(s[code[pc + 2]], s[code[pc + 3]]);
+                            pc += 4;
+                            break;
+                        case Bytecode.SCMP:
+                            n[code[pc + 1]] = Integer.signum(Rope.compare(s[code[pc + 2]], s[code[pc + 3]]));
+                            pc += 4;
+                            break;
+                        case Bytecode.JUMP:
+                            pc = code[pc + 1];
+                            break;
+                        case Bytecode.IFLT:
+                            pc = n[code[pc + 1]] < n[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFLE:
+                            pc = n[code[pc + 1]] <= n[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFEQ:
+                            pc = n[code[pc + 1]] == n[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNE:
+                            pc = n[code[pc + 1]] != n[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFGT:
+                            pc = n[code[pc + 1]] > n[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFGE:
+                            pc = n[code[pc + 1]] >= n[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNLT:
+                            pc = !(n[code[pc + 1]] < n[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNLE:
+                            pc = !(n[code[pc + 1]] <= n[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNEQ:
+                            pc = !(n[code[pc + 1]] == n[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNNE:
+                            pc = !(n[code[pc + 1]] != n[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNGT:
+                            pc = !(n[code[pc + 1]] > n[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.IFNGE:
+                            pc = !(n[code[pc + 1]] >= n[code[pc + 2]]) ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.GET:
+                            n[code[pc + 1]] = io.readNumber();
+                            pc += 2;
+                            break;
+                        case Bytecode.SGET:
+                            s[code[pc + 1]] = io.readString();
+                            pc += 2;
+                            break;
+                        case Bytecode.PUT:
+                            io.writeNumber(n[code[pc + 1]]);
+                            pc += 2;
+                            break;
+                        case Bytecode.SPUT:
+                            io.writeString(s[code[pc + 1]]);
+                            pc += 2;
+                            break;
+                        case Bytecode.PUTLN:
+                            io.endLine();
+                            pc += 1;
+                            break;
+                        case Bytecode.LMOVE:
+                            l[code[pc + 1]] = l[code[pc + 2]];
+                            pc += 3;
+                            break;
+                        case Bytecode.LADD:
+                            l[code[pc + 1]] = Integral.add(l[code[pc + 2]], l[code[pc + 3]]);
+                            pc += 4;
+                            break;
+                        case Bytecode.LSUB:
+                            l[code[pc + 1]] = Integral.subtract(l[code[pc + 2]], l[code[pc + 3]]);
+                            pc += 4;
+                            break;
+                        case Bytecode.LMUL:
+                            l[code[pc + 1]] = Integral.multiply(l[code[pc + 2]], l[code[pc + 3]]);
+                            pc += 4;
+                            break;
+                        case Bytecode.L2D:
+                            n[code[pc + 1]] = l[code[pc + 2]];
+                            pc += 3;
+                            break;
+                        case Bytecode.LPUT:
+                            io.writeNumber(l[code[pc + 1]]);
+                            pc += 2;
+                            break;
+                        case Bytecode.LIFLT:
+                            pc = l[code[pc + 1]] < l[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.LIFLE:
+                            pc = l[code[pc + 1]] <= l[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.LIFEQ:
+                            pc = l[code[pc + 1]] == l[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.LIFNE:
+                            pc = l[code[pc + 1]] != l[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.LIFGT:
+                            pc = l[code[pc + 1]] > l[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        case Bytecode.LIFGE:
+                            pc = l[code[pc + 1]] >= l[code[pc + 2]] ? code[pc + 3] : pc + 4;
+                            break;
+                        default:
+                            throw new IllegalStateException("invalid opcode " + code[pc] + " at " + pc);
+                    }
+                }
+            }
+            catch (Integral.OutOfRange e) {
+                pc = deoptimise(pc, n, l);
+            }
+        }
+    }
+
+    /**
+     * Moves on from an operation on longs that is out of range to the code that only uses doubles
+     * @param pc The position of the operation
+     * @param n The registers of doubles, to copy the integral variables to
+     * @param l The registers of longs
+     * @return The position of the start of the same assignment in the code that only uses doubles
+     */
+    private int deoptimise(int pc, double[] n, long[] l) {
+        int[] table = program.deoptimisation;
+        for (int i = 0; i < table.length; i += 3) {
+            if (pc >= table[i] && pc < table[i + 1]) {
+                for (int reg : program.integralRegisters)
+                    n[reg] = l[reg];
+                return table[i + 2];
+            }
+        }
+        throw new IllegalStateException("no deoptimisation for " + pc);
+    }
+}
@@ -0,0 +1,3 @@
+Programs Folder/program1
+OK
+
@@ -0,0 +1,3 @@
+Programs Folder/program11
+OK
+
@@ -0,0 +1,13 @@
+Programs Folder/program13
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 3
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 3
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 3
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 3
+	Caused by : an error in method "AssignmentStatement" of the Syntax Analyser. Error is on line 3
+	Caused by : an error in method "Expression" of the Syntax Analyser. Error is on line 3
+	Caused by : an error in method "Term" of the Syntax Analyser. Error is on line 3
+	Caused by : invalid operation. It is not possible to perform operation on line 3
+
+STOP
+
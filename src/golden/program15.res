@@ -0,0 +1,13 @@
+Programs Folder/program15
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 11
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 11
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 11
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 11
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 11
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 11
+	Caused by : an error in method "ProcedureStatement" of the Syntax Analyser. Error is on line 11
+	Caused by : invalid type of argument 1 of procedure "scale". Expected: "Number", but got "String" instead! on line 10
+
+STOP
+
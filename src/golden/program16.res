@@ -0,0 +1,18 @@
+Programs Folder/program16
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "ForStatement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "IfStatement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "AssignmentStatement" of the Syntax Analyser. Error is on line 6
+	Caused by invalid type assignment. Expected: "String", but got "Number" instead! on line 6
+
+STOP
+
@@ -0,0 +1,6 @@
+Programs Folder/program2
+Compilation Exception
+	Caused by : invalid token. Expected: token "begin", but got "begim" instead! on line 1
+
+STOP
+
@@ -0,0 +1,15 @@
+Programs Folder/program20
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "AssignmentStatement" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "Expression" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "Term" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "Term" of the Syntax Analyser. Error is on line 2
+	Caused by : an error in method "Factor" of the Syntax Analyser. Error is on line 2
+	Caused by : could not find "z". This variable has not been initialised yet. on line 2
+
+STOP
+
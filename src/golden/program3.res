@@ -0,0 +1,13 @@
+Programs Folder/program3
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 12
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 12
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 12
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 12
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 12
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 12
+	Caused by : an error in method "IfStatement" of the Syntax Analyser. Error is on line 12
+	Caused by : invalid token. Expected: token "if", but got "" instead! on line 12
+
+STOP
+
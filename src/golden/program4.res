@@ -0,0 +1,17 @@
+Programs Folder/program4
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "WhileStatement" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 8
+	Caused by : invalid token: "end" on line 8
+
+STOP
+
@@ -0,0 +1,13 @@
+Programs Folder/program5
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 8
+	Caused by : an error in method "WhileStatement" of the Syntax Analyser. Error is on line 8
+	Caused by : invalid token. Expected: token "loop", but got ";" instead! on line 8
+
+STOP
+
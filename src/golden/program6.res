@@ -0,0 +1,19 @@
+Programs Folder/program6
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "WhileStatement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "AssignmentStatement" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Expression" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Term" of the Syntax Analyser. Error is on line 6
+	Caused by : an error in method "Factor" of the Syntax Analyser. Error is on line 6
+	Caused by : could not find "a". This variable has not been initialised yet. on line 6
+
+STOP
+
@@ -0,0 +1,12 @@
+Programs Folder/program7
+Compilation Exception
+	Caused by : an error in method "StatementPart" of the Syntax Analyser. Error is on line 5
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 5
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 5
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 5
+	Caused by : an error in method "StatementList" of the Syntax Analyser. Error is on line 5
+	Caused by : an error in method "Statement" of the Syntax Analyser. Error is on line 5
+	Caused by : invalid token: "else" on line 5
+
+STOP
+
@@ -0,0 +1,6 @@
+Programs Folder/program8
+Compilation Exception
+	Caused by : invalid token. Expected: token "EOF", but got "call" instead! on line 13
+
+STOP
+
@@ -0,0 +1,3 @@
+Programs Folder/program9
+OK
+